@@ -1,9 +1,6 @@
 package com.netradius.protectpay;
 
 import javax.validation.ConstraintViolation;
-import javax.validation.Validation;
-import javax.validation.Validator;
-import javax.validation.ValidatorFactory;
 import javax.validation.constraints.NotNull;
 import java.io.Serializable;
 import java.util.Set;
@@ -85,8 +82,6 @@ public class ACHOverride implements Serializable {
 	 * @return constraint violations
 	 */
 	public Set<ConstraintViolation<ACHOverride>> validate() {
-		ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
-		Validator validator = factory.getValidator();
-		return validator.validate(this, getClass());
+		return ACHOverrideValidator.validate(this);
 	}
 }
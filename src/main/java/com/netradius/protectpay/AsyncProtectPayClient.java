@@ -0,0 +1,497 @@
+package com.netradius.protectpay;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking wrapper around a ProtectPayClient. Every operation runs on an executor and returns a
+ * CompletableFuture. When ProtectPay returns an error, the future is completed exceptionally with the
+ * ProtectPayException thrown by the underlying client.
+ * <p>
+ * On Java 21 and later, {@link #withVirtualThreads(ProtectPayClient, int)} runs each request on its own
+ * virtual thread which allows tens of thousands of requests to wait cheaply. The number of requests in
+ * flight is bounded by a semaphore so ProtectPay is not overwhelmed.
+ *
+ * @author Erik R. Jensen
+ */
+public class AsyncProtectPayClient implements Closeable {
+
+	private final ProtectPayClient client;
+	private final Executor executor;
+	private final boolean ownsExecutor;
+	private final Semaphore permits;
+	private final int maxConcurrency;
+
+	/**
+	 * Creates a new instance which runs requests on its own fixed thread pool sized to the service pool of
+	 * the client. The thread pool is shut down by {@link #close()}.
+	 *
+	 * @param client the client to make requests with
+	 */
+	public AsyncProtectPayClient(ProtectPayClient client) {
+		this(client, Executors.newFixedThreadPool(client.getPoolSize(), new AsyncThreadFactory()), true, 0);
+	}
+
+	/**
+	 * Creates a new instance which runs requests on the given executor. The executor should be sized for
+	 * blocking I/O; it is not shut down by {@link #close()}.
+	 *
+	 * @param client the client to make requests with
+	 * @param executor the executor to run requests on
+	 */
+	public AsyncProtectPayClient(ProtectPayClient client, Executor executor) {
+		this(client, executor, false, 0);
+	}
+
+	/**
+	 * Creates a new instance which runs requests on the given executor with at most maxConcurrency
+	 * requests in flight. Requests over the limit wait on the executor thread.
+	 *
+	 * @param client the client to make requests with
+	 * @param executor the executor to run requests on
+	 * @param maxConcurrency the maximum number of requests in flight
+	 */
+	public AsyncProtectPayClient(ProtectPayClient client, Executor executor, int maxConcurrency) {
+		this(client, executor, false, maxConcurrency);
+	}
+
+	private AsyncProtectPayClient(ProtectPayClient client, Executor executor, boolean ownsExecutor,
+			int maxConcurrency) {
+		if (maxConcurrency < 0) {
+			throw new IllegalArgumentException("Max concurrency may not be negative");
+		}
+		this.client = client;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.maxConcurrency = maxConcurrency;
+		this.permits = maxConcurrency == 0 ? null : new Semaphore(maxConcurrency);
+	}
+
+	/**
+	 * Creates a new instance which runs each request on its own virtual thread. At most maxConcurrency
+	 * requests are in flight; the client's service pool should be at least this large so requests holding
+	 * a permit never wait for a port. The virtual thread executor is shut down by {@link #close()}.
+	 *
+	 * @param client the client to make requests with
+	 * @param maxConcurrency the maximum number of requests in flight
+	 * @return the new instance
+	 * @throws UnsupportedOperationException if the running JVM does not support virtual threads
+	 */
+	public static AsyncProtectPayClient withVirtualThreads(ProtectPayClient client, int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("Max concurrency must be at least 1");
+		}
+		return new AsyncProtectPayClient(client, VirtualThreads.newExecutor(), true, maxConcurrency);
+	}
+
+	private <T> void run(ProtectPayCall<T> call, CompletableFuture<T> future) {
+		try {
+			if (permits != null) {
+				permits.acquire();
+			}
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(x);
+			return;
+		}
+		try {
+			future.complete(call.call());
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+		} finally {
+			if (permits != null) {
+				permits.release();
+			}
+		}
+	}
+
+	private <T> CompletableFuture<T> submit(ProtectPayCall<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> run(call, future));
+		} catch (RejectedExecutionException x) {
+			future.completeExceptionally(x);
+		}
+		return future;
+	}
+
+	/**
+	 * Returns the maximum number of requests in flight.
+	 *
+	 * @return the maximum number of requests in flight or 0 if only bounded by the executor
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * Returns the number of requests which may still start without waiting.
+	 *
+	 * @return the number of available permits or -1 if only bounded by the executor
+	 */
+	public int getAvailablePermits() {
+		return permits == null ? -1 : permits.availablePermits();
+	}
+
+	/**
+	 * Returns the underlying blocking client.
+	 *
+	 * @return the client
+	 */
+	public ProtectPayClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Creates a new payer.
+	 * See {@link ProtectPayClient#createPayer(String)}.
+	 *
+	 * @param accountName the account name used to identify this payer
+	 * @return a future completed with the payer account ID generated by ProtectPay
+	 */
+	public CompletableFuture<String> createPayer(String accountName) {
+		return submit(() -> client.createPayer(accountName));
+	}
+
+	/**
+	 * Creates a new payer. The generated payer account ID is also set on the payer argument.
+	 * See {@link ProtectPayClient#createPayer(ProtectPayPayer)}.
+	 *
+	 * @param protectPayPayer the payer to create
+	 * @return a future completed with the payer account ID generated by ProtectPay
+	 */
+	public CompletableFuture<String> createPayer(ProtectPayPayer protectPayPayer) {
+		return submit(() -> client.createPayer(protectPayPayer));
+	}
+
+	/**
+	 * Updates an existing payer.
+	 * See {@link ProtectPayClient#updatePayer(ProtectPayPayer)}.
+	 *
+	 * @param protectPayPayer the payer to update with the data
+	 * @return a future completed when the request succeeds
+	 */
+	public CompletableFuture<Void> updatePayer(ProtectPayPayer protectPayPayer) {
+		return submit(() -> {
+			client.updatePayer(protectPayPayer);
+			return null;
+		});
+	}
+
+	/**
+	 * Deletes a payer.
+	 * See {@link ProtectPayClient#deletePayer(String)}.
+	 *
+	 * @param payerAccountId the payer account ID to delete
+	 * @return a future completed when the request succeeds
+	 */
+	public CompletableFuture<Void> deletePayer(String payerAccountId) {
+		return submit(() -> {
+			client.deletePayer(payerAccountId);
+			return null;
+		});
+	}
+
+	/**
+	 * Searches for payers.
+	 * See {@link ProtectPayClient#getPayers(ProtectPayPayer)}.
+	 *
+	 * @param protectPayPayer the data to use as a criteria
+	 * @return a future completed with the matching payers
+	 */
+	public CompletableFuture<List<ProtectPayPayer>> getPayers(ProtectPayPayer protectPayPayer) {
+		return submit(() -> client.getPayers(protectPayPayer));
+	}
+
+	/**
+	 * Creates a new payment method. The generated payment method ID is also set on the payment method argument.
+	 * See {@link ProtectPayClient#createPaymentMethod(ProtectPayPaymentMethod)}.
+	 *
+	 * @param protectPayPaymentMethod the payment method to create
+	 * @return a future completed with the generated payment method ID
+	 */
+	public CompletableFuture<String> createPaymentMethod(ProtectPayPaymentMethod protectPayPaymentMethod) {
+		return submit(() -> client.createPaymentMethod(protectPayPaymentMethod));
+	}
+
+	/**
+	 * Updates a payment method.
+	 * See {@link ProtectPayClient#updatePaymentMethod(ProtectPayPaymentMethod)}.
+	 *
+	 * @param protectPayPaymentMethod the payment method to update
+	 * @return a future completed when the request succeeds
+	 */
+	public CompletableFuture<Void> updatePaymentMethod(ProtectPayPaymentMethod protectPayPaymentMethod) {
+		return submit(() -> {
+			client.updatePaymentMethod(protectPayPaymentMethod);
+			return null;
+		});
+	}
+
+	/**
+	 * Deletes a payment method.
+	 * See {@link ProtectPayClient#deletePaymentMethod(String, String)}.
+	 *
+	 * @param payerAccountId the payer account ID the payment method belongs to
+	 * @param paymentMethodId the payment method ID to delete
+	 * @return a future completed when the request succeeds
+	 */
+	public CompletableFuture<Void> deletePaymentMethod(String payerAccountId, String paymentMethodId) {
+		return submit(() -> {
+			client.deletePaymentMethod(payerAccountId, paymentMethodId);
+			return null;
+		});
+	}
+
+	/**
+	 * Finds all the payment methods associated with a payer account.
+	 * See {@link ProtectPayClient#getPaymentMethods(String)}.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return a future completed with all payment methods associated with the payer account
+	 */
+	public CompletableFuture<List<ProtectPayPaymentMethod>> getPaymentMethods(String payerAccountId) {
+		return submit(() -> client.getPaymentMethods(payerAccountId));
+	}
+
+	/**
+	 * Finds a payment method.
+	 * See {@link ProtectPayClient#getPaymentMethod(String, String)}.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @param paymentMethodId the payment method ID
+	 * @return a future completed with the found payment method or null
+	 */
+	public CompletableFuture<ProtectPayPaymentMethod> getPaymentMethod(String payerAccountId, String paymentMethodId) {
+		return submit(() -> client.getPaymentMethod(payerAccountId, paymentMethodId));
+	}
+
+	/**
+	 * Executes an auth transaction.
+	 * See {@link ProtectPayClient#auth(ProtectPayPayment, CreditCardOverride, boolean)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param override any override values
+	 * @param recurring true if recurring, false if otherwise
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> auth(ProtectPayPayment protectPayPayment, CreditCardOverride override, boolean recurring) {
+		return submit(() -> client.auth(protectPayPayment, override, recurring));
+	}
+
+	/**
+	 * Executes an auth transaction.
+	 * See {@link ProtectPayClient#auth(ProtectPayPayment, String, boolean)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param cvv the CVV value
+	 * @param recurring true if recurring, false if otherwise
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> auth(ProtectPayPayment protectPayPayment, String cvv, boolean recurring) {
+		return submit(() -> client.auth(protectPayPayment, cvv, recurring));
+	}
+
+	/**
+	 * Executes an auth transaction.
+	 * See {@link ProtectPayClient#auth(ProtectPayPayment, ACHOverride, boolean)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param override any override values
+	 * @param recurring true if recurring, false if otherwise
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> auth(ProtectPayPayment protectPayPayment, ACHOverride override, boolean recurring) {
+		return submit(() -> client.auth(protectPayPayment, override, recurring));
+	}
+
+	/**
+	 * Executes an auth transaction.
+	 * See {@link ProtectPayClient#auth(ProtectPayPayment, boolean)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param recurring true if recurring, false if otherwise
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> auth(ProtectPayPayment protectPayPayment, boolean recurring) {
+		return submit(() -> client.auth(protectPayPayment, recurring));
+	}
+
+	/**
+	 * Executes a capture transaction.
+	 * See {@link ProtectPayClient#capture(ProtectPayPriorPayment, int)}.
+	 *
+	 * @param payment the prior payment data
+	 * @param amount the amount to capture
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> capture(ProtectPayPriorPayment payment, int amount) {
+		return submit(() -> client.capture(payment, amount));
+	}
+
+	/**
+	 * Executes an auth and capture transaction.
+	 * See {@link ProtectPayClient#authAndCapture(ProtectPayPayment, CreditCardOverride, boolean)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param cco any override values
+	 * @param recurring true if recurring, false if otherwise
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> authAndCapture(ProtectPayPayment protectPayPayment, CreditCardOverride cco, boolean recurring) {
+		return submit(() -> client.authAndCapture(protectPayPayment, cco, recurring));
+	}
+
+	/**
+	 * Executes an auth and capture transaction.
+	 * See {@link ProtectPayClient#authAndCapture(ProtectPayPayment, String, boolean)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param cvv the CVV value
+	 * @param recurring true if recurring, false if otherwise
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> authAndCapture(ProtectPayPayment protectPayPayment, String cvv, boolean recurring) {
+		return submit(() -> client.authAndCapture(protectPayPayment, cvv, recurring));
+	}
+
+	/**
+	 * Executes an auth and capture transaction.
+	 * See {@link ProtectPayClient#authAndCapture(ProtectPayPayment, ACHOverride, boolean)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param ao any override values
+	 * @param recurring true if recurring, false if otherwise
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> authAndCapture(ProtectPayPayment protectPayPayment, ACHOverride ao, boolean recurring) {
+		return submit(() -> client.authAndCapture(protectPayPayment, ao, recurring));
+	}
+
+	/**
+	 * Executes an auth and capture transaction.
+	 * See {@link ProtectPayClient#authAndCapture(ProtectPayPayment, boolean)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param recurring true if recurring, false if otherwise
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> authAndCapture(ProtectPayPayment protectPayPayment, boolean recurring) {
+		return submit(() -> client.authAndCapture(protectPayPayment, recurring));
+	}
+
+	/**
+	 * Voids a previous transaction.
+	 * See {@link ProtectPayClient#voidPayment(ProtectPayPriorPayment)}.
+	 *
+	 * @param protectPayPriorPayment the prior payment data
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> voidPayment(ProtectPayPriorPayment protectPayPriorPayment) {
+		return submit(() -> client.voidPayment(protectPayPriorPayment));
+	}
+
+	/**
+	 * Refunds a previous transaction.
+	 * See {@link ProtectPayClient#refund(ProtectPayPriorPayment, Integer)}.
+	 *
+	 * @param protectPayPriorPayment the prior payment data
+	 * @param amount the amount to refund
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> refund(ProtectPayPriorPayment protectPayPriorPayment, Integer amount) {
+		return submit(() -> client.refund(protectPayPriorPayment, amount));
+	}
+
+	/**
+	 * Executes a credit transaction.
+	 * See {@link ProtectPayClient#credit(ProtectPayPayment, CreditCardOverride)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param cco any overrides
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> credit(ProtectPayPayment protectPayPayment, CreditCardOverride cco) {
+		return submit(() -> client.credit(protectPayPayment, cco));
+	}
+
+	/**
+	 * Executes a credit transaction.
+	 * See {@link ProtectPayClient#credit(ProtectPayPayment, ACHOverride)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @param ao any overrides
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> credit(ProtectPayPayment protectPayPayment, ACHOverride ao) {
+		return submit(() -> client.credit(protectPayPayment, ao));
+	}
+
+	/**
+	 * Executes a credit transaction.
+	 * See {@link ProtectPayClient#credit(ProtectPayPayment)}.
+	 *
+	 * @param protectPayPayment the payment data
+	 * @return a future completed with the payment response
+	 */
+	public CompletableFuture<ProtectPayPaymentResponse> credit(ProtectPayPayment protectPayPayment) {
+		return submit(() -> client.credit(protectPayPayment));
+	}
+
+	/**
+	 * Returns a temporary token.
+	 * See {@link ProtectPayClient#getTempToken(String, String, Integer)}.
+	 *
+	 * @param payerAccountId the payment account ID
+	 * @param payerName the payer name identifier
+	 * @param duration the duration in seconds the token is valid for
+	 * @return a future completed with the token
+	 */
+	public CompletableFuture<String> getTempToken(String payerAccountId, String payerName, Integer duration) {
+		return submit(() -> client.getTempToken(payerAccountId, payerName, duration));
+	}
+
+	/**
+	 * Creates a merchant profile.
+	 * See {@link ProtectPayClient#createMerchantProfile(String, String, Map)}.
+	 *
+	 * @param paymentProcessor the payment processor
+	 * @param profileName the profile name
+	 * @param processorDatum processor specific data
+	 * @return a future completed with the ID of the merchant profile
+	 */
+	public CompletableFuture<Long> createMerchantProfile(String paymentProcessor, String profileName, Map<String, String> processorDatum) {
+		return submit(() -> client.createMerchantProfile(paymentProcessor, profileName, processorDatum));
+	}
+
+	/**
+	 * Shuts down the executor if it was created by this instance. The underlying client is not closed.
+	 */
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			((ExecutorService)executor).shutdown();
+		}
+	}
+
+	private static class AsyncThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "protectpay-async-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
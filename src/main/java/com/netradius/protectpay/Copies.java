@@ -0,0 +1,79 @@
+package com.netradius.protectpay;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Deep copies of the mutable model classes, used wherever one result is handed to more than one caller.
+ *
+ * @author Erik R. Jensen
+ */
+final class Copies {
+
+	private Copies() {
+	}
+
+	static ProtectPayPayer payer(ProtectPayPayer payer) {
+		ProtectPayPayer copy = new ProtectPayPayer();
+		copy.setPayerAccountId(payer.getPayerAccountId());
+		copy.setEmailAddress(payer.getEmailAddress());
+		copy.setExternalId1(payer.getExternalId1());
+		copy.setExternalId2(payer.getExternalId2());
+		copy.setAccountName(payer.getAccountName());
+		return copy;
+	}
+
+	static List<ProtectPayPayer> payers(List<ProtectPayPayer> payers) {
+		List<ProtectPayPayer> copies = new ArrayList<>(payers.size());
+		for (ProtectPayPayer payer : payers) {
+			copies.add(payer(payer));
+		}
+		return copies;
+	}
+
+	static ProtectPayPaymentMethod paymentMethod(ProtectPayPaymentMethod paymentMethod) {
+		ProtectPayPaymentMethod copy = new ProtectPayPaymentMethod();
+		copy.setPaymentMethodId(paymentMethod.getPaymentMethodId());
+		copy.setAccountCountryCode(paymentMethod.getAccountCountryCode());
+		copy.setAccountName(paymentMethod.getAccountName());
+		copy.setAccountNumber(paymentMethod.getAccountNumber());
+		copy.setBankNumber(paymentMethod.getBankNumber());
+		copy.setDescription(paymentMethod.getDescription());
+		copy.setDuplicateAction(paymentMethod.getDuplicateAction());
+		copy.setExpirationDate(paymentMethod.getExpirationDate());
+		copy.setPayerAccountId(paymentMethod.getPayerAccountId());
+		copy.setType(paymentMethod.getType());
+		copy.setPayerProtected(paymentMethod.getPayerProtected());
+		copy.setPriority(paymentMethod.getPriority());
+		if (paymentMethod.getBilling() != null) {
+			copy.setBilling(billingInfo(paymentMethod.getBilling()));
+		}
+		if (paymentMethod.getDateCreated() != null) {
+			copy.setDateCreated(new Date(paymentMethod.getDateCreated().getTime()));
+		}
+		return copy;
+	}
+
+	static List<ProtectPayPaymentMethod> paymentMethods(List<ProtectPayPaymentMethod> paymentMethods) {
+		List<ProtectPayPaymentMethod> copies = new ArrayList<>(paymentMethods.size());
+		for (ProtectPayPaymentMethod paymentMethod : paymentMethods) {
+			copies.add(paymentMethod(paymentMethod));
+		}
+		return copies;
+	}
+
+	static ProtectPayBillingInfo billingInfo(ProtectPayBillingInfo billing) {
+		ProtectPayBillingInfo copy = new ProtectPayBillingInfo();
+		copy.setAddress1(billing.getAddress1());
+		copy.setAddress2(billing.getAddress2());
+		copy.setAddress3(billing.getAddress3());
+		copy.setCity(billing.getCity());
+		copy.setState(billing.getState());
+		copy.setZipCode(billing.getZipCode());
+		copy.setCountry(billing.getCountry());
+		copy.setEmailAddress(billing.getEmailAddress());
+		copy.setTelephoneNumber(billing.getTelephoneNumber());
+		return copy;
+	}
+}
@@ -116,8 +116,6 @@ public class CreditCardOverride implements Serializable {
 	 * @return constraint violations
 	 */
 	public Set<ConstraintViolation<CreditCardOverride>> validate() {
-		ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
-		Validator validator = factory.getValidator();
-		return validator.validate(this, getClass());
+		return CreditCardOverrideValidator.validate(this);
 	}
 }
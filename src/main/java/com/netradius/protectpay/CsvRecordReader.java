@@ -0,0 +1,125 @@
+package com.netradius.protectpay;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads RFC 4180 CSV. The first row holds the column names. Quoted values may contain commas, line breaks
+ * and doubled quotes. Blank lines are skipped.
+ *
+ * @author Erik R. Jensen
+ */
+class CsvRecordReader implements RecordReader {
+
+	private final Reader reader;
+	private final List<String> header;
+	private final StringBuilder value = new StringBuilder();
+	private List<String> row;
+	private boolean eof;
+
+	/**
+	 * Creates a new reader and reads the header row.
+	 *
+	 * @param reader the reader, which should be buffered
+	 * @throws IOException if an I/O error occurs or the header row is missing
+	 */
+	CsvRecordReader(Reader reader) throws IOException {
+		this.reader = reader;
+		this.header = readRow();
+		if (header == null) {
+			throw new IOException("CSV header row is missing");
+		}
+	}
+
+	private List<String> readRow() throws IOException {
+		List<String> values = new ArrayList<>();
+		value.setLength(0);
+		boolean quoted = false;
+		boolean any = false;
+		for (;;) {
+			int c = reader.read();
+			if (c == -1) {
+				eof = true;
+				if (quoted) {
+					throw new IOException("CSV ends inside a quoted value");
+				}
+				if (!any) {
+					return null;
+				}
+				values.add(value.toString());
+				return values;
+			}
+			if (quoted) {
+				if (c == '"') {
+					reader.mark(1);
+					if (reader.read() == '"') {
+						value.append('"');
+					} else {
+						reader.reset();
+						quoted = false;
+					}
+				} else {
+					value.append((char)c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+				any = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+				any = true;
+			} else if (c == '\n' || c == '\r') {
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				}
+				if (any) {
+					values.add(value.toString());
+					return values;
+				}
+			} else {
+				value.append((char)c);
+				any = true;
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (row == null && !eof) {
+			try {
+				row = readRow();
+			} catch (IOException x) {
+				throw new UncheckedIOException(x);
+			}
+		}
+		return row != null;
+	}
+
+	@Override
+	public Map<String, String> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Map<String, String> record = new LinkedHashMap<>();
+		for (int i = 0; i < header.size(); i++) {
+			String v = i < row.size() ? row.get(i) : null;
+			record.put(header.get(i), v == null || v.isEmpty() ? null : v);
+		}
+		row = null;
+		return record;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
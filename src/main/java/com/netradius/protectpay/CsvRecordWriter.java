@@ -0,0 +1,69 @@
+package com.netradius.protectpay;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes RFC 4180 CSV with a header row. Null values are written as empty values.
+ *
+ * @author Erik R. Jensen
+ */
+class CsvRecordWriter implements RecordWriter {
+
+	private final Writer writer;
+	private final List<String> columns;
+
+	/**
+	 * Creates a new writer and writes the header row.
+	 *
+	 * @param writer the writer, which should be buffered
+	 * @param columns the column names
+	 * @throws IOException if an I/O error occurs
+	 */
+	CsvRecordWriter(Writer writer, List<String> columns) throws IOException {
+		this.writer = writer;
+		this.columns = columns;
+		for (int i = 0; i < columns.size(); i++) {
+			writeValue(i, columns.get(i));
+		}
+		writer.write("\r\n");
+		writer.flush();
+	}
+
+	private void writeValue(int i, String value) throws IOException {
+		if (i > 0) {
+			writer.write(',');
+		}
+		if (value == null) {
+			return;
+		}
+		boolean quote = false;
+		for (int j = 0; j < value.length() && !quote; j++) {
+			char c = value.charAt(j);
+			quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (quote) {
+			writer.write('"');
+			writer.write(value.replace("\"", "\"\""));
+			writer.write('"');
+		} else {
+			writer.write(value);
+		}
+	}
+
+	@Override
+	public void write(Map<String, String> record) throws IOException {
+		for (int i = 0; i < columns.size(); i++) {
+			writeValue(i, record.get(columns.get(i)));
+		}
+		writer.write("\r\n");
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
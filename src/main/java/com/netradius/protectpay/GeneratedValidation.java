@@ -0,0 +1,393 @@
+package com.netradius.protectpay;
+
+import javax.validation.ConstraintTarget;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintViolation;
+import javax.validation.ElementKind;
+import javax.validation.Path;
+import javax.validation.Payload;
+import javax.validation.Validation;
+import javax.validation.ValidationException;
+import javax.validation.Validator;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import javax.validation.groups.Default;
+import javax.validation.metadata.ConstraintDescriptor;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Support for the validators ValidatorProcessor generates at compile time. Generated validators check
+ * constraints with plain getter calls and report violations through the types here, classes with
+ * constraints the processor does not support are validated with a shared Validator which is only
+ * bootstrapped the first time one is needed.
+ *
+ * @author Erik R. Jensen
+ */
+final class GeneratedValidation {
+
+	private static final Object[] NO_ATTRIBUTES = new Object[0];
+
+	private static volatile Validator validator;
+
+	private GeneratedValidation() {}
+
+	/**
+	 * Returns the shared Validator used for constraints the generated validators do not check.
+	 *
+	 * @return the shared validator
+	 */
+	static Validator validator() {
+		Validator v = validator;
+		if (v == null) {
+			synchronized (GeneratedValidation.class) {
+				v = validator;
+				if (v == null) {
+					v = Validation.buildDefaultValidatorFactory().getValidator();
+					validator = v;
+				}
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * Creates the descriptor of a @Size constraint declared on a field.
+	 *
+	 * @param beanClass the class declaring the field
+	 * @param field the field name
+	 * @param min the minimum size
+	 * @param max the maximum size
+	 * @param messageTemplate the message template
+	 * @param message the interpolated message
+	 * @return the descriptor
+	 */
+	static Descriptor<Size> size(Class<?> beanClass, String field, int min, int max, String messageTemplate,
+			String message) {
+		return new Descriptor<>(Size.class, beanClass, field, messageTemplate, message,
+				new Object[]{"min", min, "max", max});
+	}
+
+	/**
+	 * Creates the descriptor of a @NotNull constraint declared on a field.
+	 *
+	 * @param beanClass the class declaring the field
+	 * @param field the field name
+	 * @param messageTemplate the message template
+	 * @param message the interpolated message
+	 * @return the descriptor
+	 */
+	static Descriptor<NotNull> notNull(Class<?> beanClass, String field, String messageTemplate, String message) {
+		return new Descriptor<>(NotNull.class, beanClass, field, messageTemplate, message, NO_ATTRIBUTES);
+	}
+
+	/**
+	 * Appends a property to a path.
+	 *
+	 * @param parent the parent path or null for the root bean
+	 * @param name the property name
+	 * @return the new path
+	 */
+	static PropertyPath path(PropertyPath parent, String name) {
+		return new PropertyPath(parent, name);
+	}
+
+	/**
+	 * Creates a violation of a constraint on a property.
+	 *
+	 * @param rootBean the bean validation started from
+	 * @param rootBeanClass the class of the root bean
+	 * @param leafBean the bean declaring the property
+	 * @param parent the path to the leaf bean or null if it is the root bean
+	 * @param property the property name
+	 * @param value the invalid value
+	 * @param descriptor the violated constraint
+	 * @param <T> the type of the root bean
+	 * @return the violation
+	 */
+	static <T> ConstraintViolation<T> violation(T rootBean, Class<T> rootBeanClass, Object leafBean,
+			PropertyPath parent, String property, Object value, Descriptor<?> descriptor) {
+		return new Violation<>(rootBean, rootBeanClass, leafBean, path(parent, property), value, descriptor);
+	}
+
+	/**
+	 * Describes a constraint checked by a generated validator.
+	 *
+	 * @param <A> the constraint annotation type
+	 */
+	static final class Descriptor<A extends Annotation> implements ConstraintDescriptor<A> {
+
+		private final Class<A> annotationType;
+		private final Class<?> beanClass;
+		private final String field;
+		private final String messageTemplate;
+		private final String message;
+		private final Map<String, Object> attributes;
+		private volatile A annotation;
+
+		private Descriptor(Class<A> annotationType, Class<?> beanClass, String field, String messageTemplate,
+				String message, Object[] attributes) {
+			this.annotationType = annotationType;
+			this.beanClass = beanClass;
+			this.field = field;
+			this.messageTemplate = messageTemplate;
+			this.message = message;
+			Map<String, Object> map = new HashMap<>();
+			map.put("message", messageTemplate);
+			map.put("groups", new Class<?>[0]);
+			map.put("payload", new Class<?>[0]);
+			for (int i = 0; i < attributes.length; i += 2) {
+				map.put((String)attributes[i], attributes[i + 1]);
+			}
+			this.attributes = Collections.unmodifiableMap(map);
+		}
+
+		// The annotation is only looked up if someone asks for it, validating never does
+		@Override
+		public A getAnnotation() {
+			A a = annotation;
+			if (a == null) {
+				try {
+					a = beanClass.getDeclaredField(field).getAnnotation(annotationType);
+				} catch (NoSuchFieldException x) {
+					throw new ValidationException("Field " + field + " not found on " + beanClass.getName(), x);
+				}
+				annotation = a;
+			}
+			return a;
+		}
+
+		@Override
+		public String getMessageTemplate() {
+			return messageTemplate;
+		}
+
+		@Override
+		public Set<Class<?>> getGroups() {
+			return Collections.<Class<?>>singleton(Default.class);
+		}
+
+		@Override
+		public Set<Class<? extends Payload>> getPayload() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public ConstraintTarget getValidationAppliesTo() {
+			return null;
+		}
+
+		@Override
+		public List<Class<? extends ConstraintValidator<A, ?>>> getConstraintValidatorClasses() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+
+		@Override
+		public Set<ConstraintDescriptor<?>> getComposingConstraints() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public boolean isReportAsSingleViolation() {
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "@" + annotationType.getName() + attributes;
+		}
+	}
+
+	/**
+	 * The path from a root bean to a property.
+	 */
+	static final class PropertyPath implements Path {
+
+		private final List<Node> nodes;
+
+		private PropertyPath(PropertyPath parent, String name) {
+			List<Node> list = parent == null ? new ArrayList<>(1) : new ArrayList<>(parent.nodes);
+			list.add(new Property(name));
+			nodes = Collections.unmodifiableList(list);
+		}
+
+		@Override
+		public Iterator<Node> iterator() {
+			return nodes.iterator();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof PropertyPath && nodes.equals(((PropertyPath)o).nodes);
+		}
+
+		@Override
+		public int hashCode() {
+			return nodes.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (Node node : nodes) {
+				if (sb.length() > 0) {
+					sb.append('.');
+				}
+				sb.append(node.getName());
+			}
+			return sb.toString();
+		}
+	}
+
+	private static final class Property implements Path.PropertyNode {
+
+		private final String name;
+
+		private Property(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public boolean isInIterable() {
+			return false;
+		}
+
+		@Override
+		public Integer getIndex() {
+			return null;
+		}
+
+		@Override
+		public Object getKey() {
+			return null;
+		}
+
+		@Override
+		public ElementKind getKind() {
+			return ElementKind.PROPERTY;
+		}
+
+		@Override
+		public <T extends Path.Node> T as(Class<T> nodeType) {
+			if (nodeType.isInstance(this)) {
+				return nodeType.cast(this);
+			}
+			throw new ClassCastException("Property node cannot be returned as " + nodeType.getName());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Property && name.equals(((Property)o).name);
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static final class Violation<T> implements ConstraintViolation<T> {
+
+		private final T rootBean;
+		private final Class<T> rootBeanClass;
+		private final Object leafBean;
+		private final Path propertyPath;
+		private final Object invalidValue;
+		private final Descriptor<?> descriptor;
+
+		private Violation(T rootBean, Class<T> rootBeanClass, Object leafBean, Path propertyPath, Object invalidValue,
+				Descriptor<?> descriptor) {
+			this.rootBean = rootBean;
+			this.rootBeanClass = rootBeanClass;
+			this.leafBean = leafBean;
+			this.propertyPath = propertyPath;
+			this.invalidValue = invalidValue;
+			this.descriptor = descriptor;
+		}
+
+		@Override
+		public String getMessage() {
+			return descriptor.message;
+		}
+
+		@Override
+		public String getMessageTemplate() {
+			return descriptor.messageTemplate;
+		}
+
+		@Override
+		public T getRootBean() {
+			return rootBean;
+		}
+
+		@Override
+		public Class<T> getRootBeanClass() {
+			return rootBeanClass;
+		}
+
+		@Override
+		public Object getLeafBean() {
+			return leafBean;
+		}
+
+		@Override
+		public Object[] getExecutableParameters() {
+			return null;
+		}
+
+		@Override
+		public Object getExecutableReturnValue() {
+			return null;
+		}
+
+		@Override
+		public Path getPropertyPath() {
+			return propertyPath;
+		}
+
+		@Override
+		public Object getInvalidValue() {
+			return invalidValue;
+		}
+
+		@Override
+		public ConstraintDescriptor<?> getConstraintDescriptor() {
+			return descriptor;
+		}
+
+		@Override
+		public <U> U unwrap(Class<U> type) {
+			if (type.isInstance(this)) {
+				return type.cast(this);
+			}
+			throw new ValidationException("Type " + type.getName() + " not supported for unwrapping");
+		}
+
+		@Override
+		public String toString() {
+			return "ConstraintViolation{propertyPath=" + propertyPath + ", message='" + descriptor.message
+					+ "', rootBeanClass=" + rootBeanClass.getName() + "}";
+		}
+	}
+}
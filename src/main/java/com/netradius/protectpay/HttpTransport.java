@@ -0,0 +1,241 @@
+package com.netradius.protectpay;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends SOAP requests over pooled keep-alive HTTP connections.
+ *
+ * @author Erik R. Jensen
+ */
+class HttpTransport implements Closeable {
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	private final RequestConfig defaultRequestConfig;
+
+	/**
+	 * Holds the parts of an HTTP response needed to decode a SOAP message. The body is fully read so the
+	 * connection is returned to the pool before decoding starts.
+	 */
+	static class Response {
+
+		private final int status;
+		private final String reason;
+		private final String contentType;
+		private final byte[] body;
+
+		Response(int status, String reason, String contentType, byte[] body) {
+			this.status = status;
+			this.reason = reason;
+			this.contentType = contentType;
+			this.body = body;
+		}
+
+		int getStatus() {
+			return status;
+		}
+
+		String getReason() {
+			return reason;
+		}
+
+		String getContentType() {
+			return contentType;
+		}
+
+		byte[] getBody() {
+			return body;
+		}
+	}
+
+	/**
+	 * Holds an HTTP response whose body is read as it arrives. The connection stays leased until the
+	 * response is closed, after the body has been read it goes back to the pool.
+	 */
+	static class StreamedResponse implements Closeable {
+
+		private final CloseableHttpResponse response;
+		private final InputStream body;
+
+		StreamedResponse(CloseableHttpResponse response) throws IOException {
+			this.response = response;
+			HttpEntity entity = response.getEntity();
+			this.body = entity == null ? null : entity.getContent();
+		}
+
+		int getStatus() {
+			return response.getStatusLine().getStatusCode();
+		}
+
+		String getReason() {
+			return response.getStatusLine().getReasonPhrase();
+		}
+
+		String getContentType() {
+			HttpEntity entity = response.getEntity();
+			Header type = entity == null ? null : entity.getContentType();
+			return type == null ? null : type.getValue();
+		}
+
+		InputStream getBody() {
+			return body;
+		}
+
+		/**
+		 * Reads what is left of the body so the connection can be reused.
+		 *
+		 * @throws IOException if an I/O error occurs
+		 */
+		void consume() throws IOException {
+			EntityUtils.consume(response.getEntity());
+		}
+
+		@Override
+		public void close() throws IOException {
+			// A body which was not fully read closes the connection rather than returning it
+			response.close();
+		}
+	}
+
+	HttpTransport(HttpTransportConfig config) {
+		connectionManager = new PoolingHttpClientConnectionManager(config.getTimeToLive(), TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(config.getMaxTotal());
+		connectionManager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+		connectionManager.setValidateAfterInactivity(config.getValidateAfterInactivity());
+		defaultRequestConfig = RequestConfig.custom()
+				.setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+				.build();
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(defaultRequestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(config.getIdleTimeout(), TimeUnit.MILLISECONDS)
+				.disableCookieManagement()
+				.disableAuthCaching()
+				.disableRedirectHandling()
+				.build();
+	}
+
+	/**
+	 * Posts a SOAP request.
+	 *
+	 * @param address the endpoint address
+	 * @param contentType the request content type
+	 * @param soapAction the SOAPAction header or null
+	 * @param accept the Accept header or null
+	 * @param body the encoded request
+	 * @param connectTimeout the connect timeout in milliseconds or -1 for the default
+	 * @param readTimeout the read timeout in milliseconds or -1 for the default
+	 * @return the response
+	 * @throws IOException if an I/O error occurs
+	 */
+	Response post(String address, String contentType, String soapAction, String accept, byte[] body,
+			int connectTimeout, int readTimeout) throws IOException {
+		return post(address, contentType, soapAction, accept, body, body.length, connectTimeout, readTimeout);
+	}
+
+	/**
+	 * Posts a SOAP request held in the start of an array.
+	 *
+	 * @param address the endpoint address
+	 * @param contentType the request content type
+	 * @param soapAction the SOAPAction header or null
+	 * @param accept the Accept header or null
+	 * @param body the array holding the encoded request
+	 * @param length the length of the encoded request
+	 * @param connectTimeout the connect timeout in milliseconds or -1 for the default
+	 * @param readTimeout the read timeout in milliseconds or -1 for the default
+	 * @return the response
+	 * @throws IOException if an I/O error occurs
+	 */
+	Response post(String address, String contentType, String soapAction, String accept, byte[] body, int length,
+			int connectTimeout, int readTimeout) throws IOException {
+		HttpPost post = request(address, contentType, soapAction, accept, body, length, connectTimeout, readTimeout);
+		try (CloseableHttpResponse response = httpClient.execute(post)) {
+			HttpEntity entity = response.getEntity();
+			Header type = entity == null ? null : entity.getContentType();
+			return new Response(
+					response.getStatusLine().getStatusCode(),
+					response.getStatusLine().getReasonPhrase(),
+					type == null ? null : type.getValue(),
+					entity == null ? new byte[0] : EntityUtils.toByteArray(entity));
+		}
+	}
+
+	/**
+	 * Posts a SOAP request and returns before the response body is read. The caller must close the
+	 * response.
+	 *
+	 * @param address the endpoint address
+	 * @param contentType the request content type
+	 * @param soapAction the SOAPAction header or null
+	 * @param accept the Accept header or null
+	 * @param body the encoded request
+	 * @param connectTimeout the connect timeout in milliseconds or -1 for the default
+	 * @param readTimeout the read timeout in milliseconds or -1 for the default
+	 * @return the response
+	 * @throws IOException if an I/O error occurs
+	 */
+	StreamedResponse open(String address, String contentType, String soapAction, String accept, byte[] body,
+			int connectTimeout, int readTimeout) throws IOException {
+		HttpPost post = request(address, contentType, soapAction, accept, body, body.length, connectTimeout,
+				readTimeout);
+		CloseableHttpResponse response = httpClient.execute(post);
+		try {
+			return new StreamedResponse(response);
+		} catch (IOException | RuntimeException x) {
+			response.close();
+			throw x;
+		}
+	}
+
+	private HttpPost request(String address, String contentType, String soapAction, String accept, byte[] body,
+			int length, int connectTimeout, int readTimeout) {
+		HttpPost post = new HttpPost(address);
+		post.setHeader("Content-Type", contentType);
+		if (soapAction != null) {
+			post.setHeader("SOAPAction", soapAction);
+		}
+		if (accept != null) {
+			post.setHeader("Accept", accept);
+		}
+		if (connectTimeout >= 0 || readTimeout >= 0) {
+			post.setConfig(RequestConfig.copy(defaultRequestConfig)
+					.setConnectTimeout(connectTimeout)
+					.setSocketTimeout(readTimeout)
+					.build());
+		}
+		post.setEntity(new ByteArrayEntity(body, 0, length));
+		return post;
+	}
+
+	/**
+	 * Returns a snapshot of the connection pool.
+	 *
+	 * @return the connection pool statistics
+	 */
+	HttpTransportStats getStats() {
+		PoolStats stats = connectionManager.getTotalStats();
+		return new HttpTransportStats(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+	}
+
+	@Override
+	public void close() throws IOException {
+		httpClient.close();
+	}
+}
@@ -0,0 +1,143 @@
+package com.netradius.protectpay;
+
+import java.io.Serializable;
+
+/**
+ * Holds the settings of the pooled HTTP transport used to send SOAP requests. All durations are in
+ * milliseconds.
+ *
+ * @author Erik R. Jensen
+ */
+public class HttpTransportConfig implements Serializable {
+
+	private static final long serialVersionUID = 2405786264468130290L;
+
+	private int maxTotal = 20;
+	private int maxPerRoute = 20;
+	private long timeToLive = -1;
+	private long idleTimeout = 30000;
+	private int validateAfterInactivity = 2000;
+	private int connectionRequestTimeout = 30000;
+
+	/**
+	 * Returns the maximum number of connections.
+	 *
+	 * @return the maximum number of connections
+	 */
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * Sets the maximum number of connections. Defaults to 20.
+	 *
+	 * @param maxTotal the maximum number of connections
+	 */
+	public void setMaxTotal(int maxTotal) {
+		this.maxTotal = maxTotal;
+	}
+
+	/**
+	 * Returns the maximum number of connections to a single host.
+	 *
+	 * @return the maximum number of connections per route
+	 */
+	public int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * Sets the maximum number of connections to a single host. Defaults to 20.
+	 *
+	 * @param maxPerRoute the maximum number of connections per route
+	 */
+	public void setMaxPerRoute(int maxPerRoute) {
+		this.maxPerRoute = maxPerRoute;
+	}
+
+	/**
+	 * Returns the maximum lifetime of a connection.
+	 *
+	 * @return the time to live or -1 if connections live forever
+	 */
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Sets the maximum lifetime of a connection. Defaults to -1 which means connections are only closed when
+	 * idle or when the server closes them.
+	 *
+	 * @param timeToLive the time to live
+	 */
+	public void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Returns the time after which idle connections are evicted.
+	 *
+	 * @return the idle timeout
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the time after which idle connections are evicted. Defaults to 30000.
+	 *
+	 * @param idleTimeout the idle timeout
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Returns the period of inactivity after which a pooled connection is checked before being reused.
+	 *
+	 * @return the validate after inactivity period
+	 */
+	public int getValidateAfterInactivity() {
+		return validateAfterInactivity;
+	}
+
+	/**
+	 * Sets the period of inactivity after which a pooled connection is checked before being reused. Defaults
+	 * to 2000.
+	 *
+	 * @param validateAfterInactivity the validate after inactivity period
+	 */
+	public void setValidateAfterInactivity(int validateAfterInactivity) {
+		this.validateAfterInactivity = validateAfterInactivity;
+	}
+
+	/**
+	 * Returns the maximum time to wait for a connection from the pool.
+	 *
+	 * @return the connection request timeout
+	 */
+	public int getConnectionRequestTimeout() {
+		return connectionRequestTimeout;
+	}
+
+	/**
+	 * Sets the maximum time to wait for a connection from the pool. Defaults to 30000.
+	 *
+	 * @param connectionRequestTimeout the connection request timeout
+	 */
+	public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+		this.connectionRequestTimeout = connectionRequestTimeout;
+	}
+
+	@Override
+	public String toString() {
+		return "HttpTransportConfig{" +
+				"maxTotal=" + maxTotal +
+				", maxPerRoute=" + maxPerRoute +
+				", timeToLive=" + timeToLive +
+				", idleTimeout=" + idleTimeout +
+				", validateAfterInactivity=" + validateAfterInactivity +
+				", connectionRequestTimeout=" + connectionRequestTimeout +
+				'}';
+	}
+}
@@ -0,0 +1,29 @@
+package com.netradius.protectpay;
+
+import javax.xml.ws.WebServiceFeature;
+
+/**
+ * Marks a service port as using a pooled {@link HttpTransport}. Picked up by {@link HttpTransportTubeFactory}.
+ *
+ * @author Erik R. Jensen
+ */
+class HttpTransportFeature extends WebServiceFeature {
+
+	static final String ID = "com.netradius.protectpay.HttpTransportFeature";
+
+	private final HttpTransport transport;
+
+	HttpTransportFeature(HttpTransport transport) {
+		this.transport = transport;
+		this.enabled = true;
+	}
+
+	HttpTransport getTransport() {
+		return transport;
+	}
+
+	@Override
+	public String getID() {
+		return ID;
+	}
+}
@@ -0,0 +1,71 @@
+package com.netradius.protectpay;
+
+import java.io.Serializable;
+
+/**
+ * Holds a snapshot of the connection pool used by the pooled HTTP transport.
+ *
+ * @author Erik R. Jensen
+ */
+public class HttpTransportStats implements Serializable {
+
+	private static final long serialVersionUID = -2167314125807853049L;
+
+	private final int leased;
+	private final int available;
+	private final int pending;
+	private final int max;
+
+	public HttpTransportStats(int leased, int available, int pending, int max) {
+		this.leased = leased;
+		this.available = available;
+		this.pending = pending;
+		this.max = max;
+	}
+
+	/**
+	 * Returns the number of connections currently in use.
+	 *
+	 * @return the number of leased connections
+	 */
+	public int getLeased() {
+		return leased;
+	}
+
+	/**
+	 * Returns the number of idle connections kept alive for reuse.
+	 *
+	 * @return the number of available connections
+	 */
+	public int getAvailable() {
+		return available;
+	}
+
+	/**
+	 * Returns the number of requests waiting for a connection.
+	 *
+	 * @return the number of pending requests
+	 */
+	public int getPending() {
+		return pending;
+	}
+
+	/**
+	 * Returns the maximum number of connections.
+	 *
+	 * @return the maximum number of connections
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "HttpTransportStats{" +
+				"leased=" + leased +
+				", available=" + available +
+				", pending=" + pending +
+				", max=" + max +
+				'}';
+	}
+}
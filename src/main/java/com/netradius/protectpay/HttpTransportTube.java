@@ -0,0 +1,112 @@
+package com.netradius.protectpay;
+
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.pipe.Codec;
+import com.sun.xml.ws.api.pipe.ContentType;
+import com.sun.xml.ws.api.pipe.NextAction;
+import com.sun.xml.ws.api.pipe.TubeCloner;
+import com.sun.xml.ws.api.pipe.helper.AbstractTubeImpl;
+import com.sun.xml.ws.developer.JAXWSProperties;
+
+import javax.xml.ws.WebServiceException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Metro transport tube which sends requests through a pooled {@link HttpTransport}. The connect and read
+ * timeouts set on the request context through {@link JAXWSProperties#CONNECT_TIMEOUT} and
+ * {@link JAXWSProperties#REQUEST_TIMEOUT} are honored. A request already written by
+ * {@link TransactRequestWriter} and set on the request context through {@link #WRITTEN_REQUEST} is sent
+ * as is instead of being encoded.
+ *
+ * @author Erik R. Jensen
+ */
+class HttpTransportTube extends AbstractTubeImpl {
+
+	static final String WRITTEN_REQUEST = HttpTransportTube.class.getName() + ".writtenRequest";
+
+	private final Codec codec;
+	private final HttpTransport transport;
+
+	HttpTransportTube(Codec codec, HttpTransport transport) {
+		this.codec = codec;
+		this.transport = transport;
+	}
+
+	private HttpTransportTube(HttpTransportTube that, TubeCloner cloner) {
+		super(that, cloner);
+		// Codecs are not thread safe, each copy of the tubeline gets its own
+		this.codec = that.codec.copy();
+		this.transport = that.transport;
+	}
+
+	private static int getTimeout(Packet request, String property) {
+		Object value = request.invocationProperties.get(property);
+		return value instanceof Number ? ((Number)value).intValue() : -1;
+	}
+
+	@Override
+	public Packet process(Packet request) {
+		String address = request.endpointAddress.toString();
+		try {
+			Object written = request.invocationProperties.get(WRITTEN_REQUEST);
+			ContentType ct = written == null ? null : codec.getStaticContentType(request);
+			HttpTransport.Response response;
+			if (ct != null) {
+				TransactRequestWriter.Buffer body = (TransactRequestWriter.Buffer)written;
+				response = transport.post(address, ct.getContentType(), ct.getSOAPActionHeader(),
+						ct.getAcceptHeader(), body.array(), body.size(),
+						getTimeout(request, JAXWSProperties.CONNECT_TIMEOUT),
+						getTimeout(request, JAXWSProperties.REQUEST_TIMEOUT));
+			} else if (written != null) {
+				// The port was called with placeholder arguments, encoding its message would lose the request
+				throw new WebServiceException("Codec cannot send a request written in advance to [" + address + "]");
+			} else {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				ct = codec.encode(request, out);
+				response = transport.post(address, ct.getContentType(),
+						ct.getSOAPActionHeader(), ct.getAcceptHeader(), out.toByteArray(),
+						getTimeout(request, JAXWSProperties.CONNECT_TIMEOUT),
+						getTimeout(request, JAXWSProperties.REQUEST_TIMEOUT));
+			}
+			int status = response.getStatus();
+			// SOAP faults come back as 500 and are decoded like any other response
+			if ((status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_ACCEPTED
+					&& status != HttpURLConnection.HTTP_INTERNAL_ERROR) || response.getContentType() == null) {
+				throw new WebServiceException("HTTP " + status + " " + response.getReason() + " from [" + address + "]");
+			}
+			Packet reply = request.createClientResponse(null);
+			codec.decode(new ByteArrayInputStream(response.getBody()), response.getContentType(), reply);
+			return reply;
+		} catch (IOException x) {
+			throw new WebServiceException("Error sending request to [" + address + "]: " + x.getMessage(), x);
+		}
+	}
+
+	@Override
+	public NextAction processRequest(Packet request) {
+		return doReturnWith(process(request));
+	}
+
+	@Override
+	public NextAction processResponse(Packet response) {
+		throw new IllegalStateException("HttpTransportTube's processResponse shouldn't be called");
+	}
+
+	@Override
+	public NextAction processException(Throwable t) {
+		throw new IllegalStateException("HttpTransportTube's processException shouldn't be called");
+	}
+
+	@Override
+	public void preDestroy() {
+		// The transport is shared by all copies and closed by its owner
+	}
+
+	@Override
+	public HttpTransportTube copy(TubeCloner cloner) {
+		return new HttpTransportTube(this, cloner);
+	}
+}
@@ -0,0 +1,24 @@
+package com.netradius.protectpay;
+
+import com.sun.xml.ws.api.pipe.ClientTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.TransportTubeFactory;
+import com.sun.xml.ws.api.pipe.Tube;
+
+/**
+ * Creates the transport tube for ports created with a {@link HttpTransportFeature}. Returns null for
+ * all other ports so Metro falls back to its default transport. Registered through
+ * META-INF/services/com.sun.xml.ws.api.pipe.TransportTubeFactory.
+ *
+ * @author Erik R. Jensen
+ */
+public class HttpTransportTubeFactory extends TransportTubeFactory {
+
+	@Override
+	public Tube doCreate(ClientTubeAssemblerContext context) {
+		HttpTransportFeature feature = context.getBinding().getFeature(HttpTransportFeature.class);
+		if (feature == null || !feature.isEnabled()) {
+			return null;
+		}
+		return new HttpTransportTube(context.getCodec(), feature.getTransport());
+	}
+}
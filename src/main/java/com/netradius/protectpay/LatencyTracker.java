@@ -0,0 +1,71 @@
+package com.netradius.protectpay;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the most recent latencies of an operation in a ring buffer and estimates a percentile from them.
+ * The estimate is recomputed every {@link #REFRESH_INTERVAL} samples so reading it is cheap.
+ *
+ * @author Erik R. Jensen
+ */
+class LatencyTracker {
+
+	static final int SIZE = 1024;
+	static final int REFRESH_INTERVAL = 128;
+
+	private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+	private final AtomicLong count = new AtomicLong();
+	private final double percentile;
+	private volatile long estimate = -1;
+
+	/**
+	 * Creates a new tracker.
+	 *
+	 * @param percentile the percentile to estimate between 0 and 1
+	 */
+	LatencyTracker(double percentile) {
+		this.percentile = percentile;
+	}
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos the latency in nanoseconds
+	 */
+	void record(long nanos) {
+		long n = count.getAndIncrement();
+		samples.set((int)(n % SIZE), nanos);
+		if ((n + 1) % REFRESH_INTERVAL == 0) {
+			refresh((int)Math.min(n + 1, SIZE));
+		}
+	}
+
+	private void refresh(int size) {
+		long[] copy = new long[size];
+		for (int i = 0; i < size; i++) {
+			copy[i] = samples.get(i);
+		}
+		Arrays.sort(copy);
+		estimate = copy[Math.min(size - 1, (int)Math.ceil(percentile * size) - 1)];
+	}
+
+	/**
+	 * Returns the estimated percentile.
+	 *
+	 * @return the latency in nanoseconds or -1 if fewer than {@link #REFRESH_INTERVAL} samples were recorded
+	 */
+	long getEstimate() {
+		return estimate;
+	}
+
+	/**
+	 * Returns the number of latencies recorded.
+	 *
+	 * @return the number of samples
+	 */
+	long getCount() {
+		return count.get();
+	}
+}
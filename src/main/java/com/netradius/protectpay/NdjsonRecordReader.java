@@ -0,0 +1,87 @@
+package com.netradius.protectpay;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads newline delimited JSON where each line is a flat object. Nested objects and arrays are skipped.
+ *
+ * @author Erik R. Jensen
+ */
+class NdjsonRecordReader implements RecordReader {
+
+	private final JsonParser parser;
+	private Map<String, String> record;
+	private boolean eof;
+
+	/**
+	 * Creates a new reader.
+	 *
+	 * @param factory the factory to create the parser with
+	 * @param reader the reader
+	 * @throws IOException if an I/O error occurs
+	 */
+	NdjsonRecordReader(JsonFactory factory, Reader reader) throws IOException {
+		this.parser = factory.createParser(reader);
+	}
+
+	private Map<String, String> readRecord() throws IOException {
+		JsonToken token = parser.nextToken();
+		if (token == null) {
+			eof = true;
+			return null;
+		}
+		if (token != JsonToken.START_OBJECT) {
+			throw new IOException("Expected a JSON object on line " + parser.getCurrentLocation().getLineNr());
+		}
+		Map<String, String> r = new LinkedHashMap<>();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			token = parser.nextToken();
+			if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+				parser.skipChildren();
+			} else if (token == JsonToken.VALUE_NULL) {
+				r.put(name, null);
+			} else {
+				String text = parser.getText();
+				r.put(name, text.isEmpty() ? null : text);
+			}
+		}
+		return r;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (record == null && !eof) {
+			try {
+				record = readRecord();
+			} catch (IOException x) {
+				throw new UncheckedIOException(x);
+			}
+		}
+		return record != null;
+	}
+
+	@Override
+	public Map<String, String> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Map<String, String> r = record;
+		record = null;
+		return r;
+	}
+
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+}
@@ -0,0 +1,55 @@
+package com.netradius.protectpay;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes newline delimited JSON, one flat object per line.
+ *
+ * @author Erik R. Jensen
+ */
+class NdjsonRecordWriter implements RecordWriter {
+
+	private final JsonGenerator generator;
+	private final List<String> columns;
+
+	/**
+	 * Creates a new writer.
+	 *
+	 * @param factory the factory to create the generator with
+	 * @param writer the writer
+	 * @param columns the field names to write, in order
+	 * @throws IOException if an I/O error occurs
+	 */
+	NdjsonRecordWriter(JsonFactory factory, Writer writer, List<String> columns) throws IOException {
+		this.generator = factory.createGenerator(writer);
+		this.generator.setRootValueSeparator(null);
+		this.columns = columns;
+	}
+
+	@Override
+	public void write(Map<String, String> record) throws IOException {
+		generator.writeStartObject();
+		for (String column : columns) {
+			String value = record.get(column);
+			if (value == null) {
+				generator.writeNullField(column);
+			} else {
+				generator.writeStringField(column, value);
+			}
+		}
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+		generator.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		generator.close();
+	}
+}
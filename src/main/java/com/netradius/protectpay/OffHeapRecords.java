@@ -0,0 +1,282 @@
+package com.netradius.protectpay;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed size records held in direct buffers outside of the heap, addressed by a string key. Records are
+ * allocated from chunks of direct buffers and freed slots are reused. Strings are stored in fixed slots
+ * as raw bytes when ASCII and as UTF-8 otherwise. The rare value which does not fit its slot once encoded
+ * is kept on the heap instead.
+ * <p>
+ * Not thread safe, callers must synchronize access.
+ *
+ * @author Erik R. Jensen
+ */
+final class OffHeapRecords {
+
+	private static final short NULL = -1;
+	private static final short OVERFLOW = -2;
+
+	/**
+	 * Assigns offsets to the fields of a record.
+	 */
+	static final class Layout {
+
+		private int size;
+
+		/**
+		 * Adds a string field.
+		 *
+		 * @param capacity the maximum number of bytes held
+		 * @return the offset of the field
+		 */
+		int string(int capacity) {
+			int offset = size;
+			size += 2 + capacity;
+			return offset;
+		}
+
+		/**
+		 * Adds a field of a fixed number of bytes.
+		 *
+		 * @param length the number of bytes
+		 * @return the offset of the field
+		 */
+		int bytes(int length) {
+			int offset = size;
+			size += length;
+			return offset;
+		}
+
+		/**
+		 * Returns the size of a record.
+		 *
+		 * @return the size in bytes
+		 */
+		int size() {
+			return size;
+		}
+	}
+
+	private final int recordSize;
+	private final int recordsPerChunk;
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private final Map<String, Integer> slots = new HashMap<>();
+	private final Map<Integer, Map<Integer, String>> overflow = new HashMap<>();
+	private int[] free = new int[16];
+	private int freeCount;
+	private int next;
+
+	OffHeapRecords(Layout layout, int recordsPerChunk) {
+		if (recordsPerChunk < 1) {
+			throw new IllegalArgumentException("Records per chunk must be at least 1");
+		}
+		this.recordSize = layout.size();
+		this.recordsPerChunk = recordsPerChunk;
+	}
+
+	/**
+	 * Returns the slot of a record.
+	 *
+	 * @param key the key
+	 * @return the slot or -1 if there is no record for the key
+	 */
+	int slot(String key) {
+		Integer slot = slots.get(key);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Returns the slot of a record, allocating one if there is no record for the key.
+	 *
+	 * @param key the key
+	 * @return the slot
+	 */
+	int allocate(String key) {
+		Integer existing = slots.get(key);
+		if (existing != null) {
+			overflow.remove(existing);
+			return existing;
+		}
+		int slot;
+		if (freeCount > 0) {
+			slot = free[--freeCount];
+		} else {
+			slot = next++;
+			if (slot / recordsPerChunk == chunks.size()) {
+				chunks.add(ByteBuffer.allocateDirect(recordSize * recordsPerChunk));
+			}
+		}
+		slots.put(key, slot);
+		return slot;
+	}
+
+	/**
+	 * Frees the record for a key.
+	 *
+	 * @param key the key
+	 * @return true if there was a record, false if otherwise
+	 */
+	boolean release(String key) {
+		Integer slot = slots.remove(key);
+		if (slot == null) {
+			return false;
+		}
+		overflow.remove(slot);
+		if (freeCount == free.length) {
+			free = Arrays.copyOf(free, free.length * 2);
+		}
+		free[freeCount++] = slot;
+		return true;
+	}
+
+	/**
+	 * Frees every record. Allocated buffers are kept for reuse.
+	 */
+	void clear() {
+		slots.clear();
+		overflow.clear();
+		freeCount = 0;
+		next = 0;
+	}
+
+	int size() {
+		return slots.size();
+	}
+
+	Iterable<String> keys() {
+		return slots.keySet();
+	}
+
+	/**
+	 * Returns the number of bytes allocated outside of the heap.
+	 *
+	 * @return the allocated bytes
+	 */
+	long getAllocatedBytes() {
+		return (long)chunks.size() * recordSize * recordsPerChunk;
+	}
+
+	private ByteBuffer chunk(int slot) {
+		return chunks.get(slot / recordsPerChunk);
+	}
+
+	private int position(int slot, int offset) {
+		return (slot % recordsPerChunk) * recordSize + offset;
+	}
+
+	void putString(int slot, int offset, int capacity, String value) {
+		ByteBuffer buf = chunk(slot);
+		int pos = position(slot, offset);
+		if (value == null) {
+			buf.putShort(pos, NULL);
+			return;
+		}
+		int length = value.length();
+		if (length <= capacity) {
+			boolean ascii = true;
+			for (int i = 0; i < length; i++) {
+				char c = value.charAt(i);
+				if (c >= 0x80) {
+					ascii = false;
+					break;
+				}
+				buf.put(pos + 2 + i, (byte)c);
+			}
+			if (ascii) {
+				buf.putShort(pos, (short)length);
+				return;
+			}
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length <= capacity) {
+			for (int i = 0; i < bytes.length; i++) {
+				buf.put(pos + 2 + i, bytes[i]);
+			}
+			// The high bit marks UTF-8 so ASCII reads can skip decoding
+			buf.putShort(pos, (short)(bytes.length | 0x4000));
+			return;
+		}
+		buf.putShort(pos, OVERFLOW);
+		overflow.computeIfAbsent(slot, s -> new HashMap<>(2)).put(offset, value);
+	}
+
+	String getString(int slot, int offset) {
+		ByteBuffer buf = chunk(slot);
+		int pos = position(slot, offset);
+		short header = buf.getShort(pos);
+		if (header == NULL) {
+			return null;
+		}
+		if (header == OVERFLOW) {
+			return overflow.get(slot).get(offset);
+		}
+		int length = header & 0x3fff;
+		if ((header & 0x4000) == 0) {
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char)buf.get(pos + 2 + i);
+			}
+			return new String(chars);
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buf.get(pos + 2 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	void putByte(int slot, int offset, byte value) {
+		chunk(slot).put(position(slot, offset), value);
+	}
+
+	byte getByte(int slot, int offset) {
+		return chunk(slot).get(position(slot, offset));
+	}
+
+	void putInt(int slot, int offset, int value) {
+		chunk(slot).putInt(position(slot, offset), value);
+	}
+
+	int getInt(int slot, int offset) {
+		return chunk(slot).getInt(position(slot, offset));
+	}
+
+	void putLong(int slot, int offset, long value) {
+		chunk(slot).putLong(position(slot, offset), value);
+	}
+
+	long getLong(int slot, int offset) {
+		return chunk(slot).getLong(position(slot, offset));
+	}
+
+	/**
+	 * Stores an enum as its ordinal plus one, 0 being null.
+	 */
+	void putEnum(int slot, int offset, Enum<?> value) {
+		putByte(slot, offset, value == null ? 0 : (byte)(value.ordinal() + 1));
+	}
+
+	<E extends Enum<E>> E getEnum(int slot, int offset, E[] values) {
+		int b = getByte(slot, offset);
+		return b == 0 ? null : values[b - 1];
+	}
+
+	/**
+	 * Stores a Boolean as 0 for null, 1 for false and 2 for true.
+	 */
+	void putBoolean(int slot, int offset, Boolean value) {
+		putByte(slot, offset, value == null ? 0 : value ? (byte)2 : (byte)1);
+	}
+
+	Boolean getBoolean(int slot, int offset) {
+		int b = getByte(slot, offset);
+		return b == 0 ? null : b == 2;
+	}
+}
@@ -0,0 +1,21 @@
+package com.netradius.protectpay;
+
+/**
+ * A request made by {@link ProtectPayBatchProcessor} for each item in a batch.
+ *
+ * @param <T> the type of item processed
+ * @author Erik R. Jensen
+ */
+@FunctionalInterface
+public interface ProtectPayBatchOperation<T> {
+
+	/**
+	 * Makes the request for a single item.
+	 *
+	 * @param client the client to make the request with
+	 * @param item the item
+	 * @return the response from ProtectPay
+	 * @throws ProtectPayException if ProtectPay returns an error
+	 */
+	ProtectPayPaymentResponse execute(ProtectPayClient client, T item) throws ProtectPayException;
+}
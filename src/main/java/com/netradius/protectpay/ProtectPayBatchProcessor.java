@@ -0,0 +1,402 @@
+package com.netradius.protectpay;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs a request for every item in a batch with bounded parallelism. A failed item never stops the
+ * batch; its exception is recorded in the {@link ProtectPayBatchResult} for that item instead.
+ * <p>
+ * Input is read lazily and at most {@link #getWindowSize()} items are held between being read and their
+ * result being handed to the consumer, so memory use does not grow with the size of the batch. Results
+ * are delivered to the consumer one at a time, either in input order or in completion order.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayBatchProcessor {
+
+	/**
+	 * The order results are delivered in.
+	 */
+	public enum Order {
+
+		/**
+		 * Results are delivered in the same order as the input. A slow item holds back later results until
+		 * it completes.
+		 */
+		INPUT,
+
+		/**
+		 * Results are delivered as soon as each item completes.
+		 */
+		COMPLETION
+	}
+
+	public static final int DEFAULT_PROGRESS_INTERVAL = 1000;
+
+	private final ProtectPayClient client;
+	private final int parallelism;
+	private final Executor executor;
+	private volatile int windowSize;
+	private volatile int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+	private volatile Consumer<ProtectPayBatchProgress> progressListener;
+	private volatile Run<?> current;
+
+	/**
+	 * Creates a new processor which runs requests on its own thread pool, created for each batch.
+	 *
+	 * @param client the client to make requests with
+	 * @param parallelism the maximum number of requests in flight
+	 */
+	public ProtectPayBatchProcessor(ProtectPayClient client, int parallelism) {
+		this(client, parallelism, null);
+	}
+
+	/**
+	 * Creates a new processor which runs requests on the given executor. At most parallelism requests
+	 * are in flight regardless of the size of the executor. The executor is not shut down.
+	 *
+	 * @param client the client to make requests with
+	 * @param parallelism the maximum number of requests in flight
+	 * @param executor the executor to run requests on
+	 */
+	public ProtectPayBatchProcessor(ProtectPayClient client, int parallelism, Executor executor) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+		this.executor = executor;
+		this.windowSize = parallelism * 4;
+	}
+
+	/**
+	 * Returns the maximum number of requests in flight.
+	 *
+	 * @return the parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Returns the maximum number of items read but not yet delivered to the consumer.
+	 *
+	 * @return the window size
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Sets the maximum number of items read but not yet delivered to the consumer. This defaults to four
+	 * times the parallelism and may not be smaller than it. A larger window lets requests continue while
+	 * a slow item holds back results in input order.
+	 *
+	 * @param windowSize the window size
+	 */
+	public void setWindowSize(int windowSize) {
+		if (windowSize < parallelism) {
+			throw new IllegalArgumentException("Window size may not be smaller than the parallelism");
+		}
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Returns the number of completed items between calls to the progress listener.
+	 *
+	 * @return the progress interval
+	 */
+	public int getProgressInterval() {
+		return progressInterval;
+	}
+
+	/**
+	 * Sets the number of completed items between calls to the progress listener.
+	 *
+	 * @param progressInterval the progress interval
+	 */
+	public void setProgressInterval(int progressInterval) {
+		if (progressInterval < 1) {
+			throw new IllegalArgumentException("Progress interval must be at least 1");
+		}
+		this.progressInterval = progressInterval;
+	}
+
+	/**
+	 * Sets the listener called with a progress snapshot every {@link #getProgressInterval()} completed
+	 * items and once more when the batch is done. The listener is called on the thread delivering results
+	 * and should return quickly.
+	 *
+	 * @param progressListener the listener or null for none
+	 */
+	public void setProgressListener(Consumer<ProtectPayBatchProgress> progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Returns the progress of the batch currently running, or the last batch run.
+	 *
+	 * @return the progress or null if no batch has been run
+	 */
+	public ProtectPayBatchProgress getProgress() {
+		Run<?> run = current;
+		return run == null ? null : run.progress();
+	}
+
+	/**
+	 * Processes a batch, handing each result to the consumer as it becomes available. This method blocks
+	 * until every item has been delivered. The consumer is never called concurrently.
+	 *
+	 * @param items the items to process
+	 * @param total the number of items, used to estimate the time remaining, or -1 if not known
+	 * @param operation the request to make for each item
+	 * @param order the order results are delivered in
+	 * @param consumer receives the result for each item
+	 * @param <T> the type of item processed
+	 * @return the final progress of the batch
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public <T> ProtectPayBatchProgress process(Iterator<? extends T> items, long total,
+			ProtectPayBatchOperation<T> operation, Order order, Consumer<? super ProtectPayBatchResult<T>> consumer)
+			throws InterruptedException {
+		ExecutorService owned = executor == null
+				? Executors.newFixedThreadPool(parallelism, new BatchThreadFactory())
+				: null;
+		Run<T> run = new Run<>(owned == null ? executor : owned, total, operation, order, consumer);
+		current = run;
+		try {
+			run.execute(items);
+		} finally {
+			if (owned != null) {
+				owned.shutdown();
+			}
+		}
+		return run.progress();
+	}
+
+	/**
+	 * Processes a batch, handing each result to the consumer as it becomes available.
+	 * See {@link #process(Iterator, long, ProtectPayBatchOperation, Order, Consumer)}.
+	 *
+	 * @param items the items to process
+	 * @param operation the request to make for each item
+	 * @param order the order results are delivered in
+	 * @param consumer receives the result for each item
+	 * @param <T> the type of item processed
+	 * @return the final progress of the batch
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public <T> ProtectPayBatchProgress process(Iterable<? extends T> items, ProtectPayBatchOperation<T> operation,
+			Order order, Consumer<? super ProtectPayBatchResult<T>> consumer) throws InterruptedException {
+		long total = items instanceof Collection ? ((Collection<?>)items).size() : -1;
+		return process(items.iterator(), total, operation, order, consumer);
+	}
+
+	/**
+	 * Processes a batch and collects every result. Prefer one of the methods taking a consumer for
+	 * batches too large to hold in memory.
+	 *
+	 * @param items the items to process
+	 * @param operation the request to make for each item
+	 * @param order the order results are returned in
+	 * @param <T> the type of item processed
+	 * @return the results
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public <T> List<ProtectPayBatchResult<T>> process(Iterable<? extends T> items,
+			ProtectPayBatchOperation<T> operation, Order order) throws InterruptedException {
+		List<ProtectPayBatchResult<T>> results = items instanceof Collection
+				? new ArrayList<ProtectPayBatchResult<T>>(((Collection<?>)items).size())
+				: new ArrayList<ProtectPayBatchResult<T>>();
+		process(items, operation, order, results::add);
+		return results;
+	}
+
+	/**
+	 * Authorizes and captures every payment and collects the results.
+	 * See {@link ProtectPayClient#authAndCapture(ProtectPayPayment, boolean)}.
+	 *
+	 * @param payments the payments to process
+	 * @param recurring true if the payments are recurring, false if otherwise
+	 * @param order the order results are returned in
+	 * @return the results
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public List<ProtectPayBatchResult<ProtectPayPayment>> authAndCapture(Iterable<ProtectPayPayment> payments,
+			boolean recurring, Order order) throws InterruptedException {
+		return process(payments, (c, payment) -> c.authAndCapture(payment, recurring), order);
+	}
+
+	/**
+	 * Authorizes and captures every payment, handing each result to the consumer as it becomes available.
+	 * See {@link ProtectPayClient#authAndCapture(ProtectPayPayment, boolean)}.
+	 *
+	 * @param payments the payments to process
+	 * @param total the number of payments, used to estimate the time remaining, or -1 if not known
+	 * @param recurring true if the payments are recurring, false if otherwise
+	 * @param order the order results are delivered in
+	 * @param consumer receives the result for each payment
+	 * @return the final progress of the batch
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public ProtectPayBatchProgress authAndCapture(Stream<ProtectPayPayment> payments, long total, boolean recurring,
+			Order order, Consumer<? super ProtectPayBatchResult<ProtectPayPayment>> consumer)
+			throws InterruptedException {
+		return process(payments.iterator(), total,
+				(c, payment) -> c.authAndCapture(payment, recurring), order, consumer);
+	}
+
+	private class Run<T> {
+
+		private final Executor executor;
+		private final long total;
+		private final ProtectPayBatchOperation<T> operation;
+		private final Order order;
+		private final Consumer<? super ProtectPayBatchResult<T>> consumer;
+		private final Consumer<ProtectPayBatchProgress> listener = progressListener;
+		private final int interval = progressInterval;
+		private final int window = windowSize;
+		private final Semaphore outstanding = new Semaphore(window);
+		private final Semaphore running = new Semaphore(parallelism);
+		private final Lock deliveryLock = new ReentrantLock();
+		private final Map<Long, ProtectPayBatchResult<T>> pending = new HashMap<>();
+		private final AtomicLong submitted = new AtomicLong();
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final long start = System.nanoTime();
+		private long next;
+		private volatile RuntimeException consumerException;
+
+		Run(Executor executor, long total, ProtectPayBatchOperation<T> operation, Order order,
+				Consumer<? super ProtectPayBatchResult<T>> consumer) {
+			this.executor = executor;
+			this.total = total;
+			this.operation = operation;
+			this.order = order;
+			this.consumer = consumer;
+		}
+
+		ProtectPayBatchProgress progress() {
+			return new ProtectPayBatchProgress(total, submitted.get(), completed.get(), failed.get(),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+
+		void execute(Iterator<? extends T> items) throws InterruptedException {
+			long index = 0;
+			while (consumerException == null && items.hasNext()) {
+				outstanding.acquire();
+				T item = items.next();
+				submit(index++, item);
+			}
+			// Wait for every item to be delivered
+			outstanding.acquire(window);
+			outstanding.release(window);
+			if (listener != null) {
+				listener.accept(progress());
+			}
+			if (consumerException != null) {
+				throw consumerException;
+			}
+		}
+
+		private void submit(long index, T item) {
+			submitted.incrementAndGet();
+			try {
+				executor.execute(() -> call(index, item));
+			} catch (RejectedExecutionException x) {
+				complete(new ProtectPayBatchResult<T>(index, item, null, x));
+			}
+		}
+
+		private void call(long index, T item) {
+			ProtectPayPaymentResponse response = null;
+			Exception exception = null;
+			try {
+				running.acquire();
+				try {
+					response = operation.execute(client, item);
+				} finally {
+					running.release();
+				}
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+				exception = x;
+			} catch (Exception x) {
+				exception = x;
+			} catch (Throwable t) {
+				// Errors fail the item too, an item never completed would leave the batch waiting forever
+				exception = new ExecutionException(t);
+			}
+			complete(new ProtectPayBatchResult<>(index, item, response, exception));
+		}
+
+		private void complete(ProtectPayBatchResult<T> result) {
+			deliveryLock.lock();
+			try {
+				if (order == Order.COMPLETION) {
+					deliver(result);
+				} else {
+					pending.put(result.getIndex(), result);
+					for (ProtectPayBatchResult<T> r = pending.remove(next); r != null; r = pending.remove(next)) {
+						deliver(r);
+						next++;
+					}
+				}
+			} finally {
+				deliveryLock.unlock();
+			}
+		}
+
+		private void deliver(ProtectPayBatchResult<T> result) {
+			try {
+				if (!result.isSuccess()) {
+					failed.incrementAndGet();
+				}
+				long count = completed.incrementAndGet();
+				if (consumerException == null) {
+					try {
+						consumer.accept(result);
+					} catch (RuntimeException x) {
+						consumerException = x;
+					}
+				}
+				if (listener != null && count % interval == 0) {
+					listener.accept(progress());
+				}
+			} finally {
+				outstanding.release();
+			}
+		}
+	}
+
+	private static class BatchThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "protectpay-batch-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.netradius.protectpay;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the progress of a batch run by {@link ProtectPayBatchProcessor}.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayBatchProgress implements Serializable {
+
+	private static final long serialVersionUID = -4393279781590163813L;
+
+	private final long total;
+	private final long submitted;
+	private final long completed;
+	private final long failed;
+	private final long elapsed;
+
+	ProtectPayBatchProgress(long total, long submitted, long completed, long failed, long elapsed) {
+		this.total = total;
+		this.submitted = submitted;
+		this.completed = completed;
+		this.failed = failed;
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * Returns the number of items in the batch.
+	 *
+	 * @return the number of items or -1 if not known
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns the number of items handed to the executor.
+	 *
+	 * @return the number of items submitted
+	 */
+	public long getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * Returns the number of items which have completed, successfully or not.
+	 *
+	 * @return the number of items completed
+	 */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * Returns the number of items which completed successfully.
+	 *
+	 * @return the number of items succeeded
+	 */
+	public long getSucceeded() {
+		return completed - failed;
+	}
+
+	/**
+	 * Returns the number of items which completed with an exception.
+	 *
+	 * @return the number of items failed
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the time since the batch started.
+	 *
+	 * @return the elapsed time in milliseconds
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * Returns the average number of items completed per second.
+	 *
+	 * @return the throughput
+	 */
+	public double getThroughput() {
+		return elapsed == 0 ? 0 : completed * 1000.0 / elapsed;
+	}
+
+	/**
+	 * Returns the estimated time until the batch completes based on the throughput so far.
+	 *
+	 * @return the estimate in milliseconds or -1 if the total is not known or nothing has completed
+	 */
+	public long getEta() {
+		if (total < 0 || completed == 0) {
+			return -1;
+		}
+		return (long)((total - completed) * ((double)elapsed / completed));
+	}
+
+	/**
+	 * Returns true if every item has completed.
+	 *
+	 * @return true if the batch is done, false if otherwise
+	 */
+	public boolean isDone() {
+		return total >= 0 && completed == total;
+	}
+
+	@Override
+	public String toString() {
+		return "ProtectPayBatchProgress{" +
+				"total=" + total +
+				", submitted=" + submitted +
+				", completed=" + completed +
+				", failed=" + failed +
+				", elapsed=" + elapsed +
+				", throughput=" + String.format("%.1f", getThroughput()) +
+				", eta=" + getEta() +
+				'}';
+	}
+}
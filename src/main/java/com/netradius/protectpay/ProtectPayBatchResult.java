@@ -0,0 +1,80 @@
+package com.netradius.protectpay;
+
+/**
+ * Holds the outcome of a single item processed by {@link ProtectPayBatchProcessor}. Either the response
+ * or the exception is set, never both.
+ *
+ * @param <T> the type of item processed
+ * @author Erik R. Jensen
+ */
+public class ProtectPayBatchResult<T> {
+
+	private final long index;
+	private final T item;
+	private final ProtectPayPaymentResponse response;
+	private final Exception exception;
+
+	ProtectPayBatchResult(long index, T item, ProtectPayPaymentResponse response, Exception exception) {
+		this.index = index;
+		this.item = item;
+		this.response = response;
+		this.exception = exception;
+	}
+
+	/**
+	 * Returns the zero based position of the item in the input.
+	 *
+	 * @return the index
+	 */
+	public long getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the item processed.
+	 *
+	 * @return the item
+	 */
+	public T getItem() {
+		return item;
+	}
+
+	/**
+	 * Returns the response from ProtectPay.
+	 *
+	 * @return the response or null if the request failed
+	 */
+	public ProtectPayPaymentResponse getResponse() {
+		return response;
+	}
+
+	/**
+	 * Returns the exception thrown making the request. This is usually a ProtectPayException but may be
+	 * a runtime exception if ProtectPay could not be reached. An error thrown by the operation is returned
+	 * wrapped in an ExecutionException.
+	 *
+	 * @return the exception or null if the request succeeded
+	 */
+	public Exception getException() {
+		return exception;
+	}
+
+	/**
+	 * Returns true if the request succeeded.
+	 *
+	 * @return true if the request succeeded, false if otherwise
+	 */
+	public boolean isSuccess() {
+		return exception == null;
+	}
+
+	@Override
+	public String toString() {
+		return "ProtectPayBatchResult{" +
+				"index=" + index +
+				", item=" + item +
+				", response=" + response +
+				", exception=" + exception +
+				'}';
+	}
+}
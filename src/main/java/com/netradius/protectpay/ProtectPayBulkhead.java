@@ -0,0 +1,239 @@
+package com.netradius.protectpay;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Isolates operation groups from one another by limiting how many requests of each group may be in
+ * flight at once. A slow payer search can then only hold the ports and connections of the vault
+ * compartment and never those needed by transactions. Requests arriving while their compartment is full
+ * wait in a bounded queue, up to the maximum wait, and are rejected with
+ * {@link ProtectPayBulkheadFullException} once the queue is full or the wait runs out.
+ * <p>
+ * Groups without a limit are not limited. Full isolation requires the limits of all groups together to
+ * not exceed the service pool size and the HTTP connections per route. Limits may be changed at any time,
+ * requests already in flight are not affected.
+ * <p>
+ * A single bulkhead may be shared by many clients using the same service pool, see
+ * {@link ProtectPayClientRegistry#setBulkhead(ProtectPayBulkhead)}.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayBulkhead {
+
+	public static final long DEFAULT_MAX_WAIT = 5000;
+
+	private final Map<ProtectPayOperation.Group, Compartment> compartments =
+			new EnumMap<>(ProtectPayOperation.Group.class);
+	private volatile long maxWait = DEFAULT_MAX_WAIT;
+
+	/**
+	 * Creates a new bulkhead with no limits.
+	 */
+	public ProtectPayBulkhead() {
+		for (ProtectPayOperation.Group group : ProtectPayOperation.Group.values()) {
+			compartments.put(group, new Compartment(group));
+		}
+	}
+
+	/**
+	 * Returns the maximum time a request waits in the queue.
+	 *
+	 * @return the maximum wait in milliseconds
+	 */
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Sets the maximum time a request waits in the queue before being rejected. Defaults to
+	 * {@link #DEFAULT_MAX_WAIT}.
+	 *
+	 * @param maxWait the maximum wait in milliseconds
+	 */
+	public void setMaxWait(long maxWait) {
+		if (maxWait < 0) {
+			throw new IllegalArgumentException("Max wait may not be negative");
+		}
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Sets the limit for an operation group.
+	 *
+	 * @param group the operation group
+	 * @param maxConcurrent the maximum number of requests in flight
+	 * @param maxQueued the maximum number of requests waiting, 0 to reject as soon as the group is full
+	 */
+	public void setLimit(ProtectPayOperation.Group group, int maxConcurrent, int maxQueued) {
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException("Max concurrent must be at least 1");
+		}
+		if (maxQueued < 0) {
+			throw new IllegalArgumentException("Max queued may not be negative");
+		}
+		compartments.get(group).setLimit(maxConcurrent, maxQueued);
+	}
+
+	/**
+	 * Removes the limit for an operation group. Waiting requests are let through.
+	 *
+	 * @param group the operation group
+	 */
+	public void removeLimit(ProtectPayOperation.Group group) {
+		compartments.get(group).setLimit(0, 0);
+	}
+
+	/**
+	 * Acquires a place for a request, waiting in the queue if the group is full.
+	 *
+	 * @param operation the operation requested
+	 * @throws ProtectPayBulkheadFullException if the queue is full, the wait exceeds the maximum wait or
+	 *                                         the thread is interrupted while waiting
+	 */
+	void acquire(ProtectPayOperation operation) {
+		compartments.get(operation.getGroup()).acquire(operation, TimeUnit.MILLISECONDS.toNanos(maxWait));
+	}
+
+	/**
+	 * Releases a place acquired by {@link #acquire(ProtectPayOperation)}.
+	 *
+	 * @param operation the operation requested
+	 */
+	void release(ProtectPayOperation operation) {
+		compartments.get(operation.getGroup()).release();
+	}
+
+	/**
+	 * Returns the metrics for an operation group.
+	 *
+	 * @param group the operation group
+	 * @return the metrics
+	 */
+	public ProtectPayBulkheadStats getStats(ProtectPayOperation.Group group) {
+		return compartments.get(group).stats();
+	}
+
+	/**
+	 * Returns the metrics for every operation group.
+	 *
+	 * @return the metrics
+	 */
+	public List<ProtectPayBulkheadStats> getStats() {
+		List<ProtectPayBulkheadStats> stats = new ArrayList<>(compartments.size());
+		for (Compartment compartment : compartments.values()) {
+			stats.add(compartment.stats());
+		}
+		return stats;
+	}
+
+	private static class Compartment {
+
+		private final ProtectPayOperation.Group group;
+
+		// A lock rather than a Semaphore so limits can be resized while requests are in flight
+		private final Lock lock = new ReentrantLock();
+		private final Condition available = lock.newCondition();
+		private int maxConcurrent;
+		private int maxQueued;
+		private int active;
+		private int queued;
+		private int peakActive;
+
+		private final LongAdder permitted = new LongAdder();
+		private final LongAdder delayed = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+
+		Compartment(ProtectPayOperation.Group group) {
+			this.group = group;
+		}
+
+		void setLimit(int maxConcurrent, int maxQueued) {
+			lock.lock();
+			try {
+				this.maxConcurrent = maxConcurrent;
+				this.maxQueued = maxQueued;
+				available.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private boolean full() {
+			return maxConcurrent > 0 && active >= maxConcurrent;
+		}
+
+		private ProtectPayBulkheadFullException reject(ProtectPayOperation operation, String reason) {
+			rejected.increment();
+			return new ProtectPayBulkheadFullException(operation, group + " bulkhead is full, " + reason
+					+ " [active=" + active + ", queued=" + queued + ", maxConcurrent=" + maxConcurrent
+					+ ", maxQueued=" + maxQueued + "]");
+		}
+
+		void acquire(ProtectPayOperation operation, long limitNanos) {
+			lock.lock();
+			try {
+				if (full()) {
+					if (queued >= maxQueued) {
+						throw reject(operation, "queue is full");
+					}
+					long start = System.nanoTime();
+					long remaining = limitNanos;
+					queued++;
+					try {
+						while (full()) {
+							if (remaining <= 0) {
+								throw reject(operation, "timed out waiting");
+							}
+							try {
+								remaining = available.awaitNanos(remaining);
+							} catch (InterruptedException x) {
+								Thread.currentThread().interrupt();
+								throw reject(operation, "interrupted waiting");
+							}
+						}
+					} finally {
+						queued--;
+					}
+					delayed.increment();
+					waitNanos.add(System.nanoTime() - start);
+				}
+				active++;
+				if (active > peakActive) {
+					peakActive = active;
+				}
+				permitted.increment();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void release() {
+			lock.lock();
+			try {
+				active--;
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		ProtectPayBulkheadStats stats() {
+			lock.lock();
+			try {
+				return new ProtectPayBulkheadStats(group, maxConcurrent, maxQueued, active, queued, peakActive,
+						permitted.sum(), delayed.sum(), rejected.sum(), TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()));
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.netradius.protectpay;
+
+/**
+ * Thrown when a request is rejected by a {@link ProtectPayBulkhead} because its operation group has too
+ * many requests in flight.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayBulkheadFullException extends ProtectPayRejectedException {
+
+	private static final long serialVersionUID = 4518832905127738160L;
+
+	public ProtectPayBulkheadFullException(ProtectPayOperation operation, String message) {
+		super(operation, message);
+	}
+}
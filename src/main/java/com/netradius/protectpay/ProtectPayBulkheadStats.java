@@ -0,0 +1,144 @@
+package com.netradius.protectpay;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the metrics kept by {@link ProtectPayBulkhead} for an operation group.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayBulkheadStats implements Serializable {
+
+	private static final long serialVersionUID = -3570285316270458329L;
+
+	private final ProtectPayOperation.Group group;
+	private final int maxConcurrent;
+	private final int maxQueued;
+	private final int active;
+	private final int queued;
+	private final int peakActive;
+	private final long permitted;
+	private final long delayed;
+	private final long rejected;
+	private final long totalWait;
+
+	ProtectPayBulkheadStats(ProtectPayOperation.Group group, int maxConcurrent, int maxQueued, int active,
+			int queued, int peakActive, long permitted, long delayed, long rejected, long totalWait) {
+		this.group = group;
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueued = maxQueued;
+		this.active = active;
+		this.queued = queued;
+		this.peakActive = peakActive;
+		this.permitted = permitted;
+		this.delayed = delayed;
+		this.rejected = rejected;
+		this.totalWait = totalWait;
+	}
+
+	/**
+	 * Returns the operation group.
+	 *
+	 * @return the operation group
+	 */
+	public ProtectPayOperation.Group getGroup() {
+		return group;
+	}
+
+	/**
+	 * Returns the configured maximum number of requests in flight.
+	 *
+	 * @return the maximum number of requests in flight or 0 if the group is not limited
+	 */
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * Returns the configured maximum number of requests waiting.
+	 *
+	 * @return the maximum number of requests waiting
+	 */
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	/**
+	 * Returns the number of requests in flight.
+	 *
+	 * @return the number of requests in flight
+	 */
+	public int getActive() {
+		return active;
+	}
+
+	/**
+	 * Returns the number of requests waiting.
+	 *
+	 * @return the number of requests waiting
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * Returns the highest number of requests which have been in flight at once.
+	 *
+	 * @return the peak number of requests in flight
+	 */
+	public int getPeakActive() {
+		return peakActive;
+	}
+
+	/**
+	 * Returns the number of requests let through, including those which had to wait.
+	 *
+	 * @return the number of requests permitted
+	 */
+	public long getPermitted() {
+		return permitted;
+	}
+
+	/**
+	 * Returns the number of requests let through after waiting.
+	 *
+	 * @return the number of requests delayed
+	 */
+	public long getDelayed() {
+		return delayed;
+	}
+
+	/**
+	 * Returns the number of requests rejected.
+	 *
+	 * @return the number of requests rejected
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Returns the total time delayed requests spent waiting.
+	 *
+	 * @return the total wait in milliseconds
+	 */
+	public long getTotalWait() {
+		return totalWait;
+	}
+
+	@Override
+	public String toString() {
+		return "ProtectPayBulkheadStats{" +
+				"group=" + group +
+				", maxConcurrent=" + maxConcurrent +
+				", maxQueued=" + maxQueued +
+				", active=" + active +
+				", queued=" + queued +
+				", peakActive=" + peakActive +
+				", permitted=" + permitted +
+				", delayed=" + delayed +
+				", rejected=" + rejected +
+				", totalWait=" + totalWait +
+				'}';
+	}
+}
@@ -0,0 +1,118 @@
+package com.netradius.protectpay;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the metrics kept by a client side cache.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayCacheStats implements Serializable {
+
+	private static final long serialVersionUID = 7303542188413850216L;
+
+	private final int size;
+	private final int maxEntries;
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long expirations;
+	private final long invalidations;
+
+	ProtectPayCacheStats(int size, int maxEntries, long hits, long misses, long evictions, long expirations,
+			long invalidations) {
+		this.size = size;
+		this.maxEntries = maxEntries;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.expirations = expirations;
+		this.invalidations = invalidations;
+	}
+
+	/**
+	 * Returns the number of entries held.
+	 *
+	 * @return the number of entries
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of entries held.
+	 *
+	 * @return the maximum number of entries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups which had to go to ProtectPay.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the share of lookups answered from the cache.
+	 *
+	 * @return the hit rate between 0 and 1
+	 */
+	public double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double)hits / total;
+	}
+
+	/**
+	 * Returns the number of entries removed to make room for new ones.
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of entries removed because they were too old.
+	 *
+	 * @return the number of expirations
+	 */
+	public long getExpirations() {
+		return expirations;
+	}
+
+	/**
+	 * Returns the number of entries removed because they were changed through the client.
+	 *
+	 * @return the number of invalidations
+	 */
+	public long getInvalidations() {
+		return invalidations;
+	}
+
+	@Override
+	public String toString() {
+		return "ProtectPayCacheStats{" +
+				"size=" + size +
+				", maxEntries=" + maxEntries +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				", expirations=" + expirations +
+				", invalidations=" + invalidations +
+				'}';
+	}
+}
@@ -0,0 +1,13 @@
+package com.netradius.protectpay;
+
+/**
+ * A single call to ProtectPay which may fail with a ProtectPayException.
+ *
+ * @param <T> the result type
+ * @author Erik R. Jensen
+ */
+@FunctionalInterface
+interface ProtectPayCall<T> {
+
+	T call() throws ProtectPayException;
+}
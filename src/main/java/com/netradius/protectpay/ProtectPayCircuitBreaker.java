@@ -0,0 +1,514 @@
+package com.netradius.protectpay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.ws.WebServiceException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fails requests fast while ProtectPay is degraded instead of letting every caller wait for a socket
+ * timeout. Each operation group has its own circuit which records the outcome of the most recent calls
+ * in a sliding window.
+ * <p>
+ * A closed circuit opens once the window holds at least the minimum number of calls and either the
+ * failure rate or the slow call rate reaches its threshold. An open circuit rejects every request with
+ * {@link ProtectPayCircuitOpenException}. After the open duration the circuit becomes half open and lets
+ * a limited number of probe requests through. If every probe succeeds quickly the circuit closes, if any
+ * probe fails or is slow the circuit opens again.
+ * <p>
+ * Transport failures ({@link WebServiceException}) count as failures. A ProtectPayException counts as a
+ * success as ProtectPay did respond. Requests rejected before being sent are not counted.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayCircuitBreaker {
+
+	/**
+	 * The states of a circuit.
+	 */
+	public enum State {
+
+		/**
+		 * Requests flow normally.
+		 */
+		CLOSED,
+
+		/**
+		 * Requests are rejected.
+		 */
+		OPEN,
+
+		/**
+		 * A limited number of probe requests are let through.
+		 */
+		HALF_OPEN
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(ProtectPayCircuitBreaker.class);
+
+	private static final byte FAILED = 1;
+	private static final byte SLOW = 2;
+
+	public static final int DEFAULT_WINDOW_SIZE = 100;
+	public static final int DEFAULT_MINIMUM_CALLS = 20;
+	public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+	public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8;
+	public static final long DEFAULT_SLOW_CALL_DURATION = 10000;
+	public static final long DEFAULT_OPEN_DURATION = 30000;
+	public static final int DEFAULT_HALF_OPEN_PROBES = 5;
+
+	private final int windowSize;
+	private final Map<ProtectPayOperation.Group, Circuit> circuits = new EnumMap<>(ProtectPayOperation.Group.class);
+	private final List<ProtectPayCircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+	private volatile int minimumCalls = DEFAULT_MINIMUM_CALLS;
+	private volatile double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+	private volatile double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+	private volatile long slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+	private volatile long openDuration = DEFAULT_OPEN_DURATION;
+	private volatile int halfOpenProbes = DEFAULT_HALF_OPEN_PROBES;
+
+	/**
+	 * Creates a new circuit breaker with a window of {@link #DEFAULT_WINDOW_SIZE} calls.
+	 */
+	public ProtectPayCircuitBreaker() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Creates a new circuit breaker.
+	 *
+	 * @param windowSize the number of most recent calls considered by each circuit
+	 */
+	public ProtectPayCircuitBreaker(int windowSize) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Window size must be at least 1");
+		}
+		this.windowSize = windowSize;
+		for (ProtectPayOperation.Group group : ProtectPayOperation.Group.values()) {
+			circuits.put(group, new Circuit(group));
+		}
+	}
+
+	/**
+	 * Returns the number of most recent calls considered by each circuit.
+	 *
+	 * @return the window size
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Returns the number of calls a window must hold before a circuit may open.
+	 *
+	 * @return the minimum number of calls
+	 */
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	/**
+	 * Sets the number of calls a window must hold before a circuit may open. Defaults to
+	 * {@link #DEFAULT_MINIMUM_CALLS}.
+	 *
+	 * @param minimumCalls the minimum number of calls
+	 */
+	public void setMinimumCalls(int minimumCalls) {
+		if (minimumCalls < 1) {
+			throw new IllegalArgumentException("Minimum calls must be at least 1");
+		}
+		this.minimumCalls = minimumCalls;
+	}
+
+	/**
+	 * Returns the share of failed calls at which a circuit opens.
+	 *
+	 * @return the failure rate threshold between 0 and 1
+	 */
+	public double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	/**
+	 * Sets the share of failed calls at which a circuit opens. Defaults to
+	 * {@link #DEFAULT_FAILURE_RATE_THRESHOLD}.
+	 *
+	 * @param failureRateThreshold the failure rate threshold between 0 and 1
+	 */
+	public void setFailureRateThreshold(double failureRateThreshold) {
+		if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+			throw new IllegalArgumentException("Failure rate threshold must be greater than 0 and at most 1");
+		}
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	/**
+	 * Returns the share of slow calls at which a circuit opens.
+	 *
+	 * @return the slow call rate threshold between 0 and 1
+	 */
+	public double getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	/**
+	 * Sets the share of slow calls at which a circuit opens. Defaults to
+	 * {@link #DEFAULT_SLOW_CALL_RATE_THRESHOLD}.
+	 *
+	 * @param slowCallRateThreshold the slow call rate threshold between 0 and 1
+	 */
+	public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+		if (!(slowCallRateThreshold > 0 && slowCallRateThreshold <= 1)) {
+			throw new IllegalArgumentException("Slow call rate threshold must be greater than 0 and at most 1");
+		}
+		this.slowCallRateThreshold = slowCallRateThreshold;
+	}
+
+	/**
+	 * Returns the duration at or above which a call is slow.
+	 *
+	 * @return the slow call duration in milliseconds
+	 */
+	public long getSlowCallDuration() {
+		return slowCallDuration;
+	}
+
+	/**
+	 * Sets the duration at or above which a call is slow. Defaults to {@link #DEFAULT_SLOW_CALL_DURATION}.
+	 *
+	 * @param slowCallDuration the slow call duration in milliseconds
+	 */
+	public void setSlowCallDuration(long slowCallDuration) {
+		if (slowCallDuration < 1) {
+			throw new IllegalArgumentException("Slow call duration must be at least 1");
+		}
+		this.slowCallDuration = slowCallDuration;
+	}
+
+	/**
+	 * Returns the time a circuit stays open before letting probes through.
+	 *
+	 * @return the open duration in milliseconds
+	 */
+	public long getOpenDuration() {
+		return openDuration;
+	}
+
+	/**
+	 * Sets the time a circuit stays open before letting probes through. Defaults to
+	 * {@link #DEFAULT_OPEN_DURATION}.
+	 *
+	 * @param openDuration the open duration in milliseconds
+	 */
+	public void setOpenDuration(long openDuration) {
+		if (openDuration < 0) {
+			throw new IllegalArgumentException("Open duration may not be negative");
+		}
+		this.openDuration = openDuration;
+	}
+
+	/**
+	 * Returns the number of probes which must succeed to close a half open circuit.
+	 *
+	 * @return the number of probes
+	 */
+	public int getHalfOpenProbes() {
+		return halfOpenProbes;
+	}
+
+	/**
+	 * Sets the number of probes which must succeed to close a half open circuit. No more than this many
+	 * requests are let through while half open. Defaults to {@link #DEFAULT_HALF_OPEN_PROBES}.
+	 *
+	 * @param halfOpenProbes the number of probes
+	 */
+	public void setHalfOpenProbes(int halfOpenProbes) {
+		if (halfOpenProbes < 1) {
+			throw new IllegalArgumentException("Half open probes must be at least 1");
+		}
+		this.halfOpenProbes = halfOpenProbes;
+	}
+
+	/**
+	 * Adds a listener notified of state changes.
+	 *
+	 * @param listener the listener
+	 */
+	public void addListener(ProtectPayCircuitBreakerListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener the listener
+	 */
+	public void removeListener(ProtectPayCircuitBreakerListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the state of the circuit of an operation group.
+	 *
+	 * @param group the operation group
+	 * @return the state
+	 */
+	public State getState(ProtectPayOperation.Group group) {
+		return circuits.get(group).state;
+	}
+
+	/**
+	 * Returns the share of failed calls in the window of an operation group.
+	 *
+	 * @param group the operation group
+	 * @return the failure rate between 0 and 1
+	 */
+	public double getFailureRate(ProtectPayOperation.Group group) {
+		return circuits.get(group).rate(FAILED);
+	}
+
+	/**
+	 * Returns the share of slow calls in the window of an operation group.
+	 *
+	 * @param group the operation group
+	 * @return the slow call rate between 0 and 1
+	 */
+	public double getSlowCallRate(ProtectPayOperation.Group group) {
+		return circuits.get(group).rate(SLOW);
+	}
+
+	/**
+	 * Returns the number of requests rejected by the circuit of an operation group.
+	 *
+	 * @param group the operation group
+	 * @return the number of requests rejected
+	 */
+	public long getRejected(ProtectPayOperation.Group group) {
+		return circuits.get(group).rejected.sum();
+	}
+
+	/**
+	 * Closes the circuit of an operation group and clears its window.
+	 *
+	 * @param group the operation group
+	 */
+	public void reset(ProtectPayOperation.Group group) {
+		circuits.get(group).reset();
+	}
+
+	/**
+	 * Asks permission to send a request.
+	 *
+	 * @param operation the operation requested
+	 * @return true if the request is a half open probe, false if otherwise
+	 * @throws ProtectPayCircuitOpenException if the request is rejected
+	 */
+	boolean acquire(ProtectPayOperation operation) {
+		return circuits.get(operation.getGroup()).acquire(operation);
+	}
+
+	/**
+	 * Records the outcome of a request permitted by {@link #acquire(ProtectPayOperation)}.
+	 *
+	 * @param operation the operation requested
+	 * @param probe the value returned by {@link #acquire(ProtectPayOperation)}
+	 * @param sent true if the request was sent to ProtectPay, false if it was rejected locally
+	 * @param duration the time the request took in nanoseconds
+	 * @param failure the exception thrown by the request or null if it succeeded
+	 */
+	void record(ProtectPayOperation operation, boolean probe, boolean sent, long duration, Throwable failure) {
+		Circuit circuit = circuits.get(operation.getGroup());
+		if (!sent) {
+			circuit.ignore(probe);
+			return;
+		}
+		byte outcome = 0;
+		if (failure instanceof WebServiceException) {
+			outcome |= FAILED;
+		} else if (failure != null && !(failure instanceof ProtectPayException)) {
+			// Not caused by ProtectPay
+			circuit.ignore(probe);
+			return;
+		}
+		if (duration >= TimeUnit.MILLISECONDS.toNanos(slowCallDuration)) {
+			outcome |= SLOW;
+		}
+		circuit.record(probe, outcome);
+	}
+
+	private void fire(ProtectPayOperation.Group group, State from, State to) {
+		if (from == to) {
+			return;
+		}
+		log.info("Circuit for " + group + " operations changed from " + from + " to " + to);
+		for (ProtectPayCircuitBreakerListener listener : listeners) {
+			try {
+				listener.onStateChange(group, from, to);
+			} catch (RuntimeException x) {
+				log.warn("Circuit breaker listener failed: " + x.getMessage(), x);
+			}
+		}
+	}
+
+	private class Circuit {
+
+		private final ProtectPayOperation.Group group;
+		private final Lock lock = new ReentrantLock();
+		private final byte[] outcomes = new byte[windowSize];
+		private final LongAdder rejected = new LongAdder();
+		private volatile State state = State.CLOSED;
+		private int index;
+		private int count;
+		private int failed;
+		private int slow;
+		private long openedAt;
+		private int probesStarted;
+		private int probesSucceeded;
+
+		Circuit(ProtectPayOperation.Group group) {
+			this.group = group;
+		}
+
+		private void clear() {
+			index = 0;
+			count = 0;
+			failed = 0;
+			slow = 0;
+			probesStarted = 0;
+			probesSucceeded = 0;
+		}
+
+		// Must hold the lock
+		private State transition(State to) {
+			State from = state;
+			clear();
+			if (to == State.OPEN) {
+				openedAt = System.nanoTime();
+			}
+			state = to;
+			return from;
+		}
+
+		double rate(byte flag) {
+			lock.lock();
+			try {
+				if (count == 0) {
+					return 0;
+				}
+				return (double)(flag == FAILED ? failed : slow) / count;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean acquire(ProtectPayOperation operation) {
+			if (state == State.CLOSED) {
+				return false;
+			}
+			State from = null;
+			State rejectedIn = null;
+			boolean probe = false;
+			lock.lock();
+			try {
+				if (state == State.OPEN) {
+					if (System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos(openDuration)) {
+						from = transition(State.HALF_OPEN);
+					} else {
+						rejectedIn = State.OPEN;
+					}
+				}
+				if (state == State.HALF_OPEN) {
+					if (probesStarted < halfOpenProbes) {
+						probesStarted++;
+						probe = true;
+					} else {
+						rejectedIn = State.HALF_OPEN;
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (from != null) {
+				fire(group, from, State.HALF_OPEN);
+			}
+			if (rejectedIn != null) {
+				rejected.increment();
+				throw new ProtectPayCircuitOpenException(operation, rejectedIn, "Circuit for " + group
+						+ " operations is " + rejectedIn + ", rejecting " + operation);
+			}
+			return probe;
+		}
+
+		void ignore(boolean probe) {
+			if (!probe) {
+				return;
+			}
+			lock.lock();
+			try {
+				if (state == State.HALF_OPEN && probesStarted > 0) {
+					probesStarted--;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void record(boolean probe, byte outcome) {
+			State from = null;
+			State to = null;
+			lock.lock();
+			try {
+				if (state == State.CLOSED) {
+					if (count == outcomes.length) {
+						byte old = outcomes[index];
+						failed -= old & FAILED;
+						slow -= (old & SLOW) >> 1;
+					} else {
+						count++;
+					}
+					outcomes[index] = outcome;
+					index = (index + 1) % outcomes.length;
+					failed += outcome & FAILED;
+					slow += (outcome & SLOW) >> 1;
+					if (count >= minimumCalls && ((double)failed / count >= failureRateThreshold
+							|| (double)slow / count >= slowCallRateThreshold)) {
+						to = State.OPEN;
+						from = transition(to);
+					}
+				} else if (state == State.HALF_OPEN && probe) {
+					if (outcome != 0) {
+						to = State.OPEN;
+						from = transition(to);
+					} else if (++probesSucceeded >= halfOpenProbes) {
+						to = State.CLOSED;
+						from = transition(to);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (from != null) {
+				fire(group, from, to);
+			}
+		}
+
+		void reset() {
+			State from;
+			lock.lock();
+			try {
+				from = transition(State.CLOSED);
+			} finally {
+				lock.unlock();
+			}
+			fire(group, from, State.CLOSED);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.netradius.protectpay;
+
+/**
+ * Receives state changes of a {@link ProtectPayCircuitBreaker}. Listeners are called on the thread whose
+ * request caused the change and should return quickly.
+ *
+ * @author Erik R. Jensen
+ */
+@FunctionalInterface
+public interface ProtectPayCircuitBreakerListener {
+
+	/**
+	 * Called after the circuit of an operation group changes state.
+	 *
+	 * @param group the operation group
+	 * @param from the previous state
+	 * @param to the new state
+	 */
+	void onStateChange(ProtectPayOperation.Group group, ProtectPayCircuitBreaker.State from,
+			ProtectPayCircuitBreaker.State to);
+}
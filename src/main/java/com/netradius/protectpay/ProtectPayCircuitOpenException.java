@@ -0,0 +1,29 @@
+package com.netradius.protectpay;
+
+/**
+ * Thrown when a request is rejected because the circuit of its operation group is open.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayCircuitOpenException extends ProtectPayRejectedException {
+
+	private static final long serialVersionUID = 4913075284623510147L;
+
+	private final ProtectPayCircuitBreaker.State state;
+
+	public ProtectPayCircuitOpenException(ProtectPayOperation operation, ProtectPayCircuitBreaker.State state,
+			String message) {
+		super(operation, message);
+		this.state = state;
+	}
+
+	/**
+	 * Returns the state of the circuit when the request was rejected. This is
+	 * {@link ProtectPayCircuitBreaker.State#HALF_OPEN} when all probes were already in flight.
+	 *
+	 * @return the state
+	 */
+	public ProtectPayCircuitBreaker.State getState() {
+		return state;
+	}
+}
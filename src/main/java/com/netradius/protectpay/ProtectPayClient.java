@@ -1,6 +1,5 @@
 package com.netradius.protectpay;
 
-import com.propay.sps.SPS;
 import com.propay.sps.SPSService;
 import com.propay.sps.types.*;
 import com.propay.sps.types.ObjectFactory;
@@ -8,62 +7,756 @@ import org.datacontract.schemas._2004._07.propay_contracts_sps.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.xml.ws.developer.JAXWSProperties;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Wrapper class for the ProtectPay API.
  *
  * @author Erik R. Jensen
  */
-public class ProtectPayClient {
+public class ProtectPayClient implements Closeable {
+
+	public static final String PRODUCTION_ENDPOINT = "http://protectpay.propay.com/API/SPS.svc";
+	public static final String TESTING_ENDPOINT = "http://protectpaytest.propay.com/API/SPS.svc";
+
+	/**
+	 * @deprecated the WSDL is bundled with this library, use {@link #PRODUCTION_ENDPOINT}
+	 */
+	@Deprecated
+	public static final String PRODUCTION_URL = PRODUCTION_ENDPOINT + "?wsdl";
 
-	public static final String PRODUCTION_URL = "http://protectpay.propay.com/API/SPS.svc?wsdl";
-	public static final String TESTING_URL = "http://protectpaytest.propay.com/API/SPS.svc?wsdl";
+	/**
+	 * @deprecated the WSDL is bundled with this library, use {@link #TESTING_ENDPOINT}
+	 */
+	@Deprecated
+	public static final String TESTING_URL = TESTING_ENDPOINT + "?wsdl";
+
+	/**
+	 * Classpath location of the WSDL checked in with the sources.
+	 */
+	static final String WSDL_RESOURCE = "/com/netradius/protectpay/SPS.wsdl";
+
+	public static final int DEFAULT_POOL_SIZE = 16;
+	public static final long DEFAULT_POOL_TIMEOUT = 30000;
+
+	/**
+	 * External ID used to search for payers during warm up. No payer is expected to match it.
+	 */
+	public static final String WARM_UP_SENTINEL = "protectpay-client-warm-up";
 
 	private static final Logger log = LoggerFactory.getLogger(ProtectPayClient.class);
 
-	private SPSService service;
-	private ObjectFactory typesFactory;
-	private org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory contractsFactory;
-	private ID id;
-	private URL serviceUrl;
+	private static final ObjectFactory typesFactory = new ObjectFactory();
+	private static final org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory contractsFactory =
+			new org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory();
+
+	private final ServicePool pool;
+	private final boolean ownsPool;
+	private final URL endpointUrl;
+	private final String billerAccountId;
+	private final boolean hasDeadline;
+	private final long deadline;
+	private volatile ID id;
+	private volatile ProtectPayRateLimiter rateLimiter;
+	private volatile ProtectPayRetryPolicy retryPolicy = new ProtectPayRetryPolicy();
+	private volatile ProtectPayHedgingPolicy hedgingPolicy;
+	private volatile ProtectPayCircuitBreaker circuitBreaker;
+	private volatile ProtectPayBulkhead bulkhead;
+	private volatile ProtectPayPaymentMethodCache paymentMethodCache;
+	private volatile ProtectPayRequestCoalescer requestCoalescer;
+	private volatile ProtectPayTempTokenCache tempTokenCache;
+	private volatile ProtectPayPayerIndex payerIndex;
+	private volatile ProtectPayVaultMirror vaultMirror;
+	private volatile boolean directRequestWriting;
+	private volatile ProtectPayTimeouts timeouts = new ProtectPayTimeouts();
 
 	private enum Type {
-		AUTH,
-		CAPTURE,
-		CREDIT
+		AUTH(ProtectPayOperation.AUTH),
+		CAPTURE(ProtectPayOperation.AUTH_AND_CAPTURE),
+		CREDIT(ProtectPayOperation.CREDIT);
+
+		private final ProtectPayOperation operation;
+
+		Type(ProtectPayOperation operation) {
+			this.operation = operation;
+		}
+	}
+
+	@FunctionalInterface
+	private interface ServiceCall<T> {
+		T call(SPSService service) throws ProtectPayException;
+	}
+
+	@FunctionalInterface
+	private interface MirrorWrite {
+		void write(ProtectPayVaultMirror mirror) throws IOException;
+	}
+
+	/**
+	 * Creates a new ProtectPayClient instance. The service definition is read from the WSDL bundled
+	 * with this library, the URL given only determines where SOAP requests are sent. For backwards
+	 * compatibility a WSDL URL (ending in ?wsdl) is also accepted and treated as its endpoint.
+	 *
+	 * @param endpointUrl the endpoint URL to use, see {@link #PRODUCTION_ENDPOINT} and {@link #TESTING_ENDPOINT}
+	 * @param authenticationToken the authentication token assigned by ProPay
+	 * @param billerAccountId the biller account ID assigned by ProPay
+	 */
+	public ProtectPayClient(String endpointUrl, String authenticationToken, String billerAccountId) {
+		this(endpointUrl, authenticationToken, billerAccountId, null);
 	}
 
 	/**
-	 * Creates a new ProtectPayClient instance.
+	 * Creates a new ProtectPayClient instance which sends requests over pooled keep-alive HTTP connections.
+	 * Clients created with a transport configuration should be closed when no longer needed.
 	 *
-	 * @param wsdlUrl the WSDL URL to use
+	 * @param endpointUrl the endpoint URL to use, see {@link #PRODUCTION_ENDPOINT} and {@link #TESTING_ENDPOINT}
 	 * @param authenticationToken the authentication token assigned by ProPay
 	 * @param billerAccountId the biller account ID assigned by ProPay
+	 * @param transportConfig the HTTP transport settings or null to use Metro's default transport
 	 */
-	public ProtectPayClient(String wsdlUrl, String authenticationToken, String billerAccountId) {
+	public ProtectPayClient(String endpointUrl, String authenticationToken, String billerAccountId,
+			HttpTransportConfig transportConfig) {
+		this(new ServicePool(toEndpointUrl(endpointUrl), DEFAULT_POOL_SIZE, DEFAULT_POOL_TIMEOUT, transportConfig),
+				true, authenticationToken, billerAccountId);
+	}
+
+	/**
+	 * Creates a new ProtectPayClient instance which uses a service pool shared with other clients.
+	 *
+	 * @param pool the service pool
+	 * @param ownsPool true if the pool is closed along with this client
+	 * @param authenticationToken the authentication token assigned by ProPay
+	 * @param billerAccountId the biller account ID assigned by ProPay
+	 */
+	ProtectPayClient(ServicePool pool, boolean ownsPool, String authenticationToken, String billerAccountId) {
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.endpointUrl = pool.getEndpointUrl();
+		this.billerAccountId = billerAccountId;
+		this.hasDeadline = false;
+		this.deadline = 0;
+		setAuthenticationToken(authenticationToken);
+	}
+
+	private ProtectPayClient(ProtectPayClient parent, long deadline) {
+		this.pool = parent.pool;
+		this.ownsPool = false;
+		this.endpointUrl = parent.endpointUrl;
+		this.billerAccountId = parent.billerAccountId;
+		this.hasDeadline = true;
+		this.deadline = deadline;
+		this.id = parent.id;
+		this.rateLimiter = parent.rateLimiter;
+		this.retryPolicy = parent.retryPolicy;
+		this.hedgingPolicy = parent.hedgingPolicy;
+		this.circuitBreaker = parent.circuitBreaker;
+		this.bulkhead = parent.bulkhead;
+		this.paymentMethodCache = parent.paymentMethodCache;
+		this.requestCoalescer = parent.requestCoalescer;
+		this.tempTokenCache = parent.tempTokenCache;
+		this.payerIndex = parent.payerIndex;
+		this.vaultMirror = parent.vaultMirror;
+		this.directRequestWriting = parent.directRequestWriting;
+		this.timeouts = parent.timeouts;
+	}
+
+	static URL toEndpointUrl(String url) {
+		String endpoint = url;
+		int idx = url.indexOf('?');
+		if (idx != -1 && url.substring(idx + 1).equalsIgnoreCase("wsdl")) {
+			endpoint = url.substring(0, idx);
+		}
 		try {
-			serviceUrl = new URL(wsdlUrl);
+			return new URL(endpoint);
 		} catch (MalformedURLException x) {
-			throw new IllegalArgumentException("Invalid URL [" + wsdlUrl + "]: " + x.getMessage(), x);
+			throw new IllegalArgumentException("Invalid URL [" + url + "]: " + x.getMessage(), x);
+		}
+	}
+
+	/**
+	 * Returns the endpoint URL SOAP requests are sent to.
+	 *
+	 * @return the endpoint URL
+	 */
+	public URL getEndpointUrl() {
+		return endpointUrl;
+	}
+
+	/**
+	 * Returns the biller account ID requests are made for.
+	 *
+	 * @return the biller account ID
+	 */
+	public String getBillerAccountId() {
+		return billerAccountId;
+	}
+
+	/**
+	 * Replaces the authentication token sent with each request. Requests already in flight complete
+	 * with the previous token.
+	 *
+	 * @param authenticationToken the authentication token assigned by ProPay
+	 */
+	public void setAuthenticationToken(String authenticationToken) {
+		ID newId = typesFactory.createID();
+		newId.setAuthenticationToken(element(authenticationToken, typesFactory::createIDAuthenticationToken));
+		newId.setBillerAccountId(element(billerAccountId, typesFactory::createIDBillerAccountId));
+		id = newId;
+	}
+
+	/**
+	 * Returns the maximum number of service ports used concurrently by this client.
+	 *
+	 * @return the pool size
+	 */
+	public int getPoolSize() {
+		return pool.getMaxSize();
+	}
+
+	/**
+	 * Sets the maximum number of service ports used concurrently by this client. This also bounds the
+	 * number of concurrent requests. Defaults to {@link #DEFAULT_POOL_SIZE}. Clients obtained from a
+	 * {@link ProtectPayClientRegistry} share their pool with all clients using the same endpoint.
+	 *
+	 * @param poolSize the pool size
+	 */
+	public void setPoolSize(int poolSize) {
+		pool.setMaxSize(poolSize);
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds a request waits for a free service port.
+	 *
+	 * @return the pool timeout in milliseconds
+	 */
+	public long getPoolTimeout() {
+		return pool.getTimeout();
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds a request waits for a free service port. Defaults to
+	 * {@link #DEFAULT_POOL_TIMEOUT}.
+	 *
+	 * @param poolTimeout the pool timeout in milliseconds
+	 */
+	public void setPoolTimeout(long poolTimeout) {
+		pool.setTimeout(poolTimeout);
+	}
+
+	/**
+	 * Eagerly creates all service ports rather than creating them on first use.
+	 *
+	 * @return the number of ports created
+	 */
+	public int fillPool() {
+		return pool.fill();
+	}
+
+	/**
+	 * Returns the rate limiter applied to requests.
+	 *
+	 * @return the rate limiter or null if requests are not limited
+	 */
+	public ProtectPayRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Sets the rate limiter applied to requests. Permits are taken from the buckets for the biller account
+	 * of this client and the group of the operation requested.
+	 *
+	 * @param rateLimiter the rate limiter or null to not limit requests
+	 */
+	public void setRateLimiter(ProtectPayRateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * Returns the policy deciding which failed requests are retried.
+	 *
+	 * @return the retry policy or null if requests are not retried
+	 */
+	public ProtectPayRetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Sets the policy deciding which failed requests are retried. By default, read only operations are
+	 * retried after transport failures using the defaults of {@link ProtectPayRetryPolicy}.
+	 *
+	 * @param retryPolicy the retry policy or null to never retry requests
+	 */
+	public void setRetryPolicy(ProtectPayRetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Returns the policy deciding which slow requests are hedged.
+	 *
+	 * @return the hedging policy or null if requests are not hedged
+	 */
+	public ProtectPayHedgingPolicy getHedgingPolicy() {
+		return hedgingPolicy;
+	}
+
+	/**
+	 * Sets the policy deciding which slow requests are hedged. Hedged requests are sent from the
+	 * policy's executor and each may hold two service ports at once. Requests are not hedged by default.
+	 *
+	 * @param hedgingPolicy the hedging policy or null to never hedge requests
+	 */
+	public void setHedgingPolicy(ProtectPayHedgingPolicy hedgingPolicy) {
+		this.hedgingPolicy = hedgingPolicy;
+	}
+
+	/**
+	 * Returns the circuit breaker requests pass through.
+	 *
+	 * @return the circuit breaker or null if none is used
+	 */
+	public ProtectPayCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Sets the circuit breaker requests pass through. While the circuit of an operation group is open,
+	 * requests in that group fail immediately with {@link ProtectPayCircuitOpenException}. No circuit
+	 * breaker is used by default.
+	 *
+	 * @param circuitBreaker the circuit breaker or null to use none
+	 */
+	public void setCircuitBreaker(ProtectPayCircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Returns the bulkhead limiting requests in flight per operation group.
+	 *
+	 * @return the bulkhead or null if none is used
+	 */
+	public ProtectPayBulkhead getBulkhead() {
+		return bulkhead;
+	}
+
+	/**
+	 * Sets the bulkhead limiting requests in flight per operation group, so a burst of slow requests in
+	 * one group cannot take every service port. No bulkhead is used by default.
+	 *
+	 * @param bulkhead the bulkhead or null to use none
+	 */
+	public void setBulkhead(ProtectPayBulkhead bulkhead) {
+		this.bulkhead = bulkhead;
+	}
+
+	/**
+	 * Returns the cache payment method lookups are answered from.
+	 *
+	 * @return the cache or null if none is used
+	 */
+	public ProtectPayPaymentMethodCache getPaymentMethodCache() {
+		return paymentMethodCache;
+	}
+
+	/**
+	 * Sets the cache payment method lookups are answered from. Changes made through this client invalidate
+	 * the affected payer's entry. No cache is used by default.
+	 *
+	 * @param paymentMethodCache the cache or null to use none
+	 */
+	public void setPaymentMethodCache(ProtectPayPaymentMethodCache paymentMethodCache) {
+		this.paymentMethodCache = paymentMethodCache;
+	}
+
+	/**
+	 * Returns the coalescer identical concurrent lookups share requests through.
+	 *
+	 * @return the coalescer or null if none is used
+	 */
+	public ProtectPayRequestCoalescer getRequestCoalescer() {
+		return requestCoalescer;
+	}
+
+	/**
+	 * Sets the coalescer identical concurrent lookups share requests through. Lookups are not coalesced by
+	 * default.
+	 *
+	 * @param requestCoalescer the coalescer or null to use none
+	 */
+	public void setRequestCoalescer(ProtectPayRequestCoalescer requestCoalescer) {
+		this.requestCoalescer = requestCoalescer;
+	}
+
+	/**
+	 * Returns the cache temporary tokens are reused from.
+	 *
+	 * @return the cache or null if none is used
+	 */
+	public ProtectPayTempTokenCache getTempTokenCache() {
+		return tempTokenCache;
+	}
+
+	/**
+	 * Sets the cache temporary tokens are reused from. No cache is used by default.
+	 *
+	 * @param tempTokenCache the cache or null to use none
+	 */
+	public void setTempTokenCache(ProtectPayTempTokenCache tempTokenCache) {
+		this.tempTokenCache = tempTokenCache;
+	}
+
+	/**
+	 * Returns the local index payer searches are answered from.
+	 *
+	 * @return the index or null if none is used
+	 */
+	public ProtectPayPayerIndex getPayerIndex() {
+		return payerIndex;
+	}
+
+	/**
+	 * Sets the local index payer searches are answered from. The index is kept up to date with the payers
+	 * this client creates, updates, deletes and finds, but only answers searches once it has been loaded
+	 * with {@link #loadPayerIndex()} or for fields declared unique on it. No index is used by default.
+	 *
+	 * @param payerIndex the index or null to use none
+	 */
+	public void setPayerIndex(ProtectPayPayerIndex payerIndex) {
+		this.payerIndex = payerIndex;
+	}
+
+	/**
+	 * Replaces the content of the payer index with every payer of the biller account.
+	 *
+	 * @return the number of payers indexed
+	 * @throws ProtectPayException if the request fails
+	 * @throws IllegalStateException if no payer index is set
+	 */
+	public int loadPayerIndex() throws ProtectPayException {
+		ProtectPayPayerIndex index = payerIndex;
+		if (index == null) {
+			throw new IllegalStateException("No payer index is set");
 		}
-		typesFactory = new ObjectFactory();
-		contractsFactory = new org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory();
-		id = typesFactory.createID();
-		id.setAuthenticationToken(typesFactory.createIDAuthenticationToken(authenticationToken));
-		id.setBillerAccountId(typesFactory.createIDBillerAccountId(billerAccountId));
+		List<ProtectPayPayer> all = searchPayers(null);
+		index.load(all);
+		mirror(mirror -> mirror.putFound(all));
+		return all.size();
 	}
 
-	private void initService() {
+	/**
+	 * Returns the file mirror payment method lookups are answered from after a restart.
+	 *
+	 * @return the mirror or null if none is used
+	 */
+	public ProtectPayVaultMirror getVaultMirror() {
+		return vaultMirror;
+	}
+
+	/**
+	 * Sets the file mirror payment method lookups are answered from after a restart. The mirror is kept up
+	 * to date with the payers and payment methods this client creates, updates, deletes and finds, and is
+	 * consulted after the payment method cache. Failing to write the mirror is logged and does not fail
+	 * the request. No mirror is used by default.
+	 *
+	 * @param vaultMirror the mirror or null to use none
+	 */
+	public void setVaultMirror(ProtectPayVaultMirror vaultMirror) {
+		this.vaultMirror = vaultMirror;
+	}
+
+	/**
+	 * Returns true if transaction requests are written directly rather than marshalled.
+	 *
+	 * @return true if requests are written directly, false if otherwise
+	 */
+	public boolean isDirectRequestWriting() {
+		return directRequestWriting;
+	}
+
+	/**
+	 * Sets whether auth, auth and capture and credit requests are written directly from the payment with
+	 * StAX rather than built as JAXB objects and marshalled. The request sent is the same either way, writing
+	 * it directly only saves allocation and CPU. This only takes effect for clients created with a
+	 * {@link HttpTransportConfig}; other clients always marshal requests. Disabled by default.
+	 *
+	 * @param directRequestWriting true to write requests directly, false to marshal them
+	 */
+	public void setDirectRequestWriting(boolean directRequestWriting) {
+		this.directRequestWriting = directRequestWriting;
+	}
+
+	/**
+	 * Returns the connect and read timeouts applied to requests.
+	 *
+	 * @return the timeouts
+	 */
+	public ProtectPayTimeouts getTimeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * Sets the connect and read timeouts applied to requests.
+	 *
+	 * @param timeouts the timeouts
+	 */
+	public void setTimeouts(ProtectPayTimeouts timeouts) {
+		if (timeouts == null) {
+			throw new IllegalArgumentException("Timeouts may not be null");
+		}
+		this.timeouts = timeouts;
+	}
+
+	/**
+	 * Returns a client whose requests must complete within the given time from now. The returned client
+	 * shares the service pool, credentials and policies of this client as they are now and is meant for
+	 * a single logical request, including any retries.
+	 * <p>
+	 * Before each request is sent, the time remaining is checked. If less than
+	 * {@link ProtectPayTimeouts#getMinimumBudget()} remains the request is not sent and
+	 * {@link ProtectPayDeadlineExceededException} is thrown, so a payment the caller has given up on is
+	 * never sent. Otherwise the connect and read timeouts are shortened to fit the time remaining. Retries
+	 * which cannot start before the deadline are not attempted.
+	 *
+	 * @param timeout the time allowed in milliseconds
+	 * @return the client
+	 */
+	public ProtectPayClient withDeadline(long timeout) {
+		return new ProtectPayClient(this, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+	}
+
+	/**
+	 * Returns true if this client was created by {@link #withDeadline(long)}.
+	 *
+	 * @return true if requests have a deadline, false if otherwise
+	 */
+	public boolean hasDeadline() {
+		return hasDeadline;
+	}
+
+	/**
+	 * Returns the time remaining before the deadline of this client.
+	 *
+	 * @return the remaining time in milliseconds, negative if the deadline has passed, or
+	 *         {@link Long#MAX_VALUE} if this client has no deadline
+	 */
+	public long getRemainingTime() {
+		return hasDeadline ? TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns a snapshot of the HTTP connection pool.
+	 *
+	 * @return the connection pool statistics or null if no transport configuration was given
+	 */
+	public HttpTransportStats getTransportStats() {
+		return pool.getTransportStats();
+	}
+
+	/**
+	 * Releases the HTTP connections held by this client. Clients obtained from a
+	 * {@link ProtectPayClientRegistry} share their connections and are closed through the registry.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (ownsPool) {
+			pool.close();
+		}
+	}
+
+	private void warmUpMappers() throws DatatypeConfigurationException {
+		ProtectPayBillingInfo billingInfo = new ProtectPayBillingInfo();
+		billingInfo.setAddress1(WARM_UP_SENTINEL);
+		billingInfo.setCity(WARM_UP_SENTINEL);
+		billingInfo.setState("UT");
+		billingInfo.setZipCode("84020");
+		billingInfo.setCountry(ProtectPayBillingInfo.Country.USA);
+		Billing billing = toBilling(billingInfo);
+		toBillingInfo(billing);
+
+		ProtectPayPayer protectPayPayer = new ProtectPayPayer();
+		protectPayPayer.setExternalId1(WARM_UP_SENTINEL);
+		toPayerData(protectPayPayer);
+
+		ProtectPayPayment protectPayPayment = new ProtectPayPayment();
+		protectPayPayment.setAmount(100);
+		protectPayPayment.setCurrencyCode("USD");
+		protectPayPayment.setMerchantProfileId(1L);
+		toTransaction(protectPayPayment);
+
+		CreditCardOverride cco = new CreditCardOverride();
+		cco.setCvv("999");
+		cco.setFullName(WARM_UP_SENTINEL);
+		cco.setExpiration("0199");
+		cco.setBilling(billingInfo);
+		toCreditCardOverrides(cco);
+
+		ACHOverride ao = new ACHOverride();
+		ao.setBankAccountType(ACHOverride.Type.Checking);
+		ao.setSecCode(ACHOverride.SecCode.WEB);
+		toAchOverrides(ao);
+
+		Result result = typesFactory.createResult();
+		result.setResultCode(typesFactory.createResultResultCode("00"));
+		result.setResultValue(typesFactory.createResultResultValue("SUCCESS"));
+		result.setResultMessage(typesFactory.createResultResultMessage(""));
+		TransactionInformation info = typesFactory.createTransactionInformation();
+		info.setAuthorizationCode(typesFactory.createTransactionInformationAuthorizationCode("A11111"));
+		info.setAVSCode(typesFactory.createTransactionInformationAVSCode("T"));
+		info.setCurrencyConversionRate(BigDecimal.ONE);
+		info.setCurrencyConvertedAmount(100);
+		info.setCurrencyConvertedCurrencyCode(typesFactory.createTransactionInformationCurrencyConvertedCurrencyCode("USD"));
+		info.setResultCode(typesFactory.createTransactionInformationResultCode(result));
+		info.setTransactionHistoryId(typesFactory.createTransactionInformationTransactionHistoryId("1"));
+		info.setTransactionId(typesFactory.createTransactionInformationTransactionId("1"));
+		info.setTransactionResult(typesFactory.createTransactionInformationTransactionResult("Success"));
+		toPaymentResponse(info);
+
+		PaymentMethodInformation pmi = typesFactory.createPaymentMethodInformation();
+		pmi.setAccountName(typesFactory.createPaymentMethodInformationAccountName(WARM_UP_SENTINEL));
+		pmi.setDateCreated(DatatypeFactory.newInstance().newXMLGregorianCalendar(new GregorianCalendar()));
+		pmi.setDescription(typesFactory.createPaymentMethodInformationDescription(WARM_UP_SENTINEL));
+		pmi.setExpirationDate(typesFactory.createPaymentMethodInformationExpirationDate("0199"));
+		pmi.setObfuscatedAccountNumber(typesFactory.createPaymentMethodInformationObfuscatedAccountNumber("411111******1111"));
+		pmi.setPaymentMethodID(typesFactory.createPaymentMethodInformationPaymentMethodID(WARM_UP_SENTINEL));
+		pmi.setPaymentMethodType(typesFactory.createPaymentMethodInformationPaymentMethodType(
+				ProtectPayPaymentMethod.Type.Visa.toString()));
+		pmi.setPriority(1);
+		pmi.setBillingInformation(typesFactory.createPaymentMethodInformationBillingInformation(billing));
+		toPaymentMethod(pmi);
+	}
+
+	private int warmUpConnections(int connections) throws InterruptedException {
+		final ProtectPayPayer criteria = new ProtectPayPayer();
+		criteria.setExternalId1(WARM_UP_SENTINEL);
+		List<Callable<Boolean>> tasks = new ArrayList<>(connections);
+		for (int i = 0; i < connections; i++) {
+			tasks.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					try {
+						// Straight to ProtectPay, coalescing or answering from the index would open fewer connections
+						fetchPayers(criteria);
+					} catch (ProtectPayException x) {
+						// ProtectPay responded, which is all we need
+						log.debug("Warm up request returned " + x.toString());
+					}
+					return Boolean.TRUE;
+				}
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(connections, new WarmUpThreadFactory());
 		try {
-			SPS sps = new SPS(serviceUrl);
-			service = sps.getBasicHttpBindingSPSService();
-		} catch (Exception x) {
-			throw new IllegalArgumentException("Error initializng service: [" + serviceUrl.toString() + "]: " + x.getMessage(), x);
+			int opened = 0;
+			for (Future<Boolean> future : executor.invokeAll(tasks)) {
+				try {
+					future.get();
+					opened++;
+				} catch (ExecutionException x) {
+					log.warn("Warm up request failed: " + x.getCause().getMessage(), x.getCause());
+				}
+			}
+			return opened;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Prepares this client for traffic. This creates all service ports (parsing the WSDL and creating the
+	 * JAXB context), runs every request and response mapper on synthetic data and opens the requested number
+	 * of keep-alive connections to ProtectPay by concurrently searching for a payer which does not exist.
+	 * Failing to open connections is reported, but does not cause this method to fail.
+	 *
+	 * @param connections the number of connections to open, limited to the pool size
+	 * @return the time taken by each phase
+	 * @throws InterruptedException if interrupted while waiting for connections to open
+	 */
+	public ProtectPayWarmUpReport warmUp(int connections) throws InterruptedException {
+		ProtectPayWarmUpReport report = new ProtectPayWarmUpReport();
+
+		long start = System.nanoTime();
+		report.setPortsCreated(pool.fill());
+		report.setPortsDuration(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		start = System.nanoTime();
+		try {
+			warmUpMappers();
+		} catch (DatatypeConfigurationException x) {
+			throw new IllegalStateException("Error creating DatatypeFactory: " + x.getMessage(), x);
+		}
+		report.setMappersDuration(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		int count = Math.min(connections, pool.getMaxSize());
+		if (count > 0) {
+			start = System.nanoTime();
+			int opened = warmUpConnections(count);
+			report.setConnectionsOpened(opened);
+			report.setConnectionsFailed(count - opened);
+			report.setConnectionsDuration(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+
+		log.info("Warm up completed in " + report.getTotalDuration() + "ms: " + report);
+		return report;
+	}
+
+	/**
+	 * Performs {@link #warmUp(int)} on a background thread.
+	 *
+	 * @param connections the number of connections to open, limited to the pool size
+	 * @return the future holding the time taken by each phase
+	 */
+	public CompletableFuture<ProtectPayWarmUpReport> warmUpAsync(final int connections) {
+		CompletableFuture<ProtectPayWarmUpReport> future = new CompletableFuture<>();
+		new WarmUpThreadFactory().newThread(() -> {
+			try {
+				future.complete(warmUp(connections));
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		}).start();
+		return future;
+	}
+
+	private static class WarmUpThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "protectpay-warm-up-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
 	}
 
@@ -77,69 +770,241 @@ public class ProtectPayClient {
 		}
 	}
 
+	private <T> T invoke(ProtectPayOperation operation, ServiceCall<T> call) throws ProtectPayException {
+		return invoke(operation, call, true);
+	}
+
+	private <T> T invoke(ProtectPayOperation operation, ServiceCall<T> call, boolean hedged)
+			throws ProtectPayException {
+		ProtectPayRetryPolicy policy = retryPolicy;
+		if (policy == null || !policy.appliesTo(operation)) {
+			return hedged ? hedge(operation, call) : attempt(operation, call);
+		}
+		long start = System.nanoTime();
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return hedged ? hedge(operation, call) : attempt(operation, call);
+			} catch (ProtectPayException | RuntimeException x) {
+				long delay = policy.nextDelay(attempt, System.nanoTime() - start, x);
+				if (delay < 0 || getRemainingTime() - delay < timeouts.getMinimumBudget()) {
+					throw x;
+				}
+				log.debug("Retrying " + operation + " in " + delay + "ms after attempt " + attempt + " failed: "
+						+ x.getMessage());
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ix) {
+					Thread.currentThread().interrupt();
+					throw x;
+				}
+			}
+		}
+	}
+
+	private <T> T hedge(ProtectPayOperation operation, ServiceCall<T> call) throws ProtectPayException {
+		ProtectPayHedgingPolicy policy = hedgingPolicy;
+		if (policy == null || !policy.appliesTo(operation)) {
+			return attempt(operation, call);
+		}
+		return policy.execute(operation, () -> attempt(operation, call));
+	}
+
+	private <T> T attempt(ProtectPayOperation operation, ServiceCall<T> call) throws ProtectPayException {
+		ProtectPayCircuitBreaker breaker = circuitBreaker;
+		if (breaker == null) {
+			return send(operation, call, null);
+		}
+		boolean probe = breaker.acquire(operation);
+		long[] sent = new long[1];
+		Throwable failure = null;
+		try {
+			return send(operation, call, sent);
+		} catch (ProtectPayException | RuntimeException | Error x) {
+			failure = x;
+			throw x;
+		} finally {
+			breaker.record(operation, probe, sent[0] != 0, System.nanoTime() - sent[0], failure);
+		}
+	}
+
+	private <T> T invokeAndInvalidate(String payerAccountId, ProtectPayOperation operation, ServiceCall<T> call)
+			throws ProtectPayException {
+		try {
+			return invoke(operation, call);
+		} finally {
+			// Also on failure as the change may have been applied before the response was lost
+			ProtectPayPaymentMethodCache cache = paymentMethodCache;
+			if (cache != null && payerAccountId != null) {
+				cache.invalidate(payerAccountId);
+			}
+			if (payerAccountId != null) {
+				mirror(mirror -> mirror.removePaymentMethods(payerAccountId));
+			}
+		}
+	}
+
+	private void indexPayer(ProtectPayPayer protectPayPayer) {
+		if (protectPayPayer.getPayerAccountId() == null) {
+			return;
+		}
+		ProtectPayPayerIndex index = payerIndex;
+		if (index != null) {
+			index.put(protectPayPayer);
+		}
+		mirror(mirror -> mirror.putPayer(protectPayPayer));
+	}
+
+	private void mirror(MirrorWrite write) {
+		ProtectPayVaultMirror mirror = vaultMirror;
+		if (mirror != null) {
+			try {
+				write.write(mirror);
+			} catch (IOException | RuntimeException x) {
+				// The mirror only saves requests, a request which succeeded does not fail because of it
+				log.warn("Error writing vault mirror: " + x.getMessage(), x);
+			}
+		}
+	}
+
+	private long checkDeadline(ProtectPayOperation operation) {
+		long remaining = getRemainingTime();
+		if (remaining < timeouts.getMinimumBudget()) {
+			throw new ProtectPayDeadlineExceededException(operation, remaining, "Only " + remaining
+					+ "ms remain before the deadline, not sending " + operation);
+		}
+		return remaining;
+	}
+
+	private <T> T send(ProtectPayOperation operation, ServiceCall<T> call, long[] sent) throws ProtectPayException {
+		if (hasDeadline) {
+			// Checked before any local waiting so an expired request holds neither a permit nor a port
+			checkDeadline(operation);
+		}
+		ProtectPayBulkhead b = bulkhead;
+		if (b != null) {
+			b.acquire(operation);
+		}
+		try {
+			return dispatch(operation, call, sent);
+		} finally {
+			if (b != null) {
+				b.release(operation);
+			}
+		}
+	}
+
+	private <T> T dispatch(ProtectPayOperation operation, ServiceCall<T> call, long[] sent) throws ProtectPayException {
+		ProtectPayRateLimiter limiter = rateLimiter;
+		if (limiter != null) {
+			limiter.acquire(billerAccountId, operation);
+		}
+		SPSService service = pool.borrow();
+		try {
+			ProtectPayTimeouts t = timeouts;
+			int connectTimeout = t.getConnectTimeout(operation);
+			int readTimeout = t.getReadTimeout(operation);
+			if (hasDeadline) {
+				long remaining = checkDeadline(operation);
+				connectTimeout = (int)Math.min(connectTimeout, remaining);
+				readTimeout = (int)Math.min(readTimeout, remaining);
+			}
+			// Ports are used by one thread at a time, so the request context is safe to change per call
+			Map<String, Object> context = ((BindingProvider)service).getRequestContext();
+			context.put(JAXWSProperties.CONNECT_TIMEOUT, connectTimeout);
+			context.put(JAXWSProperties.REQUEST_TIMEOUT, readTimeout);
+			if (sent != null) {
+				// Recorded after any local waiting so the circuit breaker only times ProtectPay
+				sent[0] = System.nanoTime();
+			}
+			return call.call(service);
+		} finally {
+			pool.release(service);
+		}
+	}
+
+	// Absent values are left out of requests rather than sent as xsi:nil, ProtectPay reads both as null
+	private static <T> JAXBElement<T> element(T value, Function<T, JAXBElement<T>> factory) {
+		return value == null ? null : factory.apply(value);
+	}
+
+	// Elements left out of a message are null rather than nil
+	private static <T> T value(JAXBElement<T> element) {
+		return element == null ? null : element.getValue();
+	}
+
 	private PayerData toPayerData(ProtectPayPayer protectPayPayer) {
 		PayerData data = typesFactory.createPayerData();
-		data.setName(typesFactory.createPayerDataName(protectPayPayer.getAccountName()));
-		data.setEmailAddress(typesFactory.createPayerDataEmailAddress(protectPayPayer.getEmailAddress()));
-		data.setExternalId1(typesFactory.createPayerDataExternalId1(protectPayPayer.getExternalId1()));
-		data.setExternalId2(typesFactory.createPayerDataExternalId2(protectPayPayer.getExternalId2()));
+		data.setName(element(protectPayPayer.getAccountName(), typesFactory::createPayerDataName));
+		data.setEmailAddress(element(protectPayPayer.getEmailAddress(), typesFactory::createPayerDataEmailAddress));
+		data.setExternalId1(element(protectPayPayer.getExternalId1(), typesFactory::createPayerDataExternalId1));
+		data.setExternalId2(element(protectPayPayer.getExternalId2(), typesFactory::createPayerDataExternalId2));
 		return data;
 	}
 
 	private Billing toBilling(ProtectPayBillingInfo info) {
 		Billing billing = new Billing();
-		billing.setAddress1(typesFactory.createBillingAddress1(info.getAddress1()));
-		billing.setAddress2(typesFactory.createBillingAddress2(info.getAddress2()));
-		billing.setAddress3(typesFactory.createBillingAddress3(info.getAddress3()));
-		billing.setCity(typesFactory.createBillingCity(info.getCity()));
-		billing.setState(typesFactory.createBillingState(info.getState()));
-		billing.setZipCode(typesFactory.createBillingZipCode(info.getZipCode()));
-		billing.setCountry(typesFactory.createBillingCountry(info.getCountry().toString()));
-		billing.setEmail(typesFactory.createBillingEmail(info.getEmailAddress()));
-		billing.setTelephoneNumber(typesFactory.createBillingTelephoneNumber(info.getTelephoneNumber()));
+		billing.setAddress1(element(info.getAddress1(), typesFactory::createBillingAddress1));
+		billing.setAddress2(element(info.getAddress2(), typesFactory::createBillingAddress2));
+		billing.setAddress3(element(info.getAddress3(), typesFactory::createBillingAddress3));
+		billing.setCity(element(info.getCity(), typesFactory::createBillingCity));
+		billing.setState(element(info.getState(), typesFactory::createBillingState));
+		billing.setZipCode(element(info.getZipCode(), typesFactory::createBillingZipCode));
+		if (info.getCountry() != null) {
+			billing.setCountry(typesFactory.createBillingCountry(info.getCountry().toString()));
+		}
+		billing.setEmail(element(info.getEmailAddress(), typesFactory::createBillingEmail));
+		billing.setTelephoneNumber(element(info.getTelephoneNumber(), typesFactory::createBillingTelephoneNumber));
 		return billing;
 	}
 
 	private ProtectPayBillingInfo toBillingInfo(Billing billing) {
 		ProtectPayBillingInfo info = new ProtectPayBillingInfo();
-		info.setAddress1(billing.getAddress1().getValue());
-		info.setAddress2(billing.getAddress2().getValue());
-		info.setAddress3(billing.getAddress3().getValue());
-		info.setEmailAddress(billing.getEmail().getValue());
-		info.setCity(billing.getCity().getValue());
-		info.setState(billing.getState().getValue());
-		info.setCountry(ProtectPayBillingInfo.Country.valueOf(billing.getCountry().getValue()));
-		info.setTelephoneNumber(billing.getTelephoneNumber().getValue());
-		info.setZipCode(billing.getZipCode().getValue());
+		info.setAddress1(value(billing.getAddress1()));
+		info.setAddress2(value(billing.getAddress2()));
+		info.setAddress3(value(billing.getAddress3()));
+		info.setEmailAddress(value(billing.getEmail()));
+		info.setCity(value(billing.getCity()));
+		info.setState(value(billing.getState()));
+		String country = value(billing.getCountry());
+		if (country != null) {
+			info.setCountry(ProtectPayBillingInfo.Country.valueOf(country));
+		}
+		info.setTelephoneNumber(value(billing.getTelephoneNumber()));
+		info.setZipCode(value(billing.getZipCode()));
 		return info;
 	}
 
 	private ProtectPayPaymentMethod toPaymentMethod(PaymentMethodInformation info) {
 		ProtectPayPaymentMethod protectPayPaymentMethod = new ProtectPayPaymentMethod();
-		protectPayPaymentMethod.setAccountName(info.getAccountName().getValue());
-		protectPayPaymentMethod.setDateCreated(info.getDateCreated().toGregorianCalendar().getTime());
-		protectPayPaymentMethod.setDescription(info.getDescription().getValue());
-		protectPayPaymentMethod.setExpirationDate(info.getExpirationDate().getValue());
-		protectPayPaymentMethod.setAccountNumber(info.getObfuscatedAccountNumber().getValue());
-		protectPayPaymentMethod.setPaymentMethodId(info.getPaymentMethodID().getValue());
-		protectPayPaymentMethod.setType(ProtectPayPaymentMethod.Type.valueOf(info.getPaymentMethodType().getValue()));
+		protectPayPaymentMethod.setAccountName(value(info.getAccountName()));
+		if (info.getDateCreated() != null) {
+			protectPayPaymentMethod.setDateCreated(info.getDateCreated().toGregorianCalendar().getTime());
+		}
+		protectPayPaymentMethod.setDescription(value(info.getDescription()));
+		protectPayPaymentMethod.setExpirationDate(value(info.getExpirationDate()));
+		protectPayPaymentMethod.setAccountNumber(value(info.getObfuscatedAccountNumber()));
+		protectPayPaymentMethod.setPaymentMethodId(value(info.getPaymentMethodID()));
+		String type = value(info.getPaymentMethodType());
+		if (type != null) {
+			protectPayPaymentMethod.setType(ProtectPayPaymentMethod.Type.valueOf(type));
+		}
 		protectPayPaymentMethod.setPriority(info.getPriority());
-		Billing billing = info.getBillingInformation().getValue();
+		Billing billing = value(info.getBillingInformation());
 		if (billing != null) {
 			protectPayPaymentMethod.setBilling(toBillingInfo(billing));
 		}
 		return protectPayPaymentMethod;
 	}
 
-	private Transaction toTransaction(ProtectPayPayment protectPayPayment) {
+	Transaction toTransaction(ProtectPayPayment protectPayPayment) {
 		Transaction transaction = new Transaction();
-		transaction.setPayerAccountId(typesFactory.createTransactionPayerAccountId(protectPayPayment.getPayerAccountId()));
+		transaction.setPayerAccountId(element(protectPayPayment.getPayerAccountId(), typesFactory::createTransactionPayerAccountId));
 		transaction.setAmount(typesFactory.createTransactionAmount(protectPayPayment.getAmount().toString()));
-		transaction.setComment1(typesFactory.createTransactionComment1(protectPayPayment.getComment1()));
-		transaction.setComment2(typesFactory.createTransactionComment2(protectPayPayment.getComment2()));
-		transaction.setCurrencyCode(typesFactory.createTransactionCurrencyCode(protectPayPayment.getCurrencyCode()));
-		transaction.setInputIpAddress(typesFactory.createTransactionInputIpAddress(protectPayPayment.getInputIpAddress()));
-		transaction.setInvoice(typesFactory.createTransactionInvoice(protectPayPayment.getInvoice()));
+		transaction.setComment1(element(protectPayPayment.getComment1(), typesFactory::createTransactionComment1));
+		transaction.setComment2(element(protectPayPayment.getComment2(), typesFactory::createTransactionComment2));
+		transaction.setCurrencyCode(element(protectPayPayment.getCurrencyCode(), typesFactory::createTransactionCurrencyCode));
+		transaction.setInputIpAddress(element(protectPayPayment.getInputIpAddress(), typesFactory::createTransactionInputIpAddress));
+		transaction.setInvoice(element(protectPayPayment.getInvoice(), typesFactory::createTransactionInvoice));
 		if (protectPayPayment.getMerchantProfileId() != null) {
 			transaction.setMerchantProfileId(
 					typesFactory.createTransactionMerchantProfileId(protectPayPayment.getMerchantProfileId().toString()));
@@ -147,7 +1012,7 @@ public class ProtectPayClient {
 		return transaction;
 	}
 
-	private CreditCardOverrides toCreditCardOverrides(CreditCardOverride cco) {
+	CreditCardOverrides toCreditCardOverrides(CreditCardOverride cco) {
 		CreditCardOverrides overrides = new CreditCardOverrides();
 		if (cco.getFullName() != null) {
 			overrides.setFullName(contractsFactory.createCreditCardOverridesFullName(cco.getFullName()));
@@ -165,7 +1030,7 @@ public class ProtectPayClient {
 		return overrides;
 	}
 
-	private AchOverrides toAchOverrides(ACHOverride ao) {
+	AchOverrides toAchOverrides(ACHOverride ao) {
 		AchOverrides overrides = new AchOverrides();
 		if (ao.getBankAccountType() != null) {
 			overrides.setBankAccountType(
@@ -179,22 +1044,23 @@ public class ProtectPayClient {
 
 	private ProtectPayPaymentResponse toPaymentResponse(TransactionInformation info) {
 		ProtectPayPaymentResponse protectPayPaymentResponse = new ProtectPayPaymentResponse();
-		protectPayPaymentResponse.setAuthorizationCode(info.getAuthorizationCode().getValue());
-		protectPayPaymentResponse.setAvsCode(info.getAVSCode().getValue());
+		protectPayPaymentResponse.setAuthorizationCode(value(info.getAuthorizationCode()));
+		protectPayPaymentResponse.setAvsCode(value(info.getAVSCode()));
 		protectPayPaymentResponse.setConversionRate(info.getCurrencyConversionRate());
 		protectPayPaymentResponse.setConvertedAmount(info.getCurrencyConvertedAmount());
-		protectPayPaymentResponse.setConvertedCurrencyCode(info.getCurrencyConvertedCurrencyCode().getValue());
-		Result result = info.getResultCode().getValue();
+		protectPayPaymentResponse.setConvertedCurrencyCode(value(info.getCurrencyConvertedCurrencyCode()));
+		Result result = value(info.getResultCode());
 		if (result != null) {
-			protectPayPaymentResponse.setResultCode(result.getResultCode().getValue());
-			protectPayPaymentResponse.setResultMessage(result.getResultMessage().getValue());
-			protectPayPaymentResponse.setResultValue(result.getResultValue().getValue());
+			protectPayPaymentResponse.setResultCode(value(result.getResultCode()));
+			protectPayPaymentResponse.setResultMessage(value(result.getResultMessage()));
+			protectPayPaymentResponse.setResultValue(value(result.getResultValue()));
 		}
-		if (info.getTransactionHistoryId() != null) {
-			protectPayPaymentResponse.setTransactionHistoryId(Long.parseLong(info.getTransactionHistoryId().getValue()));
+		String transactionHistoryId = value(info.getTransactionHistoryId());
+		if (transactionHistoryId != null) {
+			protectPayPaymentResponse.setTransactionHistoryId(Long.parseLong(transactionHistoryId));
 		}
-		protectPayPaymentResponse.setTransactionId(info.getTransactionId().getValue());
-		protectPayPaymentResponse.setTransactionResult(info.getTransactionResult().getValue());
+		protectPayPaymentResponse.setTransactionId(value(info.getTransactionId()));
+		protectPayPaymentResponse.setTransactionResult(value(info.getTransactionResult()));
 		return protectPayPaymentResponse;
 	}
 
@@ -207,13 +1073,17 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public String createPayer(String accountName) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		CreateAccountInformationResult response = service.createPayer(id, accountName);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		return response.getExternalAccountID().getValue();
+		String payerAccountId = invoke(ProtectPayOperation.CREATE_PAYER, service -> {
+			CreateAccountInformationResult response = service.createPayer(id, accountName);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			return response.getExternalAccountID().getValue();
+		});
+		ProtectPayPayer protectPayPayer = new ProtectPayPayer();
+		protectPayPayer.setPayerAccountId(payerAccountId);
+		protectPayPayer.setAccountName(accountName);
+		indexPayer(protectPayPayer);
+		return payerAccountId;
 	}
 
 	/**
@@ -226,15 +1096,16 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public String createPayer(ProtectPayPayer protectPayPayer) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		CreateAccountInformationResult response = service.createPayerWithData(id, toPayerData(protectPayPayer));
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		String accountId = response.getExternalAccountID().getValue();
-		protectPayPayer.setPayerAccountId(accountId);
-		return accountId;
+		String payerAccountId = invoke(ProtectPayOperation.CREATE_PAYER, service -> {
+			CreateAccountInformationResult response = service.createPayerWithData(id, toPayerData(protectPayPayer));
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			String accountId = response.getExternalAccountID().getValue();
+			protectPayPayer.setPayerAccountId(accountId);
+			return accountId;
+		});
+		indexPayer(protectPayPayer);
+		return payerAccountId;
 	}
 
 	/**
@@ -245,14 +1116,15 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public void updatePayer(ProtectPayPayer protectPayPayer) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		EditPayerRequest request = new EditPayerRequest();
-		request.setPayerAccountId(contractsFactory.createEditPayerRequestPayerAccountId(protectPayPayer.getPayerAccountId()));
-		request.setUpdatedData(contractsFactory.createEditPayerRequestUpdatedData(toPayerData(protectPayPayer)));
-		Result result = service.editPayerV2(id, request);
-		checkResult(result);
+		invoke(ProtectPayOperation.UPDATE_PAYER, service -> {
+			EditPayerRequest request = new EditPayerRequest();
+			request.setPayerAccountId(element(protectPayPayer.getPayerAccountId(), contractsFactory::createEditPayerRequestPayerAccountId));
+			request.setUpdatedData(contractsFactory.createEditPayerRequestUpdatedData(toPayerData(protectPayPayer)));
+			Result result = service.editPayerV2(id, request);
+			checkResult(result);
+			return null;
+		});
+		indexPayer(protectPayPayer);
 	}
 
 	/**
@@ -263,11 +1135,23 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public void deletePayer(String payerAccountId) throws ProtectPayException {
-		if(service == null) {
-			initService();
+		try {
+			invokeAndInvalidate(payerAccountId, ProtectPayOperation.DELETE_PAYER, service -> {
+				Result result = service.deletePayer(id, payerAccountId);
+				checkResult(result);
+				return null;
+			});
+		} finally {
+			ProtectPayPayerIndex index = payerIndex;
+			if (index != null) {
+				index.remove(payerAccountId);
+			}
+			ProtectPayTempTokenCache cache = tempTokenCache;
+			if (cache != null) {
+				cache.invalidate(payerAccountId);
+			}
+			mirror(mirror -> mirror.removePayer(payerAccountId));
 		}
-		Result result = service.deletePayer(id, payerAccountId);
-		checkResult(result);
 	}
 
 	/**
@@ -279,26 +1163,81 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public List<ProtectPayPayer> getPayers(ProtectPayPayer protectPayPayer) throws ProtectPayException {
-		if(service == null) {
-			initService();
+		ProtectPayPayerIndex index = payerIndex;
+		List<ProtectPayPayer> found = index == null ? null : index.search(protectPayPayer);
+		if (found == null) {
+			List<ProtectPayPayer> searched = searchPayers(protectPayPayer);
+			if (index != null) {
+				index.putFound(searched);
+			}
+			mirror(mirror -> mirror.putFound(searched));
+			found = searched;
 		}
-		GetPayersResult response = service.getPayers(id, protectPayPayer == null ? null : toPayerData(protectPayPayer));
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		ArrayOfPayerInfo aopi = response.getPayers().getValue();
-		if (aopi != null) {
-			List<ProtectPayPayer> protectPayPayers = new ArrayList<>(aopi.getPayerInfo().size());
-			for (PayerInfo info : aopi.getPayerInfo()) {
-				ProtectPayPayer foundProtectPayPayer = new ProtectPayPayer();
-				foundProtectPayPayer.setPayerAccountId(info.getPayerAccountId().getValue());
-				foundProtectPayPayer.setAccountName(info.getName().getValue());
-				foundProtectPayPayer.setExternalId1(info.getExternalId1().getValue());
-				foundProtectPayPayer.setExternalId2(info.getExternalId2().getValue());
-				protectPayPayers.add(foundProtectPayPayer);
+		return found;
+	}
+
+	private List<ProtectPayPayer> searchPayers(ProtectPayPayer protectPayPayer) throws ProtectPayException {
+		ProtectPayRequestCoalescer coalescer = requestCoalescer;
+		if (coalescer == null) {
+			return fetchPayers(protectPayPayer);
+		}
+		String key = protectPayPayer == null
+				? ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, billerAccountId)
+				: ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, billerAccountId,
+						protectPayPayer.getAccountName(), protectPayPayer.getEmailAddress(), protectPayPayer.getExternalId1(),
+						protectPayPayer.getExternalId2());
+		return coalescer.execute(key, () -> fetchPayers(protectPayPayer), Copies::payers);
+	}
+
+	private List<ProtectPayPayer> fetchPayers(ProtectPayPayer protectPayPayer) throws ProtectPayException {
+		return invoke(ProtectPayOperation.GET_PAYERS, service -> {
+			GetPayersResult response = service.getPayers(id, protectPayPayer == null ? null : toPayerData(protectPayPayer));
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			ArrayOfPayerInfo aopi = response.getPayers().getValue();
+			if (aopi != null) {
+				List<ProtectPayPayer> protectPayPayers = new ArrayList<>(aopi.getPayerInfo().size());
+				for (PayerInfo info : aopi.getPayerInfo()) {
+					protectPayPayers.add(toPayer(info));
+				}
+				return protectPayPayers;
 			}
-			return protectPayPayers;
+			return new ArrayList<>(0);
+		});
+	}
+
+	private ProtectPayPayer toPayer(PayerInfo info) {
+		ProtectPayPayer protectPayPayer = new ProtectPayPayer();
+		protectPayPayer.setPayerAccountId(value(info.getPayerAccountId()));
+		protectPayPayer.setAccountName(value(info.getName()));
+		protectPayPayer.setExternalId1(value(info.getExternalId1()));
+		protectPayPayer.setExternalId2(value(info.getExternalId2()));
+		return protectPayPayer;
+	}
+
+	/**
+	 * Searches for payers, reading the response as the returned stream is consumed. Only the payer being
+	 * handed out is held in memory, which keeps searches over a large vault from holding every payer at
+	 * once. Streamed payers do not pass through the payer index or vault mirror.
+	 * <p>
+	 * The stream holds an HTTP connection until it has been read to the end or closed and should be used in
+	 * a try-with-resources block. A failed result returned after payers have been handed out is thrown as a
+	 * {@link ProtectPayUncheckedException} by the stream. Responses are only streamed when an
+	 * {@link HttpTransportConfig} is set, otherwise the payers are read as {@link #getPayers(ProtectPayPayer)}
+	 * reads them.
+	 *
+	 * @param protectPayPayer the data to use as a criteria or null for every payer
+	 * @return the matching payers
+	 *
+	 * @throws ProtectPayException if the request fails
+	 */
+	public Stream<ProtectPayPayer> streamPayers(ProtectPayPayer protectPayPayer) throws ProtectPayException {
+		ResponseStreamer streamer = pool.getTransport() == null ? null : ResponseStreamer.getInstance();
+		if (streamer == null) {
+			return fetchPayers(protectPayPayer).stream();
 		}
-		return new ArrayList<>(0);
+		return stream(streamer, ProtectPayOperation.GET_PAYERS, ResponseStreamer.GET_PAYERS, PayerInfo.class,
+				this::toPayer, id, protectPayPayer == null ? null : toPayerData(protectPayPayer));
 	}
 
 	/**
@@ -311,42 +1250,41 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public String createPaymentMethod(ProtectPayPaymentMethod protectPayPaymentMethod) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		PaymentMethodAdd request = new PaymentMethodAdd();
-		if (protectPayPaymentMethod.getAccountCountryCode() != null) {
-			request.setAccountCountryCode(typesFactory.createPaymentMethodAddAccountCountryCode(
-					protectPayPaymentMethod.getAccountCountryCode().getValue()));
-		}
-		request.setAccountName(typesFactory.createPaymentMethodAddAccountName(protectPayPaymentMethod.getAccountName()));
-		request.setAccountNumber(typesFactory.createPaymentMethodAddAccountNumber(protectPayPaymentMethod.getAccountNumber()));
-		request.setBankNumber(typesFactory.createPaymentMethodAddBankNumber(protectPayPaymentMethod.getBankNumber()));
-		request.setDescription(typesFactory.createPaymentMethodAddDescription(protectPayPaymentMethod.getDescription()));
-		if (protectPayPaymentMethod.getDuplicateAction() != null) {
-			request.setDuplicateAction(typesFactory.createPaymentMethodAddDuplicateAction(
-					protectPayPaymentMethod.getDuplicateAction().toString()));
-		}
-		request.setExpirationDate(typesFactory.createPaymentMethodAddExpirationDate(protectPayPaymentMethod.getExpirationDate()));
-		request.setPayerAccountId(typesFactory.createPaymentMethodAddPayerAccountId(protectPayPaymentMethod.getPayerAccountId()));
-		if (protectPayPaymentMethod.getType() != null) {
-			request.setPaymentMethodType(typesFactory.createPaymentMethodAddPaymentMethodType(
-					protectPayPaymentMethod.getType().toString()));
-		}
-		if (protectPayPaymentMethod.getPayerProtected() != null) {
-			request.setProtected(protectPayPaymentMethod.getPayerProtected());
-		}
-		request.setPriority(protectPayPaymentMethod.getPriority());
-		if (protectPayPaymentMethod.getBilling() != null) {
-			request.setBillingInformation(typesFactory.createBilling(toBilling(protectPayPaymentMethod.getBilling())));
-		}
+		return invokeAndInvalidate(protectPayPaymentMethod.getPayerAccountId(), ProtectPayOperation.CREATE_PAYMENT_METHOD, service -> {
+			PaymentMethodAdd request = new PaymentMethodAdd();
+			if (protectPayPaymentMethod.getAccountCountryCode() != null) {
+				request.setAccountCountryCode(typesFactory.createPaymentMethodAddAccountCountryCode(
+						protectPayPaymentMethod.getAccountCountryCode().getValue()));
+			}
+			request.setAccountName(element(protectPayPaymentMethod.getAccountName(), typesFactory::createPaymentMethodAddAccountName));
+			request.setAccountNumber(element(protectPayPaymentMethod.getAccountNumber(), typesFactory::createPaymentMethodAddAccountNumber));
+			request.setBankNumber(element(protectPayPaymentMethod.getBankNumber(), typesFactory::createPaymentMethodAddBankNumber));
+			request.setDescription(element(protectPayPaymentMethod.getDescription(), typesFactory::createPaymentMethodAddDescription));
+			if (protectPayPaymentMethod.getDuplicateAction() != null) {
+				request.setDuplicateAction(typesFactory.createPaymentMethodAddDuplicateAction(
+						protectPayPaymentMethod.getDuplicateAction().toString()));
+			}
+			request.setExpirationDate(element(protectPayPaymentMethod.getExpirationDate(), typesFactory::createPaymentMethodAddExpirationDate));
+			request.setPayerAccountId(element(protectPayPaymentMethod.getPayerAccountId(), typesFactory::createPaymentMethodAddPayerAccountId));
+			if (protectPayPaymentMethod.getType() != null) {
+				request.setPaymentMethodType(typesFactory.createPaymentMethodAddPaymentMethodType(
+						protectPayPaymentMethod.getType().toString()));
+			}
+			if (protectPayPaymentMethod.getPayerProtected() != null) {
+				request.setProtected(protectPayPaymentMethod.getPayerProtected());
+			}
+			request.setPriority(protectPayPaymentMethod.getPriority());
+			if (protectPayPaymentMethod.getBilling() != null) {
+				request.setBillingInformation(typesFactory.createBilling(toBilling(protectPayPaymentMethod.getBilling())));
+			}
 
-		CreatePaymentMethodResult response = service.createPaymentMethod(id, request);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		String paymentMethodId = response.getPaymentMethodId().getValue();
-		protectPayPaymentMethod.setPaymentMethodId(paymentMethodId);
-		return paymentMethodId;
+			CreatePaymentMethodResult response = service.createPaymentMethod(id, request);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			String paymentMethodId = response.getPaymentMethodId().getValue();
+			protectPayPaymentMethod.setPaymentMethodId(paymentMethodId);
+			return paymentMethodId;
+		});
 	}
 
 	/**
@@ -359,27 +1297,27 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public void updatePaymentMethod(ProtectPayPaymentMethod protectPayPaymentMethod) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		PaymentMethodUpdate request = new PaymentMethodUpdate();
-		request.setPayerAccountId(typesFactory.createPaymentMethodUpdatePayerAccountId(protectPayPaymentMethod.getPayerAccountId()));
-		request.setAccountName(typesFactory.createPaymentMethodUpdateAccountName(protectPayPaymentMethod.getAccountName()));
-		if (protectPayPaymentMethod.getType() == ProtectPayPaymentMethod.Type.Checking || protectPayPaymentMethod.getType() == ProtectPayPaymentMethod.Type.Savings) {
-			request.setBankAccountType(typesFactory.createPaymentMethodUpdateBankAccountType(protectPayPaymentMethod.getType().toString()));
-		}
-		request.setDescription(typesFactory.createPaymentMethodUpdateDescription(protectPayPaymentMethod.getDescription()));
-		request.setExpirationDate(typesFactory.createPaymentMethodUpdateExpirationDate(protectPayPaymentMethod.getExpirationDate()));
-		request.setPaymentMethodID(typesFactory.createPaymentMethodUpdatePaymentMethodID(protectPayPaymentMethod.getPaymentMethodId()));
-		if (protectPayPaymentMethod.getPayerProtected() != null) {
-			request.setProtected(typesFactory.createPaymentMethodUpdateProtected(protectPayPaymentMethod.getPayerProtected()));
-		}
-		if (protectPayPaymentMethod.getBilling() != null) {
-			request.setBillingInformation(typesFactory.createPaymentMethodUpdateBillingInformation(
-					toBilling(protectPayPaymentMethod.getBilling())));
-		}
-		Result result = service.editPaymentMethod(id, request);
-		checkResult(result);
+		invokeAndInvalidate(protectPayPaymentMethod.getPayerAccountId(), ProtectPayOperation.UPDATE_PAYMENT_METHOD, service -> {
+			PaymentMethodUpdate request = new PaymentMethodUpdate();
+			request.setPayerAccountId(element(protectPayPaymentMethod.getPayerAccountId(), typesFactory::createPaymentMethodUpdatePayerAccountId));
+			request.setAccountName(element(protectPayPaymentMethod.getAccountName(), typesFactory::createPaymentMethodUpdateAccountName));
+			if (protectPayPaymentMethod.getType() == ProtectPayPaymentMethod.Type.Checking || protectPayPaymentMethod.getType() == ProtectPayPaymentMethod.Type.Savings) {
+				request.setBankAccountType(typesFactory.createPaymentMethodUpdateBankAccountType(protectPayPaymentMethod.getType().toString()));
+			}
+			request.setDescription(element(protectPayPaymentMethod.getDescription(), typesFactory::createPaymentMethodUpdateDescription));
+			request.setExpirationDate(element(protectPayPaymentMethod.getExpirationDate(), typesFactory::createPaymentMethodUpdateExpirationDate));
+			request.setPaymentMethodID(element(protectPayPaymentMethod.getPaymentMethodId(), typesFactory::createPaymentMethodUpdatePaymentMethodID));
+			if (protectPayPaymentMethod.getPayerProtected() != null) {
+				request.setProtected(typesFactory.createPaymentMethodUpdateProtected(protectPayPaymentMethod.getPayerProtected()));
+			}
+			if (protectPayPaymentMethod.getBilling() != null) {
+				request.setBillingInformation(typesFactory.createPaymentMethodUpdateBillingInformation(
+						toBilling(protectPayPaymentMethod.getBilling())));
+			}
+			Result result = service.editPaymentMethod(id, request);
+			checkResult(result);
+			return null;
+		});
 	}
 
 	/**
@@ -391,11 +1329,11 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public void deletePaymentMethod(String payerAccountId, String paymentMethodId) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		Result result = service.deletePaymentMethod(id, payerAccountId, paymentMethodId);
-		checkResult(result);
+		invokeAndInvalidate(payerAccountId, ProtectPayOperation.DELETE_PAYMENT_METHOD, service -> {
+			Result result = service.deletePaymentMethod(id, payerAccountId, paymentMethodId);
+			checkResult(result);
+			return null;
+		});
 	}
 
 	/**
@@ -407,22 +1345,94 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if the request fails
 	 */
 	public List<ProtectPayPaymentMethod> getPaymentMethods(String payerAccountId) throws ProtectPayException {
-		if(service == null) {
-			initService();
+		ProtectPayPaymentMethodCache cache = paymentMethodCache;
+		if (cache == null) {
+			return loadPaymentMethods(payerAccountId);
 		}
-		PaymentMethodsResult response = service.getAllPayerPaymentMethods(id, payerAccountId);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		ArrayOfPaymentMethodInformation aopmi = response.getPaymentMethods().getValue();
-		if (aopmi != null) {
-			List<ProtectPayPaymentMethod> protectPayPaymentMethods = new ArrayList<>(aopmi.getPaymentMethodInformation().size());
-			for (PaymentMethodInformation info : aopmi.getPaymentMethodInformation()) {
-				protectPayPaymentMethods.add(toPaymentMethod(info));
-			}
-			return protectPayPaymentMethods;
-		} else {
-			return new ArrayList<>(0);
+		List<ProtectPayPaymentMethod> cached = cache.get(payerAccountId);
+		if (cached != null) {
+			return cached;
+		}
+		long version = cache.version();
+		List<ProtectPayPaymentMethod> protectPayPaymentMethods = loadPaymentMethods(payerAccountId);
+		cache.put(payerAccountId, protectPayPaymentMethods, version);
+		return protectPayPaymentMethods;
+	}
+
+	private List<ProtectPayPaymentMethod> loadPaymentMethods(String payerAccountId) throws ProtectPayException {
+		ProtectPayVaultMirror mirror = vaultMirror;
+		if (mirror == null) {
+			return fetchPaymentMethods(payerAccountId);
 		}
+		List<ProtectPayPaymentMethod> mirrored = mirror.getPaymentMethods(payerAccountId);
+		if (mirrored != null) {
+			return mirrored;
+		}
+		long version = mirror.version();
+		List<ProtectPayPaymentMethod> protectPayPaymentMethods = fetchPaymentMethods(payerAccountId);
+		mirror(m -> m.putPaymentMethods(payerAccountId, protectPayPaymentMethods, version));
+		return protectPayPaymentMethods;
+	}
+
+	private List<ProtectPayPaymentMethod> fetchPaymentMethods(String payerAccountId) throws ProtectPayException {
+		ProtectPayRequestCoalescer coalescer = requestCoalescer;
+		if (coalescer != null) {
+			return coalescer.execute(ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYMENT_METHODS, billerAccountId,
+					payerAccountId), () -> requestPaymentMethods(payerAccountId), Copies::paymentMethods);
+		}
+		return requestPaymentMethods(payerAccountId);
+	}
+
+	/**
+	 * Finds all the payment methods associated with a payer account, reading the response as the returned
+	 * stream is consumed. Streamed payment methods do not pass through the payment method cache or vault
+	 * mirror. See {@link #streamPayers(ProtectPayPayer)} for how the stream must be handled.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return all payment methods associated with the payer account
+	 *
+	 * @throws ProtectPayException if the request fails
+	 */
+	public Stream<ProtectPayPaymentMethod> streamPaymentMethods(String payerAccountId) throws ProtectPayException {
+		ResponseStreamer streamer = pool.getTransport() == null ? null : ResponseStreamer.getInstance();
+		if (streamer == null) {
+			return requestPaymentMethods(payerAccountId).stream();
+		}
+		return stream(streamer, ProtectPayOperation.GET_PAYMENT_METHODS, ResponseStreamer.GET_PAYMENT_METHODS,
+				PaymentMethodInformation.class, this::toPaymentMethod, id, payerAccountId);
+	}
+
+	private <I, T> Stream<T> stream(ResponseStreamer streamer, ProtectPayOperation operation, String method,
+			Class<I> itemType, Function<I, T> mapper, Object... args) throws ProtectPayException {
+		// Not hedged as the losing request's open response would never be closed
+		ResponseStreamer.Results<I> results = invoke(operation, service -> {
+			Map<String, Object> context = ((BindingProvider)service).getRequestContext();
+			return streamer.open(pool.getTransport(), (String)context.get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY),
+					method, itemType, this::checkResult, (Integer)context.get(JAXWSProperties.CONNECT_TIMEOUT),
+					(Integer)context.get(JAXWSProperties.REQUEST_TIMEOUT), args);
+		}, false);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results,
+				Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(results::close)
+				.map(mapper);
+	}
+
+	private List<ProtectPayPaymentMethod> requestPaymentMethods(String payerAccountId) throws ProtectPayException {
+		return invoke(ProtectPayOperation.GET_PAYMENT_METHODS, service -> {
+			PaymentMethodsResult response = service.getAllPayerPaymentMethods(id, payerAccountId);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			ArrayOfPaymentMethodInformation aopmi = response.getPaymentMethods().getValue();
+			if (aopmi != null) {
+				List<ProtectPayPaymentMethod> protectPayPaymentMethods = new ArrayList<>(aopmi.getPaymentMethodInformation().size());
+				for (PaymentMethodInformation info : aopmi.getPaymentMethodInformation()) {
+					protectPayPaymentMethods.add(toPaymentMethod(info));
+				}
+				return protectPayPaymentMethods;
+			} else {
+				return new ArrayList<>(0);
+			}
+		});
 	}
 
 	/**
@@ -436,64 +1446,135 @@ public class ProtectPayClient {
 	 */
 	public ProtectPayPaymentMethod getPaymentMethod(String payerAccountId, String paymentMethodId)
 			throws ProtectPayException {
-		if(service == null) {
-			initService();
+		ProtectPayPaymentMethodCache cache = paymentMethodCache;
+		if (cache != null) {
+			ProtectPayPaymentMethod cached = cache.get(payerAccountId, paymentMethodId);
+			if (cached != null) {
+				return cached;
+			}
 		}
-		PaymentMethodsResult response = service.getPayerPaymentMethod(id, payerAccountId, paymentMethodId);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		ArrayOfPaymentMethodInformation aopmi = response.getPaymentMethods().getValue();
-		if (aopmi != null) {
-			if (aopmi.getPaymentMethodInformation().size() > 0) {
-				return toPaymentMethod(aopmi.getPaymentMethodInformation().get(0));
+		ProtectPayVaultMirror mirror = vaultMirror;
+		if (mirror != null) {
+			List<ProtectPayPaymentMethod> mirrored = mirror.getPaymentMethods(payerAccountId);
+			if (mirrored != null) {
+				for (ProtectPayPaymentMethod protectPayPaymentMethod : mirrored) {
+					if (paymentMethodId.equals(protectPayPaymentMethod.getPaymentMethodId())) {
+						return protectPayPaymentMethod;
+					}
+				}
 			}
 		}
-		return null;
+		return invoke(ProtectPayOperation.GET_PAYMENT_METHOD, service -> {
+			PaymentMethodsResult response = service.getPayerPaymentMethod(id, payerAccountId, paymentMethodId);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			ArrayOfPaymentMethodInformation aopmi = response.getPaymentMethods().getValue();
+			if (aopmi != null) {
+				if (aopmi.getPaymentMethodInformation().size() > 0) {
+					return toPaymentMethod(aopmi.getPaymentMethodInformation().get(0));
+				}
+			}
+			return null;
+		});
 	}
 
 	private ProtectPayPaymentResponse transact(ProtectPayPayment protectPayPayment, CreditCardOverride cco, ACHOverride ao,
 			boolean recurring, Type type) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		Transaction transaction = toTransaction(protectPayPayment);
-		PaymentInfoOverrides paymentInfoOverrides = new PaymentInfoOverrides();
-		if (cco != null) {
-			paymentInfoOverrides.setCreditCard(
-					contractsFactory.createPaymentInfoOverridesCreditCard(toCreditCardOverrides(cco)));
-		}
-		if (ao != null) {
-			paymentInfoOverrides.setAch(contractsFactory.createPaymentInfoOverridesAch(toAchOverrides(ao)));
-		}
-		TransactionResult response = null;
+		return invoke(type.operation, service -> {
+			TransactRequestWriter writer = directRequestWriting && pool.hasTransport()
+					&& protectPayPayment.getPaymentMethodId() != null ? TransactRequestWriter.getInstance() : null;
+			if (writer != null) {
+				return transactDirect(service, writer, protectPayPayment, cco, ao, recurring, type);
+			}
+			Transaction transaction = toTransaction(protectPayPayment);
+			PaymentInfoOverrides paymentInfoOverrides = new PaymentInfoOverrides();
+			if (cco != null) {
+				paymentInfoOverrides.setCreditCard(
+						contractsFactory.createPaymentInfoOverridesCreditCard(toCreditCardOverrides(cco)));
+			}
+			if (ao != null) {
+				paymentInfoOverrides.setAch(contractsFactory.createPaymentInfoOverridesAch(toAchOverrides(ao)));
+			}
+			TransactionResult response = null;
+			switch (type) {
+				case AUTH:
+					if (recurring) {
+						response = service.authorizePaymentMethodTransactionRecurring(
+								id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
+					} else {
+						response = service.authorizePaymentMethodTransaction(
+								id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
+					}
+					break;
+				case CAPTURE:
+					if (recurring) {
+						response = service.processPaymentMethodTransactionRecurring(
+								id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
+					} else {
+						response = service.processPaymentMethodTransaction(
+								id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
+					}
+					break;
+				case CREDIT:
+					response = service.creditPayment(
+							id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
+					break;
+			}
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			TransactionInformation info = response.getTransaction().getValue();
+			return toPaymentResponse(info);
+		});
+	}
+
+	private ProtectPayPaymentResponse transactDirect(SPSService service, TransactRequestWriter writer,
+			ProtectPayPayment protectPayPayment, CreditCardOverride cco, ACHOverride ao, boolean recurring, Type type)
+			throws ProtectPayException {
+		String operation;
 		switch (type) {
 			case AUTH:
-				if (recurring) {
-					response = service.authorizePaymentMethodTransactionRecurring(
-							id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
-				} else {
-					response = service.authorizePaymentMethodTransaction(
-							id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
-				}
+				operation = recurring ? "authorizePaymentMethodTransactionRecurring" : "authorizePaymentMethodTransaction";
 				break;
 			case CAPTURE:
-				if (recurring) {
-					response = service.processPaymentMethodTransactionRecurring(
-							id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
-				} else {
-					response = service.processPaymentMethodTransaction(
-							id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
-				}
-				break;
-			case CREDIT:
-				response = service.creditPayment(
-						id, transaction, protectPayPayment.getPaymentMethodId(), paymentInfoOverrides);
+				operation = recurring ? "processPaymentMethodTransactionRecurring" : "processPaymentMethodTransaction";
 				break;
+			default:
+				operation = "creditPayment";
+		}
+		ID currentId = id;
+		Map<String, Object> context = ((BindingProvider)service).getRequestContext();
+		try {
+			context.put(HttpTransportTube.WRITTEN_REQUEST, writer.write(operation,
+					currentId.getAuthenticationToken().getValue(), currentId.getBillerAccountId().getValue(),
+					protectPayPayment, cco, ao));
+		} catch (XMLStreamException x) {
+			throw new WebServiceException("Error writing " + operation + " request: " + x.getMessage(), x);
+		}
+		TransactionResult response;
+		try {
+			// The transport sends the written request, these arguments are never marshalled
+			switch (operation) {
+				case "authorizePaymentMethodTransactionRecurring":
+					response = service.authorizePaymentMethodTransactionRecurring(null, null, null, null);
+					break;
+				case "authorizePaymentMethodTransaction":
+					response = service.authorizePaymentMethodTransaction(null, null, null, null);
+					break;
+				case "processPaymentMethodTransactionRecurring":
+					response = service.processPaymentMethodTransactionRecurring(null, null, null, null);
+					break;
+				case "processPaymentMethodTransaction":
+					response = service.processPaymentMethodTransaction(null, null, null, null);
+					break;
+				default:
+					response = service.creditPayment(null, null, null, null);
+			}
+		} finally {
+			context.remove(HttpTransportTube.WRITTEN_REQUEST);
 		}
 		Result result = response.getRequestResult().getValue();
 		checkResult(result);
-		TransactionInformation info = response.getTransaction().getValue();
-		return toPaymentResponse(info);
+		return toPaymentResponse(response.getTransaction().getValue());
 	}
 
 	/**
@@ -559,25 +1640,24 @@ public class ProtectPayClient {
 	 */
 	public ProtectPayPaymentResponse capture(ProtectPayPriorPayment payment, int amount)
 			throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		CaptureRequest request = new CaptureRequest();
-		if (payment.getMerchantProfileId() != null) {
-			request.setMerchantProfileId(
-					contractsFactory.createCaptureRequestMerchantProfileId(payment.getMerchantProfileId().toString()));
-		}
-		request.setComment1(contractsFactory.createCaptureRequestComment1(payment.getComment1()));
-		request.setComment2(contractsFactory.createCaptureRequestComment2(payment.getComment2()));
-		request.setAmount(amount);
-		request.setOriginalTransactionId(
-				contractsFactory.createCaptureRequestOriginalTransactionId(payment.getOriginalTransactionId()));
-		request.setTransactionHistoryId(payment.getTransactionHistoryId());
-		TransactionResult response = service.capturePaymentV2(id, request);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		TransactionInformation info = response.getTransaction().getValue();
-		return toPaymentResponse(info);
+		return invoke(ProtectPayOperation.CAPTURE, service -> {
+			CaptureRequest request = new CaptureRequest();
+			if (payment.getMerchantProfileId() != null) {
+				request.setMerchantProfileId(
+						contractsFactory.createCaptureRequestMerchantProfileId(payment.getMerchantProfileId().toString()));
+			}
+			request.setComment1(element(payment.getComment1(), contractsFactory::createCaptureRequestComment1));
+			request.setComment2(element(payment.getComment2(), contractsFactory::createCaptureRequestComment2));
+			request.setAmount(amount);
+			request.setOriginalTransactionId(
+					element(payment.getOriginalTransactionId(), contractsFactory::createCaptureRequestOriginalTransactionId));
+			request.setTransactionHistoryId(payment.getTransactionHistoryId());
+			TransactionResult response = service.capturePaymentV2(id, request);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			TransactionInformation info = response.getTransaction().getValue();
+			return toPaymentResponse(info);
+		});
 	}
 
 	private ProtectPayPaymentResponse authAndCapture(ProtectPayPayment protectPayPayment, CreditCardOverride cco, ACHOverride ao, boolean recurring)
@@ -651,27 +1731,26 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if an error is returned from ProtectPay
 	 */
 	public ProtectPayPaymentResponse voidPayment(ProtectPayPriorPayment protectPayPriorPayment) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		VoidRequest request = new VoidRequest();
-		request.setOriginalTransactionId(
-				contractsFactory.createVoidRequestOriginalTransactionId(protectPayPriorPayment.getOriginalTransactionId()));
-		request.setTransactionHistoryId(protectPayPriorPayment.getTransactionHistoryId());
-		request.setComment1(
-				contractsFactory.createVoidRequestComment1(protectPayPriorPayment.getComment1()));
-		request.setComment2(
-				contractsFactory.createVoidRequestComment2(protectPayPriorPayment.getComment2()));
-		if (protectPayPriorPayment.getMerchantProfileId() != null) {
-			request.setMerchantProfileId(
-					contractsFactory.createVoidRequestMerchantProfileId
-							(protectPayPriorPayment.getMerchantProfileId().toString()));
-		}
-		TransactionResult response = service.voidPaymentV2(id, request);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		TransactionInformation info = response.getTransaction().getValue();
-		return toPaymentResponse(info);
+		return invoke(ProtectPayOperation.VOID, service -> {
+			VoidRequest request = new VoidRequest();
+			request.setOriginalTransactionId(
+					element(protectPayPriorPayment.getOriginalTransactionId(), contractsFactory::createVoidRequestOriginalTransactionId));
+			request.setTransactionHistoryId(protectPayPriorPayment.getTransactionHistoryId());
+			request.setComment1(
+					element(protectPayPriorPayment.getComment1(), contractsFactory::createVoidRequestComment1));
+			request.setComment2(
+					element(protectPayPriorPayment.getComment2(), contractsFactory::createVoidRequestComment2));
+			if (protectPayPriorPayment.getMerchantProfileId() != null) {
+				request.setMerchantProfileId(
+						contractsFactory.createVoidRequestMerchantProfileId
+								(protectPayPriorPayment.getMerchantProfileId().toString()));
+			}
+			TransactionResult response = service.voidPaymentV2(id, request);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			TransactionInformation info = response.getTransaction().getValue();
+			return toPaymentResponse(info);
+		});
 	}
 
 	/**
@@ -683,28 +1762,27 @@ public class ProtectPayClient {
 	 * @throws ProtectPayException if an error is returned from ProtectPay
 	 */
 	public ProtectPayPaymentResponse refund( ProtectPayPriorPayment protectPayPriorPayment, Integer amount) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		RefundRequest request = new RefundRequest();
-		request.setComment1(
-				contractsFactory.createRefundRequestComment1(protectPayPriorPayment.getComment1()));
-		request.setComment2(
-				contractsFactory.createRefundRequestComment2(protectPayPriorPayment.getComment2()));
-		if (protectPayPriorPayment.getMerchantProfileId() != null) {
-			request.setMerchantProfileId(
-					contractsFactory.createRefundRequestMerchantProfileId(
-							protectPayPriorPayment.getMerchantProfileId().toString()));
-		}
-		request.setOriginalTransactionId(
-				contractsFactory.createRefundRequestOriginalTransactionId(protectPayPriorPayment.getOriginalTransactionId()));
-		request.setTransactionHistoryId(protectPayPriorPayment.getTransactionHistoryId());
-		request.setAmount(amount);
-		TransactionResult response = service.refundPaymentV2(id, request);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		TransactionInformation info = response.getTransaction().getValue();
-		return toPaymentResponse(info);
+		return invoke(ProtectPayOperation.REFUND, service -> {
+			RefundRequest request = new RefundRequest();
+			request.setComment1(
+					element(protectPayPriorPayment.getComment1(), contractsFactory::createRefundRequestComment1));
+			request.setComment2(
+					element(protectPayPriorPayment.getComment2(), contractsFactory::createRefundRequestComment2));
+			if (protectPayPriorPayment.getMerchantProfileId() != null) {
+				request.setMerchantProfileId(
+						contractsFactory.createRefundRequestMerchantProfileId(
+								protectPayPriorPayment.getMerchantProfileId().toString()));
+			}
+			request.setOriginalTransactionId(
+					element(protectPayPriorPayment.getOriginalTransactionId(), contractsFactory::createRefundRequestOriginalTransactionId));
+			request.setTransactionHistoryId(protectPayPriorPayment.getTransactionHistoryId());
+			request.setAmount(amount);
+			TransactionResult response = service.refundPaymentV2(id, request);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			TransactionInformation info = response.getTransaction().getValue();
+			return toPaymentResponse(info);
+		});
 	}
 
 	/**
@@ -756,24 +1834,33 @@ public class ProtectPayClient {
 	 */
 	public String getTempToken(String payerAccountId, String payerName, Integer duration)
 			throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		TempTokenRequest request = new TempTokenRequest();
-		request.setIdentification(typesFactory.createTempTokenRequestIdentification(id));
-		PayerInformation payerInfo = new PayerInformation();
-		payerInfo.setId(typesFactory.createPayerInformationId(payerAccountId));
-		payerInfo.setName(typesFactory.createPayerInformationName(payerName));
-		request.setPayerInfo(typesFactory.createTempTokenRequestPayerInfo(payerInfo));
-		TempTokenProperties properties = new TempTokenProperties();
-		if (duration != null) {
-			properties.setDurationSeconds(duration);
-		}
-		request.setTokenProperties(typesFactory.createTempTokenRequestTokenProperties(properties));
-		TempTokenResult response = service.getTempToken(request);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		return response.getTempToken().getValue();
+		ProtectPayTempTokenCache cache = tempTokenCache;
+		if (cache != null && duration != null) {
+			return cache.get(billerAccountId, payerAccountId, payerName, duration,
+					() -> requestTempToken(payerAccountId, payerName, duration));
+		}
+		return requestTempToken(payerAccountId, payerName, duration);
+	}
+
+	private String requestTempToken(String payerAccountId, String payerName, Integer duration)
+			throws ProtectPayException {
+		return invoke(ProtectPayOperation.GET_TEMP_TOKEN, service -> {
+			TempTokenRequest request = new TempTokenRequest();
+			request.setIdentification(typesFactory.createTempTokenRequestIdentification(id));
+			PayerInformation payerInfo = new PayerInformation();
+			payerInfo.setId(element(payerAccountId, typesFactory::createPayerInformationId));
+			payerInfo.setName(element(payerName, typesFactory::createPayerInformationName));
+			request.setPayerInfo(typesFactory.createTempTokenRequestPayerInfo(payerInfo));
+			TempTokenProperties properties = new TempTokenProperties();
+			if (duration != null) {
+				properties.setDurationSeconds(duration);
+			}
+			request.setTokenProperties(typesFactory.createTempTokenRequestTokenProperties(properties));
+			TempTokenResult response = service.getTempToken(request);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			return response.getTempToken().getValue();
+		});
 	}
 
 	/**
@@ -787,25 +1874,24 @@ public class ProtectPayClient {
 	 */
 	public Long createMerchantProfile(String paymentProcessor, String profileName,
 			Map<String, String> processorDatum) throws ProtectPayException {
-		if(service == null) {
-			initService();
-		}
-		MerchantProfileData data = new MerchantProfileData();
-		data.setPaymentProcessor(contractsFactory.createMerchantProfileDataPaymentProcessor(paymentProcessor));
-		data.setProfileName(contractsFactory.createMerchantProfileDataProfileName(profileName));
-		ArrayOfProcessorDatum aopd = new ArrayOfProcessorDatum();
-		List<ProcessorDatum> pds = aopd.getProcessorDatum();
-		for (String field : processorDatum.keySet()) {
-			String value = processorDatum.get(field);
-			ProcessorDatum pd = new ProcessorDatum();
-			pd.setProcessorField(contractsFactory.createProcessorDatumProcessorField(field));
-			pd.setValue(contractsFactory.createProcessorDatumValue(value));
-			pds.add(pd);
-		}
-		data.setProcessorData(contractsFactory.createMerchantProfileDataProcessorData(aopd));
-		CreateMerchantProfileResult response = service.createMerchantProfile(id, data);
-		Result result = response.getRequestResult().getValue();
-		checkResult(result);
-		return response.getProfileId();
+		return invoke(ProtectPayOperation.CREATE_MERCHANT_PROFILE, service -> {
+			MerchantProfileData data = new MerchantProfileData();
+			data.setPaymentProcessor(element(paymentProcessor, contractsFactory::createMerchantProfileDataPaymentProcessor));
+			data.setProfileName(element(profileName, contractsFactory::createMerchantProfileDataProfileName));
+			ArrayOfProcessorDatum aopd = new ArrayOfProcessorDatum();
+			List<ProcessorDatum> pds = aopd.getProcessorDatum();
+			for (String field : processorDatum.keySet()) {
+				String value = processorDatum.get(field);
+				ProcessorDatum pd = new ProcessorDatum();
+				pd.setProcessorField(element(field, contractsFactory::createProcessorDatumProcessorField));
+				pd.setValue(element(value, contractsFactory::createProcessorDatumValue));
+				pds.add(pd);
+			}
+			data.setProcessorData(contractsFactory.createMerchantProfileDataProcessorData(aopd));
+			CreateMerchantProfileResult response = service.createMerchantProfile(id, data);
+			Result result = response.getRequestResult().getValue();
+			checkResult(result);
+			return response.getProfileId();
+		});
 	}
 }
\ No newline at end of file
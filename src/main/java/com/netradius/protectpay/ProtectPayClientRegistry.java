@@ -0,0 +1,224 @@
+package com.netradius.protectpay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds ProtectPayClient instances for many biller accounts. Clients using the same endpoint share a
+ * single service pool, so the WSDL, JAXB context and service ports are created once per endpoint rather
+ * than once per biller account. Each client only carries its own credentials.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayClientRegistry implements Closeable {
+
+	private final ConcurrentMap<String, ServicePool> pools = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ProtectPayClient> clients = new ConcurrentHashMap<>();
+	private final int poolSize;
+	private final long poolTimeout;
+	private final HttpTransportConfig transportConfig;
+	private volatile ProtectPayRateLimiter rateLimiter;
+	private volatile ProtectPayBulkhead bulkhead;
+
+	/**
+	 * Creates a new registry using the default pool size and timeout.
+	 */
+	public ProtectPayClientRegistry() {
+		this(ProtectPayClient.DEFAULT_POOL_SIZE, ProtectPayClient.DEFAULT_POOL_TIMEOUT, null);
+	}
+
+	/**
+	 * Creates a new registry.
+	 *
+	 * @param poolSize the maximum number of service ports per endpoint
+	 * @param poolTimeout the maximum time in milliseconds a request waits for a free service port
+	 * @param transportConfig the HTTP transport settings used for each endpoint or null to use Metro's
+	 *                        default transport
+	 */
+	public ProtectPayClientRegistry(int poolSize, long poolTimeout, HttpTransportConfig transportConfig) {
+		this.poolSize = poolSize;
+		this.poolTimeout = poolTimeout;
+		this.transportConfig = transportConfig;
+	}
+
+	/**
+	 * Creates the service pool for an endpoint. Overridden in tests to avoid creating real ports.
+	 *
+	 * @param url the endpoint URL
+	 * @return the service pool
+	 */
+	ServicePool newPool(URL url) {
+		return new ServicePool(url, poolSize, poolTimeout, transportConfig);
+	}
+
+	private ServicePool getPool(String endpointUrl) {
+		URL url = ProtectPayClient.toEndpointUrl(endpointUrl);
+		// Keyed on the string form as URL.equals performs name resolution
+		String key = url.toString();
+		ServicePool pool = pools.get(key);
+		if (pool == null) {
+			ServicePool created = newPool(url);
+			pool = pools.putIfAbsent(key, created);
+			if (pool == null) {
+				pool = created;
+			} else {
+				try {
+					created.close();
+				} catch (IOException x) {
+					// Nothing was sent over it
+				}
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Registers a biller account.
+	 *
+	 * @param endpointUrl the endpoint URL to use, see {@link ProtectPayClient#PRODUCTION_ENDPOINT} and
+	 *                    {@link ProtectPayClient#TESTING_ENDPOINT}
+	 * @param authenticationToken the authentication token assigned by ProPay
+	 * @param billerAccountId the biller account ID assigned by ProPay
+	 * @return the client for the biller account
+	 * @throws IllegalStateException if the biller account is already registered
+	 */
+	public ProtectPayClient register(String endpointUrl, String authenticationToken, String billerAccountId) {
+		ProtectPayClient client = new ProtectPayClient(getPool(endpointUrl), false, authenticationToken, billerAccountId);
+		client.setRateLimiter(rateLimiter);
+		client.setBulkhead(bulkhead);
+		if (clients.putIfAbsent(billerAccountId, client) != null) {
+			throw new IllegalStateException("Biller account [" + billerAccountId + "] is already registered");
+		}
+		return client;
+	}
+
+	/**
+	 * Returns the client for a biller account.
+	 *
+	 * @param billerAccountId the biller account ID
+	 * @return the client or null if the biller account is not registered
+	 */
+	public ProtectPayClient get(String billerAccountId) {
+		return clients.get(billerAccountId);
+	}
+
+	/**
+	 * Removes a biller account. The service pool remains available to other biller accounts.
+	 *
+	 * @param billerAccountId the biller account ID
+	 * @return the removed client or null if the biller account was not registered
+	 */
+	public ProtectPayClient remove(String billerAccountId) {
+		return clients.remove(billerAccountId);
+	}
+
+	/**
+	 * Replaces the authentication token used by a biller account. No service ports are rebuilt.
+	 *
+	 * @param billerAccountId the biller account ID
+	 * @param authenticationToken the new authentication token assigned by ProPay
+	 * @throws IllegalArgumentException if the biller account is not registered
+	 */
+	public void rotateCredentials(String billerAccountId, String authenticationToken) {
+		ProtectPayClient client = clients.get(billerAccountId);
+		if (client == null) {
+			throw new IllegalArgumentException("Biller account [" + billerAccountId + "] is not registered");
+		}
+		client.setAuthenticationToken(authenticationToken);
+	}
+
+	/**
+	 * Returns the registered biller account IDs.
+	 *
+	 * @return the biller account IDs
+	 */
+	public Set<String> getBillerAccountIds() {
+		return Collections.unmodifiableSet(clients.keySet());
+	}
+
+	/**
+	 * Returns the rate limiter shared by all registered clients.
+	 *
+	 * @return the rate limiter or null if requests are not limited
+	 */
+	public ProtectPayRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Sets the rate limiter shared by all registered clients, including those registered later. Each
+	 * biller account is limited separately.
+	 *
+	 * @param rateLimiter the rate limiter or null to not limit requests
+	 */
+	public void setRateLimiter(ProtectPayRateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+		for (ProtectPayClient client : clients.values()) {
+			client.setRateLimiter(rateLimiter);
+		}
+	}
+
+	/**
+	 * Returns the bulkhead shared by all registered clients.
+	 *
+	 * @return the bulkhead or null if none is used
+	 */
+	public ProtectPayBulkhead getBulkhead() {
+		return bulkhead;
+	}
+
+	/**
+	 * Sets the bulkhead shared by all registered clients, including those registered later. As clients
+	 * for the same endpoint share a service pool, limits apply across all biller accounts.
+	 *
+	 * @param bulkhead the bulkhead or null to use none
+	 */
+	public void setBulkhead(ProtectPayBulkhead bulkhead) {
+		this.bulkhead = bulkhead;
+		for (ProtectPayClient client : clients.values()) {
+			client.setBulkhead(bulkhead);
+		}
+	}
+
+	/**
+	 * Eagerly creates all service ports for every endpoint in use.
+	 *
+	 * @return the number of ports created
+	 */
+	public int fillPools() {
+		int count = 0;
+		for (ServicePool pool : pools.values()) {
+			count += pool.fill();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a snapshot of the HTTP connection pool for an endpoint.
+	 *
+	 * @param endpointUrl the endpoint URL
+	 * @return the connection pool statistics or null if the endpoint is not in use or no transport
+	 *         configuration was given
+	 */
+	public HttpTransportStats getTransportStats(String endpointUrl) {
+		ServicePool pool = pools.get(ProtectPayClient.toEndpointUrl(endpointUrl).toString());
+		return pool == null ? null : pool.getTransportStats();
+	}
+
+	/**
+	 * Releases the HTTP connections held for every endpoint.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		for (ServicePool pool : pools.values()) {
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.netradius.protectpay;
+
+/**
+ * Thrown when a request made through {@link ProtectPayClient#withDeadline(long)} is rejected because too
+ * little time remains before its deadline.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayDeadlineExceededException extends ProtectPayRejectedException {
+
+	private static final long serialVersionUID = -2830571396461540921L;
+
+	private final long remaining;
+
+	public ProtectPayDeadlineExceededException(ProtectPayOperation operation, long remaining, String message) {
+		super(operation, message);
+		this.remaining = remaining;
+	}
+
+	/**
+	 * Returns the time which remained before the deadline when the request was rejected.
+	 *
+	 * @return the remaining time in milliseconds, negative if the deadline had passed
+	 */
+	public long getRemaining() {
+		return remaining;
+	}
+}
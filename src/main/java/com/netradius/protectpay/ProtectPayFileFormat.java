@@ -0,0 +1,66 @@
+package com.netradius.protectpay;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * File formats read and written by {@link ProtectPayFilePipeline}.
+ *
+ * @author Erik R. Jensen
+ */
+public enum ProtectPayFileFormat {
+
+	/**
+	 * Comma separated values with a header row naming the columns.
+	 */
+	CSV {
+		@Override
+		RecordReader reader(Reader reader) throws IOException {
+			return new CsvRecordReader(reader instanceof BufferedReader ? reader : new BufferedReader(reader));
+		}
+
+		@Override
+		RecordWriter writer(Writer writer, List<String> columns) throws IOException {
+			return new CsvRecordWriter(writer, columns);
+		}
+	},
+
+	/**
+	 * Newline delimited JSON with one flat object per line.
+	 */
+	NDJSON {
+		@Override
+		RecordReader reader(Reader reader) throws IOException {
+			return new NdjsonRecordReader(JSON_FACTORY, reader);
+		}
+
+		@Override
+		RecordWriter writer(Writer writer, List<String> columns) throws IOException {
+			return new NdjsonRecordWriter(JSON_FACTORY, writer, columns);
+		}
+	};
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	abstract RecordReader reader(Reader reader) throws IOException;
+
+	abstract RecordWriter writer(Writer writer, List<String> columns) throws IOException;
+
+	/**
+	 * Returns the format for a file based on its extension. Files ending in .ndjson, .jsonl or .json are
+	 * NDJSON, all others are CSV.
+	 *
+	 * @param path the file
+	 * @return the format
+	 */
+	public static ProtectPayFileFormat forPath(Path path) {
+		String name = path.getFileName().toString().toLowerCase();
+		return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json") ? NDJSON : CSV;
+	}
+}
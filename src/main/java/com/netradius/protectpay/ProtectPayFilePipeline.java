@@ -0,0 +1,207 @@
+package com.netradius.protectpay;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams payments from an input file through a {@link ProtectPayBatchProcessor} and writes each result
+ * to an output file as soon as it completes. Rows are read lazily and the processor bounds the number of
+ * rows held in memory, so memory use does not depend on the size of the file.
+ * <p>
+ * Input columns are named after the properties of {@link ProtectPayPayment} or
+ * {@link ProtectPayPriorPayment}. A row which cannot be parsed fails on its own without stopping the
+ * file. Results are written in completion order; the index column holds the zero based row number of
+ * the input row.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayFilePipeline {
+
+	/**
+	 * The columns written to the output file.
+	 */
+	public static final List<String> RESULT_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+			"index", "success", "transactionId", "transactionHistoryId", "resultCode", "resultValue",
+			"resultMessage"));
+
+	private final ProtectPayBatchProcessor processor;
+
+	/**
+	 * Creates a new pipeline.
+	 *
+	 * @param processor the processor to run requests with
+	 */
+	public ProtectPayFilePipeline(ProtectPayBatchProcessor processor) {
+		this.processor = processor;
+	}
+
+	/**
+	 * Authorizes and captures the payment in each row.
+	 * See {@link ProtectPayClient#authAndCapture(ProtectPayPayment, boolean)}.
+	 *
+	 * @param input the input file, CSV or NDJSON based on its extension
+	 * @param output the output file, CSV or NDJSON based on its extension
+	 * @param recurring true if the payments are recurring, false if otherwise
+	 * @return the final progress
+	 * @throws IOException if an I/O error occurs
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public ProtectPayBatchProgress authAndCapture(Path input, Path output, boolean recurring)
+			throws IOException, InterruptedException {
+		return process(input, output, (client, row) -> client.authAndCapture(toPayment(row), recurring));
+	}
+
+	/**
+	 * Refunds the prior payment in each row. An empty amount refunds the full amount.
+	 * See {@link ProtectPayClient#refund(ProtectPayPriorPayment, Integer)}.
+	 *
+	 * @param input the input file, CSV or NDJSON based on its extension
+	 * @param output the output file, CSV or NDJSON based on its extension
+	 * @return the final progress
+	 * @throws IOException if an I/O error occurs
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public ProtectPayBatchProgress refund(Path input, Path output) throws IOException, InterruptedException {
+		return process(input, output, (client, row) -> client.refund(toPriorPayment(row), toInteger(row, "amount")));
+	}
+
+	/**
+	 * Credits the payment in each row.
+	 * See {@link ProtectPayClient#credit(ProtectPayPayment)}.
+	 *
+	 * @param input the input file, CSV or NDJSON based on its extension
+	 * @param output the output file, CSV or NDJSON based on its extension
+	 * @return the final progress
+	 * @throws IOException if an I/O error occurs
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public ProtectPayBatchProgress credit(Path input, Path output) throws IOException, InterruptedException {
+		return process(input, output, (client, row) -> client.credit(toPayment(row)));
+	}
+
+	/**
+	 * Runs an operation for each row of the input file and writes the results to the output file.
+	 *
+	 * @param input the input file, CSV or NDJSON based on its extension
+	 * @param output the output file, CSV or NDJSON based on its extension
+	 * @param operation the request to make for each row
+	 * @return the final progress
+	 * @throws IOException if an I/O error occurs
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public ProtectPayBatchProgress process(Path input, Path output,
+			ProtectPayBatchOperation<Map<String, String>> operation) throws IOException, InterruptedException {
+		try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+				Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			return process(reader, ProtectPayFileFormat.forPath(input), writer, ProtectPayFileFormat.forPath(output),
+					operation);
+		}
+	}
+
+	/**
+	 * Runs an operation for each row read and writes the results.
+	 *
+	 * @param reader the input
+	 * @param inputFormat the format of the input
+	 * @param writer the output
+	 * @param outputFormat the format of the output
+	 * @param operation the request to make for each row
+	 * @return the final progress
+	 * @throws IOException if an I/O error occurs
+	 * @throws InterruptedException if interrupted while waiting; requests already in flight continue
+	 */
+	public ProtectPayBatchProgress process(Reader reader, ProtectPayFileFormat inputFormat, Writer writer,
+			ProtectPayFileFormat outputFormat, ProtectPayBatchOperation<Map<String, String>> operation)
+			throws IOException, InterruptedException {
+		try (RecordReader records = inputFormat.reader(reader);
+				RecordWriter results = outputFormat.writer(writer, RESULT_COLUMNS)) {
+			return processor.process(records, -1, operation, ProtectPayBatchProcessor.Order.COMPLETION, result -> {
+				try {
+					results.write(toRecord(result));
+				} catch (IOException x) {
+					throw new UncheckedIOException(x);
+				}
+			});
+		} catch (UncheckedIOException x) {
+			throw x.getCause();
+		}
+	}
+
+	private static String toString(Object o) {
+		return o == null ? null : o.toString();
+	}
+
+	static Map<String, String> toRecord(ProtectPayBatchResult<?> result) {
+		Map<String, String> record = new LinkedHashMap<>();
+		record.put("index", Long.toString(result.getIndex()));
+		record.put("success", Boolean.toString(result.isSuccess()));
+		ProtectPayPaymentResponse response = result.getResponse();
+		if (response != null) {
+			record.put("transactionId", response.getTransactionId());
+			record.put("transactionHistoryId", toString(response.getTransactionHistoryId()));
+			record.put("resultCode", response.getResultCode());
+			record.put("resultValue", response.getResultValue());
+			record.put("resultMessage", response.getResultMessage());
+		} else if (result.getException() instanceof ProtectPayException) {
+			ProtectPayException x = (ProtectPayException)result.getException();
+			record.put("resultCode", x.getResultCode());
+			record.put("resultValue", x.getResultValue());
+			record.put("resultMessage", x.getResultMessage());
+		} else {
+			record.put("resultMessage", result.getException().toString());
+		}
+		return record;
+	}
+
+	private static Integer toInteger(Map<String, String> row, String column) {
+		String value = row.get(column);
+		try {
+			return value == null ? null : Integer.valueOf(value.trim());
+		} catch (NumberFormatException x) {
+			throw new IllegalArgumentException("Invalid " + column + " [" + value + "]");
+		}
+	}
+
+	private static Long toLong(Map<String, String> row, String column) {
+		String value = row.get(column);
+		try {
+			return value == null ? null : Long.valueOf(value.trim());
+		} catch (NumberFormatException x) {
+			throw new IllegalArgumentException("Invalid " + column + " [" + value + "]");
+		}
+	}
+
+	static ProtectPayPayment toPayment(Map<String, String> row) {
+		ProtectPayPayment payment = new ProtectPayPayment();
+		payment.setPayerAccountId(row.get("payerAccountId"));
+		payment.setPaymentMethodId(row.get("paymentMethodId"));
+		payment.setMerchantProfileId(toLong(row, "merchantProfileId"));
+		payment.setAmount(toInteger(row, "amount"));
+		payment.setComment1(row.get("comment1"));
+		payment.setComment2(row.get("comment2"));
+		payment.setCurrencyCode(row.get("currencyCode"));
+		payment.setInputIpAddress(row.get("inputIpAddress"));
+		payment.setInvoice(row.get("invoice"));
+		return payment;
+	}
+
+	static ProtectPayPriorPayment toPriorPayment(Map<String, String> row) {
+		ProtectPayPriorPayment payment = new ProtectPayPriorPayment();
+		payment.setOriginalTransactionId(row.get("originalTransactionId"));
+		payment.setTransactionHistoryId(toLong(row, "transactionHistoryId"));
+		payment.setMerchantProfileId(toLong(row, "merchantProfileId"));
+		payment.setComment1(row.get("comment1"));
+		payment.setComment2(row.get("comment2"));
+		return payment;
+	}
+}
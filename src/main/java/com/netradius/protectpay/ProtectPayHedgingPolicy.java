@@ -0,0 +1,412 @@
+package com.netradius.protectpay;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends a second, identical request when the first has not returned after a delay and uses whichever
+ * response arrives first. The other request is left to complete on its own and its response is
+ * ignored; it still holds a service port until then. This trades a little extra load for a much shorter
+ * latency tail on slow reads.
+ * <p>
+ * The delay is either fixed or the observed latency percentile of the operation. Hedges are paid for
+ * from a budget which every request adds the max hedge rate to and which holds at most a small burst,
+ * so a slow ProtectPay does not receive twice the traffic however long things went well before.
+ * <p>
+ * Only operations which are safe to repeat should be hedged. By default only
+ * {@link ProtectPayClient#getPaymentMethod(String, String)} and
+ * {@link ProtectPayClient#getPaymentMethods(String)} are hedged.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayHedgingPolicy {
+
+	public static final long DEFAULT_DELAY = 100;
+	public static final double DEFAULT_PERCENTILE = 0.95;
+	public static final double DEFAULT_MAX_HEDGE_RATE = 0.05;
+	public static final int DEFAULT_MAX_HEDGE_BURST = 10;
+	public static final int DEFAULT_MAX_THREADS = 64;
+
+	// The hedge budget is kept in millionths of a hedge so it can be updated without a lock
+	private static final long TOKEN = 1000000;
+
+	private final Executor executor;
+	private final Map<ProtectPayOperation, LatencyTracker> trackers = new EnumMap<>(ProtectPayOperation.class);
+	private final LongAdder requests = new LongAdder();
+	private final AtomicLong budget = new AtomicLong();
+	private final LongAdder hedgesSent = new LongAdder();
+	private final LongAdder hedgesWon = new LongAdder();
+	private volatile Set<ProtectPayOperation> operations = Collections.unmodifiableSet(
+			EnumSet.of(ProtectPayOperation.GET_PAYMENT_METHOD, ProtectPayOperation.GET_PAYMENT_METHODS));
+	private volatile long delay = DEFAULT_DELAY;
+	private volatile boolean adaptive = true;
+	private volatile double maxHedgeRate = DEFAULT_MAX_HEDGE_RATE;
+	private volatile int maxHedgeBurst = DEFAULT_MAX_HEDGE_BURST;
+
+	/**
+	 * Creates a new policy which sends requests on its own pool of at most {@link #DEFAULT_MAX_THREADS}
+	 * daemon threads, which exit once idle for a minute. When every thread is busy, requests are sent on
+	 * the calling thread and are not hedged.
+	 */
+	public ProtectPayHedgingPolicy() {
+		this(new ThreadPoolExecutor(0, DEFAULT_MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+				new HedgeThreadFactory()));
+	}
+
+	/**
+	 * Creates a new policy which sends requests on the given executor. The executor must be able to run
+	 * two requests per hedged call concurrently. Requests the executor rejects are sent on the calling
+	 * thread and hedges it rejects are not sent.
+	 *
+	 * @param executor the executor to send requests on
+	 */
+	public ProtectPayHedgingPolicy(Executor executor) {
+		this(executor, DEFAULT_PERCENTILE);
+	}
+
+	/**
+	 * Creates a new policy which sends requests on the given executor and hedges at the given latency
+	 * percentile.
+	 *
+	 * @param executor the executor to send requests on
+	 * @param percentile the latency percentile to hedge at, between 0 and 1
+	 */
+	public ProtectPayHedgingPolicy(Executor executor, double percentile) {
+		if (!(percentile > 0 && percentile <= 1)) {
+			throw new IllegalArgumentException("Percentile must be greater than 0 and at most 1");
+		}
+		this.executor = executor;
+		for (ProtectPayOperation operation : ProtectPayOperation.values()) {
+			trackers.put(operation, new LatencyTracker(percentile));
+		}
+	}
+
+	/**
+	 * Returns the operations which are hedged.
+	 *
+	 * @return the operations
+	 */
+	public Set<ProtectPayOperation> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Sets the operations which are hedged. Only operations which are safe to repeat may be hedged.
+	 *
+	 * @param operations the operations
+	 * @throws IllegalArgumentException if an operation is not read only
+	 */
+	public void setOperations(Set<ProtectPayOperation> operations) {
+		for (ProtectPayOperation operation : operations) {
+			if (!operation.isReadOnly()) {
+				throw new IllegalArgumentException("Operation " + operation + " is not safe to hedge");
+			}
+		}
+		this.operations = operations.isEmpty()
+				? Collections.<ProtectPayOperation>emptySet()
+				: Collections.unmodifiableSet(EnumSet.copyOf(operations));
+	}
+
+	/**
+	 * Returns the fixed delay before a hedge is sent.
+	 *
+	 * @return the delay in milliseconds
+	 */
+	public long getDelay() {
+		return delay;
+	}
+
+	/**
+	 * Sets the fixed delay before a hedge is sent. When adaptive, this delay is only used until enough
+	 * latencies have been observed. Defaults to {@link #DEFAULT_DELAY}.
+	 *
+	 * @param delay the delay in milliseconds
+	 */
+	public void setDelay(long delay) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("Delay may not be negative");
+		}
+		this.delay = delay;
+	}
+
+	/**
+	 * Returns true if the delay follows the observed latency percentile.
+	 *
+	 * @return true if adaptive, false if the fixed delay is always used
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Sets whether the delay follows the observed latency percentile of each operation. Defaults to true.
+	 *
+	 * @param adaptive true to use the observed percentile, false to always use the fixed delay
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * Returns the maximum share of requests which may be hedged.
+	 *
+	 * @return the maximum hedge rate between 0 and 1
+	 */
+	public double getMaxHedgeRate() {
+		return maxHedgeRate;
+	}
+
+	/**
+	 * Sets the maximum share of requests which may be hedged. Defaults to {@link #DEFAULT_MAX_HEDGE_RATE}.
+	 *
+	 * @param maxHedgeRate the maximum hedge rate between 0 and 1
+	 */
+	public void setMaxHedgeRate(double maxHedgeRate) {
+		if (!(maxHedgeRate >= 0 && maxHedgeRate <= 1)) {
+			throw new IllegalArgumentException("Max hedge rate must be between 0 and 1");
+		}
+		this.maxHedgeRate = maxHedgeRate;
+	}
+
+	/**
+	 * Returns the most hedges which may be sent in a row once requests have built up the budget.
+	 *
+	 * @return the maximum hedge burst
+	 */
+	public int getMaxHedgeBurst() {
+		return maxHedgeBurst;
+	}
+
+	/**
+	 * Sets the most hedges which may be sent in a row once requests have built up the budget. Defaults
+	 * to {@link #DEFAULT_MAX_HEDGE_BURST}.
+	 *
+	 * @param maxHedgeBurst the maximum hedge burst, at least 1
+	 */
+	public void setMaxHedgeBurst(int maxHedgeBurst) {
+		if (maxHedgeBurst < 1) {
+			throw new IllegalArgumentException("Max hedge burst must be at least 1");
+		}
+		this.maxHedgeBurst = maxHedgeBurst;
+	}
+
+	/**
+	 * Returns the delay currently used before hedging an operation.
+	 *
+	 * @param operation the operation
+	 * @return the delay in milliseconds
+	 */
+	public long getDelay(ProtectPayOperation operation) {
+		return TimeUnit.NANOSECONDS.toMillis(getDelayNanos(operation));
+	}
+
+	private long getDelayNanos(ProtectPayOperation operation) {
+		if (adaptive) {
+			long estimate = trackers.get(operation).getEstimate();
+			if (estimate >= 0) {
+				return estimate;
+			}
+		}
+		return TimeUnit.MILLISECONDS.toNanos(delay);
+	}
+
+	/**
+	 * Returns the number of requests made through this policy, not counting hedges.
+	 *
+	 * @return the number of requests
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Returns the number of hedges sent.
+	 *
+	 * @return the number of hedges sent
+	 */
+	public long getHedgesSent() {
+		return hedgesSent.sum();
+	}
+
+	/**
+	 * Returns the number of hedges which returned before the request they hedged.
+	 *
+	 * @return the number of hedges won
+	 */
+	public long getHedgesWon() {
+		return hedgesWon.sum();
+	}
+
+	/**
+	 * Returns true if the operation is hedged by this policy.
+	 *
+	 * @param operation the operation
+	 * @return true if hedged, false if otherwise
+	 */
+	public boolean appliesTo(ProtectPayOperation operation) {
+		return operations.contains(operation);
+	}
+
+	// Each request earns a share of a hedge, up to the burst
+	private void earnHedge() {
+		long earned = Math.round(maxHedgeRate * TOKEN);
+		long max = maxHedgeBurst * TOKEN;
+		for (;;) {
+			long balance = budget.get();
+			long next = Math.min(max, balance + earned);
+			if (next <= balance || budget.compareAndSet(balance, next)) {
+				return;
+			}
+		}
+	}
+
+	private boolean spendHedge() {
+		for (;;) {
+			long balance = budget.get();
+			if (balance < TOKEN) {
+				return false;
+			}
+			if (budget.compareAndSet(balance, balance - TOKEN)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Makes a call, hedging it if it has not returned within the delay.
+	 *
+	 * @param operation the operation being called
+	 * @param call the call
+	 * @param <T> the result type
+	 * @return the result of whichever call succeeded first
+	 * @throws ProtectPayException if every call failed and the last failure was a ProtectPayException
+	 */
+	<T> T execute(ProtectPayOperation operation, ProtectPayCall<T> call) throws ProtectPayException {
+		requests.increment();
+		earnHedge();
+		Race<T> race = new Race<>(trackers.get(operation), call);
+		race.start(false);
+		try {
+			try {
+				return race.result.get(getDelayNanos(operation), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException x) {
+				if (spendHedge()) {
+					if (race.start(true)) {
+						hedgesSent.increment();
+					} else {
+						// Not sent, the hedge goes back in the budget
+						budget.addAndGet(TOKEN);
+					}
+				}
+			}
+			return race.result.get();
+		} catch (ExecutionException x) {
+			Throwable cause = x.getCause();
+			if (cause instanceof ProtectPayException) {
+				throw (ProtectPayException)cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IllegalStateException(cause);
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for " + operation);
+		}
+	}
+
+	private class Race<T> {
+
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final AtomicBoolean settled = new AtomicBoolean();
+		private volatile Throwable failure;
+		private final LatencyTracker tracker;
+		private final ProtectPayCall<T> call;
+
+		Race(LatencyTracker tracker, ProtectPayCall<T> call) {
+			this.tracker = tracker;
+			this.call = call;
+		}
+
+		// Returns false if the call was not made because the race was over or the hedge was rejected
+		boolean start(boolean hedge) {
+			if (result.isDone()) {
+				return false;
+			}
+			outstanding.incrementAndGet();
+			try {
+				executor.execute(() -> run(hedge));
+			} catch (RejectedExecutionException x) {
+				if (hedge) {
+					release();
+					return false;
+				}
+				run(false);
+			}
+			return true;
+		}
+
+		private void run(boolean hedge) {
+			long start = System.nanoTime();
+			T value;
+			try {
+				value = call.call();
+			} catch (Throwable t) {
+				fail(t);
+				return;
+			}
+			tracker.record(System.nanoTime() - start);
+			// The win is counted before the caller can see the result
+			if (settled.compareAndSet(false, true)) {
+				if (hedge) {
+					hedgesWon.increment();
+				}
+				result.complete(value);
+			}
+		}
+
+		private void fail(Throwable t) {
+			failure = t;
+			release();
+		}
+
+		private void release() {
+			// Only fail once every outstanding call has failed
+			if (outstanding.decrementAndGet() == 0 && settled.compareAndSet(false, true)) {
+				result.completeExceptionally(failure);
+			}
+		}
+	}
+
+	private static class HedgeThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "protectpay-hedge-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
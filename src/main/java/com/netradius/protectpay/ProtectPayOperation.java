@@ -0,0 +1,81 @@
+package com.netradius.protectpay;
+
+/**
+ * The operations ProtectPayClient performs against ProtectPay. Policies such as rate limits are configured
+ * per operation or per group of operations.
+ *
+ * @author Erik R. Jensen
+ */
+public enum ProtectPayOperation {
+
+	CREATE_PAYER(Group.VAULT, false),
+	UPDATE_PAYER(Group.VAULT, false),
+	DELETE_PAYER(Group.VAULT, false),
+	GET_PAYERS(Group.VAULT, true),
+	CREATE_PAYMENT_METHOD(Group.VAULT, false),
+	UPDATE_PAYMENT_METHOD(Group.VAULT, false),
+	DELETE_PAYMENT_METHOD(Group.VAULT, false),
+	GET_PAYMENT_METHODS(Group.VAULT, true),
+	GET_PAYMENT_METHOD(Group.VAULT, true),
+	CREATE_MERCHANT_PROFILE(Group.MERCHANT, false),
+	AUTH(Group.TRANSACT, false),
+	CAPTURE(Group.TRANSACT, false),
+	AUTH_AND_CAPTURE(Group.TRANSACT, false),
+	VOID(Group.TRANSACT, false),
+	REFUND(Group.TRANSACT, false),
+	CREDIT(Group.TRANSACT, false),
+	GET_TEMP_TOKEN(Group.TOKEN, true);
+
+	/**
+	 * Groups of operations which share limits.
+	 */
+	public enum Group {
+
+		/**
+		 * Payer and payment method management.
+		 */
+		VAULT,
+
+		/**
+		 * Merchant profile management.
+		 */
+		MERCHANT,
+
+		/**
+		 * Requests which move money.
+		 */
+		TRANSACT,
+
+		/**
+		 * Temporary token requests.
+		 */
+		TOKEN
+	}
+
+	private final Group group;
+	private final boolean readOnly;
+
+	ProtectPayOperation(Group group, boolean readOnly) {
+		this.group = group;
+		this.readOnly = readOnly;
+	}
+
+	/**
+	 * Returns the group this operation belongs to.
+	 *
+	 * @return the group
+	 */
+	public Group getGroup() {
+		return group;
+	}
+
+	/**
+	 * Returns true if this operation does not change any payer, payment method or transaction at
+	 * ProtectPay, which makes it safe to repeat.
+	 *
+	 * @return true if read only, false if otherwise
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+}
@@ -1,9 +1,6 @@
 package com.netradius.protectpay;
 
 import javax.validation.ConstraintViolation;
-import javax.validation.Validation;
-import javax.validation.Validator;
-import javax.validation.ValidatorFactory;
 import javax.validation.constraints.Size;
 import java.io.Serializable;
 import java.util.Set;
@@ -143,8 +140,6 @@ public class ProtectPayPayer implements Serializable {
 	 * @return constraint violations
 	 */
 	public Set<ConstraintViolation<ProtectPayPayer>> validate() {
-		ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
-		Validator validator = factory.getValidator();
-		return validator.validate(this, getClass());
+		return ProtectPayPayerValidator.validate(this);
 	}
 }
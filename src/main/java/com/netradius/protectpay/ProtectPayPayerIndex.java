@@ -0,0 +1,336 @@
+package com.netradius.protectpay;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local index of payers so payers can be found by external ID, email address or account name without a
+ * search request. The index is fed by the payers a client creates, updates, deletes and finds, and may be
+ * filled in one pass with {@link ProtectPayClient#loadPayerIndex()}.
+ * <p>
+ * Lookups are exact matches. The index only holds the payers a client has seen, so a search is only
+ * answered from it once it is complete, that is once it has been loaded and kept up to date since, or
+ * when the criteria include a field declared unique with {@link #setUniqueFields(Set)}. Any other
+ * search, and any search which matches nothing in the index, falls back to a search at ProtectPay whose
+ * results are then indexed. Payers changed outside of the client are only seen once they are found again
+ * or the index is reloaded.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayPayerIndex {
+
+	/**
+	 * The payer fields searches match on.
+	 */
+	public enum Field {
+		EXTERNAL_ID_1,
+		EXTERNAL_ID_2,
+		EMAIL_ADDRESS,
+		ACCOUNT_NAME
+	}
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, ProtectPayPayer> payers = new HashMap<>();
+	private final Map<String, Set<String>> byExternalId1 = new HashMap<>();
+	private final Map<String, Set<String>> byExternalId2 = new HashMap<>();
+	private final Map<String, Set<String>> byEmailAddress = new HashMap<>();
+	private final Map<String, Set<String>> byAccountName = new HashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private volatile boolean complete;
+	private volatile Set<Field> uniqueFields = Collections.emptySet();
+
+	private static void add(Map<String, Set<String>> index, String key, String payerAccountId) {
+		if (key != null) {
+			index.computeIfAbsent(key, k -> new HashSet<>(2)).add(payerAccountId);
+		}
+	}
+
+	private static void remove(Map<String, Set<String>> index, String key, String payerAccountId) {
+		if (key != null) {
+			Set<String> ids = index.get(key);
+			if (ids != null && ids.remove(payerAccountId) && ids.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+
+	private void unindex(ProtectPayPayer payer) {
+		String payerAccountId = payer.getPayerAccountId();
+		remove(byExternalId1, payer.getExternalId1(), payerAccountId);
+		remove(byExternalId2, payer.getExternalId2(), payerAccountId);
+		remove(byEmailAddress, payer.getEmailAddress(), payerAccountId);
+		remove(byAccountName, payer.getAccountName(), payerAccountId);
+	}
+
+	// Callers must hold the write lock
+	private void index(ProtectPayPayer payer, boolean keepEmailAddress) {
+		String payerAccountId = payer.getPayerAccountId();
+		ProtectPayPayer copy = Copies.payer(payer);
+		ProtectPayPayer previous = payers.put(payerAccountId, copy);
+		if (previous != null) {
+			unindex(previous);
+			// Search results do not include email addresses, so one learned earlier is kept
+			if (keepEmailAddress && copy.getEmailAddress() == null) {
+				copy.setEmailAddress(previous.getEmailAddress());
+			}
+		}
+		add(byExternalId1, copy.getExternalId1(), payerAccountId);
+		add(byExternalId2, copy.getExternalId2(), payerAccountId);
+		add(byEmailAddress, copy.getEmailAddress(), payerAccountId);
+		add(byAccountName, copy.getAccountName(), payerAccountId);
+	}
+
+	/**
+	 * Adds or replaces a payer.
+	 *
+	 * @param payer the payer, which must have a payer account ID
+	 */
+	public void put(ProtectPayPayer payer) {
+		if (payer.getPayerAccountId() == null) {
+			throw new IllegalArgumentException("Payer account ID may not be null");
+		}
+		lock.writeLock().lock();
+		try {
+			index(payer, false);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds or replaces payers found by a search.
+	 *
+	 * @param found the payers found
+	 */
+	void putFound(Collection<ProtectPayPayer> found) {
+		lock.writeLock().lock();
+		try {
+			for (ProtectPayPayer payer : found) {
+				if (payer.getPayerAccountId() != null) {
+					index(payer, true);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the content of the index.
+	 *
+	 * @param all every payer
+	 */
+	void load(Collection<ProtectPayPayer> all) {
+		lock.writeLock().lock();
+		try {
+			clear();
+			for (ProtectPayPayer payer : all) {
+				if (payer.getPayerAccountId() != null) {
+					index(payer, false);
+				}
+			}
+			complete = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 */
+	public void remove(String payerAccountId) {
+		lock.writeLock().lock();
+		try {
+			ProtectPayPayer previous = payers.remove(payerAccountId);
+			if (previous != null) {
+				unindex(previous);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes every payer. The index is no longer complete until it is loaded again.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			complete = false;
+			payers.clear();
+			byExternalId1.clear();
+			byExternalId2.clear();
+			byEmailAddress.clear();
+			byAccountName.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns true if the index holds every payer, which is the case once it has been loaded with
+	 * {@link ProtectPayClient#loadPayerIndex()} and not cleared since.
+	 *
+	 * @return true if complete, false if otherwise
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Returns the fields declared unique.
+	 *
+	 * @return the unique fields
+	 */
+	public Set<Field> getUniqueFields() {
+		return uniqueFields;
+	}
+
+	/**
+	 * Declares fields which no two payers share a value of, such as an external ID the application
+	 * assigns. Searches including a unique field are answered from the index even while it is not
+	 * complete. No fields are unique by default.
+	 *
+	 * @param uniqueFields the unique fields
+	 */
+	public void setUniqueFields(Set<Field> uniqueFields) {
+		this.uniqueFields = uniqueFields.isEmpty()
+				? Collections.<Field>emptySet()
+				: Collections.unmodifiableSet(EnumSet.copyOf(uniqueFields));
+	}
+
+	private boolean isUnique(ProtectPayPayer criteria) {
+		Set<Field> unique = uniqueFields;
+		return (criteria.getExternalId1() != null && unique.contains(Field.EXTERNAL_ID_1))
+				|| (criteria.getExternalId2() != null && unique.contains(Field.EXTERNAL_ID_2))
+				|| (criteria.getEmailAddress() != null && unique.contains(Field.EMAIL_ADDRESS))
+				|| (criteria.getAccountName() != null && unique.contains(Field.ACCOUNT_NAME));
+	}
+
+	/**
+	 * Returns a copy of a payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return the payer or null if not indexed
+	 */
+	public ProtectPayPayer get(String payerAccountId) {
+		lock.readLock().lock();
+		try {
+			ProtectPayPayer payer = payers.get(payerAccountId);
+			return payer == null ? null : Copies.payer(payer);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the payers matching every non-null email address, external ID and account name of the
+	 * criteria, the same fields used by {@link ProtectPayClient#getPayers(ProtectPayPayer)}.
+	 *
+	 * @param criteria the criteria
+	 * @return copies of the matching payers, empty if none match or the criteria has no fields set
+	 */
+	public List<ProtectPayPayer> find(ProtectPayPayer criteria) {
+		lock.readLock().lock();
+		try {
+			Set<String> candidates = null;
+			candidates = narrow(candidates, byExternalId1, criteria.getExternalId1());
+			candidates = narrow(candidates, byExternalId2, criteria.getExternalId2());
+			candidates = narrow(candidates, byEmailAddress, criteria.getEmailAddress());
+			candidates = narrow(candidates, byAccountName, criteria.getAccountName());
+			if (candidates == null || candidates.isEmpty()) {
+				return new ArrayList<>(0);
+			}
+			List<ProtectPayPayer> found = new ArrayList<>(candidates.size());
+			for (String payerAccountId : candidates) {
+				ProtectPayPayer payer = payers.get(payerAccountId);
+				if (matches(payer.getExternalId1(), criteria.getExternalId1())
+						&& matches(payer.getExternalId2(), criteria.getExternalId2())
+						&& matches(payer.getEmailAddress(), criteria.getEmailAddress())
+						&& matches(payer.getAccountName(), criteria.getAccountName())) {
+					found.add(Copies.payer(payer));
+				}
+			}
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static Set<String> narrow(Set<String> candidates, Map<String, Set<String>> index, String key) {
+		if (key == null) {
+			return candidates;
+		}
+		Set<String> ids = index.get(key);
+		if (ids == null) {
+			return Collections.emptySet();
+		}
+		return candidates == null || ids.size() < candidates.size() ? ids : candidates;
+	}
+
+	private static boolean matches(String value, String criteria) {
+		return criteria == null || criteria.equals(value);
+	}
+
+	/**
+	 * Answers a search from the index if the index is complete or the criteria include a unique field.
+	 *
+	 * @param criteria the criteria
+	 * @return the matching payers or null if the search must be sent to ProtectPay
+	 */
+	List<ProtectPayPayer> search(ProtectPayPayer criteria) {
+		// A partial index may hold only some of the payers matching a non unique field
+		List<ProtectPayPayer> found = criteria == null || !(complete || isUnique(criteria)) ? null : find(criteria);
+		if (found == null || found.isEmpty()) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return found;
+	}
+
+	/**
+	 * Returns the number of payers indexed.
+	 *
+	 * @return the number of payers
+	 */
+	public int getSize() {
+		lock.readLock().lock();
+		try {
+			return payers.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of searches answered from the index.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of searches sent to ProtectPay.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+}
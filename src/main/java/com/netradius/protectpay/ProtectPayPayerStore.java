@@ -0,0 +1,278 @@
+package com.netradius.protectpay;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact store of payers held outside of the heap, keyed by payer account ID. Each payer is kept as a
+ * fixed layout record of under 300 bytes in a direct buffer. Only the payer account IDs remain on the
+ * heap. See {@link ProtectPayPaymentMethodStore} for how fields are stored.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayPayerStore {
+
+	public static final int DEFAULT_RECORDS_PER_CHUNK = 16384;
+
+	private static final OffHeapRecords.Layout LAYOUT = new OffHeapRecords.Layout();
+	private static final int PAYER_ACCOUNT_ID = LAYOUT.string(16);
+	private static final int EMAIL_ADDRESS = LAYOUT.string(100);
+	private static final int EXTERNAL_ID1 = LAYOUT.string(50);
+	private static final int EXTERNAL_ID2 = LAYOUT.string(50);
+	private static final int ACCOUNT_NAME = LAYOUT.string(50);
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final OffHeapRecords records;
+
+	/**
+	 * Creates a new store which allocates {@link #DEFAULT_RECORDS_PER_CHUNK} records at a time.
+	 */
+	public ProtectPayPayerStore() {
+		this(DEFAULT_RECORDS_PER_CHUNK);
+	}
+
+	/**
+	 * Creates a new store.
+	 *
+	 * @param recordsPerChunk the number of records allocated at a time
+	 */
+	public ProtectPayPayerStore(int recordsPerChunk) {
+		records = new OffHeapRecords(LAYOUT, recordsPerChunk);
+	}
+
+	/**
+	 * Returns the size of a record.
+	 *
+	 * @return the record size in bytes
+	 */
+	public static int getRecordSize() {
+		return LAYOUT.size();
+	}
+
+	/**
+	 * Adds or replaces a payer.
+	 *
+	 * @param payer the payer, which must have a payer account ID
+	 */
+	public void put(ProtectPayPayer payer) {
+		String payerAccountId = payer.getPayerAccountId();
+		if (payerAccountId == null) {
+			throw new IllegalArgumentException("Payer account ID may not be null");
+		}
+		lock.writeLock().lock();
+		try {
+			int slot = records.allocate(payerAccountId);
+			records.putString(slot, PAYER_ACCOUNT_ID, 16, payerAccountId);
+			records.putString(slot, EMAIL_ADDRESS, 100, payer.getEmailAddress());
+			records.putString(slot, EXTERNAL_ID1, 50, payer.getExternalId1());
+			records.putString(slot, EXTERNAL_ID2, 50, payer.getExternalId2());
+			records.putString(slot, ACCOUNT_NAME, 50, payer.getAccountName());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return a new instance holding the payer or null if not stored
+	 */
+	public ProtectPayPayer get(String payerAccountId) {
+		lock.readLock().lock();
+		try {
+			int slot = records.slot(payerAccountId);
+			return slot < 0 ? null : read(slot);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private ProtectPayPayer read(int slot) {
+		ProtectPayPayer payer = new ProtectPayPayer();
+		payer.setPayerAccountId(records.getString(slot, PAYER_ACCOUNT_ID));
+		payer.setEmailAddress(records.getString(slot, EMAIL_ADDRESS));
+		payer.setExternalId1(records.getString(slot, EXTERNAL_ID1));
+		payer.setExternalId2(records.getString(slot, EXTERNAL_ID2));
+		payer.setAccountName(records.getString(slot, ACCOUNT_NAME));
+		return payer;
+	}
+
+	/**
+	 * Returns true if a payer is stored.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return true if stored, false if otherwise
+	 */
+	public boolean contains(String payerAccountId) {
+		lock.readLock().lock();
+		try {
+			return records.slot(payerAccountId) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return true if the payer was stored, false if otherwise
+	 */
+	public boolean remove(String payerAccountId) {
+		lock.writeLock().lock();
+		try {
+			return records.release(payerAccountId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes every payer. Memory already allocated is kept for reuse.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			records.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of payers stored.
+	 *
+	 * @return the number of payers
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return records.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated outside of the heap.
+	 *
+	 * @return the allocated bytes
+	 */
+	public long getAllocatedBytes() {
+		lock.readLock().lock();
+		try {
+			return records.getAllocatedBytes();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Creates a new view over this store.
+	 *
+	 * @return the view
+	 */
+	public View view() {
+		return new View();
+	}
+
+	/**
+	 * Reads the fields of one stored payer at a time without creating a ProtectPayPayer. A view may be
+	 * moved between payers any number of times. Views are not thread safe and each read takes the store's
+	 * read lock.
+	 */
+	public class View {
+
+		private String payerAccountId;
+		private int slot = -1;
+
+		private View() {
+		}
+
+		/**
+		 * Moves this view to a payer.
+		 *
+		 * @param payerAccountId the payer account ID
+		 * @return true if the payer is stored, false if otherwise
+		 */
+		public boolean moveTo(String payerAccountId) {
+			lock.readLock().lock();
+			try {
+				this.slot = records.slot(payerAccountId);
+				this.payerAccountId = slot < 0 ? null : payerAccountId;
+				return slot >= 0;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		private String string(int offset) {
+			lock.readLock().lock();
+			try {
+				// The record may have been removed or its slot reused since the view was moved
+				int current = payerAccountId == null ? -1 : records.slot(payerAccountId);
+				if (current < 0 || current != slot) {
+					throw new IllegalStateException("View is not on a stored payer");
+				}
+				return records.getString(current, offset);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		/**
+		 * Returns the payer account ID.
+		 *
+		 * @return the payer account ID
+		 */
+		public String getPayerAccountId() {
+			return payerAccountId;
+		}
+
+		/**
+		 * Returns the email address.
+		 *
+		 * @return the email address
+		 */
+		public String getEmailAddress() {
+			return string(EMAIL_ADDRESS);
+		}
+
+		/**
+		 * Returns the first external ID.
+		 *
+		 * @return the first external ID
+		 */
+		public String getExternalId1() {
+			return string(EXTERNAL_ID1);
+		}
+
+		/**
+		 * Returns the second external ID.
+		 *
+		 * @return the second external ID
+		 */
+		public String getExternalId2() {
+			return string(EXTERNAL_ID2);
+		}
+
+		/**
+		 * Returns the account name.
+		 *
+		 * @return the account name
+		 */
+		public String getAccountName() {
+			return string(ACCOUNT_NAME);
+		}
+
+		/**
+		 * Returns a new instance holding the payer this view is on.
+		 *
+		 * @return the payer
+		 */
+		public ProtectPayPayer toPayer() {
+			return get(payerAccountId);
+		}
+	}
+}
@@ -363,8 +363,6 @@ public class ProtectPayPaymentMethod implements Serializable {
 	 * @return constraint violations
 	 */
 	public Set<ConstraintViolation<ProtectPayPaymentMethod>> validate() {
-		ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
-		Validator validator = factory.getValidator();
-		return validator.validate(this, getClass());
+		return ProtectPayPaymentMethodValidator.validate(this);
 	}
 }
@@ -0,0 +1,265 @@
+package com.netradius.protectpay;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caches the payment methods of payers so repeated lookups do not each cost a request. Entries expire
+ * after a fixed time to live and the least recently used entries are evicted once the cache is full.
+ * <p>
+ * Creating, updating or deleting a payment method or deleting a payer through a client using this cache
+ * invalidates the payer's entry. Changes made through other clients or ProPay's own tools are only seen
+ * once the entry expires, so the time to live should be kept short where that matters.
+ * <p>
+ * The model classes are mutable, so payment methods are copied on the way in and on the way out.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayPaymentMethodCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final long DEFAULT_TTL = 60000;
+
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final Lock lock = new ReentrantLock();
+	private final LinkedHashMap<String, Entry> entries;
+
+	// Bumped on every invalidation so a lookup which started before it does not cache a stale result
+	private final AtomicLong version = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * Creates a new cache holding up to {@link #DEFAULT_MAX_ENTRIES} payers for {@link #DEFAULT_TTL}
+	 * milliseconds.
+	 */
+	public ProtectPayPaymentMethodCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+	}
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxEntries the maximum number of payers held
+	 * @param ttl the time to live of an entry in milliseconds
+	 */
+	public ProtectPayPaymentMethodCache(int maxEntries, long ttl) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Max entries must be at least 1");
+		}
+		if (ttl < 1) {
+			throw new IllegalArgumentException("TTL must be at least 1");
+		}
+		this.maxEntries = maxEntries;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > ProtectPayPaymentMethodCache.this.maxEntries) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the maximum number of payers held.
+	 *
+	 * @return the maximum number of entries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Returns the time to live of an entry.
+	 *
+	 * @return the time to live in milliseconds
+	 */
+	public long getTtl() {
+		return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+	}
+
+	/**
+	 * Returns copies of the cached payment methods of a payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return the payment methods or null if none are cached
+	 */
+	List<ProtectPayPaymentMethod> get(String payerAccountId) {
+		Entry entry = lookup(payerAccountId);
+		return entry == null ? null : Copies.paymentMethods(entry.paymentMethods);
+	}
+
+	/**
+	 * Returns a copy of a cached payment method.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @param paymentMethodId the payment method ID
+	 * @return the payment method or null if the payer's payment methods are not cached or do not include it
+	 */
+	ProtectPayPaymentMethod get(String payerAccountId, String paymentMethodId) {
+		Entry entry = lookup(payerAccountId);
+		if (entry != null) {
+			for (ProtectPayPaymentMethod paymentMethod : entry.paymentMethods) {
+				if (paymentMethodId.equals(paymentMethod.getPaymentMethodId())) {
+					return Copies.paymentMethod(paymentMethod);
+				}
+			}
+		}
+		return null;
+	}
+
+	private Entry lookup(String payerAccountId) {
+		if (payerAccountId == null) {
+			return null;
+		}
+		lock.lock();
+		try {
+			Entry entry = entries.get(payerAccountId);
+			if (entry != null && System.nanoTime() - entry.expires >= 0) {
+				entries.remove(payerAccountId);
+				expirations.increment();
+				entry = null;
+			}
+			if (entry == null) {
+				misses.increment();
+			} else {
+				hits.increment();
+			}
+			return entry;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the version to pass to {@link #put(String, List, long)} once a lookup completes.
+	 *
+	 * @return the current version
+	 */
+	long version() {
+		return version.get();
+	}
+
+	/**
+	 * Caches copies of the payment methods of a payer, unless the cache was invalidated since the lookup
+	 * began.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @param paymentMethods the payment methods
+	 * @param version the version returned by {@link #version()} before the lookup began
+	 */
+	void put(String payerAccountId, List<ProtectPayPaymentMethod> paymentMethods, long version) {
+		if (payerAccountId == null) {
+			return;
+		}
+		Entry entry = new Entry(Copies.paymentMethods(paymentMethods), System.nanoTime() + ttlNanos);
+		lock.lock();
+		try {
+			if (this.version.get() == version) {
+				entries.put(payerAccountId, entry);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the cached payment methods of a payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 */
+	public void invalidate(String payerAccountId) {
+		lock.lock();
+		try {
+			version.incrementAndGet();
+			if (entries.remove(payerAccountId) != null) {
+				invalidations.increment();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all cached payment methods.
+	 */
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			version.incrementAndGet();
+			invalidations.add(entries.size());
+			entries.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes expired entries. Expired entries are otherwise removed when next looked up or evicted.
+	 *
+	 * @return the number of entries removed
+	 */
+	public int purge() {
+		int count = 0;
+		lock.lock();
+		try {
+			long now = System.nanoTime();
+			for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+				if (now - i.next().expires >= 0) {
+					i.remove();
+					count++;
+				}
+			}
+			expirations.add(count);
+		} finally {
+			lock.unlock();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the cache metrics.
+	 *
+	 * @return the metrics
+	 */
+	public ProtectPayCacheStats getStats() {
+		int size;
+		lock.lock();
+		try {
+			size = entries.size();
+		} finally {
+			lock.unlock();
+		}
+		return new ProtectPayCacheStats(size, maxEntries, hits.sum(), misses.sum(), evictions.sum(),
+				expirations.sum(), invalidations.sum());
+	}
+
+	private static class Entry {
+
+		private final List<ProtectPayPaymentMethod> paymentMethods;
+		private final long expires;
+
+		Entry(List<ProtectPayPaymentMethod> paymentMethods, long expires) {
+			this.paymentMethods = paymentMethods;
+			this.expires = expires;
+		}
+	}
+}
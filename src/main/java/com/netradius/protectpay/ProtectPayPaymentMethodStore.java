@@ -0,0 +1,442 @@
+package com.netradius.protectpay;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact store of payment methods held outside of the heap, keyed by payment method ID. Each payment
+ * method, including its billing information, is kept as a fixed layout record of about 650 bytes in a
+ * direct buffer rather than as a graph of a dozen objects, which keeps millions of payment methods out of
+ * the way of the garbage collector. Only the payment method IDs remain on the heap.
+ * <p>
+ * Enums are stored as single bytes and strings as raw bytes in slots sized by the field limits of the
+ * model classes. {@link #get(String)} returns a new ProtectPayPaymentMethod, a {@link View} reads fields
+ * in place without creating one.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayPaymentMethodStore {
+
+	public static final int DEFAULT_RECORDS_PER_CHUNK = 16384;
+
+	private static final long NULL_DATE = Long.MIN_VALUE;
+
+	private static final OffHeapRecords.Layout LAYOUT = new OffHeapRecords.Layout();
+	private static final int PAYMENT_METHOD_ID = LAYOUT.string(36);
+	private static final int PAYER_ACCOUNT_ID = LAYOUT.string(16);
+	private static final int ACCOUNT_NAME = LAYOUT.string(50);
+	private static final int ACCOUNT_NUMBER = LAYOUT.string(25);
+	private static final int BANK_NUMBER = LAYOUT.string(50);
+	private static final int DESCRIPTION = LAYOUT.string(50);
+	private static final int EXPIRATION_DATE = LAYOUT.string(4);
+	private static final int ACCOUNT_COUNTRY_CODE = LAYOUT.bytes(1);
+	private static final int DUPLICATE_ACTION = LAYOUT.bytes(1);
+	private static final int TYPE = LAYOUT.bytes(1);
+	private static final int PAYER_PROTECTED = LAYOUT.bytes(1);
+	private static final int HAS_PRIORITY = LAYOUT.bytes(1);
+	private static final int PRIORITY = LAYOUT.bytes(4);
+	private static final int DATE_CREATED = LAYOUT.bytes(8);
+	private static final int HAS_BILLING = LAYOUT.bytes(1);
+	private static final int ADDRESS1 = LAYOUT.string(50);
+	private static final int ADDRESS2 = LAYOUT.string(50);
+	private static final int ADDRESS3 = LAYOUT.string(50);
+	private static final int CITY = LAYOUT.string(50);
+	private static final int STATE = LAYOUT.string(3);
+	private static final int ZIP_CODE = LAYOUT.string(50);
+	private static final int COUNTRY = LAYOUT.bytes(1);
+	private static final int EMAIL_ADDRESS = LAYOUT.string(100);
+	private static final int TELEPHONE_NUMBER = LAYOUT.string(20);
+
+	private static final ProtectPayPaymentMethod.AccountCountryCode[] ACCOUNT_COUNTRY_CODES =
+			ProtectPayPaymentMethod.AccountCountryCode.values();
+	private static final ProtectPayPaymentMethod.DuplicateAction[] DUPLICATE_ACTIONS =
+			ProtectPayPaymentMethod.DuplicateAction.values();
+	private static final ProtectPayPaymentMethod.Type[] TYPES = ProtectPayPaymentMethod.Type.values();
+	private static final ProtectPayBillingInfo.Country[] COUNTRIES = ProtectPayBillingInfo.Country.values();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final OffHeapRecords records;
+
+	/**
+	 * Creates a new store which allocates {@link #DEFAULT_RECORDS_PER_CHUNK} records at a time.
+	 */
+	public ProtectPayPaymentMethodStore() {
+		this(DEFAULT_RECORDS_PER_CHUNK);
+	}
+
+	/**
+	 * Creates a new store.
+	 *
+	 * @param recordsPerChunk the number of records allocated at a time
+	 */
+	public ProtectPayPaymentMethodStore(int recordsPerChunk) {
+		records = new OffHeapRecords(LAYOUT, recordsPerChunk);
+	}
+
+	/**
+	 * Returns the size of a record.
+	 *
+	 * @return the record size in bytes
+	 */
+	public static int getRecordSize() {
+		return LAYOUT.size();
+	}
+
+	/**
+	 * Adds or replaces a payment method.
+	 *
+	 * @param paymentMethod the payment method, which must have a payment method ID
+	 */
+	public void put(ProtectPayPaymentMethod paymentMethod) {
+		String paymentMethodId = paymentMethod.getPaymentMethodId();
+		if (paymentMethodId == null) {
+			throw new IllegalArgumentException("Payment method ID may not be null");
+		}
+		lock.writeLock().lock();
+		try {
+			int slot = records.allocate(paymentMethodId);
+			records.putString(slot, PAYMENT_METHOD_ID, 36, paymentMethodId);
+			records.putString(slot, PAYER_ACCOUNT_ID, 16, paymentMethod.getPayerAccountId());
+			records.putString(slot, ACCOUNT_NAME, 50, paymentMethod.getAccountName());
+			records.putString(slot, ACCOUNT_NUMBER, 25, paymentMethod.getAccountNumber());
+			records.putString(slot, BANK_NUMBER, 50, paymentMethod.getBankNumber());
+			records.putString(slot, DESCRIPTION, 50, paymentMethod.getDescription());
+			records.putString(slot, EXPIRATION_DATE, 4, paymentMethod.getExpirationDate());
+			records.putEnum(slot, ACCOUNT_COUNTRY_CODE, paymentMethod.getAccountCountryCode());
+			records.putEnum(slot, DUPLICATE_ACTION, paymentMethod.getDuplicateAction());
+			records.putEnum(slot, TYPE, paymentMethod.getType());
+			records.putBoolean(slot, PAYER_PROTECTED, paymentMethod.getPayerProtected());
+			Integer priority = paymentMethod.getPriority();
+			records.putByte(slot, HAS_PRIORITY, priority == null ? (byte)0 : (byte)1);
+			records.putInt(slot, PRIORITY, priority == null ? 0 : priority);
+			Date dateCreated = paymentMethod.getDateCreated();
+			records.putLong(slot, DATE_CREATED, dateCreated == null ? NULL_DATE : dateCreated.getTime());
+			ProtectPayBillingInfo billing = paymentMethod.getBilling();
+			records.putByte(slot, HAS_BILLING, billing == null ? (byte)0 : (byte)1);
+			if (billing != null) {
+				records.putString(slot, ADDRESS1, 50, billing.getAddress1());
+				records.putString(slot, ADDRESS2, 50, billing.getAddress2());
+				records.putString(slot, ADDRESS3, 50, billing.getAddress3());
+				records.putString(slot, CITY, 50, billing.getCity());
+				records.putString(slot, STATE, 3, billing.getState());
+				records.putString(slot, ZIP_CODE, 50, billing.getZipCode());
+				records.putEnum(slot, COUNTRY, billing.getCountry());
+				records.putString(slot, EMAIL_ADDRESS, 100, billing.getEmailAddress());
+				records.putString(slot, TELEPHONE_NUMBER, 20, billing.getTelephoneNumber());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a payment method.
+	 *
+	 * @param paymentMethodId the payment method ID
+	 * @return a new instance holding the payment method or null if not stored
+	 */
+	public ProtectPayPaymentMethod get(String paymentMethodId) {
+		lock.readLock().lock();
+		try {
+			int slot = records.slot(paymentMethodId);
+			return slot < 0 ? null : read(slot);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns every payment method of a payer. This scans the whole store.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return new instances holding the payment methods
+	 */
+	public List<ProtectPayPaymentMethod> getByPayer(String payerAccountId) {
+		List<ProtectPayPaymentMethod> found = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (String paymentMethodId : records.keys()) {
+				int slot = records.slot(paymentMethodId);
+				if (payerAccountId.equals(records.getString(slot, PAYER_ACCOUNT_ID))) {
+					found.add(read(slot));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return found;
+	}
+
+	private ProtectPayPaymentMethod read(int slot) {
+		ProtectPayPaymentMethod paymentMethod = new ProtectPayPaymentMethod();
+		paymentMethod.setPaymentMethodId(records.getString(slot, PAYMENT_METHOD_ID));
+		paymentMethod.setPayerAccountId(records.getString(slot, PAYER_ACCOUNT_ID));
+		paymentMethod.setAccountName(records.getString(slot, ACCOUNT_NAME));
+		paymentMethod.setAccountNumber(records.getString(slot, ACCOUNT_NUMBER));
+		paymentMethod.setBankNumber(records.getString(slot, BANK_NUMBER));
+		paymentMethod.setDescription(records.getString(slot, DESCRIPTION));
+		paymentMethod.setExpirationDate(records.getString(slot, EXPIRATION_DATE));
+		paymentMethod.setAccountCountryCode(records.getEnum(slot, ACCOUNT_COUNTRY_CODE, ACCOUNT_COUNTRY_CODES));
+		paymentMethod.setDuplicateAction(records.getEnum(slot, DUPLICATE_ACTION, DUPLICATE_ACTIONS));
+		paymentMethod.setType(records.getEnum(slot, TYPE, TYPES));
+		paymentMethod.setPayerProtected(records.getBoolean(slot, PAYER_PROTECTED));
+		if (records.getByte(slot, HAS_PRIORITY) != 0) {
+			paymentMethod.setPriority(records.getInt(slot, PRIORITY));
+		}
+		long dateCreated = records.getLong(slot, DATE_CREATED);
+		if (dateCreated != NULL_DATE) {
+			paymentMethod.setDateCreated(new Date(dateCreated));
+		}
+		if (records.getByte(slot, HAS_BILLING) != 0) {
+			ProtectPayBillingInfo billing = new ProtectPayBillingInfo();
+			billing.setAddress1(records.getString(slot, ADDRESS1));
+			billing.setAddress2(records.getString(slot, ADDRESS2));
+			billing.setAddress3(records.getString(slot, ADDRESS3));
+			billing.setCity(records.getString(slot, CITY));
+			billing.setState(records.getString(slot, STATE));
+			billing.setZipCode(records.getString(slot, ZIP_CODE));
+			billing.setCountry(records.getEnum(slot, COUNTRY, COUNTRIES));
+			billing.setEmailAddress(records.getString(slot, EMAIL_ADDRESS));
+			billing.setTelephoneNumber(records.getString(slot, TELEPHONE_NUMBER));
+			paymentMethod.setBilling(billing);
+		}
+		return paymentMethod;
+	}
+
+	/**
+	 * Returns true if a payment method is stored.
+	 *
+	 * @param paymentMethodId the payment method ID
+	 * @return true if stored, false if otherwise
+	 */
+	public boolean contains(String paymentMethodId) {
+		lock.readLock().lock();
+		try {
+			return records.slot(paymentMethodId) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a payment method.
+	 *
+	 * @param paymentMethodId the payment method ID
+	 * @return true if the payment method was stored, false if otherwise
+	 */
+	public boolean remove(String paymentMethodId) {
+		lock.writeLock().lock();
+		try {
+			return records.release(paymentMethodId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes every payment method. Memory already allocated is kept for reuse.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			records.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of payment methods stored.
+	 *
+	 * @return the number of payment methods
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return records.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated outside of the heap.
+	 *
+	 * @return the allocated bytes
+	 */
+	public long getAllocatedBytes() {
+		lock.readLock().lock();
+		try {
+			return records.getAllocatedBytes();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Creates a new view over this store.
+	 *
+	 * @return the view
+	 */
+	public View view() {
+		return new View();
+	}
+
+	/**
+	 * Reads the fields of one stored payment method at a time without creating a ProtectPayPaymentMethod.
+	 * A view may be moved between payment methods any number of times. Views are not thread safe and each
+	 * read takes the store's read lock.
+	 */
+	public class View {
+
+		private String paymentMethodId;
+		private int slot = -1;
+
+		private View() {
+		}
+
+		/**
+		 * Moves this view to a payment method.
+		 *
+		 * @param paymentMethodId the payment method ID
+		 * @return true if the payment method is stored, false if otherwise
+		 */
+		public boolean moveTo(String paymentMethodId) {
+			lock.readLock().lock();
+			try {
+				this.slot = records.slot(paymentMethodId);
+				this.paymentMethodId = slot < 0 ? null : paymentMethodId;
+				return slot >= 0;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		private int slot() {
+			// The record may have been removed or its slot reused since the view was moved
+			int current = paymentMethodId == null ? -1 : records.slot(paymentMethodId);
+			if (current < 0 || current != slot) {
+				throw new IllegalStateException("View is not on a stored payment method");
+			}
+			return current;
+		}
+
+		private String string(int offset) {
+			lock.readLock().lock();
+			try {
+				return records.getString(slot(), offset);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		private byte b(int offset) {
+			lock.readLock().lock();
+			try {
+				return records.getByte(slot(), offset);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		/**
+		 * Returns the payment method ID.
+		 *
+		 * @return the payment method ID
+		 */
+		public String getPaymentMethodId() {
+			return paymentMethodId;
+		}
+
+		/**
+		 * Returns the payer account ID.
+		 *
+		 * @return the payer account ID
+		 */
+		public String getPayerAccountId() {
+			return string(PAYER_ACCOUNT_ID);
+		}
+
+		/**
+		 * Returns the account name.
+		 *
+		 * @return the account name
+		 */
+		public String getAccountName() {
+			return string(ACCOUNT_NAME);
+		}
+
+		/**
+		 * Returns the account number.
+		 *
+		 * @return the account number
+		 */
+		public String getAccountNumber() {
+			return string(ACCOUNT_NUMBER);
+		}
+
+		/**
+		 * Returns the description.
+		 *
+		 * @return the description
+		 */
+		public String getDescription() {
+			return string(DESCRIPTION);
+		}
+
+		/**
+		 * Returns the MMYY expiration date.
+		 *
+		 * @return the expiration date
+		 */
+		public String getExpirationDate() {
+			return string(EXPIRATION_DATE);
+		}
+
+		/**
+		 * Returns the payment method type.
+		 *
+		 * @return the type
+		 */
+		public ProtectPayPaymentMethod.Type getType() {
+			int b = b(TYPE);
+			return b == 0 ? null : TYPES[b - 1];
+		}
+
+		/**
+		 * Returns the billing country.
+		 *
+		 * @return the country or null if there is no billing information
+		 */
+		public ProtectPayBillingInfo.Country getCountry() {
+			int b = b(HAS_BILLING) == 0 ? 0 : b(COUNTRY);
+			return b == 0 ? null : COUNTRIES[b - 1];
+		}
+
+		/**
+		 * Returns the billing zip code.
+		 *
+		 * @return the zip code or null if there is no billing information
+		 */
+		public String getZipCode() {
+			return b(HAS_BILLING) == 0 ? null : string(ZIP_CODE);
+		}
+
+		/**
+		 * Returns a new instance holding the payment method this view is on.
+		 *
+		 * @return the payment method
+		 */
+		public ProtectPayPaymentMethod toPaymentMethod() {
+			lock.readLock().lock();
+			try {
+				return read(slot());
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+	}
+}
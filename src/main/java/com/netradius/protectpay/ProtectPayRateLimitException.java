@@ -0,0 +1,15 @@
+package com.netradius.protectpay;
+
+/**
+ * Thrown when a request is rejected by a {@link ProtectPayRateLimiter}.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRateLimitException extends ProtectPayRejectedException {
+
+	private static final long serialVersionUID = -6139386405263287162L;
+
+	public ProtectPayRateLimitException(ProtectPayOperation operation, String message) {
+		super(operation, message);
+	}
+}
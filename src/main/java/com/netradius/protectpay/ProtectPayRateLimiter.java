@@ -0,0 +1,337 @@
+package com.netradius.protectpay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free token bucket rate limiter keyed by biller account and operation group. Each bucket refills at
+ * a fixed rate and holds up to a configured burst of permits. Limits may be set for an operation group
+ * across all biller accounts and overridden for individual biller accounts at any time. Operation groups
+ * without a limit are not limited.
+ * <p>
+ * A single limiter may be shared by many clients, see
+ * {@link ProtectPayClientRegistry#setRateLimiter(ProtectPayRateLimiter)}.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRateLimiter {
+
+	/**
+	 * What to do when no permit is available.
+	 */
+	public enum Mode {
+
+		/**
+		 * Wait for a permit, up to the maximum wait.
+		 */
+		BLOCK,
+
+		/**
+		 * Reject the request immediately.
+		 */
+		FAIL_FAST
+	}
+
+	public static final long DEFAULT_MAX_WAIT = 30000;
+
+	private final ConcurrentMap<ProtectPayOperation.Group, Limit> defaults = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Limit> overrides = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+	private volatile Mode mode;
+	private volatile long maxWait = DEFAULT_MAX_WAIT;
+
+	/**
+	 * Creates a new limiter with no limits which blocks when no permit is available.
+	 */
+	public ProtectPayRateLimiter() {
+		this(Mode.BLOCK);
+	}
+
+	/**
+	 * Creates a new limiter with no limits.
+	 *
+	 * @param mode what to do when no permit is available
+	 */
+	public ProtectPayRateLimiter(Mode mode) {
+		setMode(mode);
+	}
+
+	private static String key(String billerAccountId, ProtectPayOperation.Group group) {
+		return billerAccountId + "/" + group.name();
+	}
+
+	private Limit resolve(String billerAccountId, ProtectPayOperation.Group group) {
+		Limit limit = overrides.get(key(billerAccountId, group));
+		return limit == null ? defaults.get(group) : limit;
+	}
+
+	private void refresh() {
+		for (Bucket bucket : buckets.values()) {
+			Limit limit = resolve(bucket.billerAccountId, bucket.group);
+			if (limit == null) {
+				buckets.remove(key(bucket.billerAccountId, bucket.group), bucket);
+			} else {
+				bucket.limit = limit;
+			}
+		}
+	}
+
+	/**
+	 * Returns what to do when no permit is available.
+	 *
+	 * @return the mode
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets what to do when no permit is available.
+	 *
+	 * @param mode the mode
+	 */
+	public void setMode(Mode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("Mode may not be null");
+		}
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns the maximum time a request waits for a permit in {@link Mode#BLOCK} mode.
+	 *
+	 * @return the maximum wait in milliseconds
+	 */
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Sets the maximum time a request waits for a permit in {@link Mode#BLOCK} mode. Requests which would
+	 * wait longer are rejected immediately. Defaults to {@link #DEFAULT_MAX_WAIT}.
+	 *
+	 * @param maxWait the maximum wait in milliseconds
+	 */
+	public void setMaxWait(long maxWait) {
+		if (maxWait < 0) {
+			throw new IllegalArgumentException("Max wait may not be negative");
+		}
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Sets the limit for an operation group for all biller accounts without their own limit.
+	 *
+	 * @param group the operation group
+	 * @param permitsPerSecond the rate permits are added at
+	 * @param burst the maximum number of permits held
+	 */
+	public void setLimit(ProtectPayOperation.Group group, double permitsPerSecond, int burst) {
+		defaults.put(group, new Limit(permitsPerSecond, burst));
+		refresh();
+	}
+
+	/**
+	 * Sets the limit for an operation group for a single biller account.
+	 *
+	 * @param billerAccountId the biller account ID
+	 * @param group the operation group
+	 * @param permitsPerSecond the rate permits are added at
+	 * @param burst the maximum number of permits held
+	 */
+	public void setLimit(String billerAccountId, ProtectPayOperation.Group group, double permitsPerSecond, int burst) {
+		overrides.put(key(billerAccountId, group), new Limit(permitsPerSecond, burst));
+		refresh();
+	}
+
+	/**
+	 * Removes the limit for an operation group. Biller accounts with their own limit are unaffected.
+	 *
+	 * @param group the operation group
+	 */
+	public void removeLimit(ProtectPayOperation.Group group) {
+		defaults.remove(group);
+		refresh();
+	}
+
+	/**
+	 * Removes the limit for an operation group for a single biller account, which falls back to the limit
+	 * for the operation group if one is set.
+	 *
+	 * @param billerAccountId the biller account ID
+	 * @param group the operation group
+	 */
+	public void removeLimit(String billerAccountId, ProtectPayOperation.Group group) {
+		overrides.remove(key(billerAccountId, group));
+		refresh();
+	}
+
+	private Bucket getBucket(String billerAccountId, ProtectPayOperation.Group group) {
+		String key = key(billerAccountId, group);
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			Limit limit = resolve(billerAccountId, group);
+			if (limit == null) {
+				return null;
+			}
+			bucket = buckets.computeIfAbsent(key, k -> new Bucket(billerAccountId, group, limit));
+		}
+		return bucket;
+	}
+
+	/**
+	 * Acquires a permit for a request, waiting if needed in {@link Mode#BLOCK} mode.
+	 *
+	 * @param billerAccountId the biller account ID making the request
+	 * @param operation the operation requested
+	 * @throws ProtectPayRateLimitException if no permit is available in {@link Mode#FAIL_FAST} mode, if the
+	 *                                      wait would exceed the maximum wait or if interrupted while waiting
+	 */
+	public void acquire(String billerAccountId, ProtectPayOperation operation) {
+		Bucket bucket = getBucket(billerAccountId, operation.getGroup());
+		if (bucket != null) {
+			bucket.acquire(operation, mode == Mode.BLOCK ? TimeUnit.MILLISECONDS.toNanos(maxWait) : 0);
+		}
+	}
+
+	/**
+	 * Acquires a permit for a request if one is available now, regardless of the mode.
+	 *
+	 * @param billerAccountId the biller account ID making the request
+	 * @param operation the operation requested
+	 * @return true if a permit was acquired, false if otherwise
+	 */
+	public boolean tryAcquire(String billerAccountId, ProtectPayOperation operation) {
+		Bucket bucket = getBucket(billerAccountId, operation.getGroup());
+		return bucket == null || bucket.reserve(0) == 0;
+	}
+
+	/**
+	 * Returns the metrics for a biller account and operation group.
+	 *
+	 * @param billerAccountId the biller account ID
+	 * @param group the operation group
+	 * @return the metrics or null if no limit applies or no request has been made
+	 */
+	public ProtectPayRateLimiterStats getStats(String billerAccountId, ProtectPayOperation.Group group) {
+		Bucket bucket = buckets.get(key(billerAccountId, group));
+		return bucket == null ? null : bucket.stats();
+	}
+
+	/**
+	 * Returns the metrics for every biller account and operation group a limit has been applied to.
+	 *
+	 * @return the metrics
+	 */
+	public List<ProtectPayRateLimiterStats> getStats() {
+		List<ProtectPayRateLimiterStats> stats = new ArrayList<>(buckets.size());
+		for (Bucket bucket : buckets.values()) {
+			stats.add(bucket.stats());
+		}
+		return stats;
+	}
+
+	private static class Limit {
+
+		private final double permitsPerSecond;
+		private final int burst;
+		private final long interval;
+
+		Limit(double permitsPerSecond, int burst) {
+			if (!(permitsPerSecond > 0)) {
+				throw new IllegalArgumentException("Permits per second must be greater than 0");
+			}
+			if (burst < 1) {
+				throw new IllegalArgumentException("Burst must be at least 1");
+			}
+			this.permitsPerSecond = permitsPerSecond;
+			this.burst = burst;
+			this.interval = Math.max(1, (long)(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		}
+	}
+
+	private static class Bucket {
+
+		private final String billerAccountId;
+		private final ProtectPayOperation.Group group;
+		private volatile Limit limit;
+
+		// The time at which every permit handed out so far has been paid for. The bucket is full when this
+		// is burst intervals or more in the past.
+		private final AtomicLong paidUntil;
+
+		private final LongAdder granted = new LongAdder();
+		private final LongAdder delayed = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private final AtomicLong longestWait = new AtomicLong();
+
+		Bucket(String billerAccountId, ProtectPayOperation.Group group, Limit limit) {
+			this.billerAccountId = billerAccountId;
+			this.group = group;
+			this.limit = limit;
+			this.paidUntil = new AtomicLong(System.nanoTime() - limit.burst * limit.interval);
+		}
+
+		/**
+		 * Reserves a permit if it becomes available within the maximum wait.
+		 *
+		 * @return the nanoseconds to wait before using the permit or -1 if none was reserved
+		 */
+		long reserve(long limitNanos) {
+			for (;;) {
+				Limit l = limit;
+				long now = System.nanoTime();
+				long current = paidUntil.get();
+				long full = now - l.burst * l.interval;
+				long next = (current - full > 0 ? current : full) + l.interval;
+				long wait = next - now;
+				if (wait < 0) {
+					wait = 0;
+				}
+				if (wait > limitNanos) {
+					rejected.increment();
+					return -1;
+				}
+				if (paidUntil.compareAndSet(current, next)) {
+					granted.increment();
+					if (wait > 0) {
+						delayed.increment();
+						waitNanos.add(wait);
+						longestWait.accumulateAndGet(wait, Math::max);
+					}
+					return wait;
+				}
+			}
+		}
+
+		void acquire(ProtectPayOperation operation, long limitNanos) {
+			long wait = reserve(limitNanos);
+			if (wait < 0) {
+				throw new ProtectPayRateLimitException(operation, "Rate limit of " + limit.permitsPerSecond
+						+ "/s exceeded for " + group + " operations of biller account [" + billerAccountId + "]");
+			}
+			long deadline = System.nanoTime() + wait;
+			for (long remaining = wait; remaining > 0; remaining = deadline - System.nanoTime()) {
+				LockSupport.parkNanos(this, remaining);
+				if (Thread.currentThread().isInterrupted()) {
+					throw new ProtectPayRateLimitException(operation, "Interrupted waiting for a permit for "
+							+ group + " operations of biller account [" + billerAccountId + "]");
+				}
+			}
+		}
+
+		ProtectPayRateLimiterStats stats() {
+			Limit l = limit;
+			return new ProtectPayRateLimiterStats(billerAccountId, group, l.permitsPerSecond, l.burst,
+					granted.sum(), delayed.sum(), rejected.sum(),
+					TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()), TimeUnit.NANOSECONDS.toMillis(longestWait.get()));
+		}
+	}
+}
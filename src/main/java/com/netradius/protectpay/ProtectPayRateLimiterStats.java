@@ -0,0 +1,141 @@
+package com.netradius.protectpay;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the metrics kept by {@link ProtectPayRateLimiter} for a biller account and operation group.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRateLimiterStats implements Serializable {
+
+	private static final long serialVersionUID = 1937512806445312409L;
+
+	private final String billerAccountId;
+	private final ProtectPayOperation.Group group;
+	private final double permitsPerSecond;
+	private final int burst;
+	private final long granted;
+	private final long delayed;
+	private final long rejected;
+	private final long totalWait;
+	private final long maxWait;
+
+	ProtectPayRateLimiterStats(String billerAccountId, ProtectPayOperation.Group group, double permitsPerSecond,
+			int burst, long granted, long delayed, long rejected, long totalWait, long maxWait) {
+		this.billerAccountId = billerAccountId;
+		this.group = group;
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = burst;
+		this.granted = granted;
+		this.delayed = delayed;
+		this.rejected = rejected;
+		this.totalWait = totalWait;
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Returns the biller account ID.
+	 *
+	 * @return the biller account ID
+	 */
+	public String getBillerAccountId() {
+		return billerAccountId;
+	}
+
+	/**
+	 * Returns the operation group.
+	 *
+	 * @return the operation group
+	 */
+	public ProtectPayOperation.Group getGroup() {
+		return group;
+	}
+
+	/**
+	 * Returns the configured rate.
+	 *
+	 * @return the permits per second
+	 */
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * Returns the configured burst.
+	 *
+	 * @return the number of permits which may be granted at once
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Returns the number of permits granted, including those which had to wait.
+	 *
+	 * @return the number of permits granted
+	 */
+	public long getGranted() {
+		return granted;
+	}
+
+	/**
+	 * Returns the number of permits which were granted after waiting.
+	 *
+	 * @return the number of permits delayed
+	 */
+	public long getDelayed() {
+		return delayed;
+	}
+
+	/**
+	 * Returns the number of requests rejected.
+	 *
+	 * @return the number of requests rejected
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Returns the total time requests spent waiting for a permit.
+	 *
+	 * @return the total wait in milliseconds
+	 */
+	public long getTotalWait() {
+		return totalWait;
+	}
+
+	/**
+	 * Returns the longest time a request spent waiting for a permit.
+	 *
+	 * @return the maximum wait in milliseconds
+	 */
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Returns the average time a granted request spent waiting for a permit.
+	 *
+	 * @return the average wait in milliseconds
+	 */
+	public double getAverageWait() {
+		return granted == 0 ? 0 : (double)totalWait / granted;
+	}
+
+	@Override
+	public String toString() {
+		return "ProtectPayRateLimiterStats{" +
+				"billerAccountId='" + billerAccountId + '\'' +
+				", group=" + group +
+				", permitsPerSecond=" + permitsPerSecond +
+				", burst=" + burst +
+				", granted=" + granted +
+				", delayed=" + delayed +
+				", rejected=" + rejected +
+				", totalWait=" + totalWait +
+				", maxWait=" + maxWait +
+				'}';
+	}
+}
@@ -0,0 +1,28 @@
+package com.netradius.protectpay;
+
+/**
+ * Thrown when ProtectPayClient refuses to send a request to protect ProtectPay or itself. The request
+ * was never sent, so it is always safe to try again later.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRejectedException extends RuntimeException {
+
+	private static final long serialVersionUID = 2671533930744389123L;
+
+	private final ProtectPayOperation operation;
+
+	public ProtectPayRejectedException(ProtectPayOperation operation, String message) {
+		super(message);
+		this.operation = operation;
+	}
+
+	/**
+	 * Returns the operation which was rejected.
+	 *
+	 * @return the operation
+	 */
+	public ProtectPayOperation getOperation() {
+		return operation;
+	}
+}
@@ -0,0 +1,128 @@
+package com.netradius.protectpay;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Lets concurrent identical read requests share a single request to ProtectPay. The first caller for a
+ * key sends the request, callers arriving while it is in flight wait for it. Every caller, the first
+ * included, receives its own copy of the result or the same exception. Nothing is kept once the request completes, so unlike a cache this never
+ * returns a result older than the caller's own request.
+ * <p>
+ * Only {@link ProtectPayOperation#GET_PAYMENT_METHODS} and {@link ProtectPayOperation#GET_PAYERS} are
+ * coalesced. Keys are built from the operation, the biller account and every argument of the request,
+ * so one coalescer may be shared by clients of different billers.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRequestCoalescer {
+
+	private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	static String key(ProtectPayOperation operation, String... arguments) {
+		StringBuilder sb = new StringBuilder(operation.name());
+		for (String argument : arguments) {
+			// Null and empty are different criteria, so nulls are marked rather than left blank
+			sb.append('|');
+			if (argument == null) {
+				sb.append('\u0000');
+			} else {
+				sb.append(argument.length()).append(':').append(argument);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Performs a call unless an identical one is in flight, in which case its result is awaited.
+	 *
+	 * @param key the key identifying the operation and its arguments
+	 * @param call the call to perform
+	 * @param copier copies the result for each caller
+	 * @param <T> the result type
+	 * @return the result
+	 * @throws ProtectPayException if the request fails
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T execute(String key, ProtectPayCall<T> call, UnaryOperator<T> copier) throws ProtectPayException {
+		requests.increment();
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			coalesced.increment();
+			return copier.apply((T)await(existing));
+		}
+		try {
+			T result = call.call();
+			future.complete(result);
+			// The first caller gets a copy too, waiters copy from the result while it may already be changing its own
+			return copier.apply(result);
+		} catch (ProtectPayException | RuntimeException | Error x) {
+			future.completeExceptionally(x);
+			throw x;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	private static Object await(CompletableFuture<Object> future) throws ProtectPayException {
+		try {
+			return future.join();
+		} catch (CompletionException x) {
+			Throwable cause = x.getCause();
+			if (cause instanceof ProtectPayException) {
+				throw (ProtectPayException)cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw x;
+		}
+	}
+
+	/**
+	 * Returns the number of requests currently in flight.
+	 *
+	 * @return the number of requests in flight
+	 */
+	public int getInFlight() {
+		return inFlight.size();
+	}
+
+	/**
+	 * Returns the number of calls made, including those which shared another caller's request.
+	 *
+	 * @return the number of calls
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Returns the number of calls which shared another caller's request rather than sending their own.
+	 *
+	 * @return the number of coalesced calls
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * Returns the share of calls which shared another caller's request.
+	 *
+	 * @return the coalescing ratio between 0 and 1
+	 */
+	public double getCoalescingRatio() {
+		long total = requests.sum();
+		return total == 0 ? 0 : (double)coalesced.sum() / total;
+	}
+}
@@ -0,0 +1,225 @@
+package com.netradius.protectpay;
+
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether and when ProtectPayClient retries a failed request. Delays grow exponentially from the
+ * initial backoff up to the maximum backoff and each delay is drawn at random between zero and that value
+ * (full jitter), so clients failing together do not retry together. Retries stop once the maximum number
+ * of attempts is reached or the next attempt would start after the time budget is spent.
+ * <p>
+ * Transport failures ({@link WebServiceException} other than SOAP faults) are retryable. A
+ * ProtectPayException is terminal unless its result code has been marked as retryable. Requests
+ * rejected by the client itself, such as by a rate limiter, are never retried.
+ * <p>
+ * By default only operations which are safe to repeat are retried, see
+ * {@link ProtectPayOperation#isReadOnly()}.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRetryPolicy {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_INITIAL_BACKOFF = 100;
+	public static final long DEFAULT_MAX_BACKOFF = 2000;
+	public static final long DEFAULT_TIME_BUDGET = 10000;
+
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private volatile long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+	private volatile long maxBackoff = DEFAULT_MAX_BACKOFF;
+	private volatile long timeBudget = DEFAULT_TIME_BUDGET;
+	private volatile Set<ProtectPayOperation> operations;
+	private volatile Set<String> retryableResultCodes = Collections.emptySet();
+
+	/**
+	 * Creates a new policy which retries operations which are safe to repeat.
+	 */
+	public ProtectPayRetryPolicy() {
+		EnumSet<ProtectPayOperation> readOnly = EnumSet.noneOf(ProtectPayOperation.class);
+		for (ProtectPayOperation operation : ProtectPayOperation.values()) {
+			if (operation.isReadOnly()) {
+				readOnly.add(operation);
+			}
+		}
+		this.operations = Collections.unmodifiableSet(readOnly);
+	}
+
+	/**
+	 * Returns the maximum number of attempts, including the first.
+	 *
+	 * @return the maximum number of attempts
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Sets the maximum number of attempts, including the first. Defaults to {@link #DEFAULT_MAX_ATTEMPTS}.
+	 *
+	 * @param maxAttempts the maximum number of attempts
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Max attempts must be at least 1");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Returns the upper bound of the delay before the first retry.
+	 *
+	 * @return the initial backoff in milliseconds
+	 */
+	public long getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	/**
+	 * Sets the upper bound of the delay before the first retry. The bound doubles for each later retry.
+	 * Defaults to {@link #DEFAULT_INITIAL_BACKOFF}.
+	 *
+	 * @param initialBackoff the initial backoff in milliseconds
+	 */
+	public void setInitialBackoff(long initialBackoff) {
+		if (initialBackoff < 0) {
+			throw new IllegalArgumentException("Initial backoff may not be negative");
+		}
+		this.initialBackoff = initialBackoff;
+	}
+
+	/**
+	 * Returns the largest upper bound of the delay between attempts.
+	 *
+	 * @return the maximum backoff in milliseconds
+	 */
+	public long getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	/**
+	 * Sets the largest upper bound of the delay between attempts. Defaults to {@link #DEFAULT_MAX_BACKOFF}.
+	 *
+	 * @param maxBackoff the maximum backoff in milliseconds
+	 */
+	public void setMaxBackoff(long maxBackoff) {
+		if (maxBackoff < 0) {
+			throw new IllegalArgumentException("Max backoff may not be negative");
+		}
+		this.maxBackoff = maxBackoff;
+	}
+
+	/**
+	 * Returns the total time allowed for all attempts of a request.
+	 *
+	 * @return the time budget in milliseconds
+	 */
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * Sets the total time allowed for all attempts of a request, measured from the start of the first
+	 * attempt. No retry is started after the budget is spent. Defaults to {@link #DEFAULT_TIME_BUDGET}.
+	 *
+	 * @param timeBudget the time budget in milliseconds
+	 */
+	public void setTimeBudget(long timeBudget) {
+		if (timeBudget < 0) {
+			throw new IllegalArgumentException("Time budget may not be negative");
+		}
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * Returns the operations which are retried.
+	 *
+	 * @return the operations
+	 */
+	public Set<ProtectPayOperation> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Sets the operations which are retried. Only operations which are safe to repeat should be retried;
+	 * retrying a transaction whose response was lost may charge the payer twice.
+	 *
+	 * @param operations the operations
+	 */
+	public void setOperations(Set<ProtectPayOperation> operations) {
+		this.operations = operations.isEmpty()
+				? Collections.<ProtectPayOperation>emptySet()
+				: Collections.unmodifiableSet(EnumSet.copyOf(operations));
+	}
+
+	/**
+	 * Returns the ProtectPay result codes which are retried.
+	 *
+	 * @return the result codes
+	 */
+	public Set<String> getRetryableResultCodes() {
+		return retryableResultCodes;
+	}
+
+	/**
+	 * Sets the ProtectPay result codes which are retried. All other result codes are terminal. Defaults
+	 * to none.
+	 *
+	 * @param retryableResultCodes the result codes
+	 */
+	public void setRetryableResultCodes(Set<String> retryableResultCodes) {
+		this.retryableResultCodes = Collections.unmodifiableSet(new HashSet<>(retryableResultCodes));
+	}
+
+	/**
+	 * Returns true if the operation is retried by this policy.
+	 *
+	 * @param operation the operation
+	 * @return true if the operation is retried, false if otherwise
+	 */
+	public boolean appliesTo(ProtectPayOperation operation) {
+		return operations.contains(operation);
+	}
+
+	/**
+	 * Returns true if a request which failed with the given exception may succeed when retried.
+	 *
+	 * @param x the exception
+	 * @return true if retryable, false if terminal
+	 */
+	public boolean isRetryable(Exception x) {
+		if (x instanceof ProtectPayException) {
+			return retryableResultCodes.contains(((ProtectPayException)x).getResultCode());
+		}
+		return x instanceof WebServiceException && !(x instanceof SOAPFaultException);
+	}
+
+	/**
+	 * Returns the delay before the next attempt.
+	 *
+	 * @param attempt the number of attempts made so far
+	 * @param elapsed the time since the first attempt started in nanoseconds
+	 * @param x the exception thrown by the last attempt
+	 * @return the delay in milliseconds or -1 if the request should not be retried
+	 */
+	long nextDelay(int attempt, long elapsed, Exception x) {
+		if (attempt >= maxAttempts || !isRetryable(x)) {
+			return -1;
+		}
+		long bound = initialBackoff << Math.min(attempt - 1, 30);
+		if (bound > maxBackoff || bound < 0) {
+			bound = maxBackoff;
+		}
+		long delay = bound == 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+		if (TimeUnit.NANOSECONDS.toMillis(elapsed) + delay >= timeBudget) {
+			return -1;
+		}
+		return delay;
+	}
+}
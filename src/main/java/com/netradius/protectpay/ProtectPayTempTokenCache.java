@@ -0,0 +1,323 @@
+package com.netradius.protectpay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reuses temporary tokens so rendering a hosted payment page does not wait on a request each time. A
+ * token is reused for the same biller, payer account ID, payer name and duration until it comes within the safety
+ * margin of its expiry. Once the refresh fraction of its duration has passed, the next lookup still
+ * returns it but also requests a replacement in the background, so callers rarely wait for a token.
+ * <p>
+ * Token lifetimes are measured from when the request was sent, so they never outlive the token at
+ * ProtectPay. Tokens requested without a duration are not cached as their lifetime is unknown, nor are
+ * tokens whose duration does not exceed the safety margin. The least recently used tokens are evicted
+ * once the cache is full.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayTempTokenCache {
+
+	private static final Logger log = LoggerFactory.getLogger(ProtectPayTempTokenCache.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final double DEFAULT_REFRESH_FRACTION = 0.5;
+	public static final long DEFAULT_SAFETY_MARGIN = 10000;
+
+	private final int maxEntries;
+	private final Executor executor;
+	private final Lock lock = new ReentrantLock();
+	private final LinkedHashMap<String, Entry> entries;
+	private volatile double refreshFraction = DEFAULT_REFRESH_FRACTION;
+	private volatile long safetyMargin = DEFAULT_SAFETY_MARGIN;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder refreshes = new LongAdder();
+	private final LongAdder refreshFailures = new LongAdder();
+
+	/**
+	 * Creates a new cache holding up to {@link #DEFAULT_MAX_ENTRIES} tokens which refreshes tokens on its
+	 * own pool of daemon threads.
+	 */
+	public ProtectPayTempTokenCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Creates a new cache which refreshes tokens on its own pool of daemon threads.
+	 *
+	 * @param maxEntries the maximum number of tokens held
+	 */
+	public ProtectPayTempTokenCache(int maxEntries) {
+		this(maxEntries, Executors.newCachedThreadPool(new RefreshThreadFactory()));
+	}
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxEntries the maximum number of tokens held
+	 * @param executor the executor tokens are refreshed on
+	 */
+	public ProtectPayTempTokenCache(int maxEntries, Executor executor) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Max entries must be at least 1");
+		}
+		this.maxEntries = maxEntries;
+		this.executor = executor;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > ProtectPayTempTokenCache.this.maxEntries) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	private static String key(String billerAccountId, String payerAccountId, String payerName, int duration) {
+		return billerAccountId + '\u0000' + payerAccountId + '\u0000' + payerName + '\u0000' + duration;
+	}
+
+	/**
+	 * Returns the maximum number of tokens held.
+	 *
+	 * @return the maximum number of entries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Returns the share of a token's duration after which a replacement is requested.
+	 *
+	 * @return the refresh fraction between 0 and 1
+	 */
+	public double getRefreshFraction() {
+		return refreshFraction;
+	}
+
+	/**
+	 * Sets the share of a token's duration after which a replacement is requested in the background.
+	 * Defaults to {@link #DEFAULT_REFRESH_FRACTION}.
+	 *
+	 * @param refreshFraction the refresh fraction, greater than 0 and less than 1
+	 */
+	public void setRefreshFraction(double refreshFraction) {
+		if (!(refreshFraction > 0 && refreshFraction < 1)) {
+			throw new IllegalArgumentException("Refresh fraction must be greater than 0 and less than 1");
+		}
+		this.refreshFraction = refreshFraction;
+	}
+
+	/**
+	 * Returns the time before expiry after which a token is no longer handed out.
+	 *
+	 * @return the safety margin in milliseconds
+	 */
+	public long getSafetyMargin() {
+		return safetyMargin;
+	}
+
+	/**
+	 * Sets the time before expiry after which a token is no longer handed out, leaving the caller time to
+	 * use it. Defaults to {@link #DEFAULT_SAFETY_MARGIN}.
+	 *
+	 * @param safetyMargin the safety margin in milliseconds
+	 */
+	public void setSafetyMargin(long safetyMargin) {
+		if (safetyMargin < 0) {
+			throw new IllegalArgumentException("Safety margin may not be negative");
+		}
+		this.safetyMargin = safetyMargin;
+	}
+
+	/**
+	 * Returns a cached token or requests one.
+	 *
+	 * @param billerAccountId the biller account ID the token is requested for
+	 * @param payerAccountId the payer account ID
+	 * @param payerName the payer name
+	 * @param duration the duration in seconds the token is valid for
+	 * @param call requests a new token
+	 * @return the token
+	 * @throws ProtectPayException if a token had to be requested and the request failed
+	 */
+	String get(String billerAccountId, String payerAccountId, String payerName, int duration,
+			ProtectPayCall<String> call) throws ProtectPayException {
+		long durationNanos = TimeUnit.SECONDS.toNanos(duration);
+		long marginNanos = TimeUnit.MILLISECONDS.toNanos(safetyMargin);
+		if (durationNanos <= marginNanos) {
+			return call.call();
+		}
+		String key = key(billerAccountId, payerAccountId, payerName, duration);
+		Entry entry;
+		lock.lock();
+		try {
+			entry = entries.get(key);
+			if (entry != null && System.nanoTime() - (entry.expires - marginNanos) >= 0) {
+				entries.remove(key);
+				expirations.increment();
+				entry = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (entry != null) {
+			hits.increment();
+			if (System.nanoTime() - entry.refreshAt >= 0 && entry.refreshing.compareAndSet(false, true)) {
+				refresh(key, entry, durationNanos, call);
+			}
+			return entry.token;
+		}
+		misses.increment();
+		return load(key, durationNanos, call);
+	}
+
+	private String load(String key, long durationNanos, ProtectPayCall<String> call) throws ProtectPayException {
+		long sent = System.nanoTime();
+		String token = call.call();
+		Entry entry = new Entry(token, sent + durationNanos, sent + (long)(durationNanos * refreshFraction));
+		lock.lock();
+		try {
+			entries.put(key, entry);
+		} finally {
+			lock.unlock();
+		}
+		return token;
+	}
+
+	private void refresh(String key, Entry stale, long durationNanos, ProtectPayCall<String> call) {
+		try {
+			executor.execute(() -> {
+				try {
+					refreshes.increment();
+					load(key, durationNanos, call);
+				} catch (ProtectPayException | RuntimeException x) {
+					// The current token remains in use until it reaches its safety margin
+					refreshFailures.increment();
+					stale.refreshing.set(false);
+					log.debug("Error refreshing temporary token: " + x.getMessage(), x);
+				}
+			});
+		} catch (RuntimeException x) {
+			stale.refreshing.set(false);
+			log.debug("Error scheduling temporary token refresh: " + x.getMessage(), x);
+		}
+	}
+
+	/**
+	 * Removes the cached tokens of a payer, whichever biller they were requested for.
+	 *
+	 * @param payerAccountId the payer account ID
+	 */
+	public void invalidate(String payerAccountId) {
+		String payer = payerAccountId + '\u0000';
+		lock.lock();
+		try {
+			for (Iterator<String> i = entries.keySet().iterator(); i.hasNext(); ) {
+				String key = i.next();
+				if (key.startsWith(payer, key.indexOf('\u0000') + 1)) {
+					i.remove();
+					invalidations.increment();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all cached tokens.
+	 */
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			invalidations.add(entries.size());
+			entries.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of tokens requested in the background.
+	 *
+	 * @return the number of refreshes
+	 */
+	public long getRefreshes() {
+		return refreshes.sum();
+	}
+
+	/**
+	 * Returns the number of background token requests which failed.
+	 *
+	 * @return the number of failed refreshes
+	 */
+	public long getRefreshFailures() {
+		return refreshFailures.sum();
+	}
+
+	/**
+	 * Returns the cache metrics. Tokens dropped on reaching their safety margin count as expirations.
+	 *
+	 * @return the metrics
+	 */
+	public ProtectPayCacheStats getStats() {
+		int size;
+		lock.lock();
+		try {
+			size = entries.size();
+		} finally {
+			lock.unlock();
+		}
+		return new ProtectPayCacheStats(size, maxEntries, hits.sum(), misses.sum(), evictions.sum(),
+				expirations.sum(), invalidations.sum());
+	}
+
+	private static class Entry {
+
+		private final String token;
+		private final long expires;
+		private final long refreshAt;
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		Entry(String token, long expires, long refreshAt) {
+			this.token = token;
+			this.expires = expires;
+			this.refreshAt = refreshAt;
+		}
+	}
+
+	private static class RefreshThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "protectpay-token-refresh-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
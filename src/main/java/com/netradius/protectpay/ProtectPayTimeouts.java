@@ -0,0 +1,145 @@
+package com.netradius.protectpay;
+
+import java.util.Arrays;
+
+/**
+ * Holds the connect and read timeouts applied to each request. Read timeouts default per operation group
+ * and may be overridden for individual operations. All durations are in milliseconds. Settings may be
+ * changed at any time and apply to requests sent afterwards.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayTimeouts {
+
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	public static final int DEFAULT_VAULT_READ_TIMEOUT = 30000;
+	public static final int DEFAULT_TRANSACT_READ_TIMEOUT = 60000;
+	public static final int DEFAULT_TOKEN_READ_TIMEOUT = 10000;
+	public static final long DEFAULT_MINIMUM_BUDGET = 250;
+
+	private volatile int[] connectTimeouts;
+	private volatile int[] readTimeouts;
+	private volatile long minimumBudget = DEFAULT_MINIMUM_BUDGET;
+
+	/**
+	 * Creates a new instance using the default timeouts.
+	 */
+	public ProtectPayTimeouts() {
+		ProtectPayOperation[] operations = ProtectPayOperation.values();
+		connectTimeouts = new int[operations.length];
+		readTimeouts = new int[operations.length];
+		for (ProtectPayOperation operation : operations) {
+			connectTimeouts[operation.ordinal()] = DEFAULT_CONNECT_TIMEOUT;
+			readTimeouts[operation.ordinal()] = defaultReadTimeout(operation.getGroup());
+		}
+	}
+
+	private static int defaultReadTimeout(ProtectPayOperation.Group group) {
+		switch (group) {
+			case TRANSACT:
+				return DEFAULT_TRANSACT_READ_TIMEOUT;
+			case TOKEN:
+				return DEFAULT_TOKEN_READ_TIMEOUT;
+			default:
+				return DEFAULT_VAULT_READ_TIMEOUT;
+		}
+	}
+
+	private static void check(int timeout) {
+		if (timeout < 1) {
+			throw new IllegalArgumentException("Timeout must be at least 1");
+		}
+	}
+
+	/**
+	 * Returns the connect timeout of an operation.
+	 *
+	 * @param operation the operation
+	 * @return the connect timeout in milliseconds
+	 */
+	public int getConnectTimeout(ProtectPayOperation operation) {
+		return connectTimeouts[operation.ordinal()];
+	}
+
+	/**
+	 * Returns the read timeout of an operation.
+	 *
+	 * @param operation the operation
+	 * @return the read timeout in milliseconds
+	 */
+	public int getReadTimeout(ProtectPayOperation operation) {
+		return readTimeouts[operation.ordinal()];
+	}
+
+	/**
+	 * Sets the connect timeout of every operation. Defaults to {@link #DEFAULT_CONNECT_TIMEOUT}.
+	 *
+	 * @param connectTimeout the connect timeout in milliseconds
+	 */
+	public synchronized void setConnectTimeout(int connectTimeout) {
+		check(connectTimeout);
+		int[] timeouts = new int[connectTimeouts.length];
+		Arrays.fill(timeouts, connectTimeout);
+		connectTimeouts = timeouts;
+	}
+
+	/**
+	 * Sets the read timeout of every operation in a group. Defaults to {@link #DEFAULT_TRANSACT_READ_TIMEOUT}
+	 * for transactions, {@link #DEFAULT_TOKEN_READ_TIMEOUT} for temporary tokens and
+	 * {@link #DEFAULT_VAULT_READ_TIMEOUT} for everything else.
+	 *
+	 * @param group the operation group
+	 * @param readTimeout the read timeout in milliseconds
+	 */
+	public synchronized void setReadTimeout(ProtectPayOperation.Group group, int readTimeout) {
+		check(readTimeout);
+		int[] timeouts = readTimeouts.clone();
+		for (ProtectPayOperation operation : ProtectPayOperation.values()) {
+			if (operation.getGroup() == group) {
+				timeouts[operation.ordinal()] = readTimeout;
+			}
+		}
+		readTimeouts = timeouts;
+	}
+
+	/**
+	 * Sets the connect and read timeouts of a single operation.
+	 *
+	 * @param operation the operation
+	 * @param connectTimeout the connect timeout in milliseconds
+	 * @param readTimeout the read timeout in milliseconds
+	 */
+	public synchronized void setTimeouts(ProtectPayOperation operation, int connectTimeout, int readTimeout) {
+		check(connectTimeout);
+		check(readTimeout);
+		int[] connect = connectTimeouts.clone();
+		int[] read = readTimeouts.clone();
+		connect[operation.ordinal()] = connectTimeout;
+		read[operation.ordinal()] = readTimeout;
+		connectTimeouts = connect;
+		readTimeouts = read;
+	}
+
+	/**
+	 * Returns the smallest time remaining before a deadline for which a request is still sent.
+	 *
+	 * @return the minimum budget in milliseconds
+	 */
+	public long getMinimumBudget() {
+		return minimumBudget;
+	}
+
+	/**
+	 * Sets the smallest time remaining before a deadline for which a request is still sent. Requests with
+	 * less time left are rejected locally rather than sent with a timeout too short to succeed. Defaults
+	 * to {@link #DEFAULT_MINIMUM_BUDGET}.
+	 *
+	 * @param minimumBudget the minimum budget in milliseconds
+	 */
+	public void setMinimumBudget(long minimumBudget) {
+		if (minimumBudget < 0) {
+			throw new IllegalArgumentException("Minimum budget may not be negative");
+		}
+		this.minimumBudget = minimumBudget;
+	}
+}
@@ -0,0 +1,26 @@
+package com.netradius.protectpay;
+
+/**
+ * Wraps a {@link ProtectPayException} where a checked exception cannot be thrown, such as while iterating
+ * over a streamed response.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayUncheckedException extends RuntimeException {
+
+	private static final long serialVersionUID = 4107762530218472209L;
+
+	public ProtectPayUncheckedException(ProtectPayException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	/**
+	 * Returns the wrapped exception.
+	 *
+	 * @return the ProtectPayException
+	 */
+	@Override
+	public ProtectPayException getCause() {
+		return (ProtectPayException)super.getCause();
+	}
+}
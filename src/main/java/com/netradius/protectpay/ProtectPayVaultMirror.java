@@ -0,0 +1,784 @@
+package com.netradius.protectpay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Mirrors the payers and payment methods a client has seen to a file so a restarted application can answer
+ * payment method lookups without a request to ProtectPay. The file is memory mapped and only ever appended
+ * to; an in-memory index of the latest record for each payer is rebuilt when the file is opened. Records
+ * carry a checksum so a record torn by a crash is dropped along with anything written after it. Once
+ * superseded records outweigh live ones the file is compacted into a new file which replaces it.
+ * <p>
+ * Only obfuscated account numbers are written. Account numbers which are not already masked by ProtectPay
+ * are masked to their last four digits before they reach the file. Card security codes are never part of
+ * the model and are never written.
+ * <p>
+ * Like {@link ProtectPayPaymentMethodCache}, changes made through this client invalidate the mirror but
+ * changes made elsewhere are not seen, so records are only served for {@link #getMaxAge()} milliseconds
+ * after they were written. Writes reach the operating system immediately but are only forced to disk by
+ * {@link #sync()} and {@link #close()}.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayVaultMirror implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(ProtectPayVaultMirror.class);
+
+	public static final long DEFAULT_MAX_AGE = 86400000;
+
+	private static final int MAGIC = 0x5050564d;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_OVERHEAD = 8;
+	private static final int INITIAL_CAPACITY = 1 << 20;
+	private static final int COMPACT_THRESHOLD = 4 << 20;
+
+	private static final byte PAYER = 1;
+	private static final byte PAYER_REMOVED = 2;
+	private static final byte PAYMENT_METHODS = 3;
+	private static final byte PAYMENT_METHODS_REMOVED = 4;
+
+	private final Path file;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, Integer> payers = new HashMap<>();
+	private final Map<String, Integer> paymentMethods = new HashMap<>();
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int end;
+	private long liveBytes;
+	private volatile long maxAge = DEFAULT_MAX_AGE;
+
+	// Bumped on every removal so a lookup which started before it does not mirror a stale result
+	private final AtomicLong version = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Opens a mirror, creating the file if it does not exist. A file written by an incompatible version of
+	 * this class is discarded.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be opened or is not a mirror file
+	 */
+	public ProtectPayVaultMirror(Path file) throws IOException {
+		this.file = file;
+		open();
+	}
+
+	private void open() throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File " + file + " is too large to be a vault mirror");
+			}
+			if (size >= HEADER_SIZE) {
+				map((int)size);
+				if (buffer.getInt(0) != MAGIC) {
+					throw new IOException("File " + file + " is not a vault mirror");
+				}
+				if (buffer.getInt(4) == VERSION) {
+					scan();
+					return;
+				}
+				log.warn("Discarding vault mirror " + file + " written by an incompatible version");
+			} else if (size > 0) {
+				throw new IOException("File " + file + " is not a vault mirror");
+			}
+			channel.truncate(0);
+			map(INITIAL_CAPACITY);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			end = HEADER_SIZE;
+		} catch (IOException | RuntimeException x) {
+			channel.close();
+			throw x;
+		}
+	}
+
+	private void map(int capacity) throws IOException {
+		// Mapping beyond the end of the file grows it
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+
+	private void scan() {
+		int capacity = buffer.capacity();
+		int pos = HEADER_SIZE;
+		boolean torn = false;
+		while (pos <= capacity - RECORD_OVERHEAD) {
+			int length = buffer.getInt(pos);
+			if (length == 0) {
+				break;
+			}
+			if (length < 0 || length > capacity - pos - RECORD_OVERHEAD || checksum(pos, length) != buffer.getInt(pos + 4)) {
+				torn = true;
+				break;
+			}
+			apply(pos);
+			pos += RECORD_OVERHEAD + length;
+		}
+		end = pos;
+		if (torn) {
+			// Cleared so a later record written over the torn one cannot be followed by stale bytes
+			for (int i = pos; i < capacity; i++) {
+				buffer.put(i, (byte)0);
+			}
+			log.warn("Dropped a damaged record and everything after it at offset " + pos + " of vault mirror " + file);
+		}
+	}
+
+	private int checksum(int pos, int length) {
+		ByteBuffer payload = buffer.duplicate();
+		payload.limit(pos + RECORD_OVERHEAD + length).position(pos + RECORD_OVERHEAD);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int)crc.getValue();
+	}
+
+	private int size(int pos) {
+		return RECORD_OVERHEAD + buffer.getInt(pos);
+	}
+
+	private ByteBuffer payload(int pos) {
+		ByteBuffer in = buffer.duplicate();
+		in.position(pos + RECORD_OVERHEAD);
+		return in;
+	}
+
+	private void apply(int pos) {
+		ByteBuffer in = payload(pos);
+		byte type = in.get();
+		in.getLong();
+		String key = readString(in);
+		switch (type) {
+			case PAYER:
+				replace(payers, key, pos);
+				break;
+			case PAYER_REMOVED:
+				replace(payers, key, -1);
+				replace(paymentMethods, key, -1);
+				break;
+			case PAYMENT_METHODS:
+				replace(paymentMethods, key, pos);
+				break;
+			case PAYMENT_METHODS_REMOVED:
+				replace(paymentMethods, key, -1);
+				break;
+			default:
+				log.warn("Ignoring record of unknown type " + type + " at offset " + pos + " of vault mirror " + file);
+		}
+	}
+
+	private void replace(Map<String, Integer> index, String key, int pos) {
+		Integer previous = pos < 0 ? index.remove(key) : index.put(key, pos);
+		if (previous != null) {
+			liveBytes -= size(previous);
+		}
+		if (pos >= 0) {
+			liveBytes += size(pos);
+		}
+	}
+
+	// Callers must hold the write lock
+	private void append(byte type, String key, Record record) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(type);
+		out.writeLong(System.currentTimeMillis());
+		writeString(out, key);
+		if (record != null) {
+			record.write(out);
+		}
+		byte[] payload = bytes.toByteArray();
+		int needed = end + RECORD_OVERHEAD + payload.length;
+		if (needed < 0) {
+			throw new IOException("Vault mirror " + file + " is full");
+		}
+		if (needed > buffer.capacity()) {
+			map((int)Math.min(Integer.MAX_VALUE, Math.max((long)needed, buffer.capacity() * 2L)));
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		ByteBuffer dest = buffer.duplicate();
+		dest.position(end + RECORD_OVERHEAD);
+		dest.put(payload);
+		buffer.putInt(end + 4, (int)crc.getValue());
+		// The length goes last so a reader never follows a record whose body has not been written
+		buffer.putInt(end, payload.length);
+		int pos = end;
+		end = needed;
+		apply(pos);
+		if (end > COMPACT_THRESHOLD && liveBytes * 2 < end - HEADER_SIZE) {
+			compactLocked();
+		}
+	}
+
+	@FunctionalInterface
+	private interface Record {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Enums are written by name so reordering their constants does not corrupt existing files
+	private static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+		writeString(out, value == null ? null : value.name());
+	}
+
+	private static <E extends Enum<E>> E readEnum(ByteBuffer in, Class<E> type) {
+		String name = readString(in);
+		if (name != null) {
+			try {
+				return Enum.valueOf(type, name);
+			} catch (IllegalArgumentException x) {
+				// Written by a version with a constant this one does not have
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Masks every digit but the last four of an account number which is not already masked.
+	 *
+	 * @param accountNumber the account number
+	 * @return the obfuscated account number
+	 */
+	static String obfuscate(String accountNumber) {
+		if (accountNumber == null || accountNumber.indexOf('*') >= 0 || accountNumber.indexOf('X') >= 0
+				|| accountNumber.indexOf('x') >= 0) {
+			return accountNumber;
+		}
+		char[] chars = accountNumber.toCharArray();
+		int digits = 0;
+		for (int i = chars.length - 1; i >= 0; i--) {
+			if (Character.isDigit(chars[i]) && ++digits > 4) {
+				chars[i] = '*';
+			}
+		}
+		return new String(chars);
+	}
+
+	private static void writePayer(DataOutputStream out, ProtectPayPayer payer) throws IOException {
+		writeString(out, payer.getEmailAddress());
+		writeString(out, payer.getExternalId1());
+		writeString(out, payer.getExternalId2());
+		writeString(out, payer.getAccountName());
+	}
+
+	private static ProtectPayPayer readPayer(ByteBuffer in, String payerAccountId) {
+		ProtectPayPayer payer = new ProtectPayPayer();
+		payer.setPayerAccountId(payerAccountId);
+		payer.setEmailAddress(readString(in));
+		payer.setExternalId1(readString(in));
+		payer.setExternalId2(readString(in));
+		payer.setAccountName(readString(in));
+		return payer;
+	}
+
+	private static void writePaymentMethod(DataOutputStream out, ProtectPayPaymentMethod paymentMethod)
+			throws IOException {
+		writeString(out, paymentMethod.getPaymentMethodId());
+		writeEnum(out, paymentMethod.getAccountCountryCode());
+		writeString(out, paymentMethod.getAccountName());
+		writeString(out, obfuscate(paymentMethod.getAccountNumber()));
+		writeString(out, paymentMethod.getBankNumber());
+		writeString(out, paymentMethod.getDescription());
+		writeEnum(out, paymentMethod.getDuplicateAction());
+		writeString(out, paymentMethod.getExpirationDate());
+		writeEnum(out, paymentMethod.getType());
+		Boolean payerProtected = paymentMethod.getPayerProtected();
+		out.writeByte(payerProtected == null ? 0 : payerProtected ? 2 : 1);
+		Integer priority = paymentMethod.getPriority();
+		out.writeBoolean(priority != null);
+		out.writeInt(priority == null ? 0 : priority);
+		Date dateCreated = paymentMethod.getDateCreated();
+		out.writeBoolean(dateCreated != null);
+		out.writeLong(dateCreated == null ? 0 : dateCreated.getTime());
+		ProtectPayBillingInfo billing = paymentMethod.getBilling();
+		out.writeBoolean(billing != null);
+		if (billing != null) {
+			writeString(out, billing.getAddress1());
+			writeString(out, billing.getAddress2());
+			writeString(out, billing.getAddress3());
+			writeString(out, billing.getCity());
+			writeString(out, billing.getState());
+			writeString(out, billing.getZipCode());
+			writeEnum(out, billing.getCountry());
+			writeString(out, billing.getEmailAddress());
+			writeString(out, billing.getTelephoneNumber());
+		}
+	}
+
+	private static ProtectPayPaymentMethod readPaymentMethod(ByteBuffer in, String payerAccountId) {
+		ProtectPayPaymentMethod paymentMethod = new ProtectPayPaymentMethod();
+		paymentMethod.setPayerAccountId(payerAccountId);
+		paymentMethod.setPaymentMethodId(readString(in));
+		paymentMethod.setAccountCountryCode(readEnum(in, ProtectPayPaymentMethod.AccountCountryCode.class));
+		paymentMethod.setAccountName(readString(in));
+		paymentMethod.setAccountNumber(readString(in));
+		paymentMethod.setBankNumber(readString(in));
+		paymentMethod.setDescription(readString(in));
+		paymentMethod.setDuplicateAction(readEnum(in, ProtectPayPaymentMethod.DuplicateAction.class));
+		paymentMethod.setExpirationDate(readString(in));
+		paymentMethod.setType(readEnum(in, ProtectPayPaymentMethod.Type.class));
+		byte payerProtected = in.get();
+		paymentMethod.setPayerProtected(payerProtected == 0 ? null : payerProtected == 2);
+		boolean hasPriority = in.get() != 0;
+		int priority = in.getInt();
+		paymentMethod.setPriority(hasPriority ? priority : null);
+		boolean hasDateCreated = in.get() != 0;
+		long dateCreated = in.getLong();
+		paymentMethod.setDateCreated(hasDateCreated ? new Date(dateCreated) : null);
+		if (in.get() != 0) {
+			ProtectPayBillingInfo billing = new ProtectPayBillingInfo();
+			billing.setAddress1(readString(in));
+			billing.setAddress2(readString(in));
+			billing.setAddress3(readString(in));
+			billing.setCity(readString(in));
+			billing.setState(readString(in));
+			billing.setZipCode(readString(in));
+			billing.setCountry(readEnum(in, ProtectPayBillingInfo.Country.class));
+			billing.setEmailAddress(readString(in));
+			billing.setTelephoneNumber(readString(in));
+			paymentMethod.setBilling(billing);
+		}
+		return paymentMethod;
+	}
+
+	/**
+	 * Returns the maximum age of a record served from the mirror.
+	 *
+	 * @return the maximum age in milliseconds
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Sets the maximum age of a record served from the mirror. Older records are ignored and dropped on the
+	 * next compaction. Defaults to {@link #DEFAULT_MAX_AGE}.
+	 *
+	 * @param maxAge the maximum age in milliseconds
+	 */
+	public void setMaxAge(long maxAge) {
+		if (maxAge < 1) {
+			throw new IllegalArgumentException("Max age must be at least 1");
+		}
+		this.maxAge = maxAge;
+	}
+
+	// Callers must hold a lock, returns a buffer positioned after the key or null if the record is too old
+	private ByteBuffer read(Integer pos) {
+		if (pos == null) {
+			return null;
+		}
+		ByteBuffer in = payload(pos);
+		in.get();
+		long written = in.getLong();
+		if (System.currentTimeMillis() - written > maxAge) {
+			return null;
+		}
+		readString(in);
+		return in;
+	}
+
+	private void count(Object found) {
+		if (found == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+	}
+
+	/**
+	 * Returns a mirrored payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return a new instance holding the payer or null if not mirrored
+	 */
+	public ProtectPayPayer getPayer(String payerAccountId) {
+		ProtectPayPayer payer = null;
+		lock.readLock().lock();
+		try {
+			ByteBuffer in = read(payers.get(payerAccountId));
+			if (in != null) {
+				payer = readPayer(in, payerAccountId);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		count(payer);
+		return payer;
+	}
+
+	/**
+	 * Returns every mirrored payer, for instance to fill a {@link ProtectPayPayerIndex} on start up.
+	 *
+	 * @return new instances holding the payers
+	 */
+	public List<ProtectPayPayer> getPayers() {
+		lock.readLock().lock();
+		try {
+			List<ProtectPayPayer> found = new ArrayList<>(payers.size());
+			for (Map.Entry<String, Integer> entry : payers.entrySet()) {
+				ByteBuffer in = read(entry.getValue());
+				if (in != null) {
+					found.add(readPayer(in, entry.getKey()));
+				}
+			}
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the mirrored payment methods of a payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @return new instances holding the payment methods or null if not mirrored
+	 */
+	public List<ProtectPayPaymentMethod> getPaymentMethods(String payerAccountId) {
+		List<ProtectPayPaymentMethod> found = null;
+		lock.readLock().lock();
+		try {
+			ByteBuffer in = read(paymentMethods.get(payerAccountId));
+			if (in != null) {
+				int count = in.getInt();
+				found = new ArrayList<>(count);
+				for (int i = 0; i < count; i++) {
+					found.add(readPaymentMethod(in, payerAccountId));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		count(found);
+		return found;
+	}
+
+	/**
+	 * Mirrors a payer.
+	 *
+	 * @param payer the payer, which must have a payer account ID
+	 * @throws IOException if the record cannot be written
+	 */
+	void putPayer(ProtectPayPayer payer) throws IOException {
+		lock.writeLock().lock();
+		try {
+			append(PAYER, payer.getPayerAccountId(), out -> writePayer(out, payer));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Mirrors payers found by a search. Search results do not include email addresses, so one already
+	 * mirrored is kept.
+	 *
+	 * @param found the payers found
+	 * @throws IOException if a record cannot be written
+	 */
+	void putFound(Collection<ProtectPayPayer> found) throws IOException {
+		lock.writeLock().lock();
+		try {
+			for (ProtectPayPayer payer : found) {
+				String payerAccountId = payer.getPayerAccountId();
+				if (payerAccountId == null) {
+					continue;
+				}
+				ProtectPayPayer merged = payer;
+				Integer pos = payers.get(payerAccountId);
+				if (payer.getEmailAddress() == null && pos != null) {
+					ByteBuffer in = payload(pos);
+					in.get();
+					in.getLong();
+					readString(in);
+					merged = Copies.payer(payer);
+					merged.setEmailAddress(readPayer(in, payerAccountId).getEmailAddress());
+				}
+				ProtectPayPayer written = merged;
+				append(PAYER, payerAccountId, out -> writePayer(out, written));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the version to pass to {@link #putPaymentMethods(String, List, long)} once a lookup completes.
+	 *
+	 * @return the current version
+	 */
+	long version() {
+		return version.get();
+	}
+
+	/**
+	 * Mirrors the payment methods of a payer, unless the mirror was invalidated since the lookup began.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @param found the payment methods
+	 * @param version the version returned by {@link #version()} before the lookup began
+	 * @throws IOException if the record cannot be written
+	 */
+	void putPaymentMethods(String payerAccountId, List<ProtectPayPaymentMethod> found, long version)
+			throws IOException {
+		if (payerAccountId == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if (this.version.get() == version) {
+				append(PAYMENT_METHODS, payerAccountId, out -> {
+					out.writeInt(found.size());
+					for (ProtectPayPaymentMethod paymentMethod : found) {
+						writePaymentMethod(out, paymentMethod);
+					}
+				});
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a payer and its payment methods.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @throws IOException if the removal cannot be written
+	 */
+	public void removePayer(String payerAccountId) throws IOException {
+		lock.writeLock().lock();
+		try {
+			version.incrementAndGet();
+			if (payers.containsKey(payerAccountId) || paymentMethods.containsKey(payerAccountId)) {
+				append(PAYER_REMOVED, payerAccountId, null);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the payment methods of a payer.
+	 *
+	 * @param payerAccountId the payer account ID
+	 * @throws IOException if the removal cannot be written
+	 */
+	public void removePaymentMethods(String payerAccountId) throws IOException {
+		lock.writeLock().lock();
+		try {
+			version.incrementAndGet();
+			if (paymentMethods.containsKey(payerAccountId)) {
+				append(PAYMENT_METHODS_REMOVED, payerAccountId, null);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Rewrites the file with only the records in use, dropping superseded, removed and expired records. This
+	 * happens on its own once superseded records outweigh live ones.
+	 *
+	 * @throws IOException if the file cannot be rewritten
+	 */
+	public void compact() throws IOException {
+		lock.writeLock().lock();
+		try {
+			compactLocked();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void compactLocked() throws IOException {
+		Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+		try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			write(out, header);
+			copyLive(out, payers);
+			copyLive(out, paymentMethods);
+			out.force(true);
+		}
+		buffer.force();
+		channel.close();
+		payers.clear();
+		paymentMethods.clear();
+		liveBytes = 0;
+		try {
+			Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			// Reopens the original file if it could not be replaced
+			open();
+		}
+		if (buffer.capacity() < end * 2 || buffer.capacity() < INITIAL_CAPACITY) {
+			map((int)Math.min(Integer.MAX_VALUE, Math.max((long)INITIAL_CAPACITY, end * 2L)));
+		}
+	}
+
+	private void copyLive(FileChannel out, Map<String, Integer> index) throws IOException {
+		for (Integer pos : index.values()) {
+			if (read(pos) != null) {
+				ByteBuffer record = buffer.duplicate();
+				record.limit(pos + size(pos)).position(pos);
+				write(out, record);
+			}
+		}
+	}
+
+	private static void write(FileChannel out, ByteBuffer src) throws IOException {
+		while (src.hasRemaining()) {
+			out.write(src);
+		}
+	}
+
+	/**
+	 * Forces written records to disk.
+	 */
+	public void sync() {
+		lock.writeLock().lock();
+		try {
+			buffer.force();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of payers mirrored, including any too old to be served.
+	 *
+	 * @return the number of payers
+	 */
+	public int getPayerCount() {
+		lock.readLock().lock();
+		try {
+			return payers.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of payers whose payment methods are mirrored, including any too old to be served.
+	 *
+	 * @return the number of payers
+	 */
+	public int getPaymentMethodsCount() {
+		lock.readLock().lock();
+		try {
+			return paymentMethods.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of the file holding records, live or superseded.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long getWrittenBytes() {
+		lock.readLock().lock();
+		try {
+			return end;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of the file holding live records.
+	 *
+	 * @return the number of live bytes
+	 */
+	public long getLiveBytes() {
+		lock.readLock().lock();
+		try {
+			return liveBytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of lookups answered from the mirror.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups the mirror could not answer.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Forces written records to disk and closes the file.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			buffer.force();
+			channel.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
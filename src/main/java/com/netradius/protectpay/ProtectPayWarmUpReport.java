@@ -0,0 +1,149 @@
+package com.netradius.protectpay;
+
+import java.io.Serializable;
+
+/**
+ * Holds the results of {@link ProtectPayClient#warmUp(int)}. All durations are in milliseconds.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayWarmUpReport implements Serializable {
+
+	private static final long serialVersionUID = 5288816018851938407L;
+
+	private int portsCreated;
+	private long portsDuration;
+	private long mappersDuration;
+	private int connectionsOpened;
+	private int connectionsFailed;
+	private long connectionsDuration;
+
+	/**
+	 * Returns the number of service ports created.
+	 *
+	 * @return the number of service ports created
+	 */
+	public int getPortsCreated() {
+		return portsCreated;
+	}
+
+	/**
+	 * Sets the number of service ports created.
+	 *
+	 * @param portsCreated the number of service ports created
+	 */
+	public void setPortsCreated(int portsCreated) {
+		this.portsCreated = portsCreated;
+	}
+
+	/**
+	 * Returns the time spent parsing the WSDL, creating the JAXB context and building service ports.
+	 *
+	 * @return the duration in milliseconds
+	 */
+	public long getPortsDuration() {
+		return portsDuration;
+	}
+
+	/**
+	 * Sets the time spent parsing the WSDL, creating the JAXB context and building service ports.
+	 *
+	 * @param portsDuration the duration in milliseconds
+	 */
+	public void setPortsDuration(long portsDuration) {
+		this.portsDuration = portsDuration;
+	}
+
+	/**
+	 * Returns the time spent running the request and response mappers on synthetic data.
+	 *
+	 * @return the duration in milliseconds
+	 */
+	public long getMappersDuration() {
+		return mappersDuration;
+	}
+
+	/**
+	 * Sets the time spent running the request and response mappers on synthetic data.
+	 *
+	 * @param mappersDuration the duration in milliseconds
+	 */
+	public void setMappersDuration(long mappersDuration) {
+		this.mappersDuration = mappersDuration;
+	}
+
+	/**
+	 * Returns the number of connections which completed a round trip to ProtectPay.
+	 *
+	 * @return the number of connections opened
+	 */
+	public int getConnectionsOpened() {
+		return connectionsOpened;
+	}
+
+	/**
+	 * Sets the number of connections which completed a round trip to ProtectPay.
+	 *
+	 * @param connectionsOpened the number of connections opened
+	 */
+	public void setConnectionsOpened(int connectionsOpened) {
+		this.connectionsOpened = connectionsOpened;
+	}
+
+	/**
+	 * Returns the number of connections which failed to complete a round trip to ProtectPay.
+	 *
+	 * @return the number of failed connections
+	 */
+	public int getConnectionsFailed() {
+		return connectionsFailed;
+	}
+
+	/**
+	 * Sets the number of connections which failed to complete a round trip to ProtectPay.
+	 *
+	 * @param connectionsFailed the number of failed connections
+	 */
+	public void setConnectionsFailed(int connectionsFailed) {
+		this.connectionsFailed = connectionsFailed;
+	}
+
+	/**
+	 * Returns the time spent opening connections to ProtectPay.
+	 *
+	 * @return the duration in milliseconds
+	 */
+	public long getConnectionsDuration() {
+		return connectionsDuration;
+	}
+
+	/**
+	 * Sets the time spent opening connections to ProtectPay.
+	 *
+	 * @param connectionsDuration the duration in milliseconds
+	 */
+	public void setConnectionsDuration(long connectionsDuration) {
+		this.connectionsDuration = connectionsDuration;
+	}
+
+	/**
+	 * Returns the total time spent warming up.
+	 *
+	 * @return the duration in milliseconds
+	 */
+	public long getTotalDuration() {
+		return portsDuration + mappersDuration + connectionsDuration;
+	}
+
+	@Override
+	public String toString() {
+		return "WarmUpReport{" +
+				"portsCreated=" + portsCreated +
+				", portsDuration=" + portsDuration +
+				", mappersDuration=" + mappersDuration +
+				", connectionsOpened=" + connectionsOpened +
+				", connectionsFailed=" + connectionsFailed +
+				", connectionsDuration=" + connectionsDuration +
+				'}';
+	}
+}
@@ -0,0 +1,14 @@
+package com.netradius.protectpay;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Lazily reads flat records from a file, one at a time. Missing and empty values are returned as null.
+ * I/O errors are thrown as {@link java.io.UncheckedIOException} from the iterator methods.
+ *
+ * @author Erik R. Jensen
+ */
+interface RecordReader extends Iterator<Map<String, String>>, Closeable {
+}
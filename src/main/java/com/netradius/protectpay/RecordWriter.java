@@ -0,0 +1,21 @@
+package com.netradius.protectpay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes flat records to a file, one at a time. Each record is flushed once written.
+ *
+ * @author Erik R. Jensen
+ */
+interface RecordWriter extends Closeable {
+
+	/**
+	 * Writes a record.
+	 *
+	 * @param record the record to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	void write(Map<String, String> record) throws IOException;
+}
@@ -0,0 +1,441 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.SPSService;
+import com.propay.sps.types.ObjectFactory;
+import com.propay.sps.types.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jws.WebMethod;
+import javax.jws.WebParam;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.ws.RequestWrapper;
+import javax.xml.ws.WebServiceException;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Sends vault searches through {@link HttpTransport} and reads the response as it arrives with StAX. Each
+ * item of the returned array is unmarshalled on its own and handed out before the next one is read, so
+ * memory use does not grow with the size of the response the way it does when the port unmarshals the
+ * whole result.
+ * <p>
+ * Element names are read once from the annotations of the generated classes in the same way
+ * {@link TransactRequestWriter} reads them. If those annotations cannot be read no streamer is available.
+ *
+ * @author Erik R. Jensen
+ */
+final class ResponseStreamer {
+
+	private static final Logger log = LoggerFactory.getLogger(ResponseStreamer.class);
+
+	private static final String SOAP_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+	private static final String CONTENT_TYPE = "text/xml; charset=utf-8";
+	private static final String ACCEPT = "text/xml";
+
+	/**
+	 * Port method searching for payers.
+	 */
+	static final String GET_PAYERS = "getPayers";
+
+	/**
+	 * Port method listing the payment methods of a payer.
+	 */
+	static final String GET_PAYMENT_METHODS = "getAllPayerPaymentMethods";
+
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+	static {
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private static volatile ResponseStreamer instance;
+	private static volatile boolean initialized;
+
+	private final JAXBContext context;
+	private final Map<String, Operation> operations = new HashMap<>();
+
+	/**
+	 * Checks the result ProtectPay returns beside the items.
+	 */
+	@FunctionalInterface
+	interface ResultCheck {
+		void check(Result result) throws ProtectPayException;
+	}
+
+	/**
+	 * The names and types of a port method and of the array in its response.
+	 */
+	private static final class Operation {
+
+		private final String soapAction;
+		private final QName wrapper;
+		private final QName[] params;
+		private final Class<?>[] types;
+		private final QName item;
+		private final Class<?> itemType;
+		private final QName result;
+
+		/**
+		 * @param name the port method
+		 * @param items the property of the response holding the array
+		 */
+		Operation(String name, String items) throws NoSuchMethodException {
+			Method method = null;
+			for (Method m : SPSService.class.getMethods()) {
+				if (m.getName().equals(name)) {
+					method = m;
+				}
+			}
+			if (method == null) {
+				throw new NoSuchMethodException(name);
+			}
+			WebMethod webMethod = method.getAnnotation(WebMethod.class);
+			RequestWrapper requestWrapper = method.getAnnotation(RequestWrapper.class);
+			if (webMethod == null || requestWrapper == null) {
+				throw new IllegalStateException(name + " has no @WebMethod or @RequestWrapper");
+			}
+			// SOAP 1.1 sends the action quoted
+			soapAction = "\"" + webMethod.action() + "\"";
+			wrapper = new QName(requestWrapper.targetNamespace(), requestWrapper.localName());
+			types = method.getParameterTypes();
+			params = new QName[types.length];
+			Annotation[][] annotations = method.getParameterAnnotations();
+			for (int i = 0; i < annotations.length; i++) {
+				for (Annotation annotation : annotations[i]) {
+					if (annotation instanceof WebParam) {
+						WebParam param = (WebParam)annotation;
+						params[i] = new QName(param.targetNamespace(), param.name());
+					}
+				}
+				if (params[i] == null) {
+					throw new IllegalStateException(name + " has no @WebParam on parameter " + i);
+				}
+			}
+			Map<String, String> prefixes = new HashMap<>();
+			Class<?> response = method.getReturnType();
+			result = TransactRequestWriter.elementName(response, TransactRequestWriter.findField(response,
+					"requestResult"), prefixes);
+			Class<?> array = typeArgument(TransactRequestWriter.findField(response, items));
+			Field list = null;
+			for (Field field : array.getDeclaredFields()) {
+				if (List.class.isAssignableFrom(field.getType())) {
+					list = field;
+				}
+			}
+			if (list == null) {
+				throw new IllegalStateException(array.getName() + " holds no list");
+			}
+			item = TransactRequestWriter.elementName(array, list, prefixes);
+			itemType = typeArgument(list);
+		}
+
+		private static Class<?> typeArgument(Field field) {
+			Type type = field.getGenericType();
+			if (type instanceof ParameterizedType) {
+				Type argument = ((ParameterizedType)type).getActualTypeArguments()[0];
+				if (argument instanceof Class) {
+					return (Class<?>)argument;
+				}
+			}
+			throw new IllegalStateException(field.getDeclaringClass().getName() + "." + field.getName()
+					+ " is not a JAXBElement or List of a class");
+		}
+	}
+
+	private ResponseStreamer() throws NoSuchMethodException, JAXBException {
+		operations.put(GET_PAYERS, new Operation(GET_PAYERS, "payers"));
+		operations.put(GET_PAYMENT_METHODS, new Operation(GET_PAYMENT_METHODS, "paymentMethods"));
+		context = JAXBContext.newInstance(ObjectFactory.class);
+	}
+
+	/**
+	 * Returns the shared streamer.
+	 *
+	 * @return the streamer or null if the generated classes do not carry the annotations needed
+	 */
+	static ResponseStreamer getInstance() {
+		if (!initialized) {
+			synchronized (ResponseStreamer.class) {
+				if (!initialized) {
+					try {
+						instance = new ResponseStreamer();
+					} catch (NoSuchMethodException | JAXBException | RuntimeException x) {
+						log.warn("Responses cannot be streamed and will be read whole: " + x.getMessage(), x);
+					}
+					initialized = true;
+				}
+			}
+		}
+		return instance;
+	}
+
+	private Operation operation(String name) {
+		Operation operation = operations.get(name);
+		if (operation == null) {
+			throw new IllegalArgumentException("Unsupported operation " + name);
+		}
+		return operation;
+	}
+
+	/**
+	 * Writes a request. Null arguments are left out.
+	 *
+	 * @param name the port method, {@link #GET_PAYERS} or {@link #GET_PAYMENT_METHODS}
+	 * @param args the arguments of the port method
+	 * @return the encoded request
+	 * @throws XMLStreamException if the request cannot be written
+	 * @throws JAXBException if an argument cannot be marshalled
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	byte[] write(String name, Object... args) throws XMLStreamException, JAXBException {
+		Operation operation = operation(name);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+		writer.writeStartDocument("UTF-8", "1.0");
+		writer.writeStartElement("S", "Envelope", SOAP_ENVELOPE_NS);
+		writer.writeNamespace("S", SOAP_ENVELOPE_NS);
+		writer.writeStartElement("S", "Body", SOAP_ENVELOPE_NS);
+		writer.writeStartElement("ns1", operation.wrapper.getLocalPart(), operation.wrapper.getNamespaceURI());
+		writer.writeNamespace("ns1", operation.wrapper.getNamespaceURI());
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+		for (int i = 0; i < operation.params.length; i++) {
+			if (args[i] != null) {
+				marshaller.marshal(new JAXBElement(operation.params[i], operation.types[i], args[i]), writer);
+			}
+		}
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Sends a request and reads the response up to its first item. Faults and failed results which arrive
+	 * before the first item are thrown from here, ones which arrive later from the iterator.
+	 *
+	 * @param transport the transport to send the request through
+	 * @param address the endpoint address
+	 * @param name the port method, {@link #GET_PAYERS} or {@link #GET_PAYMENT_METHODS}
+	 * @param itemType the generated class of the items
+	 * @param check checks the result returned with the items
+	 * @param connectTimeout the connect timeout in milliseconds or -1 for the default
+	 * @param readTimeout the read timeout in milliseconds or -1 for the default
+	 * @param args the arguments of the port method
+	 * @param <T> the type of the items
+	 * @return the items, which must be closed unless read to the end
+	 * @throws ProtectPayException if ProtectPay returned a failed result before the first item
+	 */
+	<T> Results<T> open(HttpTransport transport, String address, String name, Class<T> itemType, ResultCheck check,
+			int connectTimeout, int readTimeout, Object... args) throws ProtectPayException {
+		Operation operation = operation(name);
+		if (!itemType.isAssignableFrom(operation.itemType)) {
+			throw new IllegalArgumentException(name + " returns " + operation.itemType.getName() + " and not "
+					+ itemType.getName());
+		}
+		HttpTransport.StreamedResponse response;
+		try {
+			byte[] request = write(name, args);
+			response = transport.open(address, CONTENT_TYPE, operation.soapAction, ACCEPT, request, connectTimeout,
+					readTimeout);
+		} catch (XMLStreamException | JAXBException x) {
+			throw new WebServiceException("Error writing " + name + " request: " + x.getMessage(), x);
+		} catch (IOException x) {
+			throw new WebServiceException("Error sending request to [" + address + "]: " + x.getMessage(), x);
+		}
+		Results<T> results = null;
+		try {
+			int status = response.getStatus();
+			// SOAP faults come back as 500 and are read like any other response
+			if ((status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_ACCEPTED
+					&& status != HttpURLConnection.HTTP_INTERNAL_ERROR) || response.getContentType() == null
+					|| response.getBody() == null) {
+				throw new WebServiceException("HTTP " + status + " " + response.getReason() + " from [" + address + "]");
+			}
+			results = new Results<>(response, operation, itemType, check, address);
+			results.next = results.read();
+			if (results.next == null) {
+				results.finish();
+			}
+			return results;
+		} catch (XMLStreamException | JAXBException x) {
+			throw new WebServiceException("Error reading response from [" + address + "]: " + x.getMessage(), x);
+		} finally {
+			if (results == null || (results.next == null && !results.done)) {
+				closeQuietly(response);
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException x) {
+			log.debug("Error closing response: " + x.getMessage(), x);
+		}
+	}
+
+	/**
+	 * The items of a streamed response, read one at a time. The connection is returned to the pool once the
+	 * last item has been read and closed if the results are closed before then. Errors reading the response
+	 * are thrown as {@link WebServiceException} and failed results as {@link ProtectPayUncheckedException}
+	 * from the iterator methods. Not thread safe.
+	 */
+	final class Results<T> implements Iterator<T>, Closeable {
+
+		private final HttpTransport.StreamedResponse response;
+		private final Operation operation;
+		private final Class<T> itemType;
+		private final ResultCheck check;
+		private final String address;
+		private final XMLStreamReader reader;
+		private final Unmarshaller unmarshaller;
+		private T next;
+		private boolean checked;
+		private boolean done;
+
+		private Results(HttpTransport.StreamedResponse response, Operation operation, Class<T> itemType,
+				ResultCheck check, String address) throws XMLStreamException, JAXBException {
+			this.response = response;
+			this.operation = operation;
+			this.itemType = itemType;
+			this.check = check;
+			this.address = address;
+			this.reader = inputFactory.createXMLStreamReader(response.getBody());
+			this.unmarshaller = context.createUnmarshaller();
+		}
+
+		private T read() throws XMLStreamException, JAXBException, ProtectPayException {
+			for (;;) {
+				if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+					QName name = reader.getName();
+					if (name.equals(operation.item)) {
+						// Leaves the reader on the event after the item, which may be the next item
+						JAXBElement<?> element = unmarshaller.unmarshal(reader, operation.itemType);
+						if (!element.isNil() && element.getValue() != null) {
+							return itemType.cast(element.getValue());
+						}
+						continue;
+					}
+					if (name.equals(operation.result)) {
+						check.check(unmarshaller.unmarshal(reader, Result.class).getValue());
+						checked = true;
+						continue;
+					}
+					if (SOAP_ENVELOPE_NS.equals(name.getNamespaceURI()) && "Fault".equals(name.getLocalPart())) {
+						throw new WebServiceException("SOAP fault from [" + address + "]: " + readFaultString());
+					}
+				}
+				if (!reader.hasNext()) {
+					if (!checked) {
+						throw new WebServiceException("Response from [" + address + "] has no "
+								+ operation.result.getLocalPart());
+					}
+					return null;
+				}
+				reader.next();
+			}
+		}
+
+		private String readFaultString() throws XMLStreamException {
+			int depth = 0;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (depth == 0 && "faultstring".equals(reader.getLocalName())) {
+						return reader.getElementText();
+					}
+					depth++;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth-- == 0) {
+						break;
+					}
+				}
+			}
+			return null;
+		}
+
+		// Reads to the end of the body so the connection goes back to the pool
+		private void finish() throws XMLStreamException {
+			done = true;
+			try {
+				reader.close();
+				response.consume();
+			} catch (IOException x) {
+				log.debug("Error reading the end of the response: " + x.getMessage(), x);
+			} finally {
+				closeQuietly(response);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && !done) {
+				try {
+					next = read();
+					if (next == null) {
+						finish();
+					}
+				} catch (XMLStreamException | JAXBException x) {
+					close();
+					throw new WebServiceException("Error reading response from [" + address + "]: " + x.getMessage(),
+							x);
+				} catch (ProtectPayException x) {
+					close();
+					throw new ProtectPayUncheckedException(x);
+				} catch (RuntimeException x) {
+					close();
+					throw x;
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T item = next;
+			next = null;
+			return item;
+		}
+
+		@Override
+		public void close() {
+			if (!done) {
+				done = true;
+				next = null;
+				closeQuietly(response);
+			}
+		}
+	}
+}
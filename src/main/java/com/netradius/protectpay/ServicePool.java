@@ -0,0 +1,339 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.SPS;
+import com.propay.sps.SPSService;
+
+import javax.xml.ws.BindingProvider;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of SPSService ports. JAX-WS proxies are not guaranteed to be thread safe, so each port is
+ * only ever used by one thread at a time. All ports share a single SPS instance which means the WSDL is
+ * parsed once per pool and not once per port. When every port is in use, callers block until one is
+ * released and are served in the order they arrived.
+ *
+ * @author Erik R. Jensen
+ */
+class ServicePool implements Closeable {
+
+	private final URL endpointUrl;
+	private final HttpTransport transport;
+	// Fair so waiting callers take released ports in the order they arrived
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final Condition available = lock.newCondition();
+	private final ArrayDeque<SPSService> idle = new ArrayDeque<>();
+	private int created;
+	private final Lock spsLock = new ReentrantLock();
+	private volatile SPS sps;
+	private volatile int maxSize;
+	private volatile long timeout;
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param endpointUrl the endpoint URL ports send requests to
+	 * @param maxSize the maximum number of ports
+	 * @param timeout the maximum time in milliseconds to wait for a port
+	 * @param transportConfig the pooled HTTP transport settings or null to use Metro's default transport
+	 */
+	ServicePool(URL endpointUrl, int maxSize, long timeout, HttpTransportConfig transportConfig) {
+		this.endpointUrl = endpointUrl;
+		this.transport = transportConfig == null ? null : new HttpTransport(transportConfig);
+		setMaxSize(maxSize);
+		setTimeout(timeout);
+	}
+
+	private static URL getWsdlLocation() {
+		URL wsdlLocation = ServicePool.class.getResource(ProtectPayClient.WSDL_RESOURCE);
+		if (wsdlLocation == null) {
+			// Never fetched from the endpoint, ports must not depend on ProPay serving the WSDL
+			throw new IllegalStateException("Bundled WSDL [" + ProtectPayClient.WSDL_RESOURCE
+					+ "] not found on the classpath");
+		}
+		return wsdlLocation;
+	}
+
+	private SPS getSps() {
+		SPS s = sps;
+		if (s == null) {
+			// A lock rather than synchronized so virtual threads are not pinned while the WSDL is read
+			spsLock.lock();
+			try {
+				s = sps;
+				if (s == null) {
+					URL wsdlLocation = getWsdlLocation();
+					try {
+						s = new SPS(wsdlLocation);
+					} catch (Exception x) {
+						throw new IllegalArgumentException("Error initializng service: [" + endpointUrl.toString()
+								+ "]: " + x.getMessage(), x);
+					}
+					sps = s;
+				}
+			} finally {
+				spsLock.unlock();
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Creates a new port from the bundled WSDL.
+	 *
+	 * @return the port
+	 */
+	SPSService newPort() {
+		return transport == null
+				? getSps().getBasicHttpBindingSPSService()
+				: getSps().getBasicHttpBindingSPSService(new HttpTransportFeature(transport));
+	}
+
+	private SPSService create() {
+		try {
+			SPSService service = newPort();
+			((BindingProvider)service).getRequestContext()
+					.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, endpointUrl.toString());
+			return service;
+		} catch (RuntimeException x) {
+			lock.lock();
+			try {
+				created--;
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+			throw x;
+		}
+	}
+
+	// Callers must hold the lock
+	private boolean reserve() {
+		if (created >= maxSize) {
+			return false;
+		}
+		created++;
+		return true;
+	}
+
+	/**
+	 * Borrows a port from the pool, creating one if none are idle and the pool is not full. If the pool
+	 * is full, this method waits for a port to be released.
+	 *
+	 * @return the port
+	 * @throws IllegalStateException if no port became available within the timeout or the thread was
+	 *         interrupted while waiting
+	 */
+	SPSService borrow() {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lock();
+		try {
+			for (;;) {
+				SPSService service = idle.pollFirst();
+				if (service != null) {
+					return service;
+				}
+				if (reserve()) {
+					break;
+				}
+				if (nanos <= 0) {
+					throw new IllegalStateException("Timed out after " + timeout
+							+ "ms waiting for a service port, all " + maxSize + " are in use");
+				}
+				nanos = available.awaitNanos(nanos);
+			}
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for a service port");
+		} finally {
+			lock.unlock();
+		}
+		// Created outside the lock as the first port parses the WSDL
+		return create();
+	}
+
+	/**
+	 * Returns a port to the pool.
+	 *
+	 * @param service the port previously obtained from {@link #borrow()}
+	 */
+	void release(SPSService service) {
+		lock.lock();
+		try {
+			if (created > maxSize) {
+				// The pool has been shrunk, let the port go
+				created--;
+			} else {
+				idle.addLast(service);
+				available.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Creates ports until the pool is full.
+	 *
+	 * @return the number of ports created
+	 */
+	int fill() {
+		int count = 0;
+		for (;;) {
+			lock.lock();
+			try {
+				if (!reserve()) {
+					return count;
+				}
+			} finally {
+				lock.unlock();
+			}
+			SPSService service = create();
+			count++;
+			release(service);
+		}
+	}
+
+	/**
+	 * Returns the endpoint URL ports send requests to.
+	 *
+	 * @return the endpoint URL
+	 */
+	URL getEndpointUrl() {
+		return endpointUrl;
+	}
+
+	/**
+	 * Returns the maximum number of ports.
+	 *
+	 * @return the maximum number of ports
+	 */
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Sets the maximum number of ports. Shrinking the pool takes effect as ports are released.
+	 *
+	 * @param maxSize the maximum number of ports
+	 */
+	void setMaxSize(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1");
+		}
+		lock.lock();
+		try {
+			this.maxSize = maxSize;
+			while (created > maxSize && idle.pollFirst() != null) {
+				created--;
+			}
+			// Growing the pool lets waiting callers create ports
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds to wait for a port.
+	 *
+	 * @return the timeout in milliseconds
+	 */
+	long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds to wait for a port.
+	 *
+	 * @param timeout the timeout in milliseconds
+	 */
+	void setTimeout(long timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Timeout may not be negative");
+		}
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns the number of ports created.
+	 *
+	 * @return the number of ports created
+	 */
+	int getCreated() {
+		lock.lock();
+		try {
+			return created;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of idle ports.
+	 *
+	 * @return the number of idle ports
+	 */
+	int getIdle() {
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of callers waiting for a port.
+	 *
+	 * @return the number of waiting callers
+	 */
+	int getWaiting() {
+		lock.lock();
+		try {
+			return lock.getWaitQueueLength(available);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns true if ports send requests through the pooled HTTP transport.
+	 *
+	 * @return true if the pooled transport is used, false if Metro's default transport is used
+	 */
+	boolean hasTransport() {
+		return transport != null;
+	}
+
+	/**
+	 * Returns the pooled HTTP transport ports send requests through.
+	 *
+	 * @return the transport or null if Metro's default transport is used
+	 */
+	HttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Returns a snapshot of the HTTP connection pool.
+	 *
+	 * @return the connection pool statistics or null if Metro's default transport is used
+	 */
+	HttpTransportStats getTransportStats() {
+		return transport == null ? null : transport.getStats();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (transport != null) {
+			transport.close();
+		}
+	}
+}
@@ -0,0 +1,351 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.SPSService;
+import com.propay.sps.types.Billing;
+import com.propay.sps.types.ID;
+import com.propay.sps.types.Transaction;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.AchOverrides;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.CreditCardOverrides;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.PaymentInfoOverrides;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jws.WebParam;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlNsForm;
+import javax.xml.bind.annotation.XmlSchema;
+import javax.xml.bind.annotation.XmlType;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.ws.RequestWrapper;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the SOAP envelope of a payment method transaction straight from the model with StAX, skipping
+ * the JAXB objects and reflective marshalling the generated port would otherwise go through. The request
+ * is written into a buffer reused by each thread and handed to {@link HttpTransportTube} to send.
+ * <p>
+ * Element names, namespaces and order are read once from the annotations of the generated classes, so the
+ * request on the wire is the same one JAXB would write. If those annotations cannot be read no writer is
+ * available and requests are marshalled as usual.
+ *
+ * <p>
+ * This class is internal to the client, it is only public so benchmarks outside this package can use it.
+ *
+ * @author Erik R. Jensen
+ */
+public final class TransactRequestWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(TransactRequestWriter.class);
+
+	private static final String SOAP_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+	private static final int MAX_RETAINED_BUFFER = 65536;
+
+	/**
+	 * The port methods this writer can write requests for.
+	 */
+	static final List<String> OPERATIONS = Arrays.asList(
+			"authorizePaymentMethodTransaction",
+			"authorizePaymentMethodTransactionRecurring",
+			"processPaymentMethodTransaction",
+			"processPaymentMethodTransactionRecurring",
+			"creditPayment");
+
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	private static final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+
+	private static volatile TransactRequestWriter instance;
+	private static volatile boolean initialized;
+
+	private final Map<String, QName[]> operations = new HashMap<>();
+	private final Map<String, String> prefixes = new LinkedHashMap<>();
+	private final Type id;
+	private final Type transaction;
+	private final Type overrides;
+	private final Type creditCard;
+	private final Type ach;
+	private final Type billing;
+
+	/**
+	 * Holds a written request. The array is reused by the next request written on the same thread.
+	 */
+	public static final class Buffer extends ByteArrayOutputStream {
+
+		private Buffer() {
+			super(2048);
+		}
+
+		byte[] array() {
+			return buf;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Content {
+		void write(XMLStreamWriter writer) throws XMLStreamException;
+	}
+
+	/**
+	 * The elements of a generated type in the order the schema requires.
+	 */
+	private static final class Type {
+
+		private final QName[] names;
+		private final int[] order;
+
+		/**
+		 * @param type the generated class
+		 * @param prefixes the prefixes assigned to namespaces, added to as needed
+		 * @param properties the properties written, by slot
+		 */
+		Type(Class<?> type, Map<String, String> prefixes, String... properties) {
+			XmlType xmlType = type.getAnnotation(XmlType.class);
+			if (xmlType == null) {
+				throw new IllegalStateException(type.getName() + " has no @XmlType");
+			}
+			List<String> propOrder = new ArrayList<>();
+			for (String p : xmlType.propOrder()) {
+				propOrder.add(normalize(p));
+			}
+			names = new QName[properties.length];
+			Integer[] slots = new Integer[properties.length];
+			int[] positions = new int[properties.length];
+			for (int i = 0; i < properties.length; i++) {
+				Field field = findField(type, properties[i]);
+				names[i] = elementName(type, field, prefixes);
+				positions[i] = propOrder.indexOf(normalize(field.getName()));
+				if (positions[i] < 0) {
+					throw new IllegalStateException(type.getName() + " does not order " + field.getName());
+				}
+				slots[i] = i;
+			}
+			Arrays.sort(slots, (a, b) -> Integer.compare(positions[a], positions[b]));
+			order = new int[slots.length];
+			for (int i = 0; i < slots.length; i++) {
+				order[i] = slots[i];
+			}
+		}
+	}
+
+	private static String normalize(String name) {
+		return (name.startsWith("_") ? name.substring(1) : name).toLowerCase();
+	}
+
+	static Field findField(Class<?> type, String property) {
+		for (Field field : type.getDeclaredFields()) {
+			if (normalize(field.getName()).equals(normalize(property))) {
+				return field;
+			}
+		}
+		throw new IllegalStateException(type.getName() + " has no property " + property);
+	}
+
+	private static QName qname(String namespace, String localName, Map<String, String> prefixes) {
+		String prefix = prefixes.get(namespace);
+		if (prefix == null) {
+			prefix = "ns" + (prefixes.size() + 1);
+			prefixes.put(namespace, prefix);
+		}
+		return new QName(namespace, localName, prefix);
+	}
+
+	private static String defaultNamespace(Class<?> type) {
+		XmlSchema schema = type.getPackage().getAnnotation(XmlSchema.class);
+		if (schema == null || schema.elementFormDefault() != XmlNsForm.QUALIFIED) {
+			return "";
+		}
+		XmlType xmlType = type.getAnnotation(XmlType.class);
+		return xmlType == null || "##default".equals(xmlType.namespace()) ? schema.namespace() : xmlType.namespace();
+	}
+
+	static QName elementName(Class<?> type, Field field, Map<String, String> prefixes) {
+		XmlElementRef ref = field.getAnnotation(XmlElementRef.class);
+		if (ref != null) {
+			String namespace = "##default".equals(ref.namespace()) ? defaultNamespace(type) : ref.namespace();
+			return qname(namespace, ref.name(), prefixes);
+		}
+		XmlElement element = field.getAnnotation(XmlElement.class);
+		String name = element == null || "##default".equals(element.name()) ? field.getName() : element.name();
+		String namespace = element == null || "##default".equals(element.namespace())
+				? defaultNamespace(type) : element.namespace();
+		return qname(namespace, name, prefixes);
+	}
+
+	private TransactRequestWriter() throws NoSuchMethodException {
+		for (String operation : OPERATIONS) {
+			Method method = SPSService.class.getMethod(operation, ID.class, Transaction.class, String.class,
+					PaymentInfoOverrides.class);
+			RequestWrapper wrapper = method.getAnnotation(RequestWrapper.class);
+			if (wrapper == null) {
+				throw new IllegalStateException(operation + " has no @RequestWrapper");
+			}
+			QName[] names = new QName[5];
+			names[0] = qname(wrapper.targetNamespace(), wrapper.localName(), prefixes);
+			Annotation[][] annotations = method.getParameterAnnotations();
+			for (int i = 0; i < annotations.length; i++) {
+				WebParam param = null;
+				for (Annotation annotation : annotations[i]) {
+					if (annotation instanceof WebParam) {
+						param = (WebParam)annotation;
+					}
+				}
+				if (param == null) {
+					throw new IllegalStateException(operation + " has no @WebParam on parameter " + i);
+				}
+				names[i + 1] = qname(param.targetNamespace(), param.name(), prefixes);
+			}
+			operations.put(operation, names);
+		}
+		id = new Type(ID.class, prefixes, "authenticationToken", "billerAccountId");
+		transaction = new Type(Transaction.class, prefixes, "payerAccountId", "amount", "comment1", "comment2",
+				"currencyCode", "inputIpAddress", "invoice", "merchantProfileId");
+		overrides = new Type(PaymentInfoOverrides.class, prefixes, "creditCard", "ach");
+		creditCard = new Type(CreditCardOverrides.class, prefixes, "fullName", "cvv", "expirationDate", "billing");
+		ach = new Type(AchOverrides.class, prefixes, "bankAccountType", "secCode");
+		billing = new Type(Billing.class, prefixes, "address1", "address2", "address3", "city", "state", "zipCode",
+				"country", "email", "telephoneNumber");
+	}
+
+	/**
+	 * Returns the shared writer.
+	 *
+	 * @return the writer or null if the generated classes do not carry the annotations needed
+	 */
+	public static TransactRequestWriter getInstance() {
+		if (!initialized) {
+			synchronized (TransactRequestWriter.class) {
+				if (!initialized) {
+					try {
+						instance = new TransactRequestWriter();
+					} catch (NoSuchMethodException | RuntimeException x) {
+						log.warn("Transaction requests cannot be written directly and will be marshalled: "
+								+ x.getMessage(), x);
+					}
+					initialized = true;
+				}
+			}
+		}
+		return instance;
+	}
+
+	private static void start(XMLStreamWriter writer, QName name) throws XMLStreamException {
+		writer.writeStartElement(name.getPrefix(), name.getLocalPart(), name.getNamespaceURI());
+	}
+
+	private static void write(XMLStreamWriter writer, Type type, Object... values) throws XMLStreamException {
+		for (int slot : type.order) {
+			Object value = values[slot];
+			if (value == null) {
+				continue;
+			}
+			start(writer, type.names[slot]);
+			if (value instanceof Content) {
+				((Content)value).write(writer);
+			} else {
+				writer.writeCharacters((String)value);
+			}
+			writer.writeEndElement();
+		}
+	}
+
+	/**
+	 * Writes a transaction request.
+	 *
+	 * @param operation the port method, one of {@link #OPERATIONS}
+	 * @param authenticationToken the authentication token
+	 * @param billerAccountId the biller account ID
+	 * @param payment the payment
+	 * @param cco the credit card overrides or null
+	 * @param ao the ACH overrides or null
+	 * @return the request, valid until the next request is written on this thread
+	 * @throws XMLStreamException if the request cannot be written
+	 */
+	public Buffer write(String operation, String authenticationToken, String billerAccountId, ProtectPayPayment payment,
+			CreditCardOverride cco, ACHOverride ao) throws XMLStreamException {
+		QName[] names = operations.get(operation);
+		if (names == null) {
+			throw new IllegalArgumentException("Unsupported operation " + operation);
+		}
+		Buffer buffer = buffers.get();
+		if (buffer.array().length > MAX_RETAINED_BUFFER) {
+			// Not kept after an unusually large request
+			buffer = new Buffer();
+			buffers.set(buffer);
+		}
+		buffer.reset();
+		XMLStreamWriter writer = outputFactory.createXMLStreamWriter(buffer, "UTF-8");
+		writer.writeStartDocument("UTF-8", "1.0");
+		writer.writeStartElement("S", "Envelope", SOAP_ENVELOPE_NS);
+		writer.writeNamespace("S", SOAP_ENVELOPE_NS);
+		writer.writeStartElement("S", "Body", SOAP_ENVELOPE_NS);
+		start(writer, names[0]);
+		for (Map.Entry<String, String> entry : prefixes.entrySet()) {
+			writer.writeNamespace(entry.getValue(), entry.getKey());
+		}
+
+		start(writer, names[1]);
+		write(writer, id, authenticationToken, billerAccountId);
+		writer.writeEndElement();
+
+		start(writer, names[2]);
+		write(writer, transaction,
+				payment.getPayerAccountId(),
+				payment.getAmount().toString(),
+				payment.getComment1(),
+				payment.getComment2(),
+				payment.getCurrencyCode(),
+				payment.getInputIpAddress(),
+				payment.getInvoice(),
+				payment.getMerchantProfileId() == null ? null : payment.getMerchantProfileId().toString());
+		writer.writeEndElement();
+
+		start(writer, names[3]);
+		writer.writeCharacters(payment.getPaymentMethodId());
+		writer.writeEndElement();
+
+		start(writer, names[4]);
+		write(writer, overrides,
+				cco == null ? null : (Content)w -> writeCreditCard(w, cco),
+				ao == null ? null : (Content)w -> write(w, ach,
+						ao.getBankAccountType() == null ? null : ao.getBankAccountType().toString(),
+						ao.getSecCode() == null ? null : ao.getSecCode().name()));
+		writer.writeEndElement();
+
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.close();
+		return buffer;
+	}
+
+	private void writeCreditCard(XMLStreamWriter writer, CreditCardOverride cco) throws XMLStreamException {
+		ProtectPayBillingInfo info = cco.getBilling();
+		write(writer, creditCard,
+				cco.getFullName(),
+				cco.getCvv(),
+				cco.getExpiration(),
+				info == null ? null : (Content)w -> write(w, billing,
+						info.getAddress1(),
+						info.getAddress2(),
+						info.getAddress3(),
+						info.getCity(),
+						info.getState(),
+						info.getZipCode(),
+						info.getCountry() == null ? null : info.getCountry().toString(),
+						info.getEmailAddress(),
+						info.getTelephoneNumber()));
+	}
+}
@@ -0,0 +1,56 @@
+package com.netradius.protectpay;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides access to virtual threads when running on Java 21 or later. This library is compiled for
+ * Java 8, so the virtual thread API is looked up reflectively.
+ *
+ * @author Erik R. Jensen
+ */
+public final class VirtualThreads {
+
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+	static {
+		Method method;
+		try {
+			method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException x) {
+			method = null;
+		}
+		NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = method;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Returns true if the running JVM supports virtual threads.
+	 *
+	 * @return true if virtual threads are supported, false if otherwise
+	 */
+	public static boolean isSupported() {
+		return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * Creates an executor which starts a new virtual thread for each task.
+	 *
+	 * @return the executor
+	 * @throws UnsupportedOperationException if the running JVM does not support virtual threads
+	 */
+	public static ExecutorService newExecutor() {
+		if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later, running "
+					+ System.getProperty("java.version"));
+		}
+		try {
+			return (ExecutorService)NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+		} catch (ReflectiveOperationException x) {
+			throw new UnsupportedOperationException("Error creating virtual thread executor: " + x.getMessage(), x);
+		}
+	}
+}
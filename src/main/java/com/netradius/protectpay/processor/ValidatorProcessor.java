@@ -0,0 +1,518 @@
+package com.netradius.protectpay.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a validator for each class in com.netradius.protectpay with Bean Validation annotations on
+ * its fields. @Size on strings, collections, maps and arrays, @NotNull and @Valid on a class which is
+ * itself fully supported are checked by generated code which calls getters and needs neither
+ * reflection nor a ValidatorFactory. Classes using anything else, such as other constraints, groups,
+ * custom messages with expressions or constraints on methods, get a validator which hands the bean to
+ * the shared Validator in GeneratedValidation instead.
+ *
+ * <p>The generated validator of Foo is the package private FooValidator with a static
+ * validate(Foo) method returning the constraint violations of the Default group.</p>
+ *
+ * @author Erik R. Jensen
+ */
+@SupportedAnnotationTypes("*")
+public class ValidatorProcessor extends AbstractProcessor {
+
+	static final String PACKAGE = "com.netradius.protectpay";
+	static final String SUPPORT = "GeneratedValidation";
+
+	private static final String VALIDATION = "javax.validation.";
+	private static final String CONSTRAINT = "javax.validation.Constraint";
+	private static final String VALID = "javax.validation.Valid";
+	private static final String SIZE = "javax.validation.constraints.Size";
+	private static final String NOT_NULL = "javax.validation.constraints.NotNull";
+	private static final String DEFAULT_GROUP = "javax.validation.groups.Default";
+	private static final String SIZE_TEMPLATE = "{javax.validation.constraints.Size.message}";
+	private static final String NOT_NULL_TEMPLATE = "{javax.validation.constraints.NotNull.message}";
+
+	// The English messages of the reference implementation for the default templates
+	private static final String SIZE_MESSAGE = "size must be between {min} and {max}";
+	private static final String NOT_NULL_MESSAGE = "may not be null";
+
+	private final Set<String> generated = new HashSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+		Set<TypeElement> types = new HashSet<>();
+		for (Element element : round.getRootElements()) {
+			collect(element, types);
+		}
+		for (TypeElement type : types) {
+			if (hasValidation(type) && generated.add(type.getQualifiedName().toString())) {
+				Bean bean = new Bean(type);
+				analyze(bean, types, new ArrayDeque<>());
+				write(bean);
+			}
+		}
+		return false;
+	}
+
+	private void collect(Element element, Set<TypeElement> types) {
+		if (element.getKind() == ElementKind.CLASS
+				&& PACKAGE.equals(processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString())) {
+			types.add((TypeElement)element);
+			for (Element enclosed : element.getEnclosedElements()) {
+				collect(enclosed, types);
+			}
+		}
+	}
+
+	private boolean hasValidation(TypeElement type) {
+		if (isAnnotated(type)) {
+			return true;
+		}
+		for (Element enclosed : type.getEnclosedElements()) {
+			if ((enclosed.getKind() == ElementKind.FIELD || enclosed.getKind() == ElementKind.METHOD)
+					&& isAnnotated(enclosed)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isAnnotated(Element element) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (isValidation(annotation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isValidation(AnnotationMirror annotation) {
+		TypeElement type = (TypeElement)annotation.getAnnotationType().asElement();
+		if (type.getQualifiedName().toString().startsWith(VALIDATION)) {
+			return true;
+		}
+		for (AnnotationMirror meta : type.getAnnotationMirrors()) {
+			if (name(meta).equals(CONSTRAINT)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String name(AnnotationMirror annotation) {
+		return ((TypeElement)annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+	}
+
+	// Fills in the checks for a bean or the reason the shared Validator has to be used instead
+	private void analyze(Bean bean, Set<TypeElement> types, Deque<TypeElement> visiting) {
+		TypeElement type = bean.type;
+		if (!type.getTypeParameters().isEmpty()) {
+			bean.unsupported("it has type parameters");
+			return;
+		}
+		if (!processingEnv.getTypeUtils().isSameType(type.getSuperclass(),
+				processingEnv.getElementUtils().getTypeElement(Object.class.getName()).asType())) {
+			bean.unsupported("it extends another class");
+			return;
+		}
+		if (isAnnotated(type)) {
+			bean.unsupported("it has class level constraints");
+			return;
+		}
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (isAnnotated(method)) {
+				bean.unsupported("method " + method.getSimpleName() + " has constraints");
+				return;
+			}
+		}
+		visiting.push(type);
+		try {
+			for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+				for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+					if (!isValidation(annotation)) {
+						continue;
+					}
+					String reason = check(bean, field, annotation, types, visiting);
+					if (reason != null) {
+						bean.unsupported("field " + field.getSimpleName() + " " + reason);
+						return;
+					}
+				}
+			}
+		} finally {
+			visiting.pop();
+		}
+	}
+
+	// Adds the check for a constraint on a field, returning why it cannot be generated if it cannot
+	private String check(Bean bean, VariableElement field, AnnotationMirror annotation, Set<TypeElement> types,
+			Deque<TypeElement> visiting) {
+		String name = name(annotation);
+		if (field.getModifiers().contains(Modifier.STATIC)) {
+			return "is static";
+		}
+		ExecutableElement getter = getter(bean.type, field);
+		if (getter == null) {
+			return "has no getter";
+		}
+		Map<String, AnnotationValue> values = values(annotation);
+		if (!name.equals(VALID) && !isDefaultGroup(values.get("groups"))) {
+			return "has constraints in groups other than Default";
+		}
+		TypeMirror type = field.asType();
+		Check check = new Check(field.getSimpleName().toString(), getter.getSimpleName().toString(), type);
+		switch (name) {
+			case VALID:
+				if (type.getKind() != TypeKind.DECLARED) {
+					return "is not a bean";
+				}
+				TypeElement nested = (TypeElement)((DeclaredType)type).asElement();
+				if (!types.contains(nested)) {
+					return "is not a bean of " + PACKAGE + " compiled with it";
+				}
+				if (visiting.contains(nested)) {
+					return "cascades to a bean which cascades back to it";
+				}
+				Bean cascade = new Bean(nested);
+				analyze(cascade, types, visiting);
+				if (cascade.reason != null) {
+					return "cascades to " + nested.getSimpleName() + " which is not supported as " + cascade.reason;
+				}
+				if (cascade.checks.isEmpty()) {
+					return null;
+				}
+				check.kind = Check.Kind.VALID;
+				check.cascade = cascade;
+				break;
+			case SIZE:
+				check.kind = Check.Kind.SIZE;
+				check.size = sizeOf(type);
+				if (check.size == null) {
+					return "is not a string, collection, map or array";
+				}
+				check.min = (Integer)values.get("min").getValue();
+				check.max = (Integer)values.get("max").getValue();
+				if (check.min < 0 || check.max < check.min) {
+					return "has an invalid size";
+				}
+				check.template = (String)values.get("message").getValue();
+				check.message = interpolate(check.template, SIZE_TEMPLATE, SIZE_MESSAGE, check.min, check.max);
+				break;
+			case NOT_NULL:
+				if (type.getKind().isPrimitive()) {
+					return null;
+				}
+				check.kind = Check.Kind.NOT_NULL;
+				check.template = (String)values.get("message").getValue();
+				check.message = interpolate(check.template, NOT_NULL_TEMPLATE, NOT_NULL_MESSAGE, 0, 0);
+				break;
+			default:
+				return "has unsupported constraint @" + annotation.getAnnotationType().asElement().getSimpleName();
+		}
+		if (check.kind != Check.Kind.VALID && check.message == null) {
+			return "has a message which needs interpolating";
+		}
+		bean.checks.add(check);
+		return null;
+	}
+
+	private ExecutableElement getter(TypeElement type, VariableElement field) {
+		String property = field.getSimpleName().toString();
+		String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			String name = method.getSimpleName().toString();
+			if ((name.equals("get" + suffix) || (name.equals("is" + suffix) && field.asType().getKind() == TypeKind.BOOLEAN))
+					&& method.getParameters().isEmpty()
+					&& !method.getModifiers().contains(Modifier.PRIVATE)
+					&& !method.getModifiers().contains(Modifier.STATIC)
+					&& processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	private Map<String, AnnotationValue> values(AnnotationMirror annotation) {
+		Map<String, AnnotationValue> values = new LinkedHashMap<>();
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+				: processingEnv.getElementUtils().getElementValuesWithDefaults(annotation).entrySet()) {
+			values.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+		}
+		return values;
+	}
+
+	private static boolean isDefaultGroup(AnnotationValue groups) {
+		if (groups == null) {
+			return true;
+		}
+		for (Object group : (List<?>)groups.getValue()) {
+			TypeMirror type = (TypeMirror)((AnnotationValue)group).getValue();
+			if (!DEFAULT_GROUP.equals(type.toString())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Returns the expression which sizes a value of the given type or null if @Size does not apply to it
+	private String sizeOf(TypeMirror type) {
+		if (type.getKind() == TypeKind.ARRAY) {
+			return "value.length";
+		}
+		if (type.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		if (isAssignable(type, CharSequence.class)) {
+			return "value.length()";
+		}
+		if (isAssignable(type, java.util.Collection.class) || isAssignable(type, Map.class)) {
+			return "value.size()";
+		}
+		return null;
+	}
+
+	private boolean isAssignable(TypeMirror type, Class<?> to) {
+		return processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type),
+				processingEnv.getTypeUtils().erasure(processingEnv.getElementUtils().getTypeElement(to.getName()).asType()));
+	}
+
+	// Interpolates a message at compile time, null if it has anything other than {min} and {max} to replace
+	private static String interpolate(String template, String defaultTemplate, String defaultMessage, int min,
+			int max) {
+		String message = template.equals(defaultTemplate) ? defaultMessage : template;
+		message = message.replace("{min}", Integer.toString(min)).replace("{max}", Integer.toString(max));
+		if (message.indexOf('{') >= 0 || message.indexOf('}') >= 0 || message.indexOf('$') >= 0
+				|| message.indexOf('\\') >= 0) {
+			return null;
+		}
+		return message;
+	}
+
+	private void write(Bean bean) {
+		String className = bean.className();
+		String typeName = bean.typeName();
+		if (bean.reason != null) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, className
+					+ " uses the shared Validator as " + bean.reason, bean.type);
+		}
+		try {
+			JavaFileObject file = processingEnv.getFiler().createSourceFile(PACKAGE + "." + className, bean.type);
+			try (PrintWriter out = new PrintWriter(file.openWriter())) {
+				out.println("package " + PACKAGE + ";");
+				out.println();
+				out.println("import javax.validation.ConstraintViolation;");
+				out.println("import java.util.HashSet;");
+				out.println("import java.util.Set;");
+				out.println();
+				out.println("/**");
+				out.println(" * Validates " + typeName + ". Generated by " + getClass().getName() + ", do not edit.");
+				out.println(" */");
+				out.println("final class " + className + " {");
+				out.println();
+				if (bean.reason == null) {
+					writeGenerated(out, bean);
+				} else {
+					writeShared(out, bean);
+				}
+				out.println("}");
+			}
+		} catch (IOException x) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + className + ": "
+					+ x.getMessage(), bean.type);
+		}
+	}
+
+	private static void writeShared(PrintWriter out, Bean bean) {
+		String typeName = bean.typeName();
+		out.println("\tprivate " + bean.className() + "() {}");
+		out.println();
+		out.println("\t// Not generated as " + bean.reason);
+		out.println("\tstatic Set<ConstraintViolation<" + typeName + ">> validate(" + typeName + " bean) {");
+		out.println("\t\treturn " + SUPPORT + ".validator().validate(bean);");
+		out.println("\t}");
+	}
+
+	private static void writeGenerated(PrintWriter out, Bean bean) {
+		String typeName = bean.typeName();
+		for (Check check : bean.checks) {
+			if (check.kind == Check.Kind.SIZE) {
+				out.println("\tprivate static final " + SUPPORT + ".Descriptor<javax.validation.constraints.Size> "
+						+ check.constant() + " =");
+				out.println("\t\t\t" + SUPPORT + ".size(" + typeName + ".class, \"" + check.field + "\", " + check.min
+						+ ", " + check.max + ", " + literal(check.template) + ", " + literal(check.message) + ");");
+			} else if (check.kind == Check.Kind.NOT_NULL) {
+				out.println("\tprivate static final " + SUPPORT + ".Descriptor<javax.validation.constraints.NotNull> "
+						+ check.constant() + " =");
+				out.println("\t\t\t" + SUPPORT + ".notNull(" + typeName + ".class, \"" + check.field + "\", "
+						+ literal(check.template) + ", " + literal(check.message) + ");");
+			}
+		}
+		out.println();
+		out.println("\tprivate " + bean.className() + "() {}");
+		out.println();
+		out.println("\tstatic Set<ConstraintViolation<" + typeName + ">> validate(" + typeName + " bean) {");
+		out.println("\t\tSet<ConstraintViolation<" + typeName + ">> violations = new HashSet<>();");
+		out.println("\t\tvalidate(bean, bean, " + typeName + ".class, null, violations);");
+		out.println("\t\treturn violations;");
+		out.println("\t}");
+		out.println();
+		out.println("\tstatic <R> void validate(" + typeName + " bean, R rootBean, Class<R> rootBeanClass,");
+		out.println("\t\t\t" + SUPPORT + ".PropertyPath path, Set<ConstraintViolation<R>> violations) {");
+		for (Check check : bean.checks) {
+			out.println("\t\t{");
+			out.println("\t\t\t" + check.typeName() + " value = bean." + check.getter + "();");
+			switch (check.kind) {
+				case SIZE:
+					List<String> bounds = new ArrayList<>();
+					if (check.min > 0) {
+						bounds.add(check.size + " < " + check.min);
+					}
+					if (check.max < Integer.MAX_VALUE) {
+						bounds.add(check.size + " > " + check.max);
+					}
+					if (bounds.isEmpty()) {
+						out.println("\t\t\t// Any size is valid");
+					} else {
+						out.println("\t\t\tif (value != null && (" + String.join(" || ", bounds) + ")) {");
+						writeViolation(out, check);
+						out.println("\t\t\t}");
+					}
+					break;
+				case NOT_NULL:
+					out.println("\t\t\tif (value == null) {");
+					writeViolation(out, check);
+					out.println("\t\t\t}");
+					break;
+				case VALID:
+					out.println("\t\t\tif (value != null) {");
+					out.println("\t\t\t\t" + check.cascade.className() + ".validate(value, rootBean, rootBeanClass,");
+					out.println("\t\t\t\t\t\t" + SUPPORT + ".path(path, \"" + check.field + "\"), violations);");
+					out.println("\t\t\t}");
+					break;
+			}
+			out.println("\t\t}");
+		}
+		out.println("\t}");
+	}
+
+	private static void writeViolation(PrintWriter out, Check check) {
+		out.println("\t\t\t\tviolations.add(" + SUPPORT + ".violation(rootBean, rootBeanClass, bean, path, \""
+				+ check.field + "\", value,");
+		out.println("\t\t\t\t\t\t" + check.constant() + "));");
+	}
+
+	private static String literal(String value) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			switch (c) {
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				default:
+					if (c < 0x20 || c > 0x7e) {
+						sb.append(String.format("\\u%04x", (int)c));
+					} else {
+						sb.append(c);
+					}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static final class Bean {
+
+		private final TypeElement type;
+		private final List<Check> checks = new ArrayList<>();
+		private String reason;
+
+		private Bean(TypeElement type) {
+			this.type = type;
+		}
+
+		private void unsupported(String reason) {
+			this.reason = reason;
+			checks.clear();
+		}
+
+		// Nested classes are named by their binary name with $ replaced, Outer.Inner is validated by Outer_InnerValidator
+		private String className() {
+			StringBuilder sb = new StringBuilder(type.getSimpleName());
+			for (Element e = type.getEnclosingElement(); !(e instanceof PackageElement); e = e.getEnclosingElement()) {
+				sb.insert(0, '_').insert(0, e.getSimpleName());
+			}
+			return sb.append("Validator").toString();
+		}
+
+		private String typeName() {
+			return type.getQualifiedName().toString().substring(PACKAGE.length() + 1);
+		}
+	}
+
+	private static final class Check {
+
+		private enum Kind {
+			SIZE,
+			NOT_NULL,
+			VALID
+		}
+
+		private final String field;
+		private final String getter;
+		private final TypeMirror type;
+		private Kind kind;
+		private String size;
+		private int min;
+		private int max;
+		private String template;
+		private String message;
+		private Bean cascade;
+
+		private Check(String field, String getter, TypeMirror type) {
+			this.field = field;
+			this.getter = getter;
+			this.type = type;
+		}
+
+		private String constant() {
+			return field.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase() + "_" + kind;
+		}
+
+		private String typeName() {
+			return type.toString();
+		}
+	}
+}
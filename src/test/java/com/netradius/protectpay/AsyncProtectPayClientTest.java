@@ -0,0 +1,119 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests AsyncProtectPayClient with service ports which do not call ProtectPay.
+ *
+ * @author Erik R. Jensen
+ */
+public class AsyncProtectPayClientTest {
+
+	private static ProtectPayClient client(StubServicePool pool) {
+		return new ProtectPayClient(pool, true, "token", "biller");
+	}
+
+	@Test
+	public void testSuccess() throws Exception {
+		StubServicePool pool = new StubServicePool(1, 1000, (method, args) -> StubServicePool.result("00"));
+		try (ProtectPayClient client = client(pool);
+				AsyncProtectPayClient async = new AsyncProtectPayClient(client)) {
+			assertNull(async.deletePayer("payer").get(10, TimeUnit.SECONDS));
+			assertEquals(0, async.getMaxConcurrency());
+			assertEquals(-1, async.getAvailablePermits());
+		}
+	}
+
+	@Test
+	public void testFailedResult() throws Exception {
+		StubServicePool pool = new StubServicePool(1, 1000, (method, args) -> StubServicePool.result("301"));
+		try (ProtectPayClient client = client(pool);
+				AsyncProtectPayClient async = new AsyncProtectPayClient(client)) {
+			CompletableFuture<Void> future = async.deletePayer("payer");
+			try {
+				future.get(10, TimeUnit.SECONDS);
+				fail("Expected ExecutionException");
+			} catch (ExecutionException x) {
+				assertTrue(x.getCause() instanceof ProtectPayException);
+			}
+			assertTrue(future.isCompletedExceptionally());
+		}
+	}
+
+	@Test
+	public void testRejected() throws Exception {
+		StubServicePool pool = new StubServicePool(1, 1000, (method, args) -> StubServicePool.result("00"));
+		try (ProtectPayClient client = client(pool)) {
+			AsyncProtectPayClient async = new AsyncProtectPayClient(client, r -> {
+				throw new RejectedExecutionException("full");
+			});
+			CompletableFuture<Void> future = async.deletePayer("payer");
+			assertTrue(future.isCompletedExceptionally());
+			try {
+				future.get();
+				fail("Expected ExecutionException");
+			} catch (ExecutionException x) {
+				assertTrue(x.getCause() instanceof RejectedExecutionException);
+			}
+			assertEquals(0, pool.getPortsCreated());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testMaxConcurrency() throws Exception {
+		int maxConcurrency = 2;
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		StubServicePool pool = new StubServicePool(4, 10000, (method, args) -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				release.await();
+			} finally {
+				inFlight.decrementAndGet();
+			}
+			return StubServicePool.result("00");
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try (ProtectPayClient client = client(pool)) {
+			AsyncProtectPayClient async = new AsyncProtectPayClient(client, executor, maxConcurrency);
+			assertEquals(maxConcurrency, async.getMaxConcurrency());
+			CompletableFuture<?>[] futures = new CompletableFuture<?>[4];
+			for (int i = 0; i < futures.length; i++) {
+				futures[i] = async.deletePayer("payer" + i);
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (inFlight.get() < maxConcurrency) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+			}
+			// Give requests over the limit the chance to start if the limit were not applied
+			Thread.sleep(50);
+			assertEquals(maxConcurrency, inFlight.get());
+			assertEquals(0, async.getAvailablePermits());
+
+			release.countDown();
+			CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+			assertEquals(maxConcurrency, maxInFlight.get());
+			assertEquals(maxConcurrency, async.getAvailablePermits());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMaxConcurrency() {
+		new AsyncProtectPayClient(null, Runnable::run, -1);
+	}
+}
@@ -0,0 +1,125 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ElementKind;
+import javax.validation.Path;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import javax.validation.groups.Default;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the validators ValidatorProcessor generates for the model classes.
+ *
+ * @author Erik R. Jensen
+ */
+public class GeneratedValidationTest {
+
+	private static String repeat(char c, int count) {
+		return new String(new char[count]).replace('\0', c);
+	}
+
+	private static <T> Set<String> paths(Set<ConstraintViolation<T>> violations) {
+		Set<String> paths = new TreeSet<>();
+		for (ConstraintViolation<T> violation : violations) {
+			paths.add(violation.getPropertyPath().toString());
+		}
+		return paths;
+	}
+
+	@Test
+	public void testValid() {
+		ProtectPayPayment payment = new ProtectPayPayment();
+		payment.setPayerAccountId(repeat('1', 16));
+		payment.setCurrencyCode("USD");
+		assertTrue(payment.validate().isEmpty());
+		assertTrue(new ProtectPayPayer().validate().isEmpty());
+		assertTrue(ProtectPayFixtures.billing().validate().isEmpty());
+		ACHOverride ao = new ACHOverride();
+		ao.setSecCode(ACHOverride.SecCode.WEB);
+		assertTrue(ao.validate().isEmpty());
+	}
+
+	@Test
+	public void testSize() {
+		ProtectPayPayment payment = new ProtectPayPayment();
+		payment.setPayerAccountId(repeat('1', 17));
+		payment.setCurrencyCode("USDX");
+		payment.setComment1(repeat('c', 128));
+		Set<ConstraintViolation<ProtectPayPayment>> violations = payment.validate();
+		assertEquals(new TreeSet<>(Arrays.asList("currencyCode", "payerAccountId")), paths(violations));
+		for (ConstraintViolation<ProtectPayPayment> violation : violations) {
+			assertSame(payment, violation.getRootBean());
+			assertSame(payment, violation.getLeafBean());
+			assertEquals(ProtectPayPayment.class, violation.getRootBeanClass());
+			assertEquals("{javax.validation.constraints.Size.message}", violation.getMessageTemplate());
+			if (violation.getPropertyPath().toString().equals("currencyCode")) {
+				assertEquals("USDX", violation.getInvalidValue());
+				assertEquals("size must be between 0 and 3", violation.getMessage());
+				assertEquals(3, violation.getConstraintDescriptor().getAttributes().get("max"));
+			}
+		}
+	}
+
+	@Test
+	public void testNotNull() {
+		Set<ConstraintViolation<ACHOverride>> violations = new ACHOverride().validate();
+		assertEquals(1, violations.size());
+		ConstraintViolation<ACHOverride> violation = violations.iterator().next();
+		assertEquals("secCode", violation.getPropertyPath().toString());
+		assertEquals("may not be null", violation.getMessage());
+		assertNull(violation.getInvalidValue());
+		assertEquals(Collections.<Class<?>>singleton(Default.class), violation.getConstraintDescriptor().getGroups());
+		assertTrue(violation.getConstraintDescriptor().getAnnotation() instanceof NotNull);
+	}
+
+	@Test
+	public void testCascade() {
+		ProtectPayPaymentMethod method = new ProtectPayPaymentMethod();
+		method.setExpirationDate("12345");
+		ProtectPayBillingInfo billing = ProtectPayFixtures.billing();
+		billing.setState("Idaho");
+		billing.setTelephoneNumber(repeat('5', 21));
+		method.setBilling(billing);
+		Set<ConstraintViolation<ProtectPayPaymentMethod>> violations = method.validate();
+		assertEquals(new TreeSet<>(Arrays.asList("billing.state", "billing.telephoneNumber",
+				"expirationDate")), paths(violations));
+		for (ConstraintViolation<ProtectPayPaymentMethod> violation : violations) {
+			assertSame(method, violation.getRootBean());
+			Path path = violation.getPropertyPath();
+			if (path.toString().startsWith("billing.")) {
+				assertSame(billing, violation.getLeafBean());
+				Iterator<Path.Node> nodes = path.iterator();
+				Path.Node node = nodes.next();
+				assertEquals("billing", node.getName());
+				assertEquals(ElementKind.PROPERTY, node.getKind());
+				assertNotNull(node.as(Path.PropertyNode.class));
+				assertTrue(nodes.hasNext());
+			}
+		}
+
+		CreditCardOverride cco = new CreditCardOverride();
+		cco.setCvv("12345");
+		cco.setBilling(billing);
+		assertEquals(new TreeSet<>(Arrays.asList("billing.state", "billing.telephoneNumber", "cvv")),
+				paths(cco.validate()));
+	}
+
+	@Test
+	public void testDescriptorAnnotation() {
+		ProtectPayPayer payer = new ProtectPayPayer();
+		payer.setEmailAddress(repeat('e', 101));
+		ConstraintViolation<ProtectPayPayer> violation = payer.validate().iterator().next();
+		Size size = (Size)violation.getConstraintDescriptor().getAnnotation();
+		assertEquals(100, size.max());
+		assertSame(size, violation.getConstraintDescriptor().getAnnotation());
+	}
+}
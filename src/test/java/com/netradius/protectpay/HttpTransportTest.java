@@ -0,0 +1,154 @@
+package com.netradius.protectpay;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests HttpTransport against a local HTTP stub.
+ *
+ * @author Erik R. Jensen
+ */
+public class HttpTransportTest {
+
+	private static final String RESPONSE = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body/></s:Envelope>";
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private String address;
+	private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	private final AtomicInteger concurrent = new AtomicInteger();
+	private final AtomicInteger maxConcurrent = new AtomicInteger();
+	private volatile long delay;
+	private volatile String soapAction;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/API/SPS.svc", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int current = concurrent.incrementAndGet();
+				try {
+					clientPorts.add(exchange.getRemoteAddress().getPort());
+					soapAction = exchange.getRequestHeaders().getFirst("SOAPAction");
+					for (int max = maxConcurrent.get(); current > max; max = maxConcurrent.get()) {
+						maxConcurrent.compareAndSet(max, current);
+					}
+					try (InputStream in = exchange.getRequestBody()) {
+						while (in.read() != -1) {
+							// drain
+						}
+					}
+					if (delay > 0) {
+						Thread.sleep(delay);
+					}
+					byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+					exchange.sendResponseHeaders(200, body.length);
+					try (OutputStream out = exchange.getResponseBody()) {
+						out.write(body);
+					}
+				} catch (InterruptedException x) {
+					Thread.currentThread().interrupt();
+				} finally {
+					concurrent.decrementAndGet();
+					exchange.close();
+				}
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+		address = "http://127.0.0.1:" + server.getAddress().getPort() + "/API/SPS.svc";
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	private HttpTransport.Response post(HttpTransport transport, int readTimeout) throws IOException {
+		return transport.post(address, "text/xml; charset=utf-8", "\"http://propay.com/SPS/contracts/SPSService/GetPayers\"",
+				null, "<s:Envelope/>".getBytes(StandardCharsets.UTF_8), -1, readTimeout);
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException {
+		try (HttpTransport transport = new HttpTransport(new HttpTransportConfig())) {
+			for (int i = 0; i < 5; i++) {
+				HttpTransport.Response response = post(transport, -1);
+				assertEquals(200, response.getStatus());
+				assertEquals("text/xml; charset=utf-8", response.getContentType());
+				assertEquals(RESPONSE, new String(response.getBody(), StandardCharsets.UTF_8));
+			}
+			assertEquals("\"http://propay.com/SPS/contracts/SPSService/GetPayers\"", soapAction);
+			assertEquals(1, clientPorts.size());
+			HttpTransportStats stats = transport.getStats();
+			assertEquals(0, stats.getLeased());
+			assertEquals(1, stats.getAvailable());
+			assertEquals(0, stats.getPending());
+		}
+	}
+
+	@Test
+	public void testMaxPerRoute() throws Exception {
+		HttpTransportConfig config = new HttpTransportConfig();
+		config.setMaxTotal(2);
+		config.setMaxPerRoute(2);
+		delay = 100;
+		final HttpTransport transport = new HttpTransport(config);
+		ExecutorService executor = Executors.newFixedThreadPool(6);
+		try {
+			List<Callable<HttpTransport.Response>> tasks = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				tasks.add(new Callable<HttpTransport.Response>() {
+					@Override
+					public HttpTransport.Response call() throws IOException {
+						return post(transport, -1);
+					}
+				});
+			}
+			for (Future<HttpTransport.Response> future : executor.invokeAll(tasks)) {
+				assertEquals(200, future.get().getStatus());
+			}
+			assertTrue(maxConcurrent.get() <= 2);
+			assertTrue(clientPorts.size() <= 2);
+			assertEquals(2, transport.getStats().getMax());
+		} finally {
+			executor.shutdown();
+			transport.close();
+		}
+	}
+
+	@Test(expected = SocketTimeoutException.class)
+	public void testReadTimeout() throws IOException {
+		delay = 500;
+		try (HttpTransport transport = new HttpTransport(new HttpTransportConfig())) {
+			post(transport, 100);
+		}
+	}
+}
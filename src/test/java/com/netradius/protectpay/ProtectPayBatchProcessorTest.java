@@ -0,0 +1,127 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayBatchProcessor with operations which do not call ProtectPay.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayBatchProcessorTest {
+
+	private final AtomicInteger concurrent = new AtomicInteger();
+	private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+	private List<Integer> items(int count) {
+		List<Integer> items = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			items.add(i);
+		}
+		return items;
+	}
+
+	private ProtectPayPaymentResponse execute(Integer item) throws ProtectPayException {
+		int current = concurrent.incrementAndGet();
+		try {
+			for (int max = maxConcurrent.get(); current > max; max = maxConcurrent.get()) {
+				maxConcurrent.compareAndSet(max, current);
+			}
+			try {
+				Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+			}
+			if (item % 10 == 0) {
+				throw new ProtectPayException("58", "Declined", "Declined " + item);
+			}
+			ProtectPayPaymentResponse response = new ProtectPayPaymentResponse();
+			response.setTransactionId(item.toString());
+			return response;
+		} finally {
+			concurrent.decrementAndGet();
+		}
+	}
+
+	@Test
+	public void testInputOrder() throws InterruptedException {
+		ProtectPayBatchProcessor processor = new ProtectPayBatchProcessor(null, 8);
+		List<ProtectPayBatchResult<Integer>> results = processor.process(items(500),
+				(client, item) -> execute(item), ProtectPayBatchProcessor.Order.INPUT);
+		assertEquals(500, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			ProtectPayBatchResult<Integer> result = results.get(i);
+			assertEquals(i, result.getIndex());
+			assertEquals(Integer.valueOf(i), result.getItem());
+			if (i % 10 == 0) {
+				assertFalse(result.isSuccess());
+				assertTrue(result.getException() instanceof ProtectPayException);
+				assertNull(result.getResponse());
+			} else {
+				assertTrue(result.isSuccess());
+				assertEquals(Integer.toString(i), result.getResponse().getTransactionId());
+			}
+		}
+		assertTrue(maxConcurrent.get() <= 8);
+		ProtectPayBatchProgress progress = processor.getProgress();
+		assertTrue(progress.isDone());
+		assertEquals(500, progress.getCompleted());
+		assertEquals(50, progress.getFailed());
+		assertEquals(450, progress.getSucceeded());
+		assertEquals(0, progress.getEta());
+	}
+
+	@Test
+	public void testCompletionOrder() throws InterruptedException {
+		ProtectPayBatchProcessor processor = new ProtectPayBatchProcessor(null, 4);
+		List<ProtectPayBatchProgress> reports = new ArrayList<>();
+		processor.setProgressInterval(100);
+		processor.setProgressListener(reports::add);
+		List<Long> indexes = new ArrayList<>();
+		ProtectPayBatchProgress progress = processor.process(items(300).iterator(), -1,
+				(client, item) -> execute(item), ProtectPayBatchProcessor.Order.COMPLETION,
+				result -> indexes.add(result.getIndex()));
+		assertEquals(300, indexes.size());
+		assertEquals(300, indexes.stream().distinct().count());
+		assertEquals(300, progress.getCompleted());
+		assertEquals(-1, progress.getEta());
+		assertEquals(4, reports.size());
+		assertEquals(100, reports.get(0).getCompleted());
+		assertTrue(maxConcurrent.get() <= 4);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testConsumerException() throws InterruptedException {
+		ProtectPayBatchProcessor processor = new ProtectPayBatchProcessor(null, 2);
+		processor.process(items(50), (client, item) -> execute(item), ProtectPayBatchProcessor.Order.INPUT,
+				result -> {
+					if (result.getIndex() == 5) {
+						throw new IllegalStateException("stop");
+					}
+				});
+	}
+
+	@Test(timeout = 10000)
+	public void testOperationError() throws InterruptedException {
+		ProtectPayBatchProcessor processor = new ProtectPayBatchProcessor(null, 2);
+		List<ProtectPayBatchResult<Integer>> results = processor.process(items(20), (client, item) -> {
+			if (item == 3) {
+				throw new AssertionError("broken " + item);
+			}
+			return execute(item);
+		}, ProtectPayBatchProcessor.Order.INPUT);
+		assertEquals(20, results.size());
+		ProtectPayBatchResult<Integer> result = results.get(3);
+		assertFalse(result.isSuccess());
+		assertTrue(result.getException() instanceof ExecutionException);
+		assertTrue(result.getException().getCause() instanceof AssertionError);
+		assertEquals(3, processor.getProgress().getFailed());
+	}
+}
@@ -0,0 +1,98 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayBulkhead.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayBulkheadTest {
+
+	@Test
+	public void testGroupsAreIsolated() {
+		ProtectPayBulkhead bulkhead = new ProtectPayBulkhead();
+		bulkhead.setLimit(ProtectPayOperation.Group.VAULT, 2, 0);
+		bulkhead.acquire(ProtectPayOperation.GET_PAYERS);
+		bulkhead.acquire(ProtectPayOperation.GET_PAYERS);
+		try {
+			bulkhead.acquire(ProtectPayOperation.CREATE_PAYER);
+			fail("Expected ProtectPayBulkheadFullException");
+		} catch (ProtectPayBulkheadFullException x) {
+			assertEquals(ProtectPayOperation.CREATE_PAYER, x.getOperation());
+		}
+		// Other groups are unaffected
+		bulkhead.acquire(ProtectPayOperation.AUTH_AND_CAPTURE);
+		bulkhead.acquire(ProtectPayOperation.CREATE_MERCHANT_PROFILE);
+		ProtectPayBulkheadStats stats = bulkhead.getStats(ProtectPayOperation.Group.VAULT);
+		assertEquals(2, stats.getActive());
+		assertEquals(2, stats.getPermitted());
+		assertEquals(1, stats.getRejected());
+		bulkhead.release(ProtectPayOperation.GET_PAYERS);
+		bulkhead.acquire(ProtectPayOperation.CREATE_PAYER);
+		assertEquals(2, bulkhead.getStats(ProtectPayOperation.Group.VAULT).getPeakActive());
+	}
+
+	@Test
+	public void testQueue() throws Exception {
+		final ProtectPayBulkhead bulkhead = new ProtectPayBulkhead();
+		bulkhead.setLimit(ProtectPayOperation.Group.TRANSACT, 1, 1);
+		bulkhead.acquire(ProtectPayOperation.AUTH);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final CountDownLatch started = new CountDownLatch(1);
+			Future<?> waiting = executor.submit(() -> {
+				started.countDown();
+				bulkhead.acquire(ProtectPayOperation.REFUND);
+			});
+			started.await();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (bulkhead.getStats(ProtectPayOperation.Group.TRANSACT).getQueued() == 0) {
+				assertTrue(System.nanoTime() < deadline);
+				Thread.sleep(1);
+			}
+			try {
+				bulkhead.acquire(ProtectPayOperation.VOID);
+				fail("Expected ProtectPayBulkheadFullException");
+			} catch (ProtectPayBulkheadFullException x) {
+				assertTrue(x.getMessage().contains("queue is full"));
+			}
+			bulkhead.release(ProtectPayOperation.AUTH);
+			waiting.get(5, TimeUnit.SECONDS);
+			ProtectPayBulkheadStats stats = bulkhead.getStats(ProtectPayOperation.Group.TRANSACT);
+			assertEquals(1, stats.getActive());
+			assertEquals(0, stats.getQueued());
+			assertEquals(1, stats.getDelayed());
+			assertEquals(1, stats.getRejected());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = ProtectPayBulkheadFullException.class)
+	public void testMaxWait() {
+		ProtectPayBulkhead bulkhead = new ProtectPayBulkhead();
+		bulkhead.setMaxWait(20);
+		bulkhead.setLimit(ProtectPayOperation.Group.TOKEN, 1, 10);
+		bulkhead.acquire(ProtectPayOperation.GET_TEMP_TOKEN);
+		bulkhead.acquire(ProtectPayOperation.GET_TEMP_TOKEN);
+	}
+
+	@Test
+	public void testRemoveLimit() {
+		ProtectPayBulkhead bulkhead = new ProtectPayBulkhead();
+		bulkhead.setLimit(ProtectPayOperation.Group.VAULT, 1, 0);
+		bulkhead.acquire(ProtectPayOperation.GET_PAYERS);
+		bulkhead.removeLimit(ProtectPayOperation.Group.VAULT);
+		bulkhead.acquire(ProtectPayOperation.GET_PAYERS);
+		assertEquals(0, bulkhead.getStats(ProtectPayOperation.Group.VAULT).getMaxConcurrent());
+	}
+}
@@ -0,0 +1,110 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import javax.xml.ws.WebServiceException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayCircuitBreaker.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayCircuitBreakerTest {
+
+	private static final ProtectPayOperation OP = ProtectPayOperation.AUTH_AND_CAPTURE;
+	private static final ProtectPayOperation.Group GROUP = ProtectPayOperation.Group.TRANSACT;
+
+	private final List<String> events = new ArrayList<>();
+
+	private ProtectPayCircuitBreaker breaker() {
+		ProtectPayCircuitBreaker breaker = new ProtectPayCircuitBreaker(10);
+		breaker.setMinimumCalls(4);
+		breaker.setFailureRateThreshold(0.5);
+		breaker.setSlowCallDuration(100);
+		breaker.setOpenDuration(50);
+		breaker.setHalfOpenProbes(2);
+		breaker.addListener((group, from, to) -> events.add(group + ":" + from + "->" + to));
+		return breaker;
+	}
+
+	private void call(ProtectPayCircuitBreaker breaker, long millis, Throwable failure) {
+		boolean probe = breaker.acquire(OP);
+		breaker.record(OP, probe, true, TimeUnit.MILLISECONDS.toNanos(millis), failure);
+	}
+
+	@Test
+	public void testOpenOnFailures() throws InterruptedException {
+		ProtectPayCircuitBreaker breaker = breaker();
+		call(breaker, 1, null);
+		call(breaker, 1, new ProtectPayException("58", "Declined", "Declined"));
+		call(breaker, 1, new WebServiceException("Connection refused"));
+		assertEquals(ProtectPayCircuitBreaker.State.CLOSED, breaker.getState(GROUP));
+		call(breaker, 1, new WebServiceException("Connection refused"));
+		assertEquals(ProtectPayCircuitBreaker.State.OPEN, breaker.getState(GROUP));
+		assertEquals(ProtectPayCircuitBreaker.State.CLOSED, breaker.getState(ProtectPayOperation.Group.VAULT));
+
+		try {
+			breaker.acquire(OP);
+			fail("Expected ProtectPayCircuitOpenException");
+		} catch (ProtectPayCircuitOpenException x) {
+			assertEquals(ProtectPayCircuitBreaker.State.OPEN, x.getState());
+			assertEquals(OP, x.getOperation());
+		}
+		assertEquals(1, breaker.getRejected(GROUP));
+
+		// Vault operations are unaffected
+		assertFalse(breaker.acquire(ProtectPayOperation.GET_PAYERS));
+
+		Thread.sleep(60);
+		assertTrue(breaker.acquire(OP));
+		assertTrue(breaker.acquire(OP));
+		try {
+			breaker.acquire(OP);
+			fail("Expected ProtectPayCircuitOpenException");
+		} catch (ProtectPayCircuitOpenException x) {
+			assertEquals(ProtectPayCircuitBreaker.State.HALF_OPEN, x.getState());
+		}
+		breaker.record(OP, true, true, 0, null);
+		assertEquals(ProtectPayCircuitBreaker.State.HALF_OPEN, breaker.getState(GROUP));
+		breaker.record(OP, true, true, 0, null);
+		assertEquals(ProtectPayCircuitBreaker.State.CLOSED, breaker.getState(GROUP));
+
+		assertEquals(3, events.size());
+		assertEquals("TRANSACT:CLOSED->OPEN", events.get(0));
+		assertEquals("TRANSACT:OPEN->HALF_OPEN", events.get(1));
+		assertEquals("TRANSACT:HALF_OPEN->CLOSED", events.get(2));
+	}
+
+	@Test
+	public void testOpenOnSlowCalls() throws InterruptedException {
+		ProtectPayCircuitBreaker breaker = breaker();
+		breaker.setSlowCallRateThreshold(0.75);
+		call(breaker, 1, null);
+		call(breaker, 200, null);
+		call(breaker, 200, null);
+		call(breaker, 200, null);
+		assertEquals(ProtectPayCircuitBreaker.State.OPEN, breaker.getState(GROUP));
+
+		// A slow probe opens the circuit again
+		Thread.sleep(60);
+		call(breaker, 200, null);
+		assertEquals(ProtectPayCircuitBreaker.State.OPEN, breaker.getState(GROUP));
+	}
+
+	@Test
+	public void testIgnored() {
+		ProtectPayCircuitBreaker breaker = breaker();
+		for (int i = 0; i < 10; i++) {
+			boolean probe = breaker.acquire(OP);
+			breaker.record(OP, probe, false, 0, new ProtectPayRateLimitException(OP, "Limited"));
+			call(breaker, 1, new IllegalArgumentException("Bad input"));
+		}
+		assertEquals(ProtectPayCircuitBreaker.State.CLOSED, breaker.getState(GROUP));
+		assertEquals(0, breaker.getFailureRate(GROUP), 0);
+	}
+}
@@ -0,0 +1,127 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.types.ID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayClientRegistry with service pools whose ports do not call ProtectPay.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayClientRegistryTest {
+
+	private static final String ENDPOINT = "http://127.0.0.1:9/API/SPS.svc";
+
+	private final List<StubServicePool> pools = new CopyOnWriteArrayList<>();
+	private final List<ID> ids = new CopyOnWriteArrayList<>();
+	private ProtectPayClientRegistry registry;
+
+	@Before
+	public void setUp() {
+		registry = new ProtectPayClientRegistry(2, 1000, null) {
+			@Override
+			ServicePool newPool(URL url) {
+				StubServicePool pool = new StubServicePool(2, 1000, (method, args) -> {
+					ids.add((ID)args[0]);
+					return StubServicePool.result("00");
+				});
+				pools.add(pool);
+				return pool;
+			}
+		};
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		registry.close();
+	}
+
+	private static String token(ID id) {
+		return id.getAuthenticationToken().getValue();
+	}
+
+	@Test
+	public void testSharedPool() throws Exception {
+		ProtectPayClient first = registry.register(ENDPOINT, "token1", "biller1");
+		ProtectPayClient second = registry.register(ENDPOINT + "?wsdl", "token2", "biller2");
+		assertEquals(1, pools.size());
+		assertSame(first, registry.get("biller1"));
+		assertSame(second, registry.get("biller2"));
+
+		first.deletePayer("payer");
+		second.deletePayer("payer");
+		assertEquals(1, pools.get(0).getPortsCreated());
+		assertEquals("biller1", ids.get(0).getBillerAccountId().getValue());
+		assertEquals("biller2", ids.get(1).getBillerAccountId().getValue());
+
+		registry.register("http://127.0.0.2:9/API/SPS.svc", "token3", "biller3");
+		assertEquals(2, pools.size());
+	}
+
+	@Test
+	public void testDuplicate() {
+		ProtectPayClient client = registry.register(ENDPOINT, "token1", "biller1");
+		try {
+			registry.register(ENDPOINT, "token2", "biller1");
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException x) {
+			// expected
+		}
+		assertSame(client, registry.get("biller1"));
+		assertEquals(1, registry.getBillerAccountIds().size());
+	}
+
+	@Test
+	public void testRotateCredentials() throws Exception {
+		ProtectPayClient client = registry.register(ENDPOINT, "token1", "biller1");
+		client.deletePayer("payer");
+		registry.rotateCredentials("biller1", "token2");
+		client.deletePayer("payer");
+		assertSame(client, registry.get("biller1"));
+		assertEquals("token1", token(ids.get(0)));
+		assertEquals("token2", token(ids.get(1)));
+		assertEquals("biller1", ids.get(1).getBillerAccountId().getValue());
+		assertEquals(1, pools.get(0).getPortsCreated());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRotateUnregistered() {
+		registry.rotateCredentials("biller1", "token");
+	}
+
+	@Test
+	public void testSharedPolicies() {
+		ProtectPayClient before = registry.register(ENDPOINT, "token1", "biller1");
+		ProtectPayRateLimiter rateLimiter = new ProtectPayRateLimiter();
+		ProtectPayBulkhead bulkhead = new ProtectPayBulkhead();
+		registry.setRateLimiter(rateLimiter);
+		registry.setBulkhead(bulkhead);
+		ProtectPayClient after = registry.register(ENDPOINT, "token2", "biller2");
+		assertSame(rateLimiter, before.getRateLimiter());
+		assertSame(bulkhead, before.getBulkhead());
+		assertSame(rateLimiter, after.getRateLimiter());
+		assertSame(bulkhead, after.getBulkhead());
+
+		registry.setRateLimiter(null);
+		registry.setBulkhead(null);
+		assertNull(before.getRateLimiter());
+		assertNull(after.getBulkhead());
+	}
+
+	@Test
+	public void testRemove() {
+		ProtectPayClient client = registry.register(ENDPOINT, "token1", "biller1");
+		assertSame(client, registry.remove("biller1"));
+		assertNull(registry.get("biller1"));
+		assertNotNull(registry.register(ENDPOINT, "token1", "biller1"));
+		assertEquals(1, pools.size());
+	}
+}
@@ -0,0 +1,137 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.types.ArrayOfPaymentMethodInformation;
+import com.propay.sps.types.Billing;
+import com.propay.sps.types.ID;
+import com.propay.sps.types.ObjectFactory;
+import com.propay.sps.types.PaymentMethodInformation;
+import com.propay.sps.types.PaymentMethodsResult;
+import com.propay.sps.types.TempTokenResult;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayClient with service ports which do not call ProtectPay.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayClientStubTest {
+
+	private final ObjectFactory factory = new ObjectFactory();
+
+	private static ProtectPayClient client(StubServicePool pool) {
+		return new ProtectPayClient(pool, true, "token", "biller");
+	}
+
+	// A response holding a single payment method
+	private PaymentMethodsResult paymentMethods(String paymentMethodId) {
+		PaymentMethodInformation info = factory.createPaymentMethodInformation();
+		info.setPaymentMethodID(factory.createPaymentMethodInformationPaymentMethodID(paymentMethodId));
+		ArrayOfPaymentMethodInformation methods = factory.createArrayOfPaymentMethodInformation();
+		methods.getPaymentMethodInformation().add(info);
+		PaymentMethodsResult response = factory.createPaymentMethodsResult();
+		response.setRequestResult(factory.createPaymentMethodsResultRequestResult(StubServicePool.result("00")));
+		response.setPaymentMethods(factory.createPaymentMethodsResultPaymentMethods(methods));
+		return response;
+	}
+
+	@Test
+	public void testWarmUpMappers() throws Exception {
+		StubServicePool pool = new StubServicePool(2, 1000, (method, args) -> {
+			throw new AssertionError("No request expected, called " + method);
+		});
+		try (ProtectPayClient client = client(pool)) {
+			ProtectPayWarmUpReport report = client.warmUp(0);
+			assertEquals(2, report.getPortsCreated());
+			assertEquals(0, report.getConnectionsOpened());
+			assertEquals(0, report.getConnectionsFailed());
+			assertTrue(client.warmUpAsync(0).get().getMappersDuration() >= 0);
+		}
+	}
+
+	@Test
+	public void testMissingElements() throws Exception {
+		// Only what ProtectPay must send, everything else is left out of the response
+		Billing billing = factory.createBilling();
+		billing.setAddress1(factory.createBillingAddress1("101 Main St"));
+		PaymentMethodInformation info = factory.createPaymentMethodInformation();
+		info.setPaymentMethodID(factory.createPaymentMethodInformationPaymentMethodID("pm"));
+		info.setBillingInformation(factory.createPaymentMethodInformationBillingInformation(billing));
+		ArrayOfPaymentMethodInformation methods = factory.createArrayOfPaymentMethodInformation();
+		methods.getPaymentMethodInformation().add(info);
+		PaymentMethodsResult response = factory.createPaymentMethodsResult();
+		response.setRequestResult(factory.createPaymentMethodsResultRequestResult(StubServicePool.result("00")));
+		response.setPaymentMethods(factory.createPaymentMethodsResultPaymentMethods(methods));
+		StubServicePool pool = new StubServicePool(1, 1000, (method, args) -> response);
+		try (ProtectPayClient client = client(pool)) {
+			List<ProtectPayPaymentMethod> paymentMethods = client.getPaymentMethods("payer");
+			assertEquals(1, paymentMethods.size());
+			ProtectPayPaymentMethod paymentMethod = paymentMethods.get(0);
+			assertEquals("pm", paymentMethod.getPaymentMethodId());
+			assertNull(paymentMethod.getType());
+			assertNull(paymentMethod.getDateCreated());
+			assertEquals("101 Main St", paymentMethod.getBilling().getAddress1());
+			assertNull(paymentMethod.getBilling().getAddress2());
+			assertNull(paymentMethod.getBilling().getCountry());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testBillersNotCoalesced() throws Exception {
+		// Both lookups must reach the stub before either is answered, coalescing them would leave one waiting
+		CountDownLatch sent = new CountDownLatch(2);
+		StubServicePool pool = new StubServicePool(2, 1000, (method, args) -> {
+			sent.countDown();
+			assertTrue(sent.await(5, TimeUnit.SECONDS));
+			return paymentMethods(((ID)args[0]).getBillerAccountId().getValue());
+		});
+		ProtectPayRequestCoalescer coalescer = new ProtectPayRequestCoalescer();
+		ProtectPayClient first = new ProtectPayClient(pool, false, "token", "biller-1");
+		ProtectPayClient second = new ProtectPayClient(pool, false, "token", "biller-2");
+		first.setRequestCoalescer(coalescer);
+		second.setRequestCoalescer(coalescer);
+		CompletableFuture<List<ProtectPayPaymentMethod>> firstMethods = CompletableFuture.supplyAsync(() -> {
+			try {
+				return first.getPaymentMethods(ProtectPayFixtures.PAYER_ACCOUNT_ID);
+			} catch (ProtectPayException x) {
+				throw new IllegalStateException(x);
+			}
+		});
+		List<ProtectPayPaymentMethod> secondMethods = second.getPaymentMethods(ProtectPayFixtures.PAYER_ACCOUNT_ID);
+		assertEquals("biller-1", firstMethods.get().get(0).getPaymentMethodId());
+		assertEquals("biller-2", secondMethods.get(0).getPaymentMethodId());
+		assertEquals(2, coalescer.getRequests());
+		assertEquals(0, coalescer.getCoalesced());
+		pool.close();
+	}
+
+	@Test
+	public void testDeletePayerInvalidatesTempTokens() throws Exception {
+		AtomicInteger tokens = new AtomicInteger();
+		StubServicePool pool = new StubServicePool(1, 1000, (method, args) -> {
+			if (method.equals("deletePayer")) {
+				return StubServicePool.result("00");
+			}
+			assertEquals("getTempToken", method);
+			TempTokenResult response = factory.createTempTokenResult();
+			response.setRequestResult(factory.createTempTokenResultRequestResult(StubServicePool.result("00")));
+			response.setTempToken(factory.createTempTokenResultTempToken("token-" + tokens.incrementAndGet()));
+			return response;
+		});
+		try (ProtectPayClient client = client(pool)) {
+			client.setTempTokenCache(new ProtectPayTempTokenCache());
+			String payer = ProtectPayFixtures.PAYER_ACCOUNT_ID;
+			assertEquals("token-1", client.getTempToken(payer, "Payer", 3600));
+			assertEquals("token-1", client.getTempToken(payer, "Payer", 3600));
+			client.deletePayer(payer);
+			assertEquals("token-2", client.getTempToken(payer, "Payer", 3600));
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayFilePipeline with operations which do not call ProtectPay.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayFilePipelineTest {
+
+	private final ProtectPayFilePipeline pipeline = new ProtectPayFilePipeline(new ProtectPayBatchProcessor(null, 4));
+
+	private ProtectPayPaymentResponse execute(Map<String, String> row) throws ProtectPayException {
+		ProtectPayPayment payment = ProtectPayFilePipeline.toPayment(row);
+		if (payment.getAmount() > 1000) {
+			throw new ProtectPayException("58", "Declined", "Declined");
+		}
+		ProtectPayPaymentResponse response = new ProtectPayPaymentResponse();
+		response.setTransactionId(payment.getInvoice());
+		response.setTransactionHistoryId(payment.getMerchantProfileId());
+		response.setResultCode("00");
+		return response;
+	}
+
+	private Map<Long, String> index(String output, String format) throws IOException {
+		Map<Long, String> lines = new HashMap<>();
+		try (RecordReader reader = ProtectPayFileFormat.valueOf(format).reader(new StringReader(output))) {
+			while (reader.hasNext()) {
+				Map<String, String> record = reader.next();
+				lines.put(Long.valueOf(record.get("index")), record.get("success") + "|" + record.get("transactionId")
+						+ "|" + record.get("transactionHistoryId") + "|" + record.get("resultCode"));
+			}
+		}
+		return lines;
+	}
+
+	@Test
+	public void testCsvToNdjson() throws Exception {
+		String input = "invoice,amount,merchantProfileId\r\n"
+				+ "\"INV,1\",100,7\r\n"
+				+ "\n"
+				+ "\"INV \"\"2\"\"\nsecond line\",2000,\n"
+				+ "INV3,abc,\n"
+				+ "INV4,5";
+		StringWriter output = new StringWriter();
+		ProtectPayBatchProgress progress = pipeline.process(new StringReader(input), ProtectPayFileFormat.CSV, output,
+				ProtectPayFileFormat.NDJSON, (client, row) -> execute(row));
+		assertEquals(4, progress.getCompleted());
+		assertEquals(2, progress.getFailed());
+		assertEquals(4, output.toString().split("\n").length);
+		Map<Long, String> lines = index(output.toString(), "NDJSON");
+		assertEquals("true|INV,1|7|00", lines.get(0L));
+		assertEquals("false|null|null|58", lines.get(1L));
+		assertEquals("false|null|null|null", lines.get(2L));
+		assertEquals("true|INV4|null|00", lines.get(3L));
+	}
+
+	@Test
+	public void testNdjsonToCsv() throws Exception {
+		String input = "{\"invoice\":\"A\",\"amount\":10,\"extra\":{\"x\":[1,2]}}\n"
+				+ "{\"invoice\":\"B \\\"quoted\\\"\",\"amount\":\"20\",\"merchantProfileId\":null}\n";
+		StringWriter output = new StringWriter();
+		pipeline.process(new StringReader(input), ProtectPayFileFormat.NDJSON, output, ProtectPayFileFormat.CSV,
+				(client, row) -> execute(row));
+		assertTrue(output.toString().startsWith(String.join(",", ProtectPayFilePipeline.RESULT_COLUMNS) + "\r\n"));
+		Map<Long, String> lines = index(output.toString(), "CSV");
+		assertEquals("true|A|null|00", lines.get(0L));
+		assertEquals("true|B \"quoted\"|null|00", lines.get(1L));
+	}
+}
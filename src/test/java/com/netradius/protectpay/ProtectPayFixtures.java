@@ -0,0 +1,48 @@
+package com.netradius.protectpay;
+
+/**
+ * Model objects shared by the tests and benchmarks which build requests.
+ *
+ * @author Erik R. Jensen
+ */
+public final class ProtectPayFixtures {
+
+	public static final String PAYER_ACCOUNT_ID = "5823760912097888";
+	public static final String PAYMENT_METHOD_ID = "e7b26e6f-9d61-4f7b-9f3b-0b4c8d8a7a51";
+
+	private ProtectPayFixtures() {}
+
+	public static ProtectPayBillingInfo billing() {
+		ProtectPayBillingInfo billing = new ProtectPayBillingInfo();
+		billing.setAddress1("101 Main St");
+		billing.setCity("Boise");
+		billing.setState("ID");
+		billing.setZipCode("83702");
+		billing.setCountry(ProtectPayBillingInfo.Country.USA);
+		return billing;
+	}
+
+	public static ProtectPayPayment payment() {
+		ProtectPayPayment payment = new ProtectPayPayment();
+		payment.setPayerAccountId(PAYER_ACCOUNT_ID);
+		payment.setPaymentMethodId(PAYMENT_METHOD_ID);
+		payment.setAmount(1999);
+		payment.setCurrencyCode("USD");
+		payment.setInvoice("INV-1001");
+		return payment;
+	}
+
+	public static CreditCardOverride creditCardOverride() {
+		CreditCardOverride cco = new CreditCardOverride();
+		cco.setCvv("123");
+		cco.setBilling(billing());
+		return cco;
+	}
+
+	public static ACHOverride achOverride() {
+		ACHOverride ao = new ACHOverride();
+		ao.setBankAccountType(ACHOverride.Type.Checking);
+		ao.setSecCode(ACHOverride.SecCode.WEB);
+		return ao;
+	}
+}
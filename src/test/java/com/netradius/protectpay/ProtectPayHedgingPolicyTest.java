@@ -0,0 +1,122 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayHedgingPolicy with calls which do not call ProtectPay.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayHedgingPolicyTest {
+
+	private static String sleep(long millis, String value) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+		}
+		return value;
+	}
+
+	@Test
+	public void testHedgeWins() throws ProtectPayException {
+		ProtectPayHedgingPolicy policy = new ProtectPayHedgingPolicy();
+		policy.setAdaptive(false);
+		policy.setDelay(20);
+		policy.setMaxHedgeRate(1);
+		AtomicInteger calls = new AtomicInteger();
+		long start = System.nanoTime();
+		String value = policy.execute(ProtectPayOperation.GET_PAYMENT_METHODS,
+				() -> calls.incrementAndGet() == 1 ? sleep(1000, "primary") : sleep(10, "hedge"));
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		assertEquals("hedge", value);
+		assertTrue("Elapsed " + elapsed, elapsed < 500);
+		assertEquals(1, policy.getRequests());
+		assertEquals(1, policy.getHedgesSent());
+		assertEquals(1, policy.getHedgesWon());
+	}
+
+	@Test
+	public void testNoHedgeWhenFast() throws ProtectPayException {
+		ProtectPayHedgingPolicy policy = new ProtectPayHedgingPolicy();
+		policy.setAdaptive(false);
+		policy.setDelay(200);
+		policy.setMaxHedgeRate(1);
+		assertEquals("fast", policy.execute(ProtectPayOperation.GET_PAYMENT_METHOD, () -> sleep(1, "fast")));
+		assertEquals(0, policy.getHedgesSent());
+	}
+
+	@Test
+	public void testRateCap() throws ProtectPayException {
+		ProtectPayHedgingPolicy policy = new ProtectPayHedgingPolicy();
+		policy.setAdaptive(false);
+		policy.setDelay(0);
+		policy.setMaxHedgeRate(0.25);
+		for (int i = 0; i < 20; i++) {
+			policy.execute(ProtectPayOperation.GET_PAYMENT_METHOD, () -> sleep(5, "value"));
+		}
+		assertEquals(20, policy.getRequests());
+		assertEquals(5, policy.getHedgesSent());
+	}
+
+	@Test
+	public void testRateCapAfterFastRequests() throws ProtectPayException {
+		ProtectPayHedgingPolicy policy = new ProtectPayHedgingPolicy();
+		policy.setAdaptive(false);
+		policy.setDelay(1000);
+		for (int i = 0; i < 5000; i++) {
+			policy.execute(ProtectPayOperation.GET_PAYMENT_METHOD, () -> "fast");
+		}
+		assertEquals(0, policy.getHedgesSent());
+		// ProtectPay slows down, only the burst and the share earned while slow may be hedged
+		policy.setDelay(0);
+		for (int i = 0; i < 100; i++) {
+			policy.execute(ProtectPayOperation.GET_PAYMENT_METHOD, () -> sleep(2, "slow"));
+		}
+		long hedges = policy.getHedgesSent();
+		assertTrue("Hedges " + hedges, hedges <= ProtectPayHedgingPolicy.DEFAULT_MAX_HEDGE_BURST
+				+ Math.round(100 * ProtectPayHedgingPolicy.DEFAULT_MAX_HEDGE_RATE));
+		assertTrue("Hedges " + hedges, hedges >= ProtectPayHedgingPolicy.DEFAULT_MAX_HEDGE_BURST);
+	}
+
+	@Test
+	public void testFailure() {
+		ProtectPayHedgingPolicy policy = new ProtectPayHedgingPolicy();
+		policy.setAdaptive(false);
+		policy.setDelay(5);
+		policy.setMaxHedgeRate(1);
+		AtomicInteger calls = new AtomicInteger();
+		try {
+			policy.execute(ProtectPayOperation.GET_PAYMENT_METHOD, () -> {
+				calls.incrementAndGet();
+				sleep(20, null);
+				throw new ProtectPayException("301", "Invalid", "Not found");
+			});
+			fail("Expected ProtectPayException");
+		} catch (ProtectPayException x) {
+			assertEquals("301", x.getResultCode());
+		}
+		assertEquals(2, calls.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWriteOperation() {
+		new ProtectPayHedgingPolicy().setOperations(EnumSet.of(ProtectPayOperation.AUTH));
+	}
+
+	@Test
+	public void testLatencyTracker() {
+		LatencyTracker tracker = new LatencyTracker(0.95);
+		for (int i = 1; i <= LatencyTracker.REFRESH_INTERVAL - 1; i++) {
+			tracker.record(i);
+		}
+		assertEquals(-1, tracker.getEstimate());
+		tracker.record(LatencyTracker.REFRESH_INTERVAL);
+		assertEquals(122, tracker.getEstimate());
+	}
+}
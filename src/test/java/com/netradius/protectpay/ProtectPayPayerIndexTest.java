@@ -0,0 +1,110 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayPayerIndex.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayPayerIndexTest {
+
+	private static ProtectPayPayer payer(String payerAccountId, String externalId1, String email, String name) {
+		ProtectPayPayer payer = new ProtectPayPayer();
+		payer.setPayerAccountId(payerAccountId);
+		payer.setExternalId1(externalId1);
+		payer.setEmailAddress(email);
+		payer.setAccountName(name);
+		return payer;
+	}
+
+	private static ProtectPayPayer criteria(String externalId1, String email, String name) {
+		return payer(null, externalId1, email, name);
+	}
+
+	@Test
+	public void testFind() {
+		ProtectPayPayerIndex index = new ProtectPayPayerIndex();
+		index.put(payer("1", "cust-1", "jane@example.com", "Jane"));
+		index.put(payer("2", "cust-2", "john@example.com", "Jane"));
+
+		List<ProtectPayPayer> found = index.find(criteria("cust-1", null, null));
+		assertEquals(1, found.size());
+		assertEquals("1", found.get(0).getPayerAccountId());
+		assertEquals(2, index.find(criteria(null, null, "Jane")).size());
+		assertEquals(1, index.find(criteria(null, "john@example.com", "Jane")).size());
+		assertTrue(index.find(criteria("cust-1", "john@example.com", null)).isEmpty());
+		assertTrue(index.find(criteria(null, null, null)).isEmpty());
+
+		// Results are copies
+		found.get(0).setExternalId1("changed");
+		assertEquals("cust-1", index.get("1").getExternalId1());
+	}
+
+	@Test
+	public void testUpdateAndRemove() {
+		ProtectPayPayerIndex index = new ProtectPayPayerIndex();
+		index.put(payer("1", "cust-1", "jane@example.com", "Jane"));
+		index.put(payer("1", "cust-9", "jane@example.com", "Jane"));
+		assertTrue(index.find(criteria("cust-1", null, null)).isEmpty());
+		assertEquals(1, index.find(criteria("cust-9", null, null)).size());
+		assertEquals(1, index.getSize());
+		index.remove("1");
+		assertTrue(index.find(criteria(null, "jane@example.com", null)).isEmpty());
+		assertEquals(0, index.getSize());
+	}
+
+	@Test
+	public void testSearchResultsKeepEmailAddress() {
+		ProtectPayPayerIndex index = new ProtectPayPayerIndex();
+		index.put(payer("1", "cust-1", "jane@example.com", "Jane"));
+		index.putFound(Collections.singletonList(payer("1", "cust-1", null, "Jane Doe")));
+		assertEquals("jane@example.com", index.get("1").getEmailAddress());
+		assertEquals("Jane Doe", index.get("1").getAccountName());
+	}
+
+	@Test
+	public void testSearchAndLoad() {
+		ProtectPayPayerIndex index = new ProtectPayPayerIndex();
+		assertNull(index.search(criteria("cust-1", null, null)));
+		assertNull(index.search(null));
+		index.load(Arrays.asList(payer("1", "cust-1", null, "Jane"), payer("2", "cust-2", null, "John")));
+		assertEquals(1, index.search(criteria("cust-1", null, null)).size());
+		assertEquals(1, index.getHits());
+		assertEquals(2, index.getMisses());
+		index.load(Collections.singletonList(payer("3", "cust-3", null, "Jim")));
+		assertNull(index.get("1"));
+		assertEquals(1, index.getSize());
+	}
+
+	@Test
+	public void testPartialIndex() {
+		ProtectPayPayerIndex index = new ProtectPayPayerIndex();
+		// As after createPayer, the vault may hold other payers named John Smith the index has not seen
+		index.put(payer("1", "cust-1", "john@example.com", "John Smith"));
+		assertFalse(index.isComplete());
+		assertNull(index.search(criteria(null, null, "John Smith")));
+		assertNull(index.search(criteria("cust-1", null, null)));
+		assertNull(index.search(criteria(null, "john@example.com", null)));
+
+		index.setUniqueFields(EnumSet.of(ProtectPayPayerIndex.Field.EXTERNAL_ID_1));
+		assertEquals(1, index.search(criteria("cust-1", null, null)).size());
+		assertEquals(1, index.search(criteria("cust-1", null, "John Smith")).size());
+		assertNull(index.search(criteria(null, null, "John Smith")));
+
+		index.load(Arrays.asList(payer("1", "cust-1", null, "John Smith"), payer("2", "cust-2", null, "John Smith")));
+		assertTrue(index.isComplete());
+		assertEquals(2, index.search(criteria(null, null, "John Smith")).size());
+		index.put(payer("3", "cust-3", null, "John Smith"));
+		assertEquals(3, index.search(criteria(null, null, "John Smith")).size());
+		index.clear();
+		assertFalse(index.isComplete());
+	}
+}
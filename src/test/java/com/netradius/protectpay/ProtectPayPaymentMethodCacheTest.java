@@ -0,0 +1,97 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayPaymentMethodCache.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayPaymentMethodCacheTest {
+
+	private static ProtectPayPaymentMethod paymentMethod(String paymentMethodId) {
+		ProtectPayPaymentMethod paymentMethod = new ProtectPayPaymentMethod();
+		paymentMethod.setPaymentMethodId(paymentMethodId);
+		paymentMethod.setAccountName("Jane Doe");
+		paymentMethod.setType(ProtectPayPaymentMethod.Type.Visa);
+		paymentMethod.setDateCreated(new Date(1000));
+		ProtectPayBillingInfo billing = new ProtectPayBillingInfo();
+		billing.setCity("Boise");
+		paymentMethod.setBilling(billing);
+		return paymentMethod;
+	}
+
+	@Test
+	public void testDefensiveCopies() {
+		ProtectPayPaymentMethodCache cache = new ProtectPayPaymentMethodCache();
+		List<ProtectPayPaymentMethod> paymentMethods = Arrays.asList(paymentMethod("a"), paymentMethod("b"));
+		cache.put("payer", paymentMethods, cache.version());
+		paymentMethods.get(0).setAccountName("Changed");
+		paymentMethods.get(0).getBilling().setCity("Changed");
+
+		List<ProtectPayPaymentMethod> cached = cache.get("payer");
+		assertEquals(2, cached.size());
+		assertEquals("Jane Doe", cached.get(0).getAccountName());
+		assertEquals("Boise", cached.get(0).getBilling().getCity());
+		cached.get(0).getDateCreated().setTime(0);
+		cached.get(1).setDescription("Changed");
+
+		ProtectPayPaymentMethod b = cache.get("payer", "b");
+		assertNull(b.getDescription());
+		assertEquals(1000, cache.get("payer", "a").getDateCreated().getTime());
+		assertNull(cache.get("payer", "c"));
+	}
+
+	@Test
+	public void testInvalidation() {
+		ProtectPayPaymentMethodCache cache = new ProtectPayPaymentMethodCache();
+		cache.put("payer", Arrays.asList(paymentMethod("a")), cache.version());
+		cache.invalidate("payer");
+		assertNull(cache.get("payer"));
+
+		// A lookup which began before an invalidation must not be cached
+		long version = cache.version();
+		cache.invalidate("payer");
+		cache.put("payer", Arrays.asList(paymentMethod("a")), version);
+		assertNull(cache.get("payer"));
+
+		ProtectPayCacheStats stats = cache.getStats();
+		assertEquals(1, stats.getInvalidations());
+		assertEquals(2, stats.getMisses());
+		assertEquals(0, stats.getSize());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		ProtectPayPaymentMethodCache cache = new ProtectPayPaymentMethodCache(2, 60000);
+		cache.put("p1", Arrays.asList(paymentMethod("a")), cache.version());
+		cache.put("p2", Arrays.asList(paymentMethod("b")), cache.version());
+		assertNotNull(cache.get("p1"));
+		cache.put("p3", Arrays.asList(paymentMethod("c")), cache.version());
+		assertNull(cache.get("p2"));
+		assertNotNull(cache.get("p1"));
+		assertNotNull(cache.get("p3"));
+		ProtectPayCacheStats stats = cache.getStats();
+		assertEquals(1, stats.getEvictions());
+		assertEquals(2, stats.getSize());
+		assertEquals(3, stats.getHits());
+		assertEquals(0.75, stats.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		ProtectPayPaymentMethodCache cache = new ProtectPayPaymentMethodCache(10, 20);
+		cache.put("p1", Arrays.asList(paymentMethod("a")), cache.version());
+		cache.put("p2", Arrays.asList(paymentMethod("b")), cache.version());
+		Thread.sleep(40);
+		assertNull(cache.get("p1"));
+		assertEquals(1, cache.purge());
+		assertEquals(2, cache.getStats().getExpirations());
+	}
+}
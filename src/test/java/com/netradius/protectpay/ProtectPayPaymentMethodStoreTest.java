@@ -0,0 +1,145 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayPaymentMethodStore and ProtectPayPayerStore.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayPaymentMethodStoreTest {
+
+	private static ProtectPayPaymentMethod paymentMethod(String paymentMethodId) {
+		ProtectPayPaymentMethod paymentMethod = new ProtectPayPaymentMethod();
+		paymentMethod.setPaymentMethodId(paymentMethodId);
+		paymentMethod.setPayerAccountId("5823760912097888");
+		paymentMethod.setAccountName("Jane Doe");
+		paymentMethod.setAccountNumber("474747******4747");
+		paymentMethod.setDescription("Visa ending 4747");
+		paymentMethod.setExpirationDate("1230");
+		paymentMethod.setType(ProtectPayPaymentMethod.Type.Visa);
+		paymentMethod.setAccountCountryCode(ProtectPayPaymentMethod.AccountCountryCode.ISO_820);
+		paymentMethod.setPayerProtected(false);
+		paymentMethod.setPriority(3);
+		paymentMethod.setDateCreated(new Date(1500000000000L));
+		ProtectPayBillingInfo billing = new ProtectPayBillingInfo();
+		billing.setAddress1("101 Main St");
+		billing.setCity("Boise");
+		billing.setState("ID");
+		billing.setZipCode("83702");
+		billing.setCountry(ProtectPayBillingInfo.Country.USA);
+		paymentMethod.setBilling(billing);
+		return paymentMethod;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		ProtectPayPaymentMethodStore store = new ProtectPayPaymentMethodStore(4);
+		store.put(paymentMethod("pm-1"));
+		ProtectPayPaymentMethod read = store.get("pm-1");
+		assertEquals("pm-1", read.getPaymentMethodId());
+		assertEquals("5823760912097888", read.getPayerAccountId());
+		assertEquals("Jane Doe", read.getAccountName());
+		assertEquals("474747******4747", read.getAccountNumber());
+		assertEquals("1230", read.getExpirationDate());
+		assertEquals(ProtectPayPaymentMethod.Type.Visa, read.getType());
+		assertEquals(ProtectPayPaymentMethod.AccountCountryCode.ISO_820, read.getAccountCountryCode());
+		assertNull(read.getDuplicateAction());
+		assertNull(read.getBankNumber());
+		assertEquals(Boolean.FALSE, read.getPayerProtected());
+		assertEquals(Integer.valueOf(3), read.getPriority());
+		assertEquals(1500000000000L, read.getDateCreated().getTime());
+		assertEquals("Boise", read.getBilling().getCity());
+		assertEquals(ProtectPayBillingInfo.Country.USA, read.getBilling().getCountry());
+		assertNull(read.getBilling().getAddress2());
+	}
+
+	@Test
+	public void testNonAsciiAndOverflow() {
+		ProtectPayPaymentMethodStore store = new ProtectPayPaymentMethodStore();
+		ProtectPayPaymentMethod paymentMethod = paymentMethod("pm-1");
+		paymentMethod.setAccountName("Zo\u00eb M\u00fcller");
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			sb.append('\u00e9');
+		}
+		paymentMethod.setDescription(sb.toString());
+		paymentMethod.setBilling(null);
+		paymentMethod.setPriority(null);
+		paymentMethod.setDateCreated(null);
+		store.put(paymentMethod);
+		ProtectPayPaymentMethod read = store.get("pm-1");
+		assertEquals("Zo\u00eb M\u00fcller", read.getAccountName());
+		assertEquals(sb.toString(), read.getDescription());
+		assertNull(read.getBilling());
+		assertNull(read.getPriority());
+		assertNull(read.getDateCreated());
+	}
+
+	@Test
+	public void testSlotsAreReused() {
+		ProtectPayPaymentMethodStore store = new ProtectPayPaymentMethodStore(2);
+		store.put(paymentMethod("pm-1"));
+		store.put(paymentMethod("pm-2"));
+		store.put(paymentMethod("pm-3"));
+		long allocated = store.getAllocatedBytes();
+		assertEquals(4L * ProtectPayPaymentMethodStore.getRecordSize(), allocated);
+		assertTrue(store.remove("pm-2"));
+		assertFalse(store.remove("pm-2"));
+		store.put(paymentMethod("pm-4"));
+		assertEquals(allocated, store.getAllocatedBytes());
+		assertEquals(3, store.size());
+		assertNull(store.get("pm-2"));
+		assertEquals("pm-4", store.get("pm-4").getPaymentMethodId());
+		assertEquals(3, store.getByPayer("5823760912097888").size());
+	}
+
+	@Test
+	public void testView() {
+		ProtectPayPaymentMethodStore store = new ProtectPayPaymentMethodStore();
+		store.put(paymentMethod("pm-1"));
+		ProtectPayPaymentMethod other = paymentMethod("pm-2");
+		other.setType(ProtectPayPaymentMethod.Type.Checking);
+		store.put(other);
+		ProtectPayPaymentMethodStore.View view = store.view();
+		assertTrue(view.moveTo("pm-1"));
+		assertEquals(ProtectPayPaymentMethod.Type.Visa, view.getType());
+		assertEquals("83702", view.getZipCode());
+		assertTrue(view.moveTo("pm-2"));
+		assertEquals(ProtectPayPaymentMethod.Type.Checking, view.getType());
+		assertEquals("pm-2", view.toPaymentMethod().getPaymentMethodId());
+		assertFalse(view.moveTo("pm-3"));
+		store.remove("pm-1");
+		view.moveTo("pm-2");
+		store.remove("pm-2");
+		try {
+			view.getAccountName();
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException x) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPayers() {
+		ProtectPayPayerStore store = new ProtectPayPayerStore(8);
+		ProtectPayPayer payer = new ProtectPayPayer();
+		payer.setPayerAccountId("5823760912097888");
+		payer.setAccountName("Jane Doe");
+		payer.setExternalId1("cust-1");
+		store.put(payer);
+		ProtectPayPayer read = store.get("5823760912097888");
+		assertEquals("Jane Doe", read.getAccountName());
+		assertEquals("cust-1", read.getExternalId1());
+		assertNull(read.getEmailAddress());
+		ProtectPayPayerStore.View view = store.view();
+		assertTrue(view.moveTo("5823760912097888"));
+		assertEquals("cust-1", view.getExternalId1());
+		assertTrue(store.remove("5823760912097888"));
+		assertEquals(0, store.size());
+	}
+}
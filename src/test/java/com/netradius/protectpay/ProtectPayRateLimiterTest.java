@@ -0,0 +1,82 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayRateLimiter.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRateLimiterTest {
+
+	@Test
+	public void testFailFast() {
+		ProtectPayRateLimiter limiter = new ProtectPayRateLimiter(ProtectPayRateLimiter.Mode.FAIL_FAST);
+		limiter.setLimit(ProtectPayOperation.Group.TRANSACT, 1, 3);
+		for (int i = 0; i < 3; i++) {
+			limiter.acquire("biller", ProtectPayOperation.AUTH);
+		}
+		try {
+			limiter.acquire("biller", ProtectPayOperation.AUTH_AND_CAPTURE);
+			fail("Expected ProtectPayRateLimitException");
+		} catch (ProtectPayRateLimitException x) {
+			assertEquals(ProtectPayOperation.AUTH_AND_CAPTURE, x.getOperation());
+		}
+
+		// Other biller accounts and groups are unaffected
+		limiter.acquire("other", ProtectPayOperation.AUTH);
+		for (int i = 0; i < 100; i++) {
+			limiter.acquire("biller", ProtectPayOperation.GET_PAYERS);
+		}
+
+		ProtectPayRateLimiterStats stats = limiter.getStats("biller", ProtectPayOperation.Group.TRANSACT);
+		assertEquals(3, stats.getGranted());
+		assertEquals(1, stats.getRejected());
+		assertEquals(0, stats.getDelayed());
+		assertNull(limiter.getStats("biller", ProtectPayOperation.Group.VAULT));
+		assertEquals(2, limiter.getStats().size());
+	}
+
+	@Test
+	public void testBlock() {
+		ProtectPayRateLimiter limiter = new ProtectPayRateLimiter();
+		limiter.setLimit(ProtectPayOperation.Group.VAULT, 20, 1);
+		long start = System.nanoTime();
+		for (int i = 0; i < 6; i++) {
+			limiter.acquire("biller", ProtectPayOperation.GET_PAYERS);
+		}
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		assertTrue("Elapsed " + elapsed, elapsed >= 240);
+		ProtectPayRateLimiterStats stats = limiter.getStats("biller", ProtectPayOperation.Group.VAULT);
+		assertEquals(6, stats.getGranted());
+		assertEquals(5, stats.getDelayed());
+		assertTrue(stats.getMaxWait() > 0);
+
+		limiter.setMaxWait(10);
+		assertFalse(limiter.tryAcquire("biller", ProtectPayOperation.GET_PAYERS));
+		try {
+			limiter.acquire("biller", ProtectPayOperation.GET_PAYERS);
+			fail("Expected ProtectPayRateLimitException");
+		} catch (ProtectPayRateLimitException x) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testOverride() {
+		ProtectPayRateLimiter limiter = new ProtectPayRateLimiter(ProtectPayRateLimiter.Mode.FAIL_FAST);
+		limiter.setLimit(ProtectPayOperation.Group.TOKEN, 1, 1);
+		limiter.setLimit("big", ProtectPayOperation.Group.TOKEN, 1, 10);
+		for (int i = 0; i < 10; i++) {
+			limiter.acquire("big", ProtectPayOperation.GET_TEMP_TOKEN);
+		}
+		limiter.acquire("small", ProtectPayOperation.GET_TEMP_TOKEN);
+		assertFalse(limiter.tryAcquire("small", ProtectPayOperation.GET_TEMP_TOKEN));
+		limiter.removeLimit(ProtectPayOperation.Group.TOKEN);
+		assertTrue(limiter.tryAcquire("small", ProtectPayOperation.GET_TEMP_TOKEN));
+		assertNull(limiter.getStats("small", ProtectPayOperation.Group.TOKEN));
+		assertNotNull(limiter.getStats("big", ProtectPayOperation.Group.TOKEN));
+	}
+}
@@ -0,0 +1,147 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayRequestCoalescer.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRequestCoalescerTest {
+
+	private static final int THREADS = 8;
+
+	private static ProtectPayPayer payer(String payerAccountId) {
+		ProtectPayPayer payer = new ProtectPayPayer();
+		payer.setPayerAccountId(payerAccountId);
+		return payer;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException x) {
+			throw new IllegalStateException(x);
+		}
+	}
+
+	@Test
+	public void testKeys() {
+		assertEquals(ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, "a", null),
+				ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, "a", null));
+		assertNotEquals(ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, "a", null),
+				ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, "a", ""));
+		assertNotEquals(ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, "a|b", "c"),
+				ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, "a", "b|c"));
+		assertNotEquals(ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, "1"),
+				ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYMENT_METHODS, "1"));
+	}
+
+	@Test
+	public void testConcurrentCallsShareOneRequest() throws Exception {
+		final ProtectPayRequestCoalescer coalescer = new ProtectPayRequestCoalescer();
+		final AtomicInteger sent = new AtomicInteger();
+		final AtomicReference<List<ProtectPayPayer>> response = new AtomicReference<>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final String key = ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS, "ext-1");
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<List<ProtectPayPayer>>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(() -> coalescer.execute(key, () -> {
+					sent.incrementAndGet();
+					await(release);
+					response.set(new ArrayList<>(Arrays.asList(payer("1"))));
+					return response.get();
+				}, Copies::payers)));
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (coalescer.getCoalesced() < THREADS - 1) {
+				assertTrue(System.nanoTime() < deadline);
+				Thread.sleep(1);
+			}
+			release.countDown();
+			List<List<ProtectPayPayer>> results = new ArrayList<>();
+			for (Future<List<ProtectPayPayer>> future : futures) {
+				results.add(future.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, sent.get());
+			assertEquals(THREADS, coalescer.getRequests());
+			assertEquals((double)(THREADS - 1) / THREADS, coalescer.getCoalescingRatio(), 0.0001);
+			assertEquals(0, coalescer.getInFlight());
+			// Every caller receives its own copy, none shares the result waiters copy from
+			for (List<ProtectPayPayer> result : results) {
+				assertNotSame(response.get(), result);
+				assertNotSame(response.get().get(0), result.get(0));
+			}
+			results.get(0).get(0).setAccountName("Changed");
+			for (int i = 1; i < results.size(); i++) {
+				assertEquals("1", results.get(i).get(0).getPayerAccountId());
+				assertNull(results.get(i).get(0).getAccountName());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testWaitersReceiveSameException() throws Exception {
+		final ProtectPayRequestCoalescer coalescer = new ProtectPayRequestCoalescer();
+		final CountDownLatch release = new CountDownLatch(1);
+		final ProtectPayException failure = new ProtectPayException("301", "Invalid", "Payer not found");
+		final String key = ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYMENT_METHODS, "payer");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<Object>> futures = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				futures.add(executor.submit(() -> {
+					try {
+						coalescer.execute(key, () -> {
+							await(release);
+							throw failure;
+						}, Copies::paymentMethods);
+						return null;
+					} catch (ProtectPayException x) {
+						return x;
+					}
+				}));
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (coalescer.getCoalesced() < 1) {
+				assertTrue(System.nanoTime() < deadline);
+				Thread.sleep(1);
+			}
+			release.countDown();
+			for (Future<Object> future : futures) {
+				assertSame(failure, future.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(2, coalescer.getRequests());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSequentialCallsAreNotCoalesced() throws ProtectPayException {
+		ProtectPayRequestCoalescer coalescer = new ProtectPayRequestCoalescer();
+		String key = ProtectPayRequestCoalescer.key(ProtectPayOperation.GET_PAYERS);
+		for (int i = 0; i < 3; i++) {
+			coalescer.execute(key, () -> new ArrayList<ProtectPayPayer>(), Copies::payers);
+		}
+		assertEquals(3, coalescer.getRequests());
+		assertEquals(0, coalescer.getCoalesced());
+	}
+}
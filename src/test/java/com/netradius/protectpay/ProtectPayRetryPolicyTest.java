@@ -0,0 +1,64 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import javax.xml.ws.WebServiceException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayRetryPolicy.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayRetryPolicyTest {
+
+	@Test
+	public void testDefaults() {
+		ProtectPayRetryPolicy policy = new ProtectPayRetryPolicy();
+		assertTrue(policy.appliesTo(ProtectPayOperation.GET_PAYERS));
+		assertTrue(policy.appliesTo(ProtectPayOperation.GET_PAYMENT_METHODS));
+		assertTrue(policy.appliesTo(ProtectPayOperation.GET_PAYMENT_METHOD));
+		assertTrue(policy.appliesTo(ProtectPayOperation.GET_TEMP_TOKEN));
+		assertFalse(policy.appliesTo(ProtectPayOperation.AUTH_AND_CAPTURE));
+		assertFalse(policy.appliesTo(ProtectPayOperation.CREATE_PAYER));
+
+		assertTrue(policy.isRetryable(new WebServiceException("Connection reset")));
+		assertFalse(policy.isRetryable(new ProtectPayException("300", "Invalid", "Invalid argument")));
+		assertFalse(policy.isRetryable(new ProtectPayRateLimitException(ProtectPayOperation.GET_PAYERS, "Limited")));
+		assertFalse(policy.isRetryable(new IllegalStateException("Timed out waiting for a service port")));
+	}
+
+	@Test
+	public void testDelays() {
+		ProtectPayRetryPolicy policy = new ProtectPayRetryPolicy();
+		policy.setMaxAttempts(5);
+		policy.setInitialBackoff(100);
+		policy.setMaxBackoff(300);
+		WebServiceException x = new WebServiceException("Read timed out");
+		for (int i = 0; i < 1000; i++) {
+			long first = policy.nextDelay(1, 0, x);
+			assertTrue(first >= 0 && first <= 100);
+			long third = policy.nextDelay(3, 0, x);
+			assertTrue(third >= 0 && third <= 300);
+		}
+		assertEquals(-1, policy.nextDelay(5, 0, x));
+
+		policy.setTimeBudget(1000);
+		assertEquals(-1, policy.nextDelay(1, TimeUnit.MILLISECONDS.toNanos(1000), x));
+	}
+
+	@Test
+	public void testResultCodes() {
+		ProtectPayRetryPolicy policy = new ProtectPayRetryPolicy();
+		policy.setRetryableResultCodes(Collections.singleton("307"));
+		policy.setOperations(EnumSet.of(ProtectPayOperation.AUTH));
+		assertTrue(policy.isRetryable(new ProtectPayException("307", "Unavailable", "Try again")));
+		assertFalse(policy.isRetryable(new ProtectPayException("58", "Declined", "Declined")));
+		assertTrue(policy.appliesTo(ProtectPayOperation.AUTH));
+		assertFalse(policy.appliesTo(ProtectPayOperation.GET_PAYERS));
+	}
+}
@@ -0,0 +1,108 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayTempTokenCache.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayTempTokenCacheTest {
+
+	private final AtomicInteger issued = new AtomicInteger();
+	private final List<Runnable> scheduled = new ArrayList<>();
+	private final Executor executor = scheduled::add;
+
+	private String token() {
+		return "token-" + issued.incrementAndGet();
+	}
+
+	@Test
+	public void testReuse() throws ProtectPayException {
+		ProtectPayTempTokenCache cache = new ProtectPayTempTokenCache(10, executor);
+		assertEquals("token-1", cache.get("biller", "payer", "Jane", 600, this::token));
+		assertEquals("token-1", cache.get("biller", "payer", "Jane", 600, this::token));
+		assertEquals("token-2", cache.get("biller", "payer", "Jane", 300, this::token));
+		assertEquals("token-3", cache.get("biller", "other", "Jane", 600, this::token));
+		ProtectPayCacheStats stats = cache.getStats();
+		assertEquals(1, stats.getHits());
+		assertEquals(3, stats.getMisses());
+		assertEquals(3, stats.getSize());
+		assertTrue(scheduled.isEmpty());
+	}
+
+	@Test
+	public void testRefreshAhead() throws Exception {
+		ProtectPayTempTokenCache cache = new ProtectPayTempTokenCache(10, executor);
+		cache.setSafetyMargin(0);
+		cache.setRefreshFraction(0.01);
+		assertEquals("token-1", cache.get("biller", "payer", "Jane", 2, this::token));
+		Thread.sleep(50);
+		// Past the refresh point the current token is still returned while a new one is requested once
+		assertEquals("token-1", cache.get("biller", "payer", "Jane", 2, this::token));
+		assertEquals("token-1", cache.get("biller", "payer", "Jane", 2, this::token));
+		assertEquals(1, scheduled.size());
+		scheduled.get(0).run();
+		assertEquals("token-2", cache.get("biller", "payer", "Jane", 2, this::token));
+		assertEquals(1, cache.getRefreshes());
+	}
+
+	@Test
+	public void testRefreshFailureKeepsToken() throws Exception {
+		ProtectPayTempTokenCache cache = new ProtectPayTempTokenCache(10, executor);
+		cache.setSafetyMargin(0);
+		cache.setRefreshFraction(0.01);
+		cache.get("biller", "payer", "Jane", 2, this::token);
+		Thread.sleep(50);
+		assertEquals("token-1", cache.get("biller", "payer", "Jane", 2, () -> {
+			throw new ProtectPayException("100", "Error", "Unavailable");
+		}));
+		scheduled.get(0).run();
+		assertEquals(1, cache.getRefreshFailures());
+		assertEquals("token-1", cache.get("biller", "payer", "Jane", 2, this::token));
+		// A later lookup may try again
+		assertEquals(2, scheduled.size());
+	}
+
+	@Test
+	public void testSafetyMargin() throws ProtectPayException {
+		ProtectPayTempTokenCache cache = new ProtectPayTempTokenCache(10, executor);
+		cache.setSafetyMargin(60000);
+		// Tokens which do not outlast the safety margin are never cached
+		assertEquals("token-1", cache.get("biller", "payer", "Jane", 60, this::token));
+		assertEquals("token-2", cache.get("biller", "payer", "Jane", 60, this::token));
+		assertEquals(0, cache.getStats().getSize());
+	}
+
+	@Test
+	public void testEvictionAndInvalidation() throws ProtectPayException {
+		ProtectPayTempTokenCache cache = new ProtectPayTempTokenCache(2, executor);
+		cache.get("biller", "p1", "A", 600, this::token);
+		cache.get("biller", "p2", "B", 600, this::token);
+		cache.get("biller", "p3", "C", 600, this::token);
+		assertEquals(1, cache.getStats().getEvictions());
+		assertEquals("token-4", cache.get("biller", "p1", "A", 600, this::token));
+		cache.invalidate("p1");
+		assertEquals("token-5", cache.get("biller", "p1", "A", 600, this::token));
+		assertEquals(1, cache.getStats().getInvalidations());
+	}
+
+	@Test
+	public void testBillersNotShared() throws ProtectPayException {
+		ProtectPayTempTokenCache cache = new ProtectPayTempTokenCache(10, executor);
+		assertEquals("token-1", cache.get("biller-a", "payer", "Jane", 600, this::token));
+		assertEquals("token-2", cache.get("biller-b", "payer", "Jane", 600, this::token));
+		assertEquals("token-1", cache.get("biller-a", "payer", "Jane", 600, this::token));
+		cache.get("biller-a", "payer-2", "Jane", 600, this::token);
+		cache.invalidate("payer");
+		assertEquals(2, cache.getStats().getInvalidations());
+		assertEquals(1, cache.getStats().getSize());
+	}
+}
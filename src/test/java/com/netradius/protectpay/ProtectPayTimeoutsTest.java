@@ -0,0 +1,57 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayTimeouts and client deadlines.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayTimeoutsTest {
+
+	@Test
+	public void testDefaults() {
+		ProtectPayTimeouts timeouts = new ProtectPayTimeouts();
+		assertEquals(ProtectPayTimeouts.DEFAULT_CONNECT_TIMEOUT, timeouts.getConnectTimeout(ProtectPayOperation.AUTH));
+		assertEquals(ProtectPayTimeouts.DEFAULT_TRANSACT_READ_TIMEOUT, timeouts.getReadTimeout(ProtectPayOperation.REFUND));
+		assertEquals(ProtectPayTimeouts.DEFAULT_VAULT_READ_TIMEOUT, timeouts.getReadTimeout(ProtectPayOperation.GET_PAYERS));
+		assertEquals(ProtectPayTimeouts.DEFAULT_TOKEN_READ_TIMEOUT, timeouts.getReadTimeout(ProtectPayOperation.GET_TEMP_TOKEN));
+	}
+
+	@Test
+	public void testOverrides() {
+		ProtectPayTimeouts timeouts = new ProtectPayTimeouts();
+		timeouts.setReadTimeout(ProtectPayOperation.Group.VAULT, 2000);
+		timeouts.setTimeouts(ProtectPayOperation.GET_PAYMENT_METHOD, 100, 500);
+		assertEquals(2000, timeouts.getReadTimeout(ProtectPayOperation.CREATE_PAYER));
+		assertEquals(500, timeouts.getReadTimeout(ProtectPayOperation.GET_PAYMENT_METHOD));
+		assertEquals(100, timeouts.getConnectTimeout(ProtectPayOperation.GET_PAYMENT_METHOD));
+		assertEquals(ProtectPayTimeouts.DEFAULT_TRANSACT_READ_TIMEOUT, timeouts.getReadTimeout(ProtectPayOperation.AUTH));
+		timeouts.setConnectTimeout(1000);
+		assertEquals(1000, timeouts.getConnectTimeout(ProtectPayOperation.GET_PAYMENT_METHOD));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTimeout() {
+		new ProtectPayTimeouts().setReadTimeout(ProtectPayOperation.Group.TRANSACT, 0);
+	}
+
+	@Test
+	public void testExpiredDeadlineIsNotSent() throws Exception {
+		ProtectPayClient client = new ProtectPayClient("http://127.0.0.1:9/API/SPS.svc", "token", "biller");
+		assertFalse(client.hasDeadline());
+		assertEquals(Long.MAX_VALUE, client.getRemainingTime());
+		ProtectPayClient bounded = client.withDeadline(100);
+		assertTrue(bounded.hasDeadline());
+		assertTrue(bounded.getRemainingTime() <= 100);
+		try {
+			bounded.getPayers(null);
+			fail("Expected ProtectPayDeadlineExceededException");
+		} catch (ProtectPayDeadlineExceededException x) {
+			assertEquals(ProtectPayOperation.GET_PAYERS, x.getOperation());
+			assertTrue(x.getRemaining() < client.getTimeouts().getMinimumBudget());
+		}
+	}
+}
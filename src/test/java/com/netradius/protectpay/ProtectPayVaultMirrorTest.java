@@ -0,0 +1,214 @@
+package com.netradius.protectpay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ProtectPayVaultMirror.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayVaultMirrorTest {
+
+	private Path dir;
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("protectpay-mirror");
+		file = dir.resolve("vault.mirror");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(dir.resolve("vault.mirror.compact"));
+		Files.deleteIfExists(file);
+		Files.delete(dir);
+	}
+
+	private static ProtectPayPayer payer(String payerAccountId, String emailAddress) {
+		ProtectPayPayer payer = new ProtectPayPayer();
+		payer.setPayerAccountId(payerAccountId);
+		payer.setAccountName("Jane Doe");
+		payer.setEmailAddress(emailAddress);
+		payer.setExternalId1("cust-" + payerAccountId);
+		return payer;
+	}
+
+	private static ProtectPayPaymentMethod paymentMethod(String payerAccountId, String accountNumber) {
+		ProtectPayPaymentMethod paymentMethod = new ProtectPayPaymentMethod();
+		paymentMethod.setPaymentMethodId("pm-" + payerAccountId);
+		paymentMethod.setPayerAccountId(payerAccountId);
+		paymentMethod.setAccountName("Jane Doe");
+		paymentMethod.setAccountNumber(accountNumber);
+		paymentMethod.setExpirationDate("1230");
+		paymentMethod.setType(ProtectPayPaymentMethod.Type.Visa);
+		paymentMethod.setPayerProtected(true);
+		paymentMethod.setPriority(1);
+		paymentMethod.setDateCreated(new Date(1500000000000L));
+		ProtectPayBillingInfo billing = new ProtectPayBillingInfo();
+		billing.setAddress1("101 Main St");
+		billing.setZipCode("83702");
+		billing.setCountry(ProtectPayBillingInfo.Country.USA);
+		paymentMethod.setBilling(billing);
+		return paymentMethod;
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			mirror.putPayer(payer("1", "jane@example.com"));
+			mirror.putPaymentMethods("1", Collections.singletonList(paymentMethod("1", "474747******4747")),
+					mirror.version());
+		}
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			assertEquals("jane@example.com", mirror.getPayer("1").getEmailAddress());
+			List<ProtectPayPaymentMethod> paymentMethods = mirror.getPaymentMethods("1");
+			assertEquals(1, paymentMethods.size());
+			ProtectPayPaymentMethod paymentMethod = paymentMethods.get(0);
+			assertEquals("pm-1", paymentMethod.getPaymentMethodId());
+			assertEquals("1", paymentMethod.getPayerAccountId());
+			assertEquals("474747******4747", paymentMethod.getAccountNumber());
+			assertEquals(ProtectPayPaymentMethod.Type.Visa, paymentMethod.getType());
+			assertNull(paymentMethod.getAccountCountryCode());
+			assertEquals(Boolean.TRUE, paymentMethod.getPayerProtected());
+			assertEquals(Integer.valueOf(1), paymentMethod.getPriority());
+			assertEquals(1500000000000L, paymentMethod.getDateCreated().getTime());
+			assertEquals(ProtectPayBillingInfo.Country.USA, paymentMethod.getBilling().getCountry());
+			assertNull(paymentMethod.getBilling().getCity());
+			assertNull(mirror.getPaymentMethods("2"));
+			assertEquals(2, mirror.getHits());
+			assertEquals(1, mirror.getMisses());
+		}
+	}
+
+	@Test
+	public void testObfuscate() throws IOException {
+		assertEquals("474747******4747", ProtectPayVaultMirror.obfuscate("474747******4747"));
+		assertEquals("************4747", ProtectPayVaultMirror.obfuscate("4747474747474747"));
+		assertEquals("****-****-****-4747", ProtectPayVaultMirror.obfuscate("4747-4747-4747-4747"));
+		assertEquals("1234", ProtectPayVaultMirror.obfuscate("1234"));
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			mirror.putPaymentMethods("1", Collections.singletonList(paymentMethod("1", "4747474747474747")),
+					mirror.version());
+			assertEquals("************4747", mirror.getPaymentMethods("1").get(0).getAccountNumber());
+		}
+		assertFalse(new String(Files.readAllBytes(file), "ISO-8859-1").contains("4747474747474747"));
+	}
+
+	@Test
+	public void testRemove() throws IOException {
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			mirror.putPayer(payer("1", null));
+			mirror.putPayer(payer("2", null));
+			mirror.putPaymentMethods("1", Collections.singletonList(paymentMethod("1", "******4747")), mirror.version());
+			mirror.putPaymentMethods("2", Collections.singletonList(paymentMethod("2", "******4747")), mirror.version());
+			mirror.removePayer("1");
+			mirror.removePaymentMethods("2");
+			long version = mirror.version();
+			mirror.removePaymentMethods("2");
+			// Skipped as the mirror was invalidated after the lookup began
+			mirror.putPaymentMethods("2", Collections.singletonList(paymentMethod("2", "******4747")), version);
+		}
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			assertNull(mirror.getPayer("1"));
+			assertNull(mirror.getPaymentMethods("1"));
+			assertNotNull(mirror.getPayer("2"));
+			assertNull(mirror.getPaymentMethods("2"));
+		}
+	}
+
+	@Test
+	public void testPutFoundKeepsEmailAddress() throws IOException {
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			mirror.putPayer(payer("1", "jane@example.com"));
+			ProtectPayPayer found = payer("1", null);
+			found.setAccountName("Jane Smith");
+			mirror.putFound(Collections.singletonList(found));
+			ProtectPayPayer payer = mirror.getPayer("1");
+			assertEquals("Jane Smith", payer.getAccountName());
+			assertEquals("jane@example.com", payer.getEmailAddress());
+			assertNull(found.getEmailAddress());
+		}
+	}
+
+	@Test
+	public void testTornRecord() throws IOException {
+		long end;
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			mirror.putPayer(payer("1", null));
+			end = mirror.getWrittenBytes();
+			mirror.putPayer(payer("2", null));
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			// Corrupts the body of the second record
+			raf.seek(end + 20);
+			raf.write(0x7f);
+		}
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			assertNotNull(mirror.getPayer("1"));
+			assertNull(mirror.getPayer("2"));
+			assertEquals(end, mirror.getWrittenBytes());
+			mirror.putPayer(payer("3", null));
+		}
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			assertEquals(2, mirror.getPayerCount());
+			assertNotNull(mirror.getPayer("3"));
+		}
+	}
+
+	@Test
+	public void testCompact() throws IOException {
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			for (int i = 0; i < 100; i++) {
+				mirror.putPayer(payer("1", "jane" + i + "@example.com"));
+			}
+			mirror.putPaymentMethods("1", Collections.singletonList(paymentMethod("1", "******4747")), mirror.version());
+			mirror.putPayer(payer("2", null));
+			mirror.removePayer("2");
+			long written = mirror.getWrittenBytes();
+			mirror.compact();
+			assertTrue(mirror.getWrittenBytes() < written);
+			assertEquals(mirror.getLiveBytes() + 8, mirror.getWrittenBytes());
+			assertEquals("jane99@example.com", mirror.getPayer("1").getEmailAddress());
+			assertEquals(1, mirror.getPaymentMethods("1").size());
+			assertNull(mirror.getPayer("2"));
+			mirror.putPayer(payer("3", null));
+		}
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			assertEquals(2, mirror.getPayerCount());
+			assertEquals(1, mirror.getPaymentMethodsCount());
+			assertNotNull(mirror.getPayer("3"));
+		}
+		assertFalse(Files.exists(dir.resolve("vault.mirror.compact")));
+	}
+
+	@Test
+	public void testMaxAge() throws IOException, InterruptedException {
+		try (ProtectPayVaultMirror mirror = new ProtectPayVaultMirror(file)) {
+			mirror.putPayer(payer("1", null));
+			Thread.sleep(20);
+			mirror.setMaxAge(10);
+			assertNull(mirror.getPayer("1"));
+			mirror.compact();
+			assertEquals(0, mirror.getPayerCount());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAMirror() throws IOException {
+		Files.write(file, "not a mirror".getBytes("UTF-8"));
+		new ProtectPayVaultMirror(file).close();
+	}
+}
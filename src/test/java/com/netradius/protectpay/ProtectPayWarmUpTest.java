@@ -0,0 +1,110 @@
+package com.netradius.protectpay;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests warming up a ProtectPayClient against a local SOAP stub which answers every payer search with
+ * a failed result, the way ProtectPay answers a search for the warm up sentinel.
+ *
+ * @author Erik R. Jensen
+ */
+public class ProtectPayWarmUpTest {
+
+	private static final int POOL_SIZE = 4;
+	private static final String RESPONSE = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<s:Body><GetPayersResponse xmlns=\"http://propay.com/SPS/contracts\">"
+			+ "<GetPayersResult xmlns:a=\"http://propay.com/SPS/types\"><a:RequestResult>"
+			+ "<a:ResultCode>301</a:ResultCode><a:ResultMessage>Not found</a:ResultMessage>"
+			+ "<a:ResultValue>FAILURE</a:ResultValue></a:RequestResult></GetPayersResult>"
+			+ "</GetPayersResponse></s:Body></s:Envelope>";
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private ProtectPayClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), POOL_SIZE);
+		server.createContext("/API/SPS.svc", exchange -> {
+			try (InputStream in = exchange.getRequestBody()) {
+				while (in.read() != -1) {
+					// drain
+				}
+				requests.incrementAndGet();
+				byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			} finally {
+				exchange.close();
+			}
+		});
+		serverExecutor = Executors.newFixedThreadPool(POOL_SIZE);
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		HttpTransportConfig config = new HttpTransportConfig();
+		config.setMaxTotal(POOL_SIZE);
+		config.setMaxPerRoute(POOL_SIZE);
+		client = new ProtectPayClient("http://127.0.0.1:" + server.getAddress().getPort() + "/API/SPS.svc",
+				"token", "biller", config);
+		client.setPoolSize(POOL_SIZE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testWarmUp() throws Exception {
+		ProtectPayWarmUpReport report = client.warmUp(POOL_SIZE);
+		assertEquals(POOL_SIZE, report.getPortsCreated());
+		assertEquals(POOL_SIZE, requests.get());
+		assertEquals(POOL_SIZE, report.getConnectionsOpened() + report.getConnectionsFailed());
+		assertTrue(report.getTotalDuration() >= 0);
+	}
+
+	@Test
+	public void testWarmUpLimitedToPoolSize() throws Exception {
+		ProtectPayWarmUpReport report = client.warmUp(POOL_SIZE * 4);
+		assertEquals(POOL_SIZE, requests.get());
+		assertEquals(POOL_SIZE, report.getConnectionsOpened() + report.getConnectionsFailed());
+	}
+
+	@Test
+	public void testWarmUpAsync() throws Exception {
+		ProtectPayWarmUpReport report = client.warmUpAsync(2).get(10, TimeUnit.SECONDS);
+		assertEquals(POOL_SIZE, report.getPortsCreated());
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testUnreachable() throws Exception {
+		server.stop(0);
+		// Failing to connect is reported rather than thrown
+		ProtectPayWarmUpReport report = client.warmUp(2);
+		assertEquals(0, report.getConnectionsOpened());
+		assertEquals(2, report.getConnectionsFailed());
+		assertEquals(0, requests.get());
+	}
+}
@@ -0,0 +1,204 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.types.Billing;
+import com.propay.sps.types.ID;
+import com.propay.sps.types.ObjectFactory;
+import com.propay.sps.types.Transaction;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.AchOverrides;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.CreditCardOverrides;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.PaymentInfoOverrides;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the size of transaction requests which leave absent fields out against requests which send
+ * them as xsi:nil, as requests were written before.
+ *
+ * @author Erik R. Jensen
+ */
+public class RequestSizeTest {
+
+	private static final Logger log = LoggerFactory.getLogger(RequestSizeTest.class);
+
+	private static final String SOAP_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+	private static final String CONTRACTS_NS = "http://propay.com/SPS/contracts";
+
+	private final ObjectFactory typesFactory = new ObjectFactory();
+	private final org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory contractsFactory =
+			new org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory();
+	private ProtectPayClient client;
+	private JAXBContext context;
+
+	@Before
+	public void setUp() throws Exception {
+		client = new ProtectPayClient("http://127.0.0.1:9/API/SPS.svc", "token", "biller");
+		context = JAXBContext.newInstance(ObjectFactory.class,
+				org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory.class);
+	}
+
+	// Maps a payment the way every field used to be mapped
+	private Transaction nilTransaction(ProtectPayPayment payment) {
+		Transaction transaction = new Transaction();
+		transaction.setPayerAccountId(typesFactory.createTransactionPayerAccountId(payment.getPayerAccountId()));
+		transaction.setAmount(typesFactory.createTransactionAmount(payment.getAmount().toString()));
+		transaction.setComment1(typesFactory.createTransactionComment1(payment.getComment1()));
+		transaction.setComment2(typesFactory.createTransactionComment2(payment.getComment2()));
+		transaction.setCurrencyCode(typesFactory.createTransactionCurrencyCode(payment.getCurrencyCode()));
+		transaction.setInputIpAddress(typesFactory.createTransactionInputIpAddress(payment.getInputIpAddress()));
+		transaction.setInvoice(typesFactory.createTransactionInvoice(payment.getInvoice()));
+		return transaction;
+	}
+
+	private CreditCardOverrides nilCreditCardOverrides(CreditCardOverride cco) {
+		ProtectPayBillingInfo info = cco.getBilling();
+		Billing billing = new Billing();
+		billing.setAddress1(typesFactory.createBillingAddress1(info.getAddress1()));
+		billing.setAddress2(typesFactory.createBillingAddress2(info.getAddress2()));
+		billing.setAddress3(typesFactory.createBillingAddress3(info.getAddress3()));
+		billing.setCity(typesFactory.createBillingCity(info.getCity()));
+		billing.setState(typesFactory.createBillingState(info.getState()));
+		billing.setZipCode(typesFactory.createBillingZipCode(info.getZipCode()));
+		billing.setCountry(typesFactory.createBillingCountry(info.getCountry().toString()));
+		billing.setEmail(typesFactory.createBillingEmail(info.getEmailAddress()));
+		billing.setTelephoneNumber(typesFactory.createBillingTelephoneNumber(info.getTelephoneNumber()));
+		CreditCardOverrides overrides = new CreditCardOverrides();
+		overrides.setCVV(contractsFactory.createCreditCardOverridesCVV(cco.getCvv()));
+		overrides.setBilling(contractsFactory.createCreditCardOverridesBilling(billing));
+		return overrides;
+	}
+
+	private byte[] marshal(Transaction transaction, String paymentMethodId, CreditCardOverrides creditCard,
+			AchOverrides ach) throws Exception {
+		ID id = new ID();
+		id.setAuthenticationToken(typesFactory.createIDAuthenticationToken("token"));
+		id.setBillerAccountId(typesFactory.createIDBillerAccountId("biller"));
+		PaymentInfoOverrides overrides = new PaymentInfoOverrides();
+		if (creditCard != null) {
+			overrides.setCreditCard(contractsFactory.createPaymentInfoOverridesCreditCard(creditCard));
+		}
+		if (ach != null) {
+			overrides.setAch(contractsFactory.createPaymentInfoOverridesAch(ach));
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.writeStartElement("S", "Envelope", SOAP_ENVELOPE_NS);
+		xml.writeNamespace("S", SOAP_ENVELOPE_NS);
+		xml.writeStartElement("S", "Body", SOAP_ENVELOPE_NS);
+		xml.writeStartElement("ns1", "ProcessPaymentMethodTransaction", CONTRACTS_NS);
+		xml.writeNamespace("ns1", CONTRACTS_NS);
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+		marshaller.marshal(new JAXBElement<>(new QName(CONTRACTS_NS, "id"), ID.class, id), xml);
+		marshaller.marshal(new JAXBElement<>(new QName(CONTRACTS_NS, "transaction"), Transaction.class, transaction),
+				xml);
+		marshaller.marshal(new JAXBElement<>(new QName(CONTRACTS_NS, "paymentMethodID"), String.class,
+				paymentMethodId), xml);
+		marshaller.marshal(new JAXBElement<>(new QName(CONTRACTS_NS, "optionalPaymentInfoOverrides"),
+				PaymentInfoOverrides.class, overrides), xml);
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndDocument();
+		xml.close();
+		return out.toByteArray();
+	}
+
+	private static Element parse(byte[] xml) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+		return document.getDocumentElement();
+	}
+
+	private static void removeNils(Element element) {
+		Node child = element.getFirstChild();
+		while (child != null) {
+			Node next = child.getNextSibling();
+			if (child instanceof Element) {
+				Element e = (Element)child;
+				if ("true".equals(e.getAttributeNS(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "nil"))) {
+					element.removeChild(e);
+				} else {
+					removeNils(e);
+				}
+			}
+			child = next;
+		}
+	}
+
+	private static String describe(Element element) {
+		StringBuilder sb = new StringBuilder("{").append(element.getNamespaceURI()).append("}")
+				.append(element.getLocalName()).append("(");
+		boolean children = false;
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child instanceof Element) {
+				sb.append(describe((Element)child));
+				children = true;
+			}
+		}
+		if (!children) {
+			sb.append(element.getTextContent());
+		}
+		return sb.append(")").toString();
+	}
+
+	private void assertSmaller(String name, byte[] nil, byte[] omitted) throws Exception {
+		log.info(name + " request: " + nil.length + " bytes with xsi:nil, " + omitted.length + " bytes without");
+		assertFalse(new String(omitted, "UTF-8"), new String(omitted, "UTF-8").contains(":nil"));
+		assertTrue(name + " request did not shrink", omitted.length < nil.length);
+		// Apart from the nil elements, ProtectPay receives exactly what it did before
+		Element expected = parse(nil);
+		removeNils(expected);
+		assertEquals(describe(expected), describe(parse(omitted)));
+	}
+
+	@Test
+	public void testCardPayment() throws Exception {
+		ProtectPayPayment payment = ProtectPayFixtures.payment();
+		CreditCardOverride cco = ProtectPayFixtures.creditCardOverride();
+		byte[] nil = marshal(nilTransaction(payment), payment.getPaymentMethodId(), nilCreditCardOverrides(cco), null);
+		byte[] omitted = marshal(client.toTransaction(payment), payment.getPaymentMethodId(),
+				client.toCreditCardOverrides(cco), null);
+		assertSmaller("Card", nil, omitted);
+	}
+
+	@Test
+	public void testAchPayment() throws Exception {
+		ProtectPayPayment payment = ProtectPayFixtures.payment();
+		ACHOverride ao = ProtectPayFixtures.achOverride();
+		byte[] nil = marshal(nilTransaction(payment), payment.getPaymentMethodId(), null, client.toAchOverrides(ao));
+		byte[] omitted = marshal(client.toTransaction(payment), payment.getPaymentMethodId(), null,
+				client.toAchOverrides(ao));
+		assertSmaller("ACH", nil, omitted);
+	}
+
+	@Test
+	public void testWrittenRequest() throws Exception {
+		ProtectPayPayment payment = ProtectPayFixtures.payment();
+		TransactRequestWriter.Buffer buffer = TransactRequestWriter.getInstance().write(
+				"processPaymentMethodTransaction", "token", "biller", payment, ProtectPayFixtures.creditCardOverride(), null);
+		String request = new String(buffer.array(), 0, buffer.size(), "UTF-8");
+		assertFalse(request, request.contains(":nil"));
+		assertFalse(request, request.contains("Comment1"));
+		assertTrue(request, request.contains(">INV-1001<"));
+	}
+}
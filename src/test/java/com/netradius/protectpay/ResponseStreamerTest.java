@@ -0,0 +1,272 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.types.ID;
+import com.propay.sps.types.ObjectFactory;
+import com.propay.sps.types.PayerData;
+import com.propay.sps.types.PayerInfo;
+import com.propay.sps.types.PaymentMethodInformation;
+import com.propay.sps.types.Result;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.ws.WebServiceException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ResponseStreamer against a local HTTP stub.
+ *
+ * @author Erik R. Jensen
+ */
+public class ResponseStreamerTest {
+
+	private static final String START = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>"
+			+ "<GetPayersResponse xmlns=\"http://propay.com/SPS/contracts\"><GetPayersResult"
+			+ " xmlns:a=\"http://propay.com/SPS/types\" xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\">";
+	private static final String END = "</GetPayersResult></GetPayersResponse></s:Body></s:Envelope>";
+	private static final String SUCCESS = "<a:RequestResult><a:ResultCode>00</a:ResultCode><a:ResultMessage/>"
+			+ "<a:ResultValue>SUCCESS</a:ResultValue></a:RequestResult>";
+	private static final String FAILURE = "<a:RequestResult><a:ResultCode>300</a:ResultCode>"
+			+ "<a:ResultMessage>Authentication failed</a:ResultMessage><a:ResultValue>FAILURE</a:ResultValue>"
+			+ "</a:RequestResult>";
+
+	private HttpServer server;
+	private HttpTransport transport;
+	private ResponseStreamer streamer;
+	private String address;
+	private volatile int status = 200;
+	private volatile List<String> parts;
+	private volatile CountDownLatch between;
+	private volatile boolean waited;
+	private volatile String soapAction;
+	private volatile String request;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/API/SPS.svc", exchange -> {
+			try {
+				soapAction = exchange.getRequestHeaders().getFirst("SOAPAction");
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				try (InputStream in = exchange.getRequestBody()) {
+					for (int b = in.read(); b != -1; b = in.read()) {
+						body.write(b);
+					}
+				}
+				request = new String(body.toByteArray(), StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+				exchange.sendResponseHeaders(status, 0);
+				try (OutputStream out = exchange.getResponseBody()) {
+					for (int i = 0; i < parts.size(); i++) {
+						if (i > 0 && between != null) {
+							// Holds back the rest of the response until the client has read what it was sent
+							waited = between.await(5, TimeUnit.SECONDS);
+						}
+						out.write(parts.get(i).getBytes(StandardCharsets.UTF_8));
+						out.flush();
+					}
+				}
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+			} finally {
+				exchange.close();
+			}
+		});
+		server.start();
+		address = "http://127.0.0.1:" + server.getAddress().getPort() + "/API/SPS.svc";
+		transport = new HttpTransport(new HttpTransportConfig());
+		streamer = ResponseStreamer.getInstance();
+		assertNotNull(streamer);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		transport.close();
+		server.stop(0);
+	}
+
+	private static String payer(int i) {
+		return "<a:PayerInfo><a:ExternalId1>ext" + i + "</a:ExternalId1><a:ExternalId2 i:nil=\"true\"/>"
+				+ "<a:Name>Payer " + i + "</a:Name><a:PayerAccountId>" + (1000 + i) + "</a:PayerAccountId></a:PayerInfo>";
+	}
+
+	private static void check(Result result) throws ProtectPayException {
+		if (!"00".equals(result.getResultCode().getValue())) {
+			throw new ProtectPayException(result.getResultCode().getValue(), result.getResultValue().getValue(),
+					result.getResultMessage().getValue());
+		}
+	}
+
+	private static ID id() {
+		ObjectFactory factory = new ObjectFactory();
+		ID id = new ID();
+		id.setAuthenticationToken(factory.createIDAuthenticationToken("token"));
+		id.setBillerAccountId(factory.createIDBillerAccountId("biller"));
+		return id;
+	}
+
+	private ResponseStreamer.Results<PayerInfo> getPayers() throws ProtectPayException {
+		return streamer.open(transport, address, ResponseStreamer.GET_PAYERS, PayerInfo.class,
+				ResponseStreamerTest::check, 1000, 5000, id(), null);
+	}
+
+	@Test
+	public void testStream() throws ProtectPayException {
+		parts = Arrays.asList(START + "<a:Payers>" + payer(1) + payer(2) + payer(3) + "</a:Payers>" + SUCCESS + END);
+		List<String> ids = new ArrayList<>();
+		try (ResponseStreamer.Results<PayerInfo> results = getPayers()) {
+			while (results.hasNext()) {
+				PayerInfo info = results.next();
+				ids.add(info.getPayerAccountId().getValue());
+				assertNull(info.getExternalId2().getValue());
+			}
+		}
+		assertEquals(Arrays.asList("1001", "1002", "1003"), ids);
+		assertEquals("\"http://propay.com/SPS/contracts/SPSService/GetPayers\"", soapAction);
+		assertTrue(request, request.contains("GetPayers"));
+		assertTrue(request, request.contains(">token<"));
+		assertFalse(request, request.contains("criteria"));
+		assertEquals(0, transport.getStats().getLeased());
+	}
+
+	@Test
+	public void testCriteria() throws ProtectPayException {
+		parts = Arrays.asList(START + "<a:Payers/>" + SUCCESS + END);
+		ObjectFactory factory = new ObjectFactory();
+		PayerData criteria = new PayerData();
+		criteria.setExternalId1(factory.createPayerDataExternalId1("ext-42"));
+		try (ResponseStreamer.Results<PayerInfo> results = streamer.open(transport, address,
+				ResponseStreamer.GET_PAYERS, PayerInfo.class, ResponseStreamerTest::check, 1000, 5000, id(),
+				criteria)) {
+			assertFalse(results.hasNext());
+		}
+		assertTrue(request, request.contains("criteria"));
+		assertTrue(request, request.contains(">ext-42<"));
+	}
+
+	@Test
+	public void testReadsIncrementally() throws ProtectPayException {
+		between = new CountDownLatch(1);
+		parts = Arrays.asList(START + "<a:Payers>" + payer(1) + payer(2), payer(3) + "</a:Payers>" + SUCCESS + END);
+		try (ResponseStreamer.Results<PayerInfo> results = getPayers()) {
+			assertEquals("1001", results.next().getPayerAccountId().getValue());
+			between.countDown();
+			assertEquals("1002", results.next().getPayerAccountId().getValue());
+			assertEquals("1003", results.next().getPayerAccountId().getValue());
+			assertFalse(results.hasNext());
+		}
+		assertTrue("The first payer was not read until the response was complete", waited);
+	}
+
+	@Test
+	public void testFailureBeforeItems() {
+		parts = Arrays.asList(START + FAILURE + "<a:Payers i:nil=\"true\"/>" + END);
+		try {
+			getPayers();
+			fail("Expected ProtectPayException");
+		} catch (ProtectPayException x) {
+			assertEquals("300", x.getResultCode());
+		}
+		assertEquals(0, transport.getStats().getLeased());
+	}
+
+	@Test
+	public void testFailureAfterItems() throws ProtectPayException {
+		parts = Arrays.asList(START + "<a:Payers>" + payer(1) + "</a:Payers>" + FAILURE + END);
+		try (ResponseStreamer.Results<PayerInfo> results = getPayers()) {
+			assertEquals("1001", results.next().getPayerAccountId().getValue());
+			try {
+				results.hasNext();
+				fail("Expected ProtectPayUncheckedException");
+			} catch (ProtectPayUncheckedException x) {
+				assertEquals("300", x.getCause().getResultCode());
+			}
+		}
+		assertEquals(0, transport.getStats().getLeased());
+	}
+
+	@Test
+	public void testFault() throws ProtectPayException {
+		status = 500;
+		parts = Arrays.asList("<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><s:Fault>"
+				+ "<faultcode>s:Client</faultcode><faultstring>Bad request</faultstring></s:Fault></s:Body></s:Envelope>");
+		try {
+			getPayers();
+			fail("Expected WebServiceException");
+		} catch (WebServiceException x) {
+			assertTrue(x.getMessage(), x.getMessage().endsWith("Bad request"));
+		}
+	}
+
+	@Test
+	public void testMissingResult() throws ProtectPayException {
+		parts = Arrays.asList(START + "<a:Payers>" + payer(1) + "</a:Payers>" + END);
+		try (ResponseStreamer.Results<PayerInfo> results = getPayers()) {
+			results.next();
+			try {
+				results.hasNext();
+				fail("Expected WebServiceException");
+			} catch (WebServiceException x) {
+				assertTrue(x.getMessage(), x.getMessage().contains("RequestResult"));
+			}
+		}
+	}
+
+	@Test
+	public void testCloseEarly() throws ProtectPayException {
+		StringBuilder response = new StringBuilder(START).append("<a:Payers>");
+		for (int i = 0; i < 1000; i++) {
+			response.append(payer(i));
+		}
+		parts = Arrays.asList(response.append("</a:Payers>").append(SUCCESS).append(END).toString());
+		ResponseStreamer.Results<PayerInfo> results = getPayers();
+		assertEquals("1000", results.next().getPayerAccountId().getValue());
+		assertEquals(1, transport.getStats().getLeased());
+		results.close();
+		assertFalse(results.hasNext());
+		assertEquals(0, transport.getStats().getLeased());
+	}
+
+	@Test
+	public void testPaymentMethods() throws ProtectPayException {
+		parts = Arrays.asList("<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>"
+				+ "<GetAllPayerPaymentMethodsResponse xmlns=\"http://propay.com/SPS/contracts\">"
+				+ "<GetAllPayerPaymentMethodsResult xmlns:a=\"http://propay.com/SPS/types\">"
+				+ "<a:PaymentMethods><a:PaymentMethodInformation><a:AccountName>Payer</a:AccountName>"
+				+ "<a:BillingInformation><a:Address1>101 Main St</a:Address1><a:Country>USA</a:Country>"
+				+ "</a:BillingInformation><a:DateCreated>2024-01-02T03:04:05</a:DateCreated>"
+				+ "<a:PaymentMethodID>pm-1</a:PaymentMethodID><a:PaymentMethodType>Visa</a:PaymentMethodType>"
+				+ "<a:Priority>2</a:Priority></a:PaymentMethodInformation></a:PaymentMethods>" + SUCCESS
+				+ "</GetAllPayerPaymentMethodsResult></GetAllPayerPaymentMethodsResponse></s:Body></s:Envelope>");
+		try (ResponseStreamer.Results<PaymentMethodInformation> results = streamer.open(transport, address,
+				ResponseStreamer.GET_PAYMENT_METHODS, PaymentMethodInformation.class, ResponseStreamerTest::check,
+				1000, 5000, id(), "1001")) {
+			PaymentMethodInformation info = results.next();
+			assertEquals("pm-1", info.getPaymentMethodID().getValue());
+			assertEquals(Integer.valueOf(2), info.getPriority());
+			assertEquals("101 Main St", info.getBillingInformation().getValue().getAddress1().getValue());
+			assertFalse(results.hasNext());
+		}
+		assertEquals("\"http://propay.com/SPS/contracts/SPSService/GetAllPayerPaymentMethods\"", soapAction);
+		assertTrue(request, request.contains(">1001<"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongItemType() throws ProtectPayException {
+		streamer.open(transport, address, ResponseStreamer.GET_PAYERS, PaymentMethodInformation.class,
+				ResponseStreamerTest::check, 1000, 5000, id(), null);
+	}
+}
@@ -0,0 +1,249 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.SPSService;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ServicePool with ports which do not call ProtectPay.
+ *
+ * @author Erik R. Jensen
+ */
+public class ServicePoolTest {
+
+	private static StubServicePool pool(int maxSize, long timeout) {
+		return new StubServicePool(maxSize, timeout, (method, args) -> null);
+	}
+
+	private static void awaitWaiting(ServicePool pool, int waiting) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.getWaiting() < waiting) {
+			assertTrue("Expected " + waiting + " waiting callers", System.currentTimeMillis() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	// Borrows a port, records the name of the thread and holds the port until released
+	private static Thread borrower(ServicePool pool, String name, List<String> order, CountDownLatch release,
+			AtomicReference<Throwable> failure) {
+		Thread thread = new Thread(() -> {
+			try {
+				SPSService service = pool.borrow();
+				order.add(name);
+				release.await();
+				pool.release(service);
+			} catch (Throwable t) {
+				failure.set(t);
+			}
+		}, name);
+		thread.start();
+		return thread;
+	}
+
+	@Test
+	public void testBorrowAndRelease() {
+		StubServicePool pool = pool(2, 1000);
+		SPSService first = pool.borrow();
+		SPSService second = pool.borrow();
+		assertNotSame(first, second);
+		assertEquals(2, pool.getCreated());
+		pool.release(first);
+		assertEquals(1, pool.getIdle());
+		assertSame(first, pool.borrow());
+		assertEquals(2, pool.getPortsCreated());
+	}
+
+	@Test
+	public void testFill() {
+		StubServicePool pool = pool(3, 1000);
+		pool.borrow();
+		assertEquals(2, pool.fill());
+		assertEquals(3, pool.getCreated());
+		assertEquals(2, pool.getIdle());
+		assertEquals(0, pool.fill());
+	}
+
+	@Test(timeout = 10000)
+	public void testFifoHandoff() throws Exception {
+		StubServicePool pool = pool(1, 10000);
+		SPSService service = pool.borrow();
+		List<String> order = new CopyOnWriteArrayList<>();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch first = new CountDownLatch(1);
+		CountDownLatch second = new CountDownLatch(1);
+		Thread a = borrower(pool, "a", order, first, failure);
+		awaitWaiting(pool, 1);
+		Thread b = borrower(pool, "b", order, second, failure);
+		awaitWaiting(pool, 2);
+
+		pool.release(service);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (order.isEmpty()) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(1);
+		}
+		assertEquals("a", order.get(0));
+		assertEquals(1, pool.getWaiting());
+
+		first.countDown();
+		a.join();
+		second.countDown();
+		b.join();
+		assertNull(failure.get());
+		assertEquals(2, order.size());
+		assertEquals("b", order.get(1));
+		assertEquals(1, pool.getPortsCreated());
+	}
+
+	@Test
+	public void testTimeout() {
+		StubServicePool pool = pool(1, 50);
+		pool.borrow();
+		long start = System.nanoTime();
+		try {
+			pool.borrow();
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException x) {
+			assertTrue(x.getMessage(), x.getMessage().startsWith("Timed out"));
+		}
+		assertTrue((System.nanoTime() - start) / 1000000 >= 50);
+		assertEquals(0, pool.getWaiting());
+		assertEquals(1, pool.getCreated());
+	}
+
+	@Test(timeout = 10000)
+	public void testInterrupt() throws Exception {
+		StubServicePool pool = pool(1, 10000);
+		pool.borrow();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicBoolean interrupted = new AtomicBoolean();
+		Thread thread = new Thread(() -> {
+			try {
+				pool.borrow();
+			} catch (Throwable t) {
+				failure.set(t);
+				interrupted.set(Thread.currentThread().isInterrupted());
+			}
+		});
+		thread.start();
+		awaitWaiting(pool, 1);
+		thread.interrupt();
+		thread.join();
+		assertTrue(failure.get() instanceof IllegalStateException);
+		assertTrue(failure.get().getMessage().startsWith("Interrupted"));
+		assertTrue(interrupted.get());
+		assertEquals(0, pool.getWaiting());
+	}
+
+	@Test
+	public void testShrinkWhileBorrowed() {
+		StubServicePool pool = pool(3, 1000);
+		SPSService a = pool.borrow();
+		SPSService b = pool.borrow();
+		SPSService c = pool.borrow();
+		pool.setMaxSize(1);
+		assertEquals(3, pool.getCreated());
+		pool.release(a);
+		assertEquals(2, pool.getCreated());
+		assertEquals(0, pool.getIdle());
+		pool.release(b);
+		assertEquals(1, pool.getCreated());
+		assertEquals(0, pool.getIdle());
+		pool.release(c);
+		assertEquals(1, pool.getCreated());
+		assertEquals(1, pool.getIdle());
+	}
+
+	@Test
+	public void testShrinkIdle() {
+		StubServicePool pool = pool(3, 1000);
+		pool.fill();
+		pool.setMaxSize(1);
+		assertEquals(1, pool.getCreated());
+		assertEquals(1, pool.getIdle());
+	}
+
+	@Test(timeout = 10000)
+	public void testGrowWakesWaiter() throws Exception {
+		StubServicePool pool = pool(1, 10000);
+		pool.borrow();
+		List<String> order = new CopyOnWriteArrayList<>();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch release = new CountDownLatch(1);
+		Thread thread = borrower(pool, "waiter", order, release, failure);
+		awaitWaiting(pool, 1);
+		pool.setMaxSize(2);
+		release.countDown();
+		thread.join();
+		assertNull(failure.get());
+		assertEquals(1, order.size());
+		assertEquals(2, pool.getCreated());
+	}
+
+	@Test
+	public void testCreateFailure() {
+		StubServicePool pool = pool(1, 1000);
+		pool.setCreateHook(() -> {
+			throw new IllegalStateException("broken");
+		});
+		try {
+			pool.borrow();
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException x) {
+			assertEquals("broken", x.getMessage());
+		}
+		assertEquals(0, pool.getCreated());
+		pool.setCreateHook(null);
+		assertNotNull(pool.borrow());
+		assertEquals(1, pool.getCreated());
+	}
+
+	@Test(timeout = 10000)
+	public void testCreateFailureWakesWaiter() throws Exception {
+		StubServicePool pool = pool(1, 10000);
+		CountDownLatch creating = new CountDownLatch(1);
+		CountDownLatch fail = new CountDownLatch(1);
+		AtomicBoolean first = new AtomicBoolean(true);
+		pool.setCreateHook(() -> {
+			if (first.compareAndSet(true, false)) {
+				creating.countDown();
+				fail.await();
+				throw new IllegalStateException("broken");
+			}
+		});
+		AtomicReference<Throwable> failed = new AtomicReference<>();
+		Thread creator = new Thread(() -> {
+			try {
+				pool.borrow();
+			} catch (Throwable t) {
+				failed.set(t);
+			}
+		});
+		creator.start();
+		creating.await();
+
+		// The pool is full while the first port is being created
+		List<String> order = new CopyOnWriteArrayList<>();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch release = new CountDownLatch(1);
+		Thread waiter = borrower(pool, "waiter", order, release, failure);
+		awaitWaiting(pool, 1);
+
+		fail.countDown();
+		creator.join();
+		assertEquals("broken", failed.get().getMessage());
+		release.countDown();
+		waiter.join();
+		assertNull(failure.get());
+		assertEquals(1, order.size());
+		assertEquals(1, pool.getCreated());
+		assertEquals(1, pool.getPortsCreated());
+	}
+}
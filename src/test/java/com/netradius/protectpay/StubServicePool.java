@@ -0,0 +1,101 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.SPSService;
+import com.propay.sps.types.ObjectFactory;
+import com.propay.sps.types.Result;
+
+import javax.xml.ws.BindingProvider;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ServicePool whose ports are proxies answered by a handler, so tests need neither the WSDL nor ProtectPay.
+ *
+ * @author Erik R. Jensen
+ */
+class StubServicePool extends ServicePool {
+
+	/**
+	 * Answers a call made on a port.
+	 */
+	@FunctionalInterface
+	interface Handler {
+		Object call(String method, Object[] args) throws Exception;
+	}
+
+	/**
+	 * Runs before each port is created and may fail or delay it.
+	 */
+	@FunctionalInterface
+	interface CreateHook {
+		void creating() throws Exception;
+	}
+
+	private final Handler handler;
+	private final AtomicInteger portsCreated = new AtomicInteger();
+	private volatile CreateHook createHook;
+
+	StubServicePool(int maxSize, long timeout, Handler handler) {
+		super(ProtectPayClient.toEndpointUrl("http://127.0.0.1:9/API/SPS.svc"), maxSize, timeout, null);
+		this.handler = handler;
+	}
+
+	/**
+	 * Creates the result ProtectPay returns with every response.
+	 *
+	 * @param code the result code, 00 for success
+	 * @return the result
+	 */
+	static Result result(String code) {
+		ObjectFactory factory = new ObjectFactory();
+		Result result = factory.createResult();
+		result.setResultCode(factory.createResultResultCode(code));
+		result.setResultValue(factory.createResultResultValue("00".equals(code) ? "SUCCESS" : "FAILURE"));
+		result.setResultMessage(factory.createResultResultMessage("00".equals(code) ? "" : "Stub failure " + code));
+		return result;
+	}
+
+	void setCreateHook(CreateHook createHook) {
+		this.createHook = createHook;
+	}
+
+	int getPortsCreated() {
+		return portsCreated.get();
+	}
+
+	@Override
+	SPSService newPort() {
+		CreateHook hook = createHook;
+		if (hook != null) {
+			try {
+				hook.creating();
+			} catch (RuntimeException x) {
+				throw x;
+			} catch (Exception x) {
+				throw new IllegalStateException(x);
+			}
+		}
+		portsCreated.incrementAndGet();
+		Map<String, Object> requestContext = new ConcurrentHashMap<>();
+		Map<String, Object> responseContext = new ConcurrentHashMap<>();
+		return (SPSService)Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[]{SPSService.class, BindingProvider.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getRequestContext":
+							return requestContext;
+						case "getResponseContext":
+							return responseContext;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						case "toString":
+							return "StubPort@" + Integer.toHexString(System.identityHashCode(proxy));
+						default:
+							return handler.call(method.getName(), args);
+					}
+				});
+	}
+}
@@ -0,0 +1,231 @@
+package com.netradius.protectpay;
+
+import com.propay.sps.SPSService;
+import com.propay.sps.types.ID;
+import com.propay.sps.types.Transaction;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.PaymentInfoOverrides;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.jws.WebParam;
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.ws.RequestWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests TransactRequestWriter writes the same requests JAXB marshals.
+ *
+ * @author Erik R. Jensen
+ */
+public class TransactRequestWriterTest {
+
+	private static final String SOAP_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+
+	private ProtectPayClient client;
+	private TransactRequestWriter writer;
+	private JAXBContext context;
+
+	@Before
+	public void setUp() throws Exception {
+		client = new ProtectPayClient("http://127.0.0.1:9/API/SPS.svc", "token & more", "biller");
+		writer = TransactRequestWriter.getInstance();
+		assertNotNull(writer);
+		context = JAXBContext.newInstance(com.propay.sps.types.ObjectFactory.class,
+				org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory.class);
+	}
+
+	// Values which need escaping or are not ASCII
+	private static ProtectPayPayment payment() {
+		ProtectPayPayment payment = ProtectPayFixtures.payment();
+		payment.setInvoice("INV-<1001>");
+		payment.setComment1("First & only");
+		return payment;
+	}
+
+	private static CreditCardOverride creditCardOverride() {
+		CreditCardOverride cco = ProtectPayFixtures.creditCardOverride();
+		cco.setFullName("Zo\u00eb M\u00fcller");
+		return cco;
+	}
+
+	// Marshals the request the way the port does, from the JAXB objects the client builds
+	private byte[] marshal(String operation, ProtectPayPayment payment, CreditCardOverride cco, ACHOverride ao)
+			throws Exception {
+		Method method = SPSService.class.getMethod(operation, ID.class, Transaction.class, String.class,
+				PaymentInfoOverrides.class);
+		RequestWrapper wrapper = method.getAnnotation(RequestWrapper.class);
+		List<QName> params = new ArrayList<>();
+		for (Annotation[] annotations : method.getParameterAnnotations()) {
+			for (Annotation annotation : annotations) {
+				if (annotation instanceof WebParam) {
+					WebParam param = (WebParam)annotation;
+					params.add(new QName(param.targetNamespace(), param.name()));
+				}
+			}
+		}
+		PaymentInfoOverrides overrides = new PaymentInfoOverrides();
+		org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory factory =
+				new org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory();
+		if (cco != null) {
+			overrides.setCreditCard(factory.createPaymentInfoOverridesCreditCard(client.toCreditCardOverrides(cco)));
+		}
+		if (ao != null) {
+			overrides.setAch(factory.createPaymentInfoOverridesAch(client.toAchOverrides(ao)));
+		}
+		com.propay.sps.types.ObjectFactory typesFactory = new com.propay.sps.types.ObjectFactory();
+		ID id = new ID();
+		id.setAuthenticationToken(typesFactory.createIDAuthenticationToken("token & more"));
+		id.setBillerAccountId(typesFactory.createIDBillerAccountId("biller"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.writeStartElement("S", "Envelope", SOAP_ENVELOPE_NS);
+		xml.writeNamespace("S", SOAP_ENVELOPE_NS);
+		xml.writeStartElement("S", "Body", SOAP_ENVELOPE_NS);
+		xml.writeStartElement("w", wrapper.localName(), wrapper.targetNamespace());
+		xml.writeNamespace("w", wrapper.targetNamespace());
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+		marshaller.marshal(new JAXBElement<>(params.get(0), ID.class, id), xml);
+		marshaller.marshal(new JAXBElement<>(params.get(1), Transaction.class, client.toTransaction(payment)), xml);
+		marshaller.marshal(new JAXBElement<>(params.get(2), String.class, payment.getPaymentMethodId()), xml);
+		marshaller.marshal(new JAXBElement<>(params.get(3), PaymentInfoOverrides.class, overrides), xml);
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndDocument();
+		xml.close();
+		return out.toByteArray();
+	}
+
+	private byte[] write(String operation, ProtectPayPayment payment, CreditCardOverride cco, ACHOverride ao)
+			throws Exception {
+		TransactRequestWriter.Buffer buffer = writer.write(operation, "token & more", "biller", payment, cco, ao);
+		byte[] bytes = new byte[buffer.size()];
+		System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	private static Element parse(byte[] xml) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+		return document.getDocumentElement();
+	}
+
+	// Compares names, nil markers, text and child order, ignoring prefixes and where namespaces are declared
+	private static void assertSameElement(String path, Element expected, Element actual) {
+		String name = expected.getNamespaceURI() + ":" + expected.getLocalName();
+		assertEquals(path, name, actual.getNamespaceURI() + ":" + actual.getLocalName());
+		path = path + "/" + expected.getLocalName();
+		assertEquals(path, expected.getAttributeNS(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "nil"),
+				actual.getAttributeNS(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "nil"));
+		List<Element> expectedChildren = children(expected);
+		List<Element> actualChildren = children(actual);
+		if (expectedChildren.isEmpty()) {
+			assertEquals(path, expected.getTextContent(), actual.getTextContent());
+		}
+		assertEquals(path + " children", expectedChildren.size(), actualChildren.size());
+		for (int i = 0; i < expectedChildren.size(); i++) {
+			assertSameElement(path, expectedChildren.get(i), actualChildren.get(i));
+		}
+	}
+
+	private static List<Element> children(Element element) {
+		List<Element> children = new ArrayList<>();
+		for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node instanceof Element) {
+				children.add((Element)node);
+			}
+		}
+		return children;
+	}
+
+	private void assertWrittenSame(String operation, ProtectPayPayment payment, CreditCardOverride cco, ACHOverride ao)
+			throws Exception {
+		assertSameElement("", parse(marshal(operation, payment, cco, ao)), parse(write(operation, payment, cco, ao)));
+	}
+
+	@Test
+	public void testCardPayment() throws Exception {
+		for (String operation : TransactRequestWriter.OPERATIONS) {
+			assertWrittenSame(operation, payment(), creditCardOverride(), null);
+		}
+	}
+
+	@Test
+	public void testAchPayment() throws Exception {
+		ProtectPayPayment payment = payment();
+		payment.setMerchantProfileId(42L);
+		payment.setInputIpAddress("192.0.2.10");
+		for (String operation : TransactRequestWriter.OPERATIONS) {
+			assertWrittenSame(operation, payment, null, ProtectPayFixtures.achOverride());
+		}
+	}
+
+	@Test
+	public void testNoOverrides() throws Exception {
+		ProtectPayPayment payment = new ProtectPayPayment();
+		payment.setPaymentMethodId("pm");
+		payment.setAmount(100);
+		assertWrittenSame("processPaymentMethodTransaction", payment, null, null);
+		assertWrittenSame("processPaymentMethodTransaction", payment, new CreditCardOverride(), new ACHOverride());
+	}
+
+	private static void assertNoNil(Element element) {
+		assertEquals(element.getLocalName(), "",
+				element.getAttributeNS(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "nil"));
+		for (Element child : children(element)) {
+			assertNoNil(child);
+		}
+	}
+
+	@Test
+	public void testAbsentFields() throws Exception {
+		// Both paths leave absent values out rather than sending xsi:nil
+		ProtectPayPayment payment = new ProtectPayPayment();
+		payment.setPaymentMethodId("pm");
+		payment.setAmount(100);
+		CreditCardOverride cco = new CreditCardOverride();
+		cco.setCvv("123");
+		cco.setBilling(new ProtectPayBillingInfo());
+		for (String operation : TransactRequestWriter.OPERATIONS) {
+			assertNoNil(parse(marshal(operation, payment, cco, null)));
+			assertNoNil(parse(write(operation, payment, cco, null)));
+		}
+	}
+
+	@Test
+	public void testBufferIsReused() throws Exception {
+		TransactRequestWriter.Buffer first = writer.write("authorizePaymentMethodTransaction", "token", "biller",
+				payment(), null, null);
+		int size = first.size();
+		TransactRequestWriter.Buffer second = writer.write("authorizePaymentMethodTransaction", "token", "biller",
+				payment(), null, null);
+		assertSame(first, second);
+		assertEquals(size, second.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedOperation() throws Exception {
+		writer.write("deletePayer", "token", "biller", payment(), null, null);
+	}
+}
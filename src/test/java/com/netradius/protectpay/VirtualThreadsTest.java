@@ -0,0 +1,107 @@
+package com.netradius.protectpay;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests VirtualThreads and AsyncProtectPayClient.withVirtualThreads on the running JVM. Tests for the
+ * Java 21 behavior are skipped on older JVMs and the fallback tests are skipped on Java 21 and later.
+ *
+ * @author Erik R. Jensen
+ */
+public class VirtualThreadsTest {
+
+	private static boolean isJava21() {
+		String version = System.getProperty("java.specification.version");
+		return !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+	}
+
+	@Test
+	public void testSupported() {
+		assertEquals(isJava21(), VirtualThreads.isSupported());
+	}
+
+	@Test
+	public void testUnsupported() {
+		assumeFalse(VirtualThreads.isSupported());
+		try {
+			VirtualThreads.newExecutor();
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException x) {
+			assertTrue(x.getMessage(), x.getMessage().contains(System.getProperty("java.version")));
+		}
+		StubServicePool pool = new StubServicePool(1, 1000, (method, args) -> StubServicePool.result("00"));
+		try {
+			AsyncProtectPayClient.withVirtualThreads(new ProtectPayClient(pool, true, "token", "biller"), 1);
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException x) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxConcurrency() {
+		AsyncProtectPayClient.withVirtualThreads(null, 0);
+	}
+
+	@Test
+	public void testNewExecutor() throws Exception {
+		assumeTrue(VirtualThreads.isSupported());
+		ExecutorService executor = VirtualThreads.newExecutor();
+		try {
+			assertTrue(executor.submit(() -> Thread.currentThread().toString().startsWith("VirtualThread"))
+					.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testMaxConcurrency() throws Exception {
+		assumeTrue(VirtualThreads.isSupported());
+		int maxConcurrency = 3;
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		StubServicePool pool = new StubServicePool(maxConcurrency, 10000, (method, args) -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				release.await();
+			} finally {
+				inFlight.decrementAndGet();
+			}
+			return StubServicePool.result("00");
+		});
+		try (ProtectPayClient client = new ProtectPayClient(pool, true, "token", "biller");
+				AsyncProtectPayClient async = AsyncProtectPayClient.withVirtualThreads(client, maxConcurrency)) {
+			CompletableFuture<?>[] futures = new CompletableFuture<?>[100];
+			for (int i = 0; i < futures.length; i++) {
+				futures[i] = async.deletePayer("payer" + i);
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (inFlight.get() < maxConcurrency) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+			}
+			// Give requests over the limit the chance to start if the limit were not applied
+			Thread.sleep(50);
+			assertEquals(maxConcurrency, inFlight.get());
+			assertEquals(0, async.getAvailablePermits());
+
+			release.countDown();
+			CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+			assertEquals(maxConcurrency, maxInFlight.get());
+			assertEquals(maxConcurrency, async.getAvailablePermits());
+			assertEquals(maxConcurrency, pool.getPortsCreated());
+		}
+	}
+}
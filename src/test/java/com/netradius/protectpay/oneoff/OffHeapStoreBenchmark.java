@@ -0,0 +1,78 @@
+package com.netradius.protectpay.oneoff;
+
+import com.netradius.protectpay.*;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the heap used by a map of payment methods against a ProtectPayPaymentMethodStore holding the
+ * same payment methods. Heap use is measured after a full collection so only retained memory counts.
+ *
+ * @author Erik R. Jensen
+ */
+public class OffHeapStoreBenchmark {
+
+	private static final Logger log = LoggerFactory.getLogger(OffHeapStoreBenchmark.class);
+
+	private static final int COUNT = 500000;
+
+	private static ProtectPayPaymentMethod paymentMethod(int i) {
+		ProtectPayPaymentMethod paymentMethod = new ProtectPayPaymentMethod();
+		paymentMethod.setPaymentMethodId(String.format("%08x-0000-4000-8000-%012x", i, i));
+		paymentMethod.setPayerAccountId(String.valueOf(5823760912097888L + i / 3));
+		paymentMethod.setAccountName("Payer " + i);
+		paymentMethod.setAccountNumber("474747******" + String.format("%04d", i % 10000));
+		paymentMethod.setDescription("Card " + i);
+		paymentMethod.setExpirationDate("1230");
+		paymentMethod.setType(ProtectPayPaymentMethod.Type.Visa);
+		paymentMethod.setAccountCountryCode(ProtectPayPaymentMethod.AccountCountryCode.ISO_820);
+		paymentMethod.setPayerProtected(false);
+		paymentMethod.setPriority(i % 10);
+		paymentMethod.setDateCreated(new Date());
+		ProtectPayBillingInfo billing = new ProtectPayBillingInfo();
+		billing.setAddress1(i + " Main St");
+		billing.setCity("Boise");
+		billing.setState("ID");
+		billing.setZipCode("83702");
+		billing.setCountry(ProtectPayBillingInfo.Country.USA);
+		paymentMethod.setBilling(billing);
+		return paymentMethod;
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Test
+	public void test() throws InterruptedException {
+		long base = usedHeap();
+		Map<String, ProtectPayPaymentMethod> map = new HashMap<>();
+		for (int i = 0; i < COUNT; i++) {
+			ProtectPayPaymentMethod paymentMethod = paymentMethod(i);
+			map.put(paymentMethod.getPaymentMethodId(), paymentMethod);
+		}
+		long mapHeap = usedHeap() - base;
+		log.info("HashMap: " + COUNT + " payment methods, " + mapHeap / COUNT + " heap bytes each");
+		map = null;
+
+		base = usedHeap();
+		ProtectPayPaymentMethodStore store = new ProtectPayPaymentMethodStore();
+		for (int i = 0; i < COUNT; i++) {
+			store.put(paymentMethod(i));
+		}
+		long storeHeap = usedHeap() - base;
+		log.info("Store: " + COUNT + " payment methods, " + storeHeap / COUNT + " heap bytes and "
+				+ store.getAllocatedBytes() / COUNT + " direct bytes each");
+		log.info("Heap reduction: " + String.format("%.1f%%", 100.0 * (mapHeap - storeHeap) / mapHeap));
+	}
+}
@@ -21,7 +21,7 @@ public class ProtectPayClientTest {
 	public void test() throws ProtectPayException {
 		Random rand = new Random();
 		ProtectPayClient client = new ProtectPayClient(
-				ProtectPayClient.TESTING_URL,
+				ProtectPayClient.TESTING_ENDPOINT,
 				"PUT AUTHENTICATION TOKEN HERE",
 				"PUT BILLER ACCOUNT ID HERE");
 
@@ -0,0 +1,131 @@
+package com.netradius.protectpay.oneoff;
+
+import com.netradius.protectpay.*;
+import com.propay.sps.types.Billing;
+import com.propay.sps.types.ID;
+import com.propay.sps.types.ObjectFactory;
+import com.propay.sps.types.Transaction;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.CreditCardOverrides;
+import org.datacontract.schemas._2004._07.propay_contracts_sps.PaymentInfoOverrides;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the allocation and CPU time of building and marshalling a transaction request with JAXB
+ * against writing it with TransactRequestWriter. Run it by hand.
+ *
+ * @author Erik R. Jensen
+ */
+public class TransactRequestWriterBenchmark {
+
+	private static final Logger log = LoggerFactory.getLogger(TransactRequestWriterBenchmark.class);
+
+	private static final int WARMUP = 50000;
+	private static final int COUNT = 200000;
+	private static final String SOAP_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+	private static final String CONTRACTS_NS = "http://propay.com/SPS/contracts";
+
+	private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	private final ObjectFactory factory = new ObjectFactory();
+	private final org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory contractsFactory =
+			new org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory();
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private JAXBContext context;
+	private int sink;
+
+	// Roughly what the client and port do, JAXB objects are built and marshalled into a reused stream
+	private void marshal(ProtectPayPayment payment, CreditCardOverride cco) throws Exception {
+		ID id = new ID();
+		id.setAuthenticationToken(factory.createIDAuthenticationToken("token"));
+		id.setBillerAccountId(factory.createIDBillerAccountId("biller"));
+		Transaction transaction = new Transaction();
+		transaction.setPayerAccountId(factory.createTransactionPayerAccountId(payment.getPayerAccountId()));
+		transaction.setAmount(factory.createTransactionAmount(payment.getAmount().toString()));
+		transaction.setCurrencyCode(factory.createTransactionCurrencyCode(payment.getCurrencyCode()));
+		transaction.setInvoice(factory.createTransactionInvoice(payment.getInvoice()));
+		CreditCardOverrides creditCard = new CreditCardOverrides();
+		creditCard.setCVV(contractsFactory.createCreditCardOverridesCVV(cco.getCvv()));
+		ProtectPayBillingInfo info = cco.getBilling();
+		Billing billing = new Billing();
+		billing.setAddress1(factory.createBillingAddress1(info.getAddress1()));
+		billing.setCity(factory.createBillingCity(info.getCity()));
+		billing.setState(factory.createBillingState(info.getState()));
+		billing.setZipCode(factory.createBillingZipCode(info.getZipCode()));
+		billing.setCountry(factory.createBillingCountry(info.getCountry().toString()));
+		creditCard.setBilling(contractsFactory.createCreditCardOverridesBilling(billing));
+		PaymentInfoOverrides overrides = new PaymentInfoOverrides();
+		overrides.setCreditCard(contractsFactory.createPaymentInfoOverridesCreditCard(creditCard));
+		out.reset();
+		XMLStreamWriter xml = outputFactory.createXMLStreamWriter(out, "UTF-8");
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.writeStartElement("S", "Envelope", SOAP_ENVELOPE_NS);
+		xml.writeNamespace("S", SOAP_ENVELOPE_NS);
+		xml.writeStartElement("S", "Body", SOAP_ENVELOPE_NS);
+		xml.writeStartElement("ns1", "ProcessPaymentMethodTransaction", CONTRACTS_NS);
+		xml.writeNamespace("ns1", CONTRACTS_NS);
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+		marshaller.marshal(new JAXBElement<>(new QName(CONTRACTS_NS, "id"), ID.class, id), xml);
+		marshaller.marshal(new JAXBElement<>(new QName(CONTRACTS_NS, "transaction"), Transaction.class,
+				transaction), xml);
+		marshaller.marshal(new JAXBElement<>(new QName(CONTRACTS_NS, "paymentMethodID"), String.class,
+				payment.getPaymentMethodId()), xml);
+		marshaller.marshal(new JAXBElement<>(new QName(CONTRACTS_NS, "optionalPaymentInfoOverrides"),
+				PaymentInfoOverrides.class, overrides), xml);
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndDocument();
+		xml.close();
+		sink += out.size();
+	}
+
+	private void write(TransactRequestWriter writer, ProtectPayPayment payment, CreditCardOverride cco)
+			throws Exception {
+		sink += writer.write("processPaymentMethodTransaction", "token", "biller", payment, cco, null).size();
+	}
+
+	private interface Run {
+		void run() throws Exception;
+	}
+
+	private void measure(String name, Run run) throws Exception {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		for (int i = 0; i < WARMUP; i++) {
+			run.run();
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		long cpu = threads.getCurrentThreadCpuTime();
+		for (int i = 0; i < COUNT; i++) {
+			run.run();
+		}
+		cpu = threads.getCurrentThreadCpuTime() - cpu;
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+		log.info(name + ": " + allocated / COUNT + " bytes allocated and "
+				+ String.format("%.2f", cpu / 1000.0 / COUNT) + " us CPU per request");
+	}
+
+	@Test
+	public void test() throws Exception {
+		context = JAXBContext.newInstance(ObjectFactory.class,
+				org.datacontract.schemas._2004._07.propay_contracts_sps.ObjectFactory.class);
+		TransactRequestWriter writer = TransactRequestWriter.getInstance();
+		ProtectPayPayment payment = ProtectPayFixtures.payment();
+		CreditCardOverride cco = ProtectPayFixtures.creditCardOverride();
+		measure("JAXB", () -> marshal(payment, cco));
+		measure("TransactRequestWriter", () -> write(writer, payment, cco));
+		log.info("Bytes written: " + sink);
+	}
+}
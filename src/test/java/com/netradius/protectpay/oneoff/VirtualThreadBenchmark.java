@@ -0,0 +1,120 @@
+package com.netradius.protectpay.oneoff;
+
+import com.netradius.protectpay.*;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares platform threads against virtual threads fanning out requests to a local SOAP stub. Every
+ * request is answered with a SOAP fault after a fixed delay so only the round trip is measured.
+ * Virtual threads require Java 21 or later.
+ *
+ * @author Erik R. Jensen
+ */
+public class VirtualThreadBenchmark {
+
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreadBenchmark.class);
+
+	private static final int REQUESTS = 5000;
+	private static final int CONCURRENCY = 200;
+	private static final long DELAY = 20;
+	private static final String FAULT = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<s:Body><s:Fault><faultcode>s:Server</faultcode><faultstring>stub</faultstring></s:Fault>"
+			+ "</s:Body></s:Envelope>";
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private ProtectPayClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), CONCURRENCY);
+		server.createContext("/API/SPS.svc", exchange -> {
+			try (InputStream in = exchange.getRequestBody()) {
+				while (in.read() != -1) {
+					// drain
+				}
+				Thread.sleep(DELAY);
+				byte[] body = FAULT.getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+				exchange.sendResponseHeaders(500, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+			} finally {
+				exchange.close();
+			}
+		});
+		serverExecutor = Executors.newFixedThreadPool(CONCURRENCY);
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		HttpTransportConfig config = new HttpTransportConfig();
+		config.setMaxTotal(CONCURRENCY);
+		config.setMaxPerRoute(CONCURRENCY);
+		client = new ProtectPayClient("http://127.0.0.1:" + server.getAddress().getPort() + "/API/SPS.svc",
+				"benchmark", "benchmark", config);
+		client.setPoolSize(CONCURRENCY);
+		client.fillPool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	private long run(AsyncProtectPayClient async) {
+		ProtectPayPayer criteria = new ProtectPayPayer();
+		criteria.setExternalId1("benchmark");
+		long start = System.nanoTime();
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[REQUESTS];
+		for (int i = 0; i < REQUESTS; i++) {
+			futures[i] = async.getPayers(criteria).handle((payers, t) -> null);
+		}
+		CompletableFuture.allOf(futures).join();
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private void report(String mode, long duration) {
+		log.info(mode + ": " + REQUESTS + " requests in " + duration + "ms ("
+				+ (REQUESTS * 1000L / Math.max(duration, 1)) + " req/s, " + Thread.activeCount() + " live threads)");
+	}
+
+	@Test
+	public void testPlatformThreads() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+		try {
+			AsyncProtectPayClient async = new AsyncProtectPayClient(client, executor);
+			run(async); // warm up
+			report("Platform threads", run(async));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testVirtualThreads() throws Exception {
+		Assume.assumeTrue(VirtualThreads.isSupported());
+		try (AsyncProtectPayClient async = AsyncProtectPayClient.withVirtualThreads(client, CONCURRENCY)) {
+			run(async); // warm up
+			report("Virtual threads", run(async));
+		}
+	}
+}
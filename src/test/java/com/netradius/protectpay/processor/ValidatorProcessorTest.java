@@ -0,0 +1,185 @@
+package com.netradius.protectpay.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import javax.validation.constraints.Size;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Tests which classes ValidatorProcessor generates checks for and which it leaves to the shared Validator.
+ *
+ * @author Erik R. Jensen
+ */
+public class ValidatorProcessorTest {
+
+	private JavaCompiler compiler;
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		compiler = ToolProvider.getSystemJavaCompiler();
+		assumeNotNull(compiler);
+		dir = Files.createTempDirectory("validator-processor");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (dir != null) {
+			try (Stream<Path> paths = Files.walk(dir)) {
+				paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	private static JavaFileObject source(String name, String... lines) {
+		String code = "package com.netradius.protectpay;\n" + String.join("\n", lines);
+		return new SimpleJavaFileObject(URI.create("string:///com/netradius/protectpay/" + name + ".java"),
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return code;
+			}
+		};
+	}
+
+	private static String location(Class<?> type) throws Exception {
+		return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+	}
+
+	// Compiles the sources against validation-api and GeneratedValidation and returns the generated validator of the first
+	private String generate(JavaFileObject... sources) throws Exception {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		List<String> options = Arrays.asList("-proc:only", "-s", dir.toString(), "-classpath",
+				location(Size.class) + File.pathSeparator + location(ValidatorProcessor.class));
+		JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null,
+				Arrays.asList(sources));
+		task.setProcessors(Collections.singletonList(new ValidatorProcessor()));
+		boolean success = task.call();
+		List<String> errors = new ArrayList<>();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				errors.add(diagnostic.getMessage(null));
+			}
+		}
+		assertTrue(errors.toString(), success);
+		String name = sources[0].getName();
+		name = name.substring(name.lastIndexOf('/') + 1, name.length() - ".java".length());
+		return new String(Files.readAllBytes(dir.resolve("com/netradius/protectpay/" + name + "Validator.java")),
+				StandardCharsets.UTF_8);
+	}
+
+	private static void assertShared(String validator) {
+		assertTrue(validator, validator.contains("GeneratedValidation.validator().validate(bean)"));
+		assertFalse(validator, validator.contains("violations.add"));
+	}
+
+	@Test
+	public void testGenerated() throws Exception {
+		String validator = generate(source("Sample",
+				"public class Sample {",
+				"	@javax.validation.constraints.Size(min = 2, max = 4, message = \"between {min} and {max}\")",
+				"	private java.util.List<String> tags;",
+				"	@javax.validation.constraints.NotNull",
+				"	private String name;",
+				"	public java.util.List<String> getTags() { return tags; }",
+				"	public String getName() { return name; }",
+				"}"));
+		assertTrue(validator, validator.contains("value.size() < 2 || value.size() > 4"));
+		assertTrue(validator, validator.contains("\"between 2 and 4\""));
+		assertTrue(validator, validator.contains("value == null"));
+		assertFalse(validator, validator.contains("GeneratedValidation.validator()"));
+	}
+
+	@Test
+	public void testUnsupportedConstraint() throws Exception {
+		assertShared(generate(source("Sample",
+				"public class Sample {",
+				"	@javax.validation.constraints.Size(max = 4)",
+				"	private String code;",
+				"	@javax.validation.constraints.Pattern(regexp = \"[0-9]+\")",
+				"	private String zip;",
+				"	public String getCode() { return code; }",
+				"	public String getZip() { return zip; }",
+				"}")));
+	}
+
+	@Test
+	public void testGroups() throws Exception {
+		assertShared(generate(source("Sample",
+				"public class Sample {",
+				"	@javax.validation.constraints.Size(max = 4, groups = Sample.class)",
+				"	private String code;",
+				"	public String getCode() { return code; }",
+				"}")));
+	}
+
+	@Test
+	public void testMessageExpression() throws Exception {
+		assertShared(generate(source("Sample",
+				"public class Sample {",
+				"	@javax.validation.constraints.NotNull(message = \"{sample.code.missing}\")",
+				"	private String code;",
+				"	public String getCode() { return code; }",
+				"}")));
+	}
+
+	@Test
+	public void testNoGetter() throws Exception {
+		assertShared(generate(source("Sample",
+				"public class Sample {",
+				"	@javax.validation.constraints.NotNull",
+				"	private String code;",
+				"}")));
+	}
+
+	@Test
+	public void testCascadeToUnsupported() throws Exception {
+		JavaFileObject nested = source("Nested",
+				"public class Nested {",
+				"	@javax.validation.constraints.Min(1)",
+				"	private int count;",
+				"	public int getCount() { return count; }",
+				"}");
+		assertShared(generate(source("Sample",
+				"public class Sample {",
+				"	@javax.validation.Valid",
+				"	private Nested nested;",
+				"	public Nested getNested() { return nested; }",
+				"}"), nested));
+	}
+
+	@Test
+	public void testCascadeCycle() throws Exception {
+		assertShared(generate(source("Sample",
+				"public class Sample {",
+				"	@javax.validation.constraints.Size(max = 4)",
+				"	private String code;",
+				"	@javax.validation.Valid",
+				"	private Sample parent;",
+				"	public String getCode() { return code; }",
+				"	public Sample getParent() { return parent; }",
+				"}")));
+	}
+}